@@ -1,8 +1,13 @@
 package com.yzx.crazycodingbytemq.config;
 
+import com.yzx.crazycodingbytemq.enums.ConsumeOrder;
+import com.yzx.crazycodingbytemq.enums.TransportType;
+import com.yzx.crazycodingbytemq.model.MqMessage;
 import lombok.Data;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @className: ClientConfig
@@ -20,13 +25,38 @@ public class ClientConfig {
     // 客户端版本（用于兼容性校验）
     private String clientVersion;
     private Duration connectTimeout = Duration.ofSeconds(5); // 连接超时时间
+    private Duration requestTimeout = Duration.ofSeconds(30); // 请求超时时间（批量发送、拉取等请求发出后等待响应的最长时间）
     private int retryCount = 3; // 重试次数
-    private Duration retryInterval = Duration.ofSeconds(1); // 重试间隔时间
+    private Duration retryInterval = Duration.ofSeconds(1); // 重试基础间隔（按次数指数退避并随机抖动）
+    private Duration retryMaxInterval = Duration.ofSeconds(10); // 重试退避上限
     private int poolSize = 8; // 连接池大小
     private boolean sslEnable = true;
     private String sslTrustCertPath = "conf/ca.crt"; // 修复拼写：Truest→Trust
     private String sslTrustPassword = ""; // 信任库密码
-    private Duration heartbeatTimeout = Duration.ofSeconds(30); // 心跳超时时间
+    private Duration heartbeatInterval = Duration.ofSeconds(10); // 心跳间隔（连接写空闲达到该时长发送心跳）
+    private Duration heartbeatTimeout = Duration.ofSeconds(30); // 心跳超时时间（超过该时长未收到任何数据则关闭连接并重连）
     private int maxFrameLength = 1024 * 1024 * 10; // 最大帧长度（10MB）
+    private int batchSize = 16 * 1024; // 生产者单批次最大字节数（达到即发送）
+    private Duration linger = Duration.ofMillis(5); // 生产者批次最长等待时间（未攒满也发送）
+    private long bufferMemory = 32 * 1024 * 1024; // 生产者缓冲区字节数上限（已提交发送但尚未得到最终结果的消息，含重试中的消息）
+    private Duration maxBlock = Duration.ofSeconds(60); // 生产者缓冲区满时发送最长阻塞时间（超时则发送失败，0表示立即失败）
+    private int prefetchMessages = 1000; // 消费者本地预取缓冲最大条数
+    private long prefetchBytes = 8 * 1024 * 1024; // 消费者本地预取缓冲最大字节数
+    private int fetchBatchSize = 100; // 后台每次拉取的最大条数（服务端上限100）
+    private Duration fetchMaxWait = Duration.ofSeconds(1); // 后台拉取的长轮询等待时间
+    private int maxPollRecords = 100; // 单次poll返回的最大条数
+    private int consumeConcurrency = 64; // 并行消费最大同时处理条数
+    private ConsumeOrder consumeOrder = ConsumeOrder.UNORDERED; // 并行消费的处理顺序
+    private int consumeWindow = 2048; // 并行消费滑动窗口（已分发未提交的最大条数，最早一条未完成时窗口不前进）
+    private int ackBatchSize = 100; // 攒够该条数立即提交确认
+    private Duration ackFlushInterval = Duration.ofMillis(100); // 确认最长攒批时间
+    private List<String> brokers = new ArrayList<>(); // broker地址列表（host:port，按地址构造客户端时可不填）
+    private Duration routeRefreshInterval = Duration.ofSeconds(5); // 后台探测broker状态、刷新路由的间隔
+    private MqMessage.AckMode ackMode = MqMessage.AckMode.LEADER; // 发送确认模式（LEADER/ASYNC_REPLICAS/SYNC_MAJORITY）
+    private List<String> nameServers = new ArrayList<>(); // name server地址列表（未配置broker地址时从name server发现broker和队列路由）
+    private int reactiveMaxInFlight = 1024; // 响应式批量发送的最大在途条数（超过后不再向上游请求）
+    private TransportType transport = TransportType.AUTO; // 网络传输（AUTO/NIO/EPOLL/IO_URING，不可用时回退NIO）
+    private boolean tcpQuickAck = false; // epoll下开启TCP_QUICKACK（关闭延迟确认）
+    private boolean epollEdgeTriggered = true; // epoll使用边沿触发（false为水平触发）
 }
 
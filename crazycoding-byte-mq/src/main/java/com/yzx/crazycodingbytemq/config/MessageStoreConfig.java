@@ -3,6 +3,8 @@ package com.yzx.crazycodingbytemq.config;
 import lombok.Data;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @className: MessageStoreConfig
@@ -15,6 +17,12 @@ import java.time.Duration;
 public class MessageStoreConfig {
     // 存储根目录
     private String baseDir = "./mq-store";
+    // 多磁盘存储目录（多个挂载点，非空时替代baseDir）
+    private List<String> baseDirs = new ArrayList<>();
+    // 队列在多磁盘间的分布策略
+    private DiskSelectPolicy diskSelectPolicy = DiskSelectPolicy.HASH;
+    // 磁盘最小剩余空间（低于该值视为写满，队列迁移到其他磁盘，默认1GB）
+    private long diskMinFreeBytes = 1024L * 1024 * 1024;
     // 单个日志文件大小上限（默认64MB）
     private long maxFileSize = 64 * 1024 * 1024;
     // 批量刷盘阈值（达到该条数触发刷盘）
@@ -31,12 +39,19 @@ public class MessageStoreConfig {
     private int bufferSize = 8 * 1024 * 1024;
     // 崩溃恢复时的重试次数
     private int recoveryRetryCount = 3;
+    // 时间索引采样间隔（默认1秒写一个索引项）
+    private Duration timeIndexInterval = Duration.ofSeconds(1);
 
     // 刷盘策略枚举
     public enum FlushPolicy {
         SYNC, ASYNC
     }
 
+    // 磁盘分布策略枚举（HASH：按队列名哈希，FREE_SPACE：选剩余空间最大的盘）
+    public enum DiskSelectPolicy {
+        HASH, FREE_SPACE
+    }
+
     // 校验算法枚举
     public enum ChecksumAlgorithm {
         CRC32, MD5
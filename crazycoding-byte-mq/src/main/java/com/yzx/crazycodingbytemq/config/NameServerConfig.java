@@ -0,0 +1,26 @@
+package com.yzx.crazycodingbytemq.config;
+
+import com.yzx.crazycodingbytemq.enums.TransportType;
+import lombok.Data;
+
+import java.time.Duration;
+
+/**
+ * @className: NameServerConfig
+ * @author: yzx
+ * @date: 2025/11/25 14:00
+ * @Version: 1.0
+ * @description: name server配置
+ */
+@Data
+public class NameServerConfig {
+    private int port = 9876;
+    private int workerThreadCount = 2;
+    private boolean sslEnable = true;
+    private int maxFrameLength = 1024 * 1024 * 10;//最大帧长度
+    private Duration heartbeatTimeout = Duration.ofSeconds(30);//连接读空闲超时(客户端写空闲时发心跳)
+    private Duration brokerExpireTimeout = Duration.ofSeconds(30);//broker超过该时间未注册视为下线
+    private int virtualNodes = 128;//每个broker在哈希环上的虚拟节点数
+    private double loadFactor = 1.25;//分配新队列时broker负载上限(平均负载的倍数,超过则沿哈希环顺延)
+    private TransportType transport = TransportType.AUTO;//网络传输(AUTO/NIO/EPOLL/IO_URING,不可用时回退NIO)
+}
@@ -1,8 +1,12 @@
 package com.yzx.crazycodingbytemq.config;
 
+import com.typesafe.config.Optional;
+import com.yzx.crazycodingbytemq.enums.TransportType;
 import lombok.Data;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @className: ServerConfig
@@ -15,6 +19,8 @@ import java.time.Duration;
 public class ServerConfig {
     private int port = 8080;
     private int bossThreadCount = 1;
+    // 默认值按CPU核数计算,配置文件中可不写
+    @Optional
     private int workThreadCount = Runtime.getRuntime().availableProcessors() * 2;
     private int backlog = 1024;//连接池队列大小
     private boolean keepAlive = true;
@@ -28,4 +34,70 @@ public class ServerConfig {
     private int maxConnection = 10000;//最大连接长度
     private boolean sslClientAuthRequired = true;
     private String sslKeyPassword = "";
+    private String scheduleStoreDir = "./mq-store/__schedule";//定时消息存储目录
+    private Duration scheduleBucketDuration = Duration.ofMinutes(1);//定时消息时间桶跨度
+    private Duration scheduleMemoryWindow = Duration.ofMinutes(10);//提前加载进内存时间轮的窗口
+    private long timerTickMs = 10;//时间轮最小刻度(毫秒)
+    private int timerWheelSize = 512;//时间轮每层槽位数
+    private List<Duration> retryDelays = new ArrayList<>(List.of(
+            Duration.ofSeconds(1), Duration.ofSeconds(5), Duration.ofSeconds(30), Duration.ofMinutes(2)));//分级重试延迟
+    private int maxDeliveryAttempts = 5;//最大投递次数(超过进入死信队列)
+    private int queueCapacity = 65536;//单队列最大消息数(环形队列槽位数,向上取2的幂)
+    private long queueMaxBytes = 64 * 1024 * 1024;//单队列最大字节数
+    private Duration queueFullRetryAfter = Duration.ofMillis(100);//队列满时建议生产者的重试等待时间
+    private Duration visibilityTimeout = Duration.ofSeconds(30);//消息可见性超时(投递后未确认则重投)
+    private int inflightTableSegments = 64;//已投递未确认表分段数
+    private Duration maxLongPollWait = Duration.ofSeconds(30);//长轮询单次最长挂起时间
+    private int writeBufferLowWaterMark = 32 * 1024;//写缓冲低水位(回落到此值以下通道恢复可写,继续推送)
+    private int writeBufferHighWaterMark = 64 * 1024;//写缓冲高水位(超过此值通道不可写,暂停推送)
+    private int pushBatchLimit = 256;//单次推送任务最多推送的消息数(超过则让出EventLoop)
+    private int defaultQueuePartitions = 1;//队列默认分区数
+    private List<String> queuePartitions = new ArrayList<>();//指定队列分区数,格式"队列名:分区数"
+    private List<String> orderedQueues = new ArrayList<>();//按消息键顺序投递的队列(同键同时最多一条在途)
+    private int orderedMaxPending = 65536;//顺序队列按键积压的消息上限
+    private Duration orderedKeyIdleTimeout = Duration.ofMinutes(10);//消息键租约(持有者超过该时间未确认或重投则收回,有积压时交给同键下一条消息)
+    private boolean dedupEnabled = true;//是否开启消息去重
+    private Duration dedupWindow = Duration.ofMinutes(10);//去重窗口(窗口内相同幂等ID的消息视为重复)
+    private int dedupBloomBuckets = 10;//布隆过滤器时间桶数
+    private int dedupExpectedIdsPerBucket = 50000;//单个时间桶期望的消息数
+    private double dedupFalsePositiveRate = 0.01;//布隆过滤器误判率
+    private int dedupExactSetSize = 0;//单队列精确ID集合容量(0表示按桶数×每桶期望数计算,配置值不得小于该值)
+    private String transactionStoreDir = "./mq-store/__transaction";//事务日志目录
+    private long transactionLogSegmentBytes = 64 * 1024 * 1024;//事务日志段大小
+    private Duration transactionCheckInterval = Duration.ofSeconds(5);//事务回查扫描间隔
+    private Duration transactionCheckTimeout = Duration.ofSeconds(6);//半消息超过该时间未结束则回查生产者
+    private int transactionMaxChecks = 15;//最大回查次数(超过则回滚)
+    private String queueStoreDir = "./mq-store/__queue";//队列消息日志目录(每个分区一个子目录)
+    private List<String> queueStoreDirs = new ArrayList<>();//多磁盘队列日志目录(多个挂载点,非空时替代queueStoreDir,分区按策略分布到各盘)
+    private MessageStoreConfig.DiskSelectPolicy queueDiskSelectPolicy = MessageStoreConfig.DiskSelectPolicy.HASH;//分区在多磁盘间的分布策略
+    private long queueDiskMinFreeBytes = 1024L * 1024 * 1024;//磁盘最小剩余空间(低于该值视为写满,分区的新段写入其他磁盘)
+    private long queueLogSegmentBytes = 64 * 1024 * 1024;//队列消息日志段大小
+    private Duration queueStoreFlushInterval = Duration.ofMillis(500);//队列日志刷盘及消费位点保存间隔
+    private int queuePageSize = 256;//积压时单次从磁盘换入内存的最大消息数
+    private Duration queueTimeIndexInterval = Duration.ofSeconds(1);//队列日志时间索引采样间隔(按时间回溯消费时据此定位偏移量)
+    @Optional
+    private int queueStoreThreads = Math.max(2, Runtime.getRuntime().availableProcessors());//队列归属线程数(发送、拉取及日志读写在此执行,不占用IO线程)
+    private long producerMessageRate = 0;//单个生产者默认消息数配额(条/秒,0表示不限)
+    private long producerByteRate = 0;//单个生产者默认字节数配额(字节/秒,0表示不限)
+    private long queueMessageRate = 0;//单个队列默认消息数配额(条/秒,0表示不限)
+    private long queueByteRate = 0;//单个队列默认字节数配额(字节/秒,0表示不限)
+    private List<String> producerQuotas = new ArrayList<>();//指定生产者配额,格式"客户端ID:条/秒:字节/秒"
+    private List<String> queueQuotas = new ArrayList<>();//指定队列配额,格式"队列名:条/秒:字节/秒"
+    private Duration quotaBurst = Duration.ofSeconds(1);//配额允许的突发量(按速率折算的时长)
+    private Duration quotaMaxThrottle = Duration.ofSeconds(5);//单次暂停读取的最长时间
+    private String brokerId = "";//broker ID(副本向leader拉取时上报,为空则使用"broker-端口")
+    private String replicaOf = "";//leader地址host:port(为空表示本节点是leader;非空则作为只读副本从leader复制日志)
+    private int replicationFactor = 1;//副本总数(含leader),SYNC_MAJORITY确认需要其中多数已写入
+    private Duration replicaLagTimeout = Duration.ofSeconds(10);//副本超过该时间未拉取视为不同步
+    private Duration replicaAckTimeout = Duration.ofSeconds(5);//SYNC_MAJORITY等待副本复制的最长时间
+    private int replicaFetchMaxBytes = 1024 * 1024;//副本单次拉取的日志字节数上限
+    private Duration replicaFetchMaxWait = Duration.ofMillis(500);//没有新数据时leader挂起副本拉取的最长时间
+    private Duration replicaRetryInterval = Duration.ofSeconds(1);//副本连接leader失败后的重连基础间隔
+    private List<String> nameServers = new ArrayList<>();//name server地址列表(host:port,为空则不注册)
+    private String advertisedAddress = "";//注册到name server、供客户端连接的地址(为空则使用本机地址:端口)
+    private Duration registerInterval = Duration.ofSeconds(10);//向name server注册/上报负载的间隔
+    private TransportType transport = TransportType.AUTO;//网络传输(AUTO/NIO/EPOLL/IO_URING,不可用时回退NIO)
+    private int acceptorCount = 1;//epoll下SO_REUSEPORT绑定同一端口的监听通道数(内核在各acceptor间分配新连接)
+    private boolean tcpQuickAck = false;//epoll下开启TCP_QUICKACK(关闭延迟确认)
+    private boolean epollEdgeTriggered = true;//epoll使用边沿触发(false为水平触发)
 }
@@ -0,0 +1,12 @@
+package com.yzx.crazycodingbytemq.enums;
+
+/**
+ * @className: ConsumeOrder
+ * @author: yzx
+ * @date: 2025/11/24 16:00
+ * @Version: 1.0
+ * @description: 并行消费的处理顺序（UNORDERED不保证顺序；KEY同一消息键串行处理，不同键并行）
+ */
+public enum ConsumeOrder {
+    UNORDERED, KEY
+}
@@ -0,0 +1,12 @@
+package com.yzx.crazycodingbytemq.enums;
+
+/**
+ * @className: LocalTransactionState
+ * @author: yzx
+ * @date: 2025/11/22 17:00
+ * @Version: 1.0
+ * @description: 生产者本地事务状态（UNKNOWN表示暂不确定，等待broker回查）
+ */
+public enum LocalTransactionState {
+    COMMIT_MESSAGE, ROLLBACK_MESSAGE, UNKNOWN
+}
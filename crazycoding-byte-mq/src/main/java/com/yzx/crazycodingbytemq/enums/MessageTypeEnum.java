@@ -31,7 +31,47 @@ public enum MessageTypeEnum {
 
     MESSAGE_ACK((byte) 0x09, "消息消费确认请求"),
 
-    MESSAGE_ACK_RESPONSE((byte) 0x10, "消息消费确认响应");
+    MESSAGE_ACK_RESPONSE((byte) 0x10, "消息消费确认响应"),
+
+    MESSAGE_NACK((byte) 0x11, "消息消费失败请求"),
+
+    MESSAGE_NACK_RESPONSE((byte) 0x12, "消息消费失败响应"),
+
+    SUBSCRIBE((byte) 0x13, "推模式订阅/补充额度请求"),
+
+    SUBSCRIBE_RESPONSE((byte) 0x14, "推模式订阅响应"),
+
+    PUSH_MESSAGE((byte) 0x15, "服务端推送消息"),
+
+    TRANSACTION_PREPARE((byte) 0x16, "事务半消息请求"),
+
+    TRANSACTION_COMMIT((byte) 0x17, "事务提交请求"),
+
+    TRANSACTION_ROLLBACK((byte) 0x18, "事务回滚请求"),
+
+    TRANSACTION_RESPONSE((byte) 0x19, "事务请求响应"),
+
+    TRANSACTION_CHECK((byte) 0x1A, "事务回查请求"),
+
+    SEND_BATCH((byte) 0x1B, "批量发送消息请求"),
+
+    SEND_BATCH_RESPONSE((byte) 0x1C, "批量发送消息响应"),
+
+    MESSAGE_ACK_BATCH((byte) 0x1D, "批量消息消费确认请求"),
+
+    MESSAGE_ACK_BATCH_RESPONSE((byte) 0x1E, "批量消息消费确认响应"),
+
+    REPLICA_FETCH((byte) 0x1F, "副本拉取日志请求"),
+
+    REPLICA_FETCH_RESPONSE((byte) 0x20, "副本拉取日志响应"),
+
+    BROKER_REGISTER((byte) 0x21, "broker向name server注册/上报负载"),
+
+    BROKER_REGISTER_RESPONSE((byte) 0x22, "broker注册响应"),
+
+    ROUTE_QUERY((byte) 0x23, "路由表查询请求"),
+
+    ROUTE_RESPONSE((byte) 0x24, "路由表查询响应");
 
     private final byte code;
     private final String desc;
@@ -0,0 +1,12 @@
+package com.yzx.crazycodingbytemq.enums;
+
+/**
+ * @className: TransportType
+ * @author: yzx
+ * @date: 2025/11/26 10:00
+ * @Version: 1.0
+ * @description: 网络传输实现（AUTO：Linux上epoll可用时使用epoll，否则NIO；EPOLL/IO_URING不可用时回退NIO）
+ */
+public enum TransportType {
+    AUTO, NIO, EPOLL, IO_URING
+}
@@ -0,0 +1,15 @@
+package com.yzx.crazycodingbytemq.exception;
+
+/**
+ * @className: BrokerUnavailableException
+ * @author: yzx
+ * @date: 2025/11/25 10:00
+ * @Version: 1.0
+ * @description: 所有候选broker都无法建立连接（请求未发出，可以安全重试）
+ */
+public class BrokerUnavailableException extends RuntimeException {
+
+    public BrokerUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,15 @@
+package com.yzx.crazycodingbytemq.exception;
+
+/**
+ * @className: BufferExhaustedException
+ * @author: yzx
+ * @date: 2025/11/27 14:00
+ * @Version: 1.0
+ * @description: 生产者缓冲区已满，在最长阻塞时间内没有腾出空间（消息未发出）
+ */
+public class BufferExhaustedException extends RuntimeException {
+
+    public BufferExhaustedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,15 @@
+package com.yzx.crazycodingbytemq.exception;
+
+/**
+ * @className: ConnectionLostException
+ * @author: yzx
+ * @date: 2025/11/25 10:00
+ * @Version: 1.0
+ * @description: 请求已发出但连接在响应前断开（broker可能已处理，只有幂等请求可以重试）
+ */
+public class ConnectionLostException extends RuntimeException {
+
+    public ConnectionLostException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,23 @@
+package com.yzx.crazycodingbytemq.exception;
+
+import lombok.Getter;
+
+/**
+ * @className: RequestTimeoutException
+ * @author: yzx
+ * @date: 2025/11/24 10:00
+ * @Version: 1.0
+ * @description: 客户端请求在截止时间内未收到结果（调用方可据此区分超时和其他失败，决定是否重试）
+ */
+@Getter
+public class RequestTimeoutException extends RuntimeException {
+    // 超时的操作
+    private final String operation;
+    private final long timeoutMs;
+
+    public RequestTimeoutException(String operation, long timeoutMs) {
+        super(operation + "超时（" + timeoutMs + "ms）");
+        this.operation = operation;
+        this.timeoutMs = timeoutMs;
+    }
+}
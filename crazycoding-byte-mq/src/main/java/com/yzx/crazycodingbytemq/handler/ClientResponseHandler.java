@@ -1,11 +1,23 @@
 package com.yzx.crazycodingbytemq.handler;
 
+import com.google.protobuf.InvalidProtocolBufferException;
 import com.yzx.crazycodingbytemq.enums.MessageTypeEnum;
+import com.yzx.crazycodingbytemq.exception.ConnectionLostException;
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import com.yzx.crazycodingbytemq.server.PushMessageListener;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.AttributeKey;
 import lombok.extern.slf4j.Slf4j;
 import com.yzx.crazycodingbytemq.codec.ProtocolFrame;
 
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
 /**
  * @className: ClientResponseHandler
  * @author: yzx
@@ -15,16 +27,61 @@ import com.yzx.crazycodingbytemq.codec.ProtocolFrame;
  */
 @Slf4j
 public class ClientResponseHandler extends ChannelInboundHandlerAdapter {
+    // 通道上的推模式监听器：队列名->监听器
+    public static final AttributeKey<Map<String, PushMessageListener>> PUSH_LISTENERS = AttributeKey.valueOf("pushListeners");
+    // 通道上等待响应的事务请求：事务ID->响应
+    public static final AttributeKey<Map<String, CompletableFuture<MqMessage.TransactionResponse>>> TRANSACTION_FUTURES =
+            AttributeKey.valueOf("transactionFutures");
+    // 通道上等待响应的批量发送：批次ID->响应
+    public static final AttributeKey<Map<Long, CompletableFuture<MqMessage.SendBatchResponse>>> BATCH_FUTURES =
+            AttributeKey.valueOf("batchFutures");
+    // 通道上等待响应的拉取请求：请求ID->响应
+    public static final AttributeKey<Map<Long, CompletableFuture<MqMessage.PullMessageResponse>>> PULL_FUTURES =
+            AttributeKey.valueOf("pullFutures");
+    // 拉取请求ID：连接池按地址共用，同一连接上可能有多个消费者/客户端并发拉取，进程内统一递增避免响应串号
+    private static final AtomicLong PULL_REQUEST_IDS = new AtomicLong(0);
+    // 通道上等待响应的路由查询：请求ID->响应
+    public static final AttributeKey<Map<Long, CompletableFuture<MqMessage.RouteQueryResponse>>> ROUTE_FUTURES =
+            AttributeKey.valueOf("routeFutures");
+    // 通道上等待响应的连接请求（连接响应不带请求ID，服务端按请求顺序响应）
+    public static final AttributeKey<Queue<CompletableFuture<MqMessage.ConnectResponse>>> CONNECT_FUTURES =
+            AttributeKey.valueOf("connectFutures");
+    // 通道上的事务回查处理器
+    public static final AttributeKey<BiConsumer<Channel, MqMessage.TransactionCheckRequest>> TRANSACTION_CHECKER =
+            AttributeKey.valueOf("transactionChecker");
+
+    public static long nextPullRequestId() {
+        return PULL_REQUEST_IDS.incrementAndGet();
+    }
+
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
         if (msg instanceof ProtocolFrame frame) {
             switch (MessageTypeEnum.getByCode(frame.getMessageType())) {
                 case CONNECT_RESPONSE:
-                    handleConnectResponse(frame);
+                    handleConnectResponse(ctx, frame);
                     return;
                 case SEND_MESSAGE:
                     handleBusinessMessage(frame);
                     return;
+                case SEND_BATCH_RESPONSE:
+                    handleBatchResponse(ctx, frame);
+                    return;
+                case PULL_MESSAGE_RESPONSE:
+                    handlePullResponse(ctx, frame);
+                    return;
+                case PUSH_MESSAGE:
+                    handlePushMessage(ctx, frame);
+                    return;
+                case TRANSACTION_RESPONSE:
+                    handleTransactionResponse(ctx, frame);
+                    return;
+                case TRANSACTION_CHECK:
+                    handleTransactionCheck(ctx, frame);
+                    return;
+                case ROUTE_RESPONSE:
+                    handleRouteResponse(ctx, frame);
+                    return;
                 default:
                     log.debug("收到未知类型消息：type={}", frame.getMessageType());
             }
@@ -33,10 +90,148 @@ public class ClientResponseHandler extends ChannelInboundHandlerAdapter {
         ctx.fireChannelRead(msg);
     }
 
-    // 处理服务端连接响应
-    private void handleConnectResponse(ProtocolFrame frame) {
-        log.info("客户端收到连接响应，消息体长度：{}", frame.getBodyLength());
-        // 后续可解析Protobuf结构的响应内容
+    // 连接断开：等待中的请求立即失败，不必等到超时（调用方据此故障转移）
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        String reason = "连接在响应前断开：" + ctx.channel().remoteAddress();
+        Queue<CompletableFuture<MqMessage.ConnectResponse>> connectFutures = ctx.channel().attr(CONNECT_FUTURES).get();
+        if (connectFutures != null) {
+            CompletableFuture<MqMessage.ConnectResponse> future;
+            while ((future = connectFutures.poll()) != null) {
+                future.completeExceptionally(new ConnectionLostException(reason));
+            }
+        }
+        failPending(ctx.channel().attr(BATCH_FUTURES).get(), reason);
+        failPending(ctx.channel().attr(PULL_FUTURES).get(), reason);
+        failPending(ctx.channel().attr(TRANSACTION_FUTURES).get(), reason);
+        failPending(ctx.channel().attr(ROUTE_FUTURES).get(), reason);
+        super.channelInactive(ctx);
+    }
+
+    private static void failPending(Map<?, ? extends CompletableFuture<?>> futures, String reason) {
+        if (futures == null || futures.isEmpty()) return;
+        ConnectionLostException exception = new ConnectionLostException(reason);
+        futures.values().forEach(future -> future.completeExceptionally(exception));
+        futures.clear();
+    }
+
+    // 处理服务端连接响应：按请求顺序唤醒等待方
+    private void handleConnectResponse(ChannelHandlerContext ctx, ProtocolFrame frame) {
+        try {
+            MqMessage.ConnectResponse response = MqMessage.ConnectResponse.parseFrom(frame.getBody());
+            Queue<CompletableFuture<MqMessage.ConnectResponse>> futures = ctx.channel().attr(CONNECT_FUTURES).get();
+            CompletableFuture<MqMessage.ConnectResponse> future = futures == null ? null : futures.poll();
+            if (future == null) {
+                log.warn("收到无人等待的连接响应：success={}, message={}", response.getSuccess(), response.getMessage());
+                return;
+            }
+            future.complete(response);
+        } catch (InvalidProtocolBufferException e) {
+            log.error("解析连接响应失败", e);
+        }
+    }
+
+    // 处理服务端推送的消息：按队列分发给该通道上的监听器
+    private void handlePushMessage(ChannelHandlerContext ctx, ProtocolFrame frame) {
+        try {
+            MqMessage.PushMessage pushMessage = MqMessage.PushMessage.parseFrom(frame.getBody());
+            Map<String, PushMessageListener> listeners = ctx.channel().attr(PUSH_LISTENERS).get();
+            PushMessageListener listener = listeners == null ? null : listeners.get(pushMessage.getQueueName());
+            if (listener == null) {
+                // 已取消订阅，未确认的消息由服务端可见性超时重投
+                log.warn("收到未订阅队列的推送消息，忽略：queueName={}", pushMessage.getQueueName());
+                return;
+            }
+            listener.onMessage(pushMessage.getMessage());
+        } catch (InvalidProtocolBufferException e) {
+            log.error("解析推送消息失败", e);
+        } catch (Exception e) {
+            log.error("推模式监听器处理消息异常", e);
+        }
+    }
+
+    // 处理批量发送响应：按批次ID唤醒等待方
+    private void handleBatchResponse(ChannelHandlerContext ctx, ProtocolFrame frame) {
+        try {
+            MqMessage.SendBatchResponse response = MqMessage.SendBatchResponse.parseFrom(frame.getBody());
+            Map<Long, CompletableFuture<MqMessage.SendBatchResponse>> futures = ctx.channel().attr(BATCH_FUTURES).get();
+            CompletableFuture<MqMessage.SendBatchResponse> future = futures == null ? null : futures.remove(response.getBatchId());
+            if (future == null) {
+                // 已超时
+                log.warn("收到无人等待的批量发送响应：batchId={}", response.getBatchId());
+                return;
+            }
+            future.complete(response);
+        } catch (InvalidProtocolBufferException e) {
+            log.error("解析批量发送响应失败", e);
+        }
+    }
+
+    // 处理拉取响应：按请求ID唤醒等待方
+    private void handlePullResponse(ChannelHandlerContext ctx, ProtocolFrame frame) {
+        try {
+            MqMessage.PullMessageResponse response = MqMessage.PullMessageResponse.parseFrom(frame.getBody());
+            Map<Long, CompletableFuture<MqMessage.PullMessageResponse>> futures = ctx.channel().attr(PULL_FUTURES).get();
+            CompletableFuture<MqMessage.PullMessageResponse> future = futures == null ? null : futures.remove(response.getRequestId());
+            if (future == null) {
+                // 已超时：消息未确认，由服务端可见性超时重投
+                log.warn("收到无人等待的拉取响应：requestId={}, 消息数={}", response.getRequestId(), response.getMessageListCount());
+                return;
+            }
+            future.complete(response);
+        } catch (InvalidProtocolBufferException e) {
+            log.error("解析拉取响应失败", e);
+        }
+    }
+
+    // 处理事务请求响应：按事务ID唤醒等待方
+    private void handleTransactionResponse(ChannelHandlerContext ctx, ProtocolFrame frame) {
+        try {
+            MqMessage.TransactionResponse response = MqMessage.TransactionResponse.parseFrom(frame.getBody());
+            Map<String, CompletableFuture<MqMessage.TransactionResponse>> futures = ctx.channel().attr(TRANSACTION_FUTURES).get();
+            CompletableFuture<MqMessage.TransactionResponse> future =
+                    futures == null ? null : futures.remove(response.getTransactionId());
+            if (future == null) {
+                // 回查结果的响应无人等待
+                log.debug("收到事务响应：transactionId={}, success={}, message={}",
+                        response.getTransactionId(), response.getSuccess(), response.getMessage());
+                return;
+            }
+            future.complete(response);
+        } catch (InvalidProtocolBufferException e) {
+            log.error("解析事务响应失败", e);
+        }
+    }
+
+    // 处理name server路由响应：按请求ID唤醒等待方
+    private void handleRouteResponse(ChannelHandlerContext ctx, ProtocolFrame frame) {
+        try {
+            MqMessage.RouteQueryResponse response = MqMessage.RouteQueryResponse.parseFrom(frame.getBody());
+            Map<Long, CompletableFuture<MqMessage.RouteQueryResponse>> futures = ctx.channel().attr(ROUTE_FUTURES).get();
+            CompletableFuture<MqMessage.RouteQueryResponse> future = futures == null ? null : futures.remove(response.getRequestId());
+            if (future == null) {
+                log.warn("收到无人等待的路由响应：requestId={}", response.getRequestId());
+                return;
+            }
+            future.complete(response);
+        } catch (InvalidProtocolBufferException e) {
+            log.error("解析路由响应失败", e);
+        }
+    }
+
+    // 处理broker的事务回查
+    private void handleTransactionCheck(ChannelHandlerContext ctx, ProtocolFrame frame) {
+        try {
+            MqMessage.TransactionCheckRequest request = MqMessage.TransactionCheckRequest.parseFrom(frame.getBody());
+            BiConsumer<Channel, MqMessage.TransactionCheckRequest> checker = ctx.channel().attr(TRANSACTION_CHECKER).get();
+            if (checker == null) {
+                log.warn("收到事务回查但未设置事务监听器，忽略：transactionId={}", request.getTransactionId());
+                return;
+            }
+            checker.accept(ctx.channel(), request);
+        } catch (InvalidProtocolBufferException e) {
+            log.error("解析事务回查请求失败", e);
+        }
     }
 
     // 处理业务消息
@@ -5,8 +5,7 @@ import com.yzx.crazycodingbytemq.codec.ProtocolConstant;
 import com.yzx.crazycodingbytemq.enums.MessageTypeEnum;
 import com.yzx.crazycodingbytemq.model.MqMessage;
 import com.yzx.crazycodingbytemq.server.ConnectionManager;
-import io.micrometer.core.instrument.Counter;
-import io.netty.channel.ChannelFutureListener;
+import com.yzx.crazycodingbytemq.server.ReplicaManager;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import lombok.extern.slf4j.Slf4j;
@@ -50,6 +49,7 @@ public class ConnectHandler extends ChannelInboundHandlerAdapter {
                     .setSuccess(register)
                     .setMessage(message)
                     .setServerId(generateServerId()) // 修复：原代码用了clientId作为serverId，改为生成服务端ID
+                    .setLeaderAddress(ReplicaManager.getInstance().leaderAddress())
                     .build();
             sendResponseFrame(ctx, connectResponse, register);
         } catch (InvalidProtocolBufferException e) {
@@ -87,10 +87,9 @@ public class ConnectHandler extends ChannelInboundHandlerAdapter {
                 MessageTypeEnum.CONNECT_RESPONSE.getCode(),
                 responseBytes
         );
-        // 失败响应发送后关闭连接
+        // 失败响应不关闭连接：连接池复用的通道上还有其他客户端会话，由客户端决定是否断开
         if (!isSuccess) {
-            ctx.writeAndFlush(responseFrame).addListener(ChannelFutureListener.CLOSE);
-            return;
+            log.warn("连接请求被拒绝:{}", response.getMessage());
         }
         ctx.writeAndFlush(responseFrame);
     }
@@ -139,11 +138,8 @@ public class ConnectHandler extends ChannelInboundHandlerAdapter {
                 MessageTypeEnum.CONNECT_RESPONSE.getCode(),
                 response.toByteArray()
         );
-        // 发送后关闭连接+注销
-        ctx.writeAndFlush(protocolFrame).addListener(future -> {
-            connectionManager.unregister(ctx.channel());
-            ctx.close();
-        });
+        // 只拒绝本次连接请求，通道上已注册的其他会话不受影响
+        ctx.writeAndFlush(protocolFrame);
     }
     // ------------------------------ 辅助校验方法 ------------------------------
 
@@ -4,6 +4,7 @@ import com.yzx.crazycodingbytemq.codec.ProtocolConstant;
 import com.yzx.crazycodingbytemq.enums.MessageTypeEnum;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.timeout.IdleState;
 import io.netty.handler.timeout.IdleStateEvent;
 import lombok.extern.slf4j.Slf4j;
 import com.yzx.crazycodingbytemq.codec.ProtocolFrame;
@@ -13,7 +14,7 @@ import com.yzx.crazycodingbytemq.codec.ProtocolFrame;
  * @author: yzx
  * @date: 2025/11/14 15:48
  * @Version: 1.0
- * @description: 心跳机制入口
+ * @description: 心跳机制入口（写空闲时发心跳请求，收到心跳请求回心跳响应；读空闲超时说明对端已失效，关闭连接）
  */
 @Slf4j
 public class HeartbeatHandler extends ChannelInboundHandlerAdapter {
@@ -22,15 +23,13 @@ public class HeartbeatHandler extends ChannelInboundHandlerAdapter {
     @Override
     public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
         if (evt instanceof IdleStateEvent idleStateEvent) {
-            ProtocolFrame protocolFrame = new ProtocolFrame(
-                    ProtocolConstant.MAGIC,
-                    ProtocolConstant.Version,
-                    HEARTBEAT_BODY.length,
-                     MessageTypeEnum.HEARTERBEAT_RESPONSE.getCode(),
-                    HEARTBEAT_BODY
-            );
-            ctx.writeAndFlush(protocolFrame);
-            log.debug("send heartbeat request to server");
+            if (idleStateEvent.state() == IdleState.READER_IDLE) {
+                log.warn("心跳超时，关闭连接：channel={}", ctx.channel().remoteAddress());
+                ctx.close();
+                return;
+            }
+            ctx.writeAndFlush(heartbeatFrame(MessageTypeEnum.HEARTERBEAT_RQUEST));
+            log.debug("send heartbeat request");
         } else {
             super.userEventTriggered(ctx, evt);
         }
@@ -39,13 +38,26 @@ public class HeartbeatHandler extends ChannelInboundHandlerAdapter {
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) {
         if (msg instanceof ProtocolFrame frame) {
+            if (frame.getMessageType() == MessageTypeEnum.HEARTERBEAT_RQUEST.getCode()) {
+                ctx.writeAndFlush(heartbeatFrame(MessageTypeEnum.HEARTERBEAT_RESPONSE));
+                return;
+            }
             if (frame.getMessageType() == MessageTypeEnum.HEARTERBEAT_RESPONSE.getCode()) {
-                log.debug("receive heartbeat response from server");
-            } else {
-                ctx.fireChannelRead(msg);
+                log.debug("receive heartbeat response");
+                return;
             }
         }
         //非心跳消息,传给下一个处理器
         ctx.fireChannelRead(msg);
     }
+
+    private static ProtocolFrame heartbeatFrame(MessageTypeEnum type) {
+        return new ProtocolFrame(
+                ProtocolConstant.MAGIC,
+                ProtocolConstant.Version,
+                HEARTBEAT_BODY.length,
+                type.getCode(),
+                HEARTBEAT_BODY
+        );
+    }
 }
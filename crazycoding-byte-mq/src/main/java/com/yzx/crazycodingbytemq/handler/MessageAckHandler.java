@@ -27,6 +27,11 @@ public class MessageAckHandler extends ChannelInboundHandlerAdapter {
             ctx.fireChannelRead(msg);
             return;
         }
+        // 批量确认
+        if (frame.getMessageType() == MessageTypeEnum.MESSAGE_ACK_BATCH.getCode()) {
+            handleBatch(ctx, frame);
+            return;
+        }
         // 仅处理"消息确认请求"类型
         if (frame.getMessageType() != MessageTypeEnum.MESSAGE_ACK.getCode()) {
             ctx.fireChannelRead(msg);
@@ -41,7 +46,7 @@ public class MessageAckHandler extends ChannelInboundHandlerAdapter {
             if (!validateRequest(request)) {
                 MqMessage.MessageAckResponse response = MqMessage.MessageAckResponse.newBuilder()
                         .setSuccess(false)
-                        .setMessage("核心参数缺失（queueName/consumerClientId/messageId不能为空）")
+                        .setMessage("核心参数缺失（queueName/consumerClientId/messageId/deliveryTag不能为空）")
                         .setMessageId(request.getMessageId() == null ? "" : request.getMessageId())
                         .build();
                 sendResponse(ctx, response);
@@ -73,10 +78,42 @@ public class MessageAckHandler extends ChannelInboundHandlerAdapter {
         }
     }
 
+    // 逐条确认，一个响应帧返回全部结果
+    private void handleBatch(ChannelHandlerContext ctx, ProtocolFrame frame) {
+        MqMessage.MessageAckBatchRequest batch;
+        try {
+            batch = MqMessage.MessageAckBatchRequest.parseFrom(frame.getBody());
+        } catch (InvalidProtocolBufferException e) {
+            log.error("解析批量消息确认请求失败", e);
+            return;
+        }
+        MqMessage.MessageAckBatchResponse.Builder response = MqMessage.MessageAckBatchResponse.newBuilder();
+        for (MqMessage.MessageAckRequest request : batch.getAcksList()) {
+            if (!validateRequest(request)) {
+                response.addResults(MqMessage.MessageAckResponse.newBuilder()
+                        .setSuccess(false)
+                        .setMessage("核心参数缺失（queueName/consumerClientId/messageId/deliveryTag不能为空）")
+                        .setMessageId(request.getMessageId())
+                        .build());
+                continue;
+            }
+            response.addResults(queueManager.ackMessage(request));
+        }
+        byte[] body = response.build().toByteArray();
+        ctx.writeAndFlush(new ProtocolFrame(
+                ProtocolConstant.MAGIC,
+                ProtocolConstant.Version,
+                body.length,
+                MessageTypeEnum.MESSAGE_ACK_BATCH_RESPONSE.getCode(),
+                body
+        ));
+    }
+
     private boolean validateRequest(MqMessage.MessageAckRequest request) {
         return request.getQueueName() != null && !request.getQueueName().trim().isEmpty()
                 && request.getConsumerClientId() != null && !request.getConsumerClientId().trim().isEmpty()
-                && request.getMessageId() != null && !request.getMessageId().trim().isEmpty();
+                && request.getMessageId() != null && !request.getMessageId().trim().isEmpty()
+                && request.getDeliveryTag() > 0;
     }
 
     private void sendResponse(ChannelHandlerContext ctx, MqMessage.MessageAckResponse response) {
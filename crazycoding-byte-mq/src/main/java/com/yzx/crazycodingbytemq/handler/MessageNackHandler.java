@@ -0,0 +1,85 @@
+package com.yzx.crazycodingbytemq.handler;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.yzx.crazycodingbytemq.codec.ProtocolConstant;
+import com.yzx.crazycodingbytemq.enums.MessageTypeEnum;
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import com.yzx.crazycodingbytemq.server.DeadLetterService;
+import com.yzx.crazycodingbytemq.server.InflightTable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import lombok.extern.slf4j.Slf4j;
+import com.yzx.crazycodingbytemq.codec.ProtocolFrame;
+
+/**
+ * @className: MessageNackHandler
+ * @author: yzx
+ * @date: 2025/11/18 16:45
+ * @Version: 1.0
+ * @description: 处理消息消费失败请求（重试或进入死信队列）
+ */
+@Slf4j
+public class MessageNackHandler extends ChannelInboundHandlerAdapter {
+    private final DeadLetterService deadLetterService = DeadLetterService.getInstance();
+    private final InflightTable inflightTable = InflightTable.getInstance();
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (!(msg instanceof ProtocolFrame frame)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        // 仅处理"消息消费失败"类型
+        if (frame.getMessageType() != MessageTypeEnum.MESSAGE_NACK.getCode()) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+
+        try {
+            MqMessage.MessageNackRequest request = MqMessage.MessageNackRequest.parseFrom(frame.getBody());
+            String messageId = request.getMessage().getMessageId();
+            if (!validateRequest(request)) {
+                sendResponse(ctx, false, "核心参数缺失（queueName/consumerClientId/message不能为空）", messageId);
+                return;
+            }
+            // 先从已投递未确认表移除（取消超时重投），以broker持有的消息副本为准
+            InflightTable.InflightMessage inflight = inflightTable.remove(request.getMessage().getDeliveryTag());
+            if (inflight == null) {
+                sendResponse(ctx, false, "消息不存在或已超时重投", messageId);
+                return;
+            }
+            boolean dead = deadLetterService.onDeliveryFailed(inflight.getMessageItem(), request.getReason());
+            sendResponse(ctx, true, dead ? "已进入死信队列" : "已安排重试", messageId);
+        } catch (InvalidProtocolBufferException e) {
+            log.error("解析消息消费失败请求失败", e);
+            sendResponse(ctx, false, "请求格式非法", "");
+        } catch (Exception e) {
+            log.error("处理消息消费失败请求时发生未知错误", e);
+            sendResponse(ctx, false, "服务器内部错误", "");
+        }
+    }
+
+    private boolean validateRequest(MqMessage.MessageNackRequest request) {
+        return !request.getQueueName().trim().isEmpty()
+                && !request.getConsumerClientId().trim().isEmpty()
+                && request.hasMessage()
+                && !request.getMessage().getMessageId().trim().isEmpty()
+                && request.getQueueName().equals(request.getMessage().getQueueName());
+    }
+
+    private void sendResponse(ChannelHandlerContext ctx, boolean success, String message, String messageId) {
+        MqMessage.MessageAckResponse response = MqMessage.MessageAckResponse.newBuilder()
+                .setSuccess(success)
+                .setMessage(message)
+                .setMessageId(messageId)
+                .build();
+        ProtocolFrame responseFrame = new ProtocolFrame(
+                ProtocolConstant.MAGIC,
+                ProtocolConstant.Version,
+                response.toByteArray().length,
+                MessageTypeEnum.MESSAGE_NACK_RESPONSE.getCode(),
+                response.toByteArray()
+        );
+        ctx.writeAndFlush(responseFrame);
+    }
+}
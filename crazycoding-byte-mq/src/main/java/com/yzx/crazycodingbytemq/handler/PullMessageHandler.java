@@ -4,7 +4,10 @@ import com.google.protobuf.InvalidProtocolBufferException;
 import com.yzx.crazycodingbytemq.codec.ProtocolConstant;
 import com.yzx.crazycodingbytemq.enums.MessageTypeEnum;
 import com.yzx.crazycodingbytemq.model.MqMessage;
+import com.yzx.crazycodingbytemq.server.LongPollingService;
 import com.yzx.crazycodingbytemq.server.QueueManager;
+import com.yzx.crazycodingbytemq.server.QueueOwnerRegistry;
+import com.yzx.crazycodingbytemq.server.ReplicaManager;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import lombok.extern.slf4j.Slf4j;
@@ -20,6 +23,9 @@ import com.yzx.crazycodingbytemq.codec.ProtocolFrame;
 @Slf4j
 public class PullMessageHandler extends ChannelInboundHandlerAdapter {
     private final QueueManager queueManager = QueueManager.getInstance();
+    private final LongPollingService longPollingService = LongPollingService.getInstance();
+    private final QueueOwnerRegistry queueOwners = QueueOwnerRegistry.getInstance();
+    private final ReplicaManager replicaManager = ReplicaManager.getInstance();
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) {
@@ -41,21 +47,40 @@ public class PullMessageHandler extends ChannelInboundHandlerAdapter {
                         .setSuccess(false)
                         .setMessage("核心参数缺失（queueName/consumerClientId/batchSize不能为空）")
                         .build();
-                sendResponse(ctx, response);
+                sendResponse(ctx, pullMessageRequest, response);
+                return;
+            }
+            //副本节点只复制日志，不对消费者投递
+            if (replicaManager.isFollower()) {
+                sendResponse(ctx, pullMessageRequest, MqMessage.PullMessageResponse.newBuilder()
+                        .setSuccess(false)
+                        .setMessage("当前节点是只读副本，请连接leader")
+                        .build());
                 return;
             }
 
-            // 3. 从队列拉取消息
-            MqMessage.PullMessageResponse response = queueManager.pullMessage(pullMessageRequest);
-
-            // 4. 发送响应
-            sendResponse(ctx, response);
+            // 3. 在队列归属线程上拉取
+            queueOwners.execute(pullMessageRequest.getQueueName(), () -> pull(ctx, pullMessageRequest));
 
         } catch (InvalidProtocolBufferException e) {
             throw new RuntimeException(e);
         }
     }
 
+    private void pull(ChannelHandlerContext ctx, MqMessage.PullMessageRequest pullMessageRequest) {
+        // 从队列拉取消息
+        MqMessage.PullMessageResponse response = queueManager.pullMessage(pullMessageRequest);
+
+        // 队列为空且请求允许等待：挂起请求，有消息入队或超时后再响应
+        if (response.getSuccess() && response.getMessageListCount() == 0 && pullMessageRequest.getMaxWaitMs() > 0) {
+            longPollingService.park(ctx, pullMessageRequest, (c, r) -> sendResponse(c, pullMessageRequest, r));
+            return;
+        }
+
+        // 发送响应
+        sendResponse(ctx, pullMessageRequest, response);
+    }
+
     // 校验核心参数
     private boolean validateRequest(MqMessage.PullMessageRequest request) {
         return request.getQueueName() != null && !request.getQueueName().trim().isEmpty()
@@ -63,8 +88,12 @@ public class PullMessageHandler extends ChannelInboundHandlerAdapter {
                 && request.getBatchSize() > 0;
     }
 
-    // 发送响应
-    private void sendResponse(ChannelHandlerContext ctx, MqMessage.PullMessageResponse response) {
+    // 发送响应（带回请求ID）
+    private void sendResponse(ChannelHandlerContext ctx, MqMessage.PullMessageRequest request,
+                              MqMessage.PullMessageResponse response) {
+        if (request.getRequestId() != 0) {
+            response = response.toBuilder().setRequestId(request.getRequestId()).build();
+        }
         ProtocolFrame responseFrame = new ProtocolFrame(
                 ProtocolConstant.MAGIC,
                 ProtocolConstant.Version,
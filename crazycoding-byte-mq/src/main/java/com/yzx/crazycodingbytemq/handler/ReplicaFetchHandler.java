@@ -0,0 +1,40 @@
+package com.yzx.crazycodingbytemq.handler;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.yzx.crazycodingbytemq.codec.ProtocolFrame;
+import com.yzx.crazycodingbytemq.enums.MessageTypeEnum;
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import com.yzx.crazycodingbytemq.server.ReplicaManager;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @className: ReplicaFetchHandler
+ * @author: yzx
+ * @date: 2025/11/24 16:30
+ * @Version: 1.0
+ * @description: 处理副本拉取日志请求（响应由ReplicaManager直接写出原始日志区间）
+ */
+@Slf4j
+public class ReplicaFetchHandler extends ChannelInboundHandlerAdapter {
+    private final ReplicaManager replicaManager = ReplicaManager.getInstance();
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (!(msg instanceof ProtocolFrame frame)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        if (frame.getMessageType() != MessageTypeEnum.REPLICA_FETCH.getCode()) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        try {
+            replicaManager.fetch(ctx, MqMessage.ReplicaFetchRequest.parseFrom(frame.getBody()));
+        } catch (InvalidProtocolBufferException e) {
+            log.error("解析副本拉取请求失败", e);
+            ctx.close();
+        }
+    }
+}
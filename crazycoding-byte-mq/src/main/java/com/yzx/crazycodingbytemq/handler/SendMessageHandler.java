@@ -2,14 +2,23 @@ package com.yzx.crazycodingbytemq.handler;
 
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.yzx.crazycodingbytemq.codec.ProtocolConstant;
+import com.yzx.crazycodingbytemq.config.ConfigLoader;
+import com.yzx.crazycodingbytemq.config.ServerConfig;
 import com.yzx.crazycodingbytemq.enums.MessageTypeEnum;
 import com.yzx.crazycodingbytemq.model.MqMessage;
 import com.yzx.crazycodingbytemq.server.QueueManager;
+import com.yzx.crazycodingbytemq.server.QueueOwnerRegistry;
+import com.yzx.crazycodingbytemq.server.QuotaManager;
+import com.yzx.crazycodingbytemq.server.ReplicaManager;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import com.yzx.crazycodingbytemq.codec.ProtocolFrame;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * @className: SendMessageHandler
  * @author: yzx
@@ -20,6 +29,11 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class SendMessageHandler extends ChannelInboundHandlerAdapter {
     private final QueueManager queueManager = QueueManager.getInstance();
+    private final QueueOwnerRegistry queueOwners = QueueOwnerRegistry.getInstance();
+    private final QuotaManager quotaManager = QuotaManager.getInstance();
+    private final ReplicaManager replicaManager = ReplicaManager.getInstance();
+    //队列满时建议生产者的重试等待时间
+    private final long retryAfterMs = ConfigLoader.bindConfig(ServerConfig.class, "mq.server").getQueueFullRetryAfter().toMillis();
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) {
@@ -27,6 +41,11 @@ public class SendMessageHandler extends ChannelInboundHandlerAdapter {
             ctx.fireChannelRead(msg);
             return;
         }
+        //批量发送
+        if (frame.getMessageType() == MessageTypeEnum.SEND_BATCH.getCode()) {
+            handleBatch(ctx, frame);
+            return;
+        }
         //仅仅处理发送消息请求类型
         if (frame.getMessageType() != MessageTypeEnum.SEND_MESSAGE.getCode()) {
             ctx.fireChannelRead(msg);
@@ -37,48 +56,148 @@ public class SendMessageHandler extends ChannelInboundHandlerAdapter {
             MqMessage.SendMessageRequest request = MqMessage.SendMessageRequest.parseFrom(frame.getBody());
             //校验参数
             if (!validMessage(request)) {
-                sendResponse(ctx, request.getMessageId(), false, "核心参数缺失（queueName/messageId/messageBody不能为空）");
+                sendResponse(ctx, request.getMessageId(), MqMessage.SendStatus.SEND_FAILED, "核心参数缺失（queueName/messageId/messageBody不能为空）");
                 return;
             }
-            //消息入队
-            boolean b = queueManager.sendMessage(request);
-            //发送响应
-            String responseMessage = b ? "发送成功" : "发送失败";
-            sendResponse(ctx, request.getMessageId(), b, responseMessage);
+            //超出配额时暂停读取该连接(消息照常入队)
+            quotaManager.record(ctx, request.getProducerClientId(), request.getQueueName(), 1, frame.getBodyLength());
+            //在队列归属线程上入队
+            queueOwners.execute(request.getQueueName(), () -> enqueue(ctx, request));
         } catch (InvalidProtocolBufferException e) {
             log.error("解析发送消息请求失败", e);
             throw new RuntimeException(e);
         } catch (Exception e) {
             log.error("发送消息失败", e);
-            sendResponse(ctx, null, false, "发送消息失败");
+            sendResponse(ctx, null, MqMessage.SendStatus.SEND_FAILED, "发送消息失败");
         }
 
     }
 
 
+    private void enqueue(ChannelHandlerContext ctx, MqMessage.SendMessageRequest request) {
+        enqueueOne(request).thenAccept(response -> queueOwners.execute(request.getQueueName(), () ->
+                awaitReplicas(request.getQueueName(), request.getAckMode(), List.of(response)).thenAccept(results ->
+                        ctx.writeAndFlush(toFrame(MessageTypeEnum.SEND_MESSAGE_RESPONSE, results.get(0).toByteArray())))));
+    }
+
+    //处理批量发送:同一批次的消息属于同一队列,整批在队列归属线程上逐条入队,一个响应帧返回全部结果
+    private void handleBatch(ChannelHandlerContext ctx, ProtocolFrame frame) {
+        MqMessage.SendBatchRequest batch;
+        try {
+            batch = MqMessage.SendBatchRequest.parseFrom(frame.getBody());
+        } catch (InvalidProtocolBufferException e) {
+            log.error("解析批量发送请求失败", e);
+            return;
+        }
+        if (batch.getMessagesCount() == 0) {
+            sendBatchResponse(ctx, batch.getBatchId(), List.of());
+            return;
+        }
+        quotaManager.record(ctx, batch.getMessages(0).getProducerClientId(), batch.getQueueName(),
+                batch.getMessagesCount(), frame.getBodyLength());
+        queueOwners.execute(batch.getQueueName(), () -> {
+            List<CompletableFuture<MqMessage.SendMessageResponse>> pending = new ArrayList<>(batch.getMessagesCount());
+            for (MqMessage.SendMessageRequest request : batch.getMessagesList()) {
+                if (!validMessage(request) || !request.getQueueName().equals(batch.getQueueName())) {
+                    pending.add(CompletableFuture.completedFuture(buildResponse(request.getMessageId(),
+                            MqMessage.SendStatus.SEND_FAILED, "核心参数缺失或与批次队列不一致")));
+                    continue;
+                }
+                pending.add(enqueueOne(request));
+            }
+            //定时消息落盘后回到归属线程,整批只等待一次副本复制,确认模式以批内第一条为准
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).thenRun(() ->
+                    queueOwners.execute(batch.getQueueName(), () -> {
+                        List<MqMessage.SendMessageResponse> results = pending.stream().map(CompletableFuture::join).toList();
+                        awaitReplicas(batch.getQueueName(), batch.getMessages(0).getAckMode(), results)
+                                .thenAccept(replicated -> sendBatchResponse(ctx, batch.getBatchId(), replicated));
+                    }));
+        });
+    }
+
+    //入队结果(立即投递的消息直接完成,定时消息在定时存储落盘后完成),不会异常完成
+    private CompletableFuture<MqMessage.SendMessageResponse> enqueueOne(MqMessage.SendMessageRequest request) {
+        //副本节点的队列日志只由复制写入
+        if (replicaManager.isFollower()) {
+            return CompletableFuture.completedFuture(buildResponse(request.getMessageId(),
+                    MqMessage.SendStatus.NOT_LEADER, "当前节点是只读副本，请发送到leader"));
+        }
+        try {
+            //消息入队
+            return queueManager.sendMessage(request).handle((status, e) -> {
+                if (e != null) {
+                    log.error("发送消息失败", e);
+                    return buildResponse(request.getMessageId(), MqMessage.SendStatus.SEND_FAILED, "发送消息失败");
+                }
+                String responseMessage = switch (status) {
+                    case SEND_OK -> "发送成功";
+                    case DUPLICATE -> "重复消息，已忽略";
+                    case QUEUE_FULL -> "队列已满，请稍后重试";
+                    default -> "发送失败";
+                };
+                return buildResponse(request.getMessageId(), status, responseMessage);
+            });
+        } catch (Exception e) {
+            log.error("发送消息失败", e);
+            return CompletableFuture.completedFuture(
+                    buildResponse(request.getMessageId(), MqMessage.SendStatus.SEND_FAILED, "发送消息失败"));
+        }
+    }
+
+    //按确认模式等待副本复制(在队列归属线程、入队之后调用):副本数不足时已入队(含重复)的结果改为NOT_ENOUGH_REPLICAS
+    private CompletableFuture<List<MqMessage.SendMessageResponse>> awaitReplicas(
+            String queueName, MqMessage.AckMode ackMode, List<MqMessage.SendMessageResponse> results) {
+        if (ackMode == MqMessage.AckMode.LEADER || results.stream().noneMatch(MqMessage.SendMessageResponse::getSuccess)) {
+            return CompletableFuture.completedFuture(results);
+        }
+        return replicaManager.awaitReplicas(queueName, ackMode).thenApply(status -> {
+            if (status == MqMessage.SendStatus.SEND_OK) return results;
+            return results.stream()
+                    .map(result -> result.getSuccess()
+                            ? buildResponse(result.getMessageId(), status, "副本数不足，消息已写入leader，可携带幂等ID重试")
+                            : result)
+                    .toList();
+        });
+    }
+
+    private void sendBatchResponse(ChannelHandlerContext ctx, long batchId, List<MqMessage.SendMessageResponse> results) {
+        MqMessage.SendBatchResponse response = MqMessage.SendBatchResponse.newBuilder()
+                .setBatchId(batchId)
+                .addAllResults(results)
+                .build();
+        ctx.writeAndFlush(toFrame(MessageTypeEnum.SEND_BATCH_RESPONSE, response.toByteArray()));
+    }
+
     //校验核心参数
     private boolean validMessage(MqMessage.SendMessageRequest request) {
-        return request.getQueueName() != null && request.getQueueName().trim().isEmpty()
-                && request.getMessageId() != null && request.getMessageId().trim().isEmpty()
-                && request.getMessageBody() != null && request.getMessageBody().trim().isEmpty();
+        return request.getQueueName() != null && !request.getQueueName().trim().isEmpty()
+                && request.getMessageId() != null && !request.getMessageId().trim().isEmpty()
+                && request.getMessageBody() != null && !request.getMessageBody().trim().isEmpty();
     }
 
     //发送响应
-    private void sendResponse(ChannelHandlerContext ctx, String messageId, boolean success, String msg) {
-        MqMessage.SendMessageResponse response = MqMessage.SendMessageResponse.newBuilder()
-                .setSuccess(success)
+    private void sendResponse(ChannelHandlerContext ctx, String messageId, MqMessage.SendStatus status, String msg) {
+        ctx.writeAndFlush(toFrame(MessageTypeEnum.SEND_MESSAGE_RESPONSE, buildResponse(messageId, status, msg).toByteArray()));
+    }
+
+    private MqMessage.SendMessageResponse buildResponse(String messageId, MqMessage.SendStatus status, String msg) {
+        return MqMessage.SendMessageResponse.newBuilder()
+                //重复消息此前已成功接收,对生产者而言等同成功
+                .setSuccess(status == MqMessage.SendStatus.SEND_OK || status == MqMessage.SendStatus.DUPLICATE)
                 .setMessage(msg)
                 .setMessageId(messageId == null ? "" : messageId)
+                .setStatus(status)
+                .setRetryAfterMs(status == MqMessage.SendStatus.QUEUE_FULL ? retryAfterMs : 0)
                 .build();
+    }
 
-        ProtocolFrame responseFrame = new ProtocolFrame(
+    private ProtocolFrame toFrame(MessageTypeEnum type, byte[] body) {
+        return new ProtocolFrame(
                 ProtocolConstant.MAGIC,
                 ProtocolConstant.Version,
-                response.toByteArray().length,
-                MessageTypeEnum.SEND_MESSAGE_RESPONSE.getCode(),
-                response.toByteArray()
+                body.length,
+                type.getCode(),
+                body
         );
-
-        ctx.writeAndFlush(responseFrame);
     }
 }
@@ -0,0 +1,97 @@
+package com.yzx.crazycodingbytemq.handler;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.yzx.crazycodingbytemq.codec.ProtocolConstant;
+import com.yzx.crazycodingbytemq.enums.MessageTypeEnum;
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import com.yzx.crazycodingbytemq.server.PushSubscriptionService;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import lombok.extern.slf4j.Slf4j;
+import com.yzx.crazycodingbytemq.codec.ProtocolFrame;
+
+/**
+ * @className: SubscribeHandler
+ * @author: yzx
+ * @date: 2025/11/20 15:50
+ * @Version: 1.0
+ * @description: 处理推模式订阅/补充额度请求，并按通道可写性暂停/恢复推送
+ */
+@Slf4j
+public class SubscribeHandler extends ChannelInboundHandlerAdapter {
+    private final PushSubscriptionService pushSubscriptionService = PushSubscriptionService.getInstance();
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (!(msg instanceof ProtocolFrame frame)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        // 仅处理"订阅"类型
+        if (frame.getMessageType() != MessageTypeEnum.SUBSCRIBE.getCode()) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+
+        try {
+            MqMessage.SubscribeRequest request = MqMessage.SubscribeRequest.parseFrom(frame.getBody());
+            if (!validateRequest(request)) {
+                sendResponse(ctx, false, "核心参数缺失（queueName/consumerClientId不能为空，额度不能为负）", request.getQueueName());
+                return;
+            }
+            if (request.getUnsubscribe()) {
+                pushSubscriptionService.unsubscribe(ctx.channel(), request.getQueueName());
+                sendResponse(ctx, true, "取消订阅成功", request.getQueueName());
+                return;
+            }
+            // 仅新建订阅时响应，补充额度不回响应，避免每批消息多一次往返
+            if (pushSubscriptionService.subscribe(ctx, request)) {
+                sendResponse(ctx, true, "订阅成功", request.getQueueName());
+            }
+        } catch (InvalidProtocolBufferException e) {
+            log.error("解析订阅请求失败", e);
+            sendResponse(ctx, false, "请求格式非法", "");
+        } catch (Exception e) {
+            log.error("处理订阅请求时发生未知错误", e);
+            sendResponse(ctx, false, "服务器内部错误", "");
+        }
+    }
+
+    // 写缓冲回落到低水位以下，恢复推送
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isWritable()) {
+            pushSubscriptionService.onWritable(ctx.channel());
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        pushSubscriptionService.onChannelInactive(ctx.channel());
+        super.channelInactive(ctx);
+    }
+
+    private boolean validateRequest(MqMessage.SubscribeRequest request) {
+        return !request.getQueueName().trim().isEmpty()
+                && !request.getConsumerClientId().trim().isEmpty()
+                && request.getMessageCredits() >= 0
+                && request.getByteCredits() >= 0;
+    }
+
+    private void sendResponse(ChannelHandlerContext ctx, boolean success, String message, String queueName) {
+        MqMessage.SubscribeResponse response = MqMessage.SubscribeResponse.newBuilder()
+                .setSuccess(success)
+                .setMessage(message)
+                .setQueueName(queueName)
+                .build();
+        ProtocolFrame responseFrame = new ProtocolFrame(
+                ProtocolConstant.MAGIC,
+                ProtocolConstant.Version,
+                response.toByteArray().length,
+                MessageTypeEnum.SUBSCRIBE_RESPONSE.getCode(),
+                response.toByteArray()
+        );
+        ctx.writeAndFlush(responseFrame);
+    }
+}
@@ -0,0 +1,145 @@
+package com.yzx.crazycodingbytemq.handler;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.yzx.crazycodingbytemq.codec.ProtocolConstant;
+import com.yzx.crazycodingbytemq.codec.ProtocolFrame;
+import com.yzx.crazycodingbytemq.enums.MessageTypeEnum;
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import com.yzx.crazycodingbytemq.server.ReplicaManager;
+import com.yzx.crazycodingbytemq.server.TransactionService;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @className: TransactionHandler
+ * @author: yzx
+ * @date: 2025/11/22 16:40
+ * @Version: 1.0
+ * @description: 处理事务消息请求（半消息、提交、回滚；日志落盘后异步响应，不阻塞IO线程）
+ */
+@Slf4j
+public class TransactionHandler extends ChannelInboundHandlerAdapter {
+    private final TransactionService transactionService = TransactionService.getInstance();
+    private final ReplicaManager replicaManager = ReplicaManager.getInstance();
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (!(msg instanceof ProtocolFrame frame)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        byte type = frame.getMessageType();
+        if (type == MessageTypeEnum.TRANSACTION_PREPARE.getCode()) {
+            handlePrepare(ctx, frame);
+        } else if (type == MessageTypeEnum.TRANSACTION_COMMIT.getCode()) {
+            handleEnd(ctx, frame, true);
+        } else if (type == MessageTypeEnum.TRANSACTION_ROLLBACK.getCode()) {
+            handleEnd(ctx, frame, false);
+        } else {
+            ctx.fireChannelRead(msg);
+        }
+    }
+
+    private void handlePrepare(ChannelHandlerContext ctx, ProtocolFrame frame) {
+        try {
+            MqMessage.TransactionPrepareRequest request = MqMessage.TransactionPrepareRequest.parseFrom(frame.getBody());
+            String transactionId = request.getTransactionId();
+            if (!validatePrepare(request)) {
+                sendResponse(ctx, false, "核心参数缺失（transactionId/queueName/messageId/messageBody不能为空）",
+                        transactionId, MqMessage.SendStatus.SEND_FAILED);
+                return;
+            }
+            //副本节点的队列日志只由复制写入
+            if (replicaManager.isFollower()) {
+                sendResponse(ctx, false, "当前节点是只读副本，请发送到leader", transactionId, MqMessage.SendStatus.NOT_LEADER);
+                return;
+            }
+            transactionService.prepare(request).whenComplete((v, e) -> {
+                if (e != null) {
+                    log.warn("半消息写入失败：transactionId={}", transactionId, e);
+                    sendResponse(ctx, false, "半消息写入失败：" + rootMessage(e), transactionId, MqMessage.SendStatus.SEND_FAILED);
+                } else {
+                    sendResponse(ctx, true, "半消息已写入", transactionId, MqMessage.SendStatus.SEND_OK);
+                }
+            });
+        } catch (InvalidProtocolBufferException e) {
+            log.error("解析半消息请求失败", e);
+            sendResponse(ctx, false, "请求格式非法", "", MqMessage.SendStatus.SEND_FAILED);
+        } catch (Exception e) {
+            log.error("处理半消息请求时发生未知错误", e);
+            sendResponse(ctx, false, "服务器内部错误", "", MqMessage.SendStatus.SEND_FAILED);
+        }
+    }
+
+    private void handleEnd(ChannelHandlerContext ctx, ProtocolFrame frame, boolean commit) {
+        try {
+            MqMessage.TransactionEndRequest request = MqMessage.TransactionEndRequest.parseFrom(frame.getBody());
+            String transactionId = request.getTransactionId();
+            if (transactionId.trim().isEmpty()) {
+                sendResponse(ctx, false, "事务ID不能为空", transactionId, MqMessage.SendStatus.SEND_FAILED);
+                return;
+            }
+            if (commit) {
+                transactionService.commit(transactionId).whenComplete((status, e) -> {
+                    if (e != null) {
+                        sendResponse(ctx, false, "提交失败：" + rootMessage(e), transactionId, MqMessage.SendStatus.SEND_FAILED);
+                    } else if (status == MqMessage.SendStatus.SEND_OK) {
+                        sendResponse(ctx, true, "事务已提交", transactionId, status);
+                    } else {
+                        // 队列满等：半消息保留，生产者可重试提交
+                        sendResponse(ctx, false, "提交未完成，请稍后重试", transactionId, status);
+                    }
+                });
+            } else {
+                transactionService.rollback(transactionId).whenComplete((v, e) -> {
+                    if (e != null) {
+                        sendResponse(ctx, false, "回滚失败：" + rootMessage(e), transactionId, MqMessage.SendStatus.SEND_FAILED);
+                    } else {
+                        sendResponse(ctx, true, "事务已回滚", transactionId, MqMessage.SendStatus.SEND_OK);
+                    }
+                });
+            }
+        } catch (InvalidProtocolBufferException e) {
+            log.error("解析事务结束请求失败", e);
+            sendResponse(ctx, false, "请求格式非法", "", MqMessage.SendStatus.SEND_FAILED);
+        } catch (Exception e) {
+            log.error("处理事务结束请求时发生未知错误", e);
+            sendResponse(ctx, false, "服务器内部错误", "", MqMessage.SendStatus.SEND_FAILED);
+        }
+    }
+
+    private boolean validatePrepare(MqMessage.TransactionPrepareRequest request) {
+        return !request.getTransactionId().trim().isEmpty()
+                && request.hasMessage()
+                && !request.getMessage().getQueueName().trim().isEmpty()
+                && !request.getMessage().getMessageId().trim().isEmpty()
+                && !request.getMessage().getMessageBody().trim().isEmpty();
+    }
+
+    private static String rootMessage(Throwable e) {
+        Throwable cause = e;
+        while (cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage();
+    }
+
+    private void sendResponse(ChannelHandlerContext ctx, boolean success, String message, String transactionId,
+                              MqMessage.SendStatus status) {
+        MqMessage.TransactionResponse response = MqMessage.TransactionResponse.newBuilder()
+                .setSuccess(success)
+                .setMessage(message == null ? "" : message)
+                .setTransactionId(transactionId)
+                .setStatus(status)
+                .build();
+        byte[] body = response.toByteArray();
+        ctx.writeAndFlush(new ProtocolFrame(
+                ProtocolConstant.MAGIC,
+                ProtocolConstant.Version,
+                body.length,
+                MessageTypeEnum.TRANSACTION_RESPONSE.getCode(),
+                body
+        ));
+    }
+}
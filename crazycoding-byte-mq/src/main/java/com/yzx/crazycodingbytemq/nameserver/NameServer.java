@@ -0,0 +1,91 @@
+package com.yzx.crazycodingbytemq.nameserver;
+
+import com.yzx.crazycodingbytemq.codec.ProtocolDecoder;
+import com.yzx.crazycodingbytemq.codec.ProtocolEncoder;
+import com.yzx.crazycodingbytemq.config.ConfigLoader;
+import com.yzx.crazycodingbytemq.config.NameServerConfig;
+import com.yzx.crazycodingbytemq.handler.HeartbeatHandler;
+import com.yzx.crazycodingbytemq.ssl.SslContextFactory;
+import com.yzx.crazycodingbytemq.transport.NettyTransport;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.timeout.IdleStateHandler;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @className: NameServer
+ * @author: yzx
+ * @date: 2025/11/25 15:00
+ * @Version: 1.0
+ * @description: name server（与broker相同的Netty协议栈；broker定时注册队列和负载，客户端按队列查询路由表，
+ * 新增broker注册后即参与新队列分配，客户端无需修改配置）
+ */
+@Slf4j
+public class NameServer {
+    private final NameServerConfig config;
+    private final NettyTransport transport;
+    private final EventLoopGroup bossGroup;
+    private final EventLoopGroup workerGroup;
+    private final RouteRegistry registry;
+    private Channel serverChannel;
+
+    public NameServer() {
+        this.config = ConfigLoader.bindConfig(NameServerConfig.class, "mq.nameserver");
+        this.transport = NettyTransport.select(config.getTransport());
+        this.bossGroup = transport.newEventLoopGroup(1, "mq-nameserver-boss");
+        this.workerGroup = transport.newEventLoopGroup(config.getWorkerThreadCount(), "mq-nameserver-worker");
+        this.registry = new RouteRegistry(config);
+    }
+
+    public void start() throws Exception {
+        SslContext sslContext = config.isSslEnable() ? SslContextFactory.createServerSslContext() : null;
+        NameServerHandler nameServerHandler = new NameServerHandler(registry);
+        ServerBootstrap bootstrap = new ServerBootstrap()
+                .group(bossGroup, workerGroup)
+                .channel(transport.serverChannelClass())
+                .option(ChannelOption.SO_REUSEADDR, true)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        var pipeline = ch.pipeline();
+                        if (sslContext != null) {
+                            pipeline.addLast("ssl", sslContext.newHandler(ch.alloc()));
+                        }
+                        pipeline.addLast("idleStateHandler", new IdleStateHandler(
+                                config.getHeartbeatTimeout().toMillis(), 0, 0, TimeUnit.MILLISECONDS));
+                        pipeline.addLast("decoder", new ProtocolDecoder(config.getMaxFrameLength()));
+                        pipeline.addLast("encoder", new ProtocolEncoder());
+                        pipeline.addLast("heartbeatHandler", new HeartbeatHandler());
+                        pipeline.addLast("nameServerHandler", nameServerHandler);
+                    }
+                });
+        serverChannel = bootstrap.bind(config.getPort()).sync().channel();
+        // 按过期时间的一半检查broker存活
+        long expireCheckMs = Math.max(1, config.getBrokerExpireTimeout().toMillis() / 2);
+        workerGroup.scheduleAtFixedRate(registry::expire, expireCheckMs, expireCheckMs, TimeUnit.MILLISECONDS);
+        log.info("name server启动成功，端口：{}，SSL启用：{}，传输：{}", config.getPort(), sslContext != null, transport);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
+    }
+
+    public void shutdown() {
+        log.info("开始关闭name server...");
+        if (serverChannel != null && serverChannel.isOpen()) {
+            serverChannel.close().awaitUninterruptibly(5, TimeUnit.SECONDS);
+        }
+        workerGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS).syncUninterruptibly();
+        bossGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS).syncUninterruptibly();
+        log.info("name server已关闭");
+    }
+
+    public static void main(String[] args) throws Exception {
+        new NameServer().start();
+    }
+}
@@ -0,0 +1,73 @@
+package com.yzx.crazycodingbytemq.nameserver;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.yzx.crazycodingbytemq.codec.ProtocolConstant;
+import com.yzx.crazycodingbytemq.codec.ProtocolFrame;
+import com.yzx.crazycodingbytemq.enums.MessageTypeEnum;
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @className: NameServerHandler
+ * @author: yzx
+ * @date: 2025/11/25 14:40
+ * @Version: 1.0
+ * @description: 处理broker注册和客户端路由查询（无连接状态，所有连接共享一个实例）
+ */
+@Slf4j
+@ChannelHandler.Sharable
+public class NameServerHandler extends ChannelInboundHandlerAdapter {
+    private final RouteRegistry registry;
+
+    public NameServerHandler(RouteRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (!(msg instanceof ProtocolFrame frame)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        try {
+            if (frame.getMessageType() == MessageTypeEnum.BROKER_REGISTER.getCode()) {
+                MqMessage.BrokerRegisterRequest request = MqMessage.BrokerRegisterRequest.parseFrom(frame.getBody());
+                if (request.getAddress().isBlank()) {
+                    sendRegisterResponse(ctx, false, "broker地址不能为空");
+                    return;
+                }
+                registry.register(request);
+                sendRegisterResponse(ctx, true, "注册成功");
+            } else if (frame.getMessageType() == MessageTypeEnum.ROUTE_QUERY.getCode()) {
+                MqMessage.RouteQueryRequest request = MqMessage.RouteQueryRequest.parseFrom(frame.getBody());
+                write(ctx, MessageTypeEnum.ROUTE_RESPONSE, registry.query(request).toByteArray());
+            } else {
+                ctx.fireChannelRead(msg);
+            }
+        } catch (InvalidProtocolBufferException e) {
+            log.error("解析name server请求失败：type={}", frame.getMessageType(), e);
+            ctx.close();
+        }
+    }
+
+    private void sendRegisterResponse(ChannelHandlerContext ctx, boolean success, String message) {
+        MqMessage.BrokerRegisterResponse response = MqMessage.BrokerRegisterResponse.newBuilder()
+                .setSuccess(success)
+                .setMessage(message)
+                .build();
+        write(ctx, MessageTypeEnum.BROKER_REGISTER_RESPONSE, response.toByteArray());
+    }
+
+    private void write(ChannelHandlerContext ctx, MessageTypeEnum type, byte[] body) {
+        ctx.writeAndFlush(new ProtocolFrame(
+                ProtocolConstant.MAGIC,
+                ProtocolConstant.Version,
+                body.length,
+                type.getCode(),
+                body
+        ));
+    }
+}
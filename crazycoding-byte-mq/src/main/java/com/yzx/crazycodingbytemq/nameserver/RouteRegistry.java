@@ -0,0 +1,230 @@
+package com.yzx.crazycodingbytemq.nameserver;
+
+import com.yzx.crazycodingbytemq.config.NameServerConfig;
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import com.yzx.crazycodingbytemq.util.HashUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * @className: RouteRegistry
+ * @author: yzx
+ * @date: 2025/11/25 14:10
+ * @Version: 1.0
+ * @description: broker注册表与队列分配（broker定时上报已有队列和负载；新队列在哈希环上从队列哈希位置顺时针查找，
+ * 跳过队列数、流量或积压超过平均值loadFactor倍的broker，分配给第一个未超载的broker；
+ * broker增减只影响哈希环上相邻的少量新队列，已分配的队列保持不动）
+ */
+@Slf4j
+public class RouteRegistry {
+    private final long expireNanos;
+    private final int virtualNodes;
+    private final double loadFactor;
+    // broker地址->注册信息
+    private final Map<String, BrokerState> brokers = new HashMap<>();
+    // 哈希环：虚拟节点哈希->broker地址（broker增减时重建）
+    private NavigableMap<Long, String> ring = new TreeMap<>();
+    // 队列->归属broker地址（broker下线后保留，重新注册后仍归属原broker）
+    private final Map<String, String> assignments = new HashMap<>();
+    // 路由表版本（客户端据此判断是否需要重建路由）
+    private long version;
+
+    public RouteRegistry(NameServerConfig config) {
+        this.expireNanos = config.getBrokerExpireTimeout().toNanos();
+        this.virtualNodes = Math.max(1, config.getVirtualNodes());
+        this.loadFactor = Math.max(1.0, config.getLoadFactor());
+    }
+
+    /**
+     * broker注册/上报负载：首次注册加入哈希环；broker上已有但未分配的队列归属该broker
+     */
+    public synchronized void register(MqMessage.BrokerRegisterRequest request) {
+        String address = request.getAddress();
+        BrokerState broker = brokers.get(address);
+        if (broker == null) {
+            broker = new BrokerState(request.getBrokerId(), address);
+            brokers.put(address, broker);
+            rebuildRing();
+            log.info("broker上线：brokerId={}, address={}, broker数={}", request.getBrokerId(), address, brokers.size());
+        }
+        broker.update(request);
+        for (MqMessage.QueueLoad queue : request.getQueuesList()) {
+            String owner = assignments.get(queue.getQueueName());
+            if (owner == null || (!owner.equals(address) && !brokers.containsKey(owner))) {
+                assignments.put(queue.getQueueName(), address);
+                version++;
+            }
+        }
+    }
+
+    /**
+     * 移除超时未注册的broker（定时调用）
+     */
+    public synchronized void expire() {
+        long now = System.nanoTime();
+        Iterator<BrokerState> iterator = brokers.values().iterator();
+        boolean removed = false;
+        while (iterator.hasNext()) {
+            BrokerState broker = iterator.next();
+            if (now - broker.lastRegisterNanos > expireNanos) {
+                iterator.remove();
+                removed = true;
+                log.warn("broker超时未注册，下线：brokerId={}, address={}", broker.brokerId, broker.address);
+            }
+        }
+        if (removed) {
+            rebuildRing();
+        }
+    }
+
+    /**
+     * 查询路由：指定队列中尚未分配的先按负载分配；未指定队列时返回全部已分配队列的路由
+     */
+    public synchronized MqMessage.RouteQueryResponse query(MqMessage.RouteQueryRequest request) {
+        Collection<String> queueNames = request.getQueueNamesCount() == 0
+                ? List.copyOf(assignments.keySet()) : request.getQueueNamesList();
+        MqMessage.RouteQueryResponse.Builder response = MqMessage.RouteQueryResponse.newBuilder()
+                .setRequestId(request.getRequestId());
+        for (String queueName : queueNames) {
+            String owner = assignments.get(queueName);
+            if (owner == null) {
+                owner = place(queueName);
+                if (owner == null) continue;
+                assignments.put(queueName, owner);
+                version++;
+                log.info("分配新队列：queue={}, broker={}", queueName, owner);
+            }
+            response.addRoutes(MqMessage.QueueRoute.newBuilder()
+                    .setQueueName(queueName)
+                    .addAllBrokers(routeOf(queueName, owner)));
+        }
+        Map<String, Integer> queueCounts = queueCounts();
+        for (BrokerState broker : brokers.values()) {
+            response.addBrokers(MqMessage.BrokerInfo.newBuilder()
+                    .setBrokerId(broker.brokerId)
+                    .setAddress(broker.address)
+                    .setBytesInRate(broker.bytesInRate)
+                    .setBytesOutRate(broker.bytesOutRate)
+                    .setQueueDepth(broker.queueDepth)
+                    .setQueueCount(queueCounts.getOrDefault(broker.address, 0)));
+        }
+        return response.setVersion(version).build();
+    }
+
+    // 有界负载一致性哈希：从队列哈希位置顺时针找第一个未超载的broker，全部超载时选队列数最少的
+    private String place(String queueName) {
+        if (brokers.isEmpty()) return null;
+        Map<String, Integer> queueCounts = queueCounts();
+        int brokerCount = brokers.size();
+        long totalQueues = queueCounts.values().stream().mapToLong(Integer::longValue).sum() + 1;
+        long totalTraffic = 0;
+        long totalDepth = 0;
+        for (BrokerState broker : brokers.values()) {
+            totalTraffic += broker.traffic();
+            totalDepth += broker.queueDepth;
+        }
+        long queueLimit = (long) Math.ceil((double) totalQueues / brokerCount * loadFactor);
+        String fallback = null;
+        for (String address : walk(queueName)) {
+            BrokerState broker = brokers.get(address);
+            int queues = queueCounts.getOrDefault(address, 0);
+            if (queues + 1 <= queueLimit
+                    && withinLimit(broker.traffic(), totalTraffic, brokerCount)
+                    && withinLimit(broker.queueDepth, totalDepth, brokerCount)) {
+                return address;
+            }
+            if (fallback == null || queues < queueCounts.getOrDefault(fallback, 0)) {
+                fallback = address;
+            }
+        }
+        return fallback;
+    }
+
+    private boolean withinLimit(long value, long total, int brokerCount) {
+        return total == 0 || value <= (double) total / brokerCount * loadFactor;
+    }
+
+    // 归属broker（存活时）在前，其后按哈希环顺序排列其余存活broker（客户端故障转移顺序）
+    private List<String> routeOf(String queueName, String owner) {
+        Set<String> route = new LinkedHashSet<>();
+        if (brokers.containsKey(owner)) {
+            route.add(owner);
+        }
+        route.addAll(walk(queueName));
+        return new ArrayList<>(route);
+    }
+
+    // 从队列哈希位置顺时针遍历哈希环，按首次出现顺序返回各broker
+    private Collection<String> walk(String queueName) {
+        Set<String> order = new LinkedHashSet<>();
+        if (ring.isEmpty()) return order;
+        long hash = HashUtils.mix64(HashUtils.fnv1a64(queueName));
+        for (String address : ring.tailMap(hash, true).values()) {
+            if (order.add(address) && order.size() == brokers.size()) return order;
+        }
+        for (String address : ring.headMap(hash, false).values()) {
+            if (order.add(address) && order.size() == brokers.size()) return order;
+        }
+        return order;
+    }
+
+    private void rebuildRing() {
+        NavigableMap<Long, String> newRing = new TreeMap<>();
+        for (String address : brokers.keySet()) {
+            for (int i = 0; i < virtualNodes; i++) {
+                newRing.put(HashUtils.mix64(HashUtils.fnv1a64(address + "#" + i)), address);
+            }
+        }
+        this.ring = newRing;
+        version++;
+    }
+
+    // 存活broker各自分配到的队列数
+    private Map<String, Integer> queueCounts() {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String owner : assignments.values()) {
+            if (brokers.containsKey(owner)) {
+                counts.merge(owner, 1, Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * 单个broker最近一次上报的负载
+     */
+    private static class BrokerState {
+        private final String brokerId;
+        private final String address;
+        private long bytesInRate;
+        private long bytesOutRate;
+        private long queueDepth;
+        private long lastRegisterNanos;
+
+        BrokerState(String brokerId, String address) {
+            this.brokerId = brokerId;
+            this.address = address;
+        }
+
+        void update(MqMessage.BrokerRegisterRequest request) {
+            this.bytesInRate = request.getBytesInRate();
+            this.bytesOutRate = request.getBytesOutRate();
+            this.queueDepth = request.getQueuesList().stream().mapToLong(MqMessage.QueueLoad::getDepth).sum();
+            this.lastRegisterNanos = System.nanoTime();
+        }
+
+        long traffic() {
+            return bytesInRate + bytesOutRate;
+        }
+    }
+}
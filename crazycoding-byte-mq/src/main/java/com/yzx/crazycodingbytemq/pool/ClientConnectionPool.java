@@ -6,51 +6,80 @@ import com.yzx.crazycodingbytemq.config.ClientConfig;
 import com.yzx.crazycodingbytemq.config.ConfigLoader;
 import com.yzx.crazycodingbytemq.handler.ClientResponseHandler;
 import com.yzx.crazycodingbytemq.handler.HeartbeatHandler;
+import com.yzx.crazycodingbytemq.server.RequestTimer;
 import com.yzx.crazycodingbytemq.ssl.SslContextFactory;
+import com.yzx.crazycodingbytemq.transport.NettyTransport;
+import com.yzx.crazycodingbytemq.util.RetryPolicy;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.pool.AbstractChannelPoolHandler;
-import io.netty.channel.pool.ChannelPool;
-import io.netty.channel.pool.FixedChannelPool;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.AttributeKey;
 import io.netty.util.Timeout;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 /**
  * @className: ClientConnectionPool
  * @author: yzx
  * @date: 2025/11/14 17:54
  * @Version: 1.0
- * @description:
+ * @description: 多路复用连接池（每个broker固定poolSize条长连接，请求按响应ID在连接上并发复用；
+ * 获取时选在途请求最少的健康连接，不再经过借出/归还的排队；连接断开或心跳超时后按抖动退避在时间轮上重连，全程不阻塞EventLoop；
+ * 客户端会话（连接请求、消费组、事务回查）绑定在一条连接上，该连接断开后先在新连接上重放，重放完成后新连接才可用）
  */
 @Slf4j
 public class ClientConnectionPool {
     //单例缓存:key=host:port,value=Channel
     private static final Map<String, ClientConnectionPool> POOL_CACHE = new ConcurrentHashMap<>();
-    //全局循环事件组(单例,避免多连接池创建多个线程)
-    private static final EventLoopGroup EVENT_LOOP_GROUP = new NioEventLoopGroup();
+    //网络传输(NIO/epoll/io_uring,全部连接池共用)
+    private static final NettyTransport TRANSPORT =
+            NettyTransport.select(ConfigLoader.bindConfig(ClientConfig.class, "mq.client").getTransport());
+    //全局循环事件组(单例,避免多连接池创建多个线程;线程数0表示Netty默认值)
+    private static final EventLoopGroup EVENT_LOOP_GROUP = TRANSPORT.newEventLoopGroup(0, "mq-client-io");
+    // 连接所属的槽位
+    private static final AttributeKey<Slot> SLOT = AttributeKey.valueOf("poolSlot");
     //连接池核心属性
-    private final ChannelPool pool;
+    private final Bootstrap bootstrap;
+    private final Slot[] slots;
     private final ClientConfig config;
+    // 重连退避（只用退避时长，重连不限次数）
+    private final RetryPolicy retryPolicy;
+    // 暂无可用连接时等待的获取请求（任一连接建立后唤醒）
+    private final Queue<CompletableFuture<Channel>> waiters = new ConcurrentLinkedQueue<>();
+    // 会话ID->会话（同一会话ID重新打开时替换）
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
     private final String host;
     private final int port;
+    private volatile boolean closed;
 
 
     private ClientConnectionPool(String host, int port) {
         this.host = host;
         this.port = port;
         this.config = ConfigLoader.bindConfig(ClientConfig.class, "mq.client");
-        this.pool = initChannelPool();
+        this.retryPolicy = new RetryPolicy(config.getRetryCount(), config.getRetryInterval(), config.getRetryMaxInterval());
+        this.bootstrap = initBootstrap();
+        this.slots = new Slot[config.getPoolSize()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Slot(i);
+        }
         log.info("连接池初始化完成：host={}, port={}, 池大小={}", host, port, config.getPoolSize());
     }
 
@@ -72,106 +101,199 @@ public class ClientConnectionPool {
     }
 
     /**
-     * 初始化ChannelPool(复用全局EventLoopGroup)
+     * 初始化Bootstrap(复用全局EventLoopGroup)
      */
-    private ChannelPool initChannelPool() {
-        Bootstrap bootstrap = new Bootstrap();
-        bootstrap.group(EVENT_LOOP_GROUP)// 使用全局EventLoopGroup
-                .remoteAddress(host, port)
-                .channel(NioSocketChannel.class)
-                .option(ChannelOption.SO_KEEPALIVE, true)
-                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) config.getConnectTimeout().toMillis());
+    private Bootstrap initBootstrap() {
         //SSL配置
         SslContext sslContext = null;
         if (config.isSslEnable()) {
             sslContext = SslContextFactory.createClientContext();
         }
         final SslContext finalSslContext = sslContext;
-        //处理器链配置
-        AbstractChannelPoolHandler poolHandler = new AbstractChannelPoolHandler() {
-            @Override
-            public void channelCreated(Channel channel) throws Exception {
-                var pipeline = channel.pipeline();
-                if (finalSslContext != null) {
-                    pipeline.addLast(finalSslContext.newHandler(channel.alloc(), host, port));
-                }
-                //心跳处理(30秒未消息触发)
-                pipeline.addLast(new IdleStateHandler(0, config.getHeartbeatTimeout().getSeconds(), 0, TimeUnit.SECONDS));
-                pipeline.addLast(new ProtocolDecoder(config.getMaxFrameLength()))
-                        .addLast(new ProtocolEncoder())
-                        .addLast(new HeartbeatHandler())
-                        .addLast(new ClientResponseHandler());
+        Bootstrap bootstrap = new Bootstrap()
+                .group(EVENT_LOOP_GROUP)// 使用全局EventLoopGroup
+                .remoteAddress(host, port)
+                .channel(TRANSPORT.channelClass())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) config.getConnectTimeout().toMillis())
+                //处理器链配置
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel channel) {
+                        var pipeline = channel.pipeline();
+                        if (finalSslContext != null) {
+                            pipeline.addLast(finalSslContext.newHandler(channel.alloc(), host, port));
+                        }
+                        //心跳：写空闲时发心跳请求，超过心跳超时未收到任何数据视为连接失效并关闭
+                        pipeline.addLast(new IdleStateHandler(config.getHeartbeatTimeout().toMillis(),
+                                config.getHeartbeatInterval().toMillis(), 0, TimeUnit.MILLISECONDS));
+                        pipeline.addLast(new ProtocolDecoder(config.getMaxFrameLength()))
+                                .addLast(new ProtocolEncoder())
+                                .addLast(new HeartbeatHandler())
+                                .addLast(new ClientResponseHandler());
+                    }
+                });
+        return TRANSPORT.configure(bootstrap, config.isTcpQuickAck(), config.isEpollEdgeTriggered());
+    }
+
+
+    /**
+     * 获取连接：选在途请求最少的健康连接，没有可用连接时触发重连并等待（最长connectTimeout）
+     */
+    public CompletableFuture<Channel> acquire() {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("连接池已关闭：" + host + ":" + port));
+        }
+        Channel channel = select();
+        if (channel != null) {
+            return CompletableFuture.completedFuture(channel);
+        }
+        CompletableFuture<Channel> waiter = new CompletableFuture<>();
+        waiters.offer(waiter);
+        connect();
+        // 入队前可能已有连接建立（丢失唤醒），入队后再检查一次
+        drainWaiters();
+        return RequestTimer.getInstance().withTimeout(waiter, config.getConnectTimeout().toMillis(), "获取连接")
+                .whenComplete((c, e) -> {
+                    if (e != null) waiters.remove(waiter);
+                });
+    }
+
+    // 优先可写的连接，再按在途请求数最少；选中即计入在途
+    private Channel select() {
+        Slot best = null;
+        Channel bestChannel = null;
+        boolean bestWritable = false;
+        for (Slot slot : slots) {
+            Channel channel = slot.channel;
+            if (channel == null || !channel.isActive()) continue;
+            boolean writable = channel.isWritable();
+            if (best == null || (writable && !bestWritable)
+                    || (writable == bestWritable && slot.inFlight.get() < best.inFlight.get())) {
+                best = slot;
+                bestChannel = channel;
+                bestWritable = writable;
             }
+        }
+        if (best == null) return null;
+        best.inFlight.incrementAndGet();
+        return bestChannel;
+    }
 
-        };
-        //创建固定大小的连接池
-        return new FixedChannelPool(bootstrap, poolHandler, config.getPoolSize());
+    private void drainWaiters() {
+        CompletableFuture<Channel> waiter;
+        while ((waiter = waiters.peek()) != null) {
+            Channel channel = select();
+            if (channel == null) return;
+            if (!waiters.remove(waiter) || !waiter.complete(channel)) {
+                // 等待方已超时，退回在途计数
+                release(channel);
+            }
+        }
+    }
 
+    /**
+     * 释放连接（只扣减在途计数，连接保持打开供后续请求复用）
+     */
+    public void release(Channel channel) {
+        releaseChannel(channel);
     }
 
+    /**
+     * 释放连接（按连接上记录的槽位扣减，不需要知道连接属于哪个池）
+     */
+    public static void releaseChannel(Channel channel) {
+        if (channel == null) return;
+        Slot slot = channel.attr(SLOT).get();
+        if (slot != null) {
+            slot.inFlight.updateAndGet(n -> n > 0 ? n - 1 : 0);
+        }
+    }
 
     /**
-     * 从池获取连接("带重试")
+     * 是否有已建立的连接
      */
-    public CompletableFuture<Channel> acquire() {
-        CompletableFuture<Channel> channelCompletableFuture = new CompletableFuture<>();
-        acquireWithRetry(channelCompletableFuture, config.getRetryCount());
-        return channelCompletableFuture;
-    }
-
-    private void acquireWithRetry(CompletableFuture<Channel> channelCompletableFuture, int remainingRetries) {
-        pool.acquire().addListener(future -> {
-            if (future.isSuccess()) {
-                Channel channel = (Channel) future.getNow();
-                if (channel.isActive()) {
-                    channelCompletableFuture.complete(channel);
-                } else {
-                    log.warn("连接已关闭，正在重试...剩余重试次数:{}", remainingRetries);
-                    pool.release(channel);
-                    retryAcquire(channelCompletableFuture, remainingRetries);
-                }
-            } else {
-                //获取失败,重试
-                retryAcquire(channelCompletableFuture, remainingRetries);
-            }
-        });
+    public boolean isConnected() {
+        for (Slot slot : slots) {
+            Channel channel = slot.channel;
+            if (channel != null && channel.isActive()) return true;
+        }
+        return false;
     }
 
-    private void retryAcquire(CompletableFuture<Channel> completableFuture, int remainRetires) {
-        if (remainRetires <= 0) {
-            completableFuture.completeExceptionally(new Exception("获取连接失败，已达最大重试次数"));
-            return;
+    /**
+     * 触发所有未连接的槽位立即连接（不等待结果）
+     */
+    public void connect() {
+        for (Slot slot : slots) {
+            slot.connect();
         }
-        try {
-            TimeUnit.MICROSECONDS.sleep(config.getRetryInterval().toMillis());
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            completableFuture.completeExceptionally(e);
-            return;
+    }
+
+    public String address() {
+        return host + ":" + port;
+    }
+
+    /**
+     * 打开会话：选一条连接执行握手（发送连接请求、绑定事务回查等），握手所在连接断开后自动在其他连接或重连后的新连接上重放
+     * @param sessionId 会话ID（同一ID再次打开时替换握手，旧会话作废；旧握手进行中时等其结束，成功则在原连接上重放）
+     * @param handshake 在给定连接上完成会话注册，返回是否成功
+     * @return 首次握手结果
+     */
+    public CompletableFuture<Boolean> openSession(String sessionId, Function<Channel, CompletableFuture<Boolean>> handshake) {
+        Session session = new Session(sessionId, handshake);
+        Session previous = sessions.put(sessionId, session);
+        if (previous == null) {
+            return acquire().thenCompose(session::bind);
         }
-        acquireWithRetry(completableFuture, remainRetires - 1);
+        return previous.invalidate().thenCompose(bound -> {
+            if (bound != null && bound.isActive()) {
+                Slot slot = bound.attr(SLOT).get();
+                if (slot != null) slot.inFlight.incrementAndGet();
+                return session.bind(bound);
+            }
+            return acquire().thenCompose(session::bind);
+        });
     }
 
     /**
-     * 释放连接回池
+     * 关闭会话：之后断线不再重放
      */
-    public void release(Channel channel) {
-        if (channel != null && channel.isActive()) {
-            pool.release(channel);
-            log.debug("连接已释放回池:channelId={}", channel.id());
-        } else {
-            log.warn("释放连接失败，连接已关闭:channelId={}", channel != null ? channel.id() : "null");
-            if (channel != null) {
-                channel.close();
+    public void closeSession(String sessionId) {
+        Session session = sessions.remove(sessionId);
+        if (session != null) {
+            session.invalidate();
+        }
+    }
+
+    // 新连接可用前重放所有未绑定连接的会话
+    private CompletableFuture<Void> replaySessions(Channel channel) {
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (Session session : sessions.values()) {
+            Channel bound = session.channel;
+            if (bound == null || !bound.isActive()) {
+                channel.attr(SLOT).get().inFlight.incrementAndGet();
+                futures.add(session.bind(channel));
             }
         }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
     }
 
     /**
      * 关闭连接池
      */
     public void close() {
-        pool.close();
+        closed = true;
+        for (Slot slot : slots) {
+            Channel channel = slot.channel;
+            if (channel != null) {
+                channel.close();
+            }
+        }
+        CompletableFuture<Channel> waiter;
+        while ((waiter = waiters.poll()) != null) {
+            waiter.completeExceptionally(new IllegalStateException("连接池已关闭：" + host + ":" + port));
+        }
         String key = host + ":" + port;
         POOL_CACHE.remove(key);
         log.info("连接池已关闭：host={}:{}", host, port);
@@ -184,4 +306,170 @@ public class ClientConnectionPool {
         EVENT_LOOP_GROUP.shutdownGracefully();
         log.info("所有连接池已全局关闭");
     }
+
+    /**
+     * 客户端会话：握手所在连接断开后，在仍可用的其他连接上立即重放；没有可用连接时等重连的新连接重放
+     */
+    private class Session {
+        private final String id;
+        private final Function<Channel, CompletableFuture<Boolean>> handshake;
+        // 握手进行中，避免同时在多条连接上重放
+        private final AtomicBoolean binding = new AtomicBoolean(false);
+        private volatile Channel channel;
+        // 连续握手失败次数（决定重试退避时长）
+        private volatile int failures;
+        // 最近一次握手（结束后已更新channel）
+        private volatile CompletableFuture<Boolean> handshaking = CompletableFuture.completedFuture(false);
+        // 握手失败后等待执行的重试
+        private volatile Timeout retry;
+        // 已被同ID的新会话替换或已关闭：不再握手、不再重试
+        private volatile boolean invalidated;
+
+        Session(String id, Function<Channel, CompletableFuture<Boolean>> handshake) {
+            this.id = id;
+            this.handshake = handshake;
+        }
+
+        // 在连接上握手，调用方已计入该连接的在途数，握手结束后释放
+        synchronized CompletableFuture<Boolean> bind(Channel target) {
+            // 首次打开时新建的连接已先重放过该会话，不重复握手
+            if (channel == target && target.isActive()) {
+                release(target);
+                return CompletableFuture.completedFuture(true);
+            }
+            if (invalidated || !binding.compareAndSet(false, true)) {
+                release(target);
+                return CompletableFuture.completedFuture(!invalidated && channel != null);
+            }
+            CompletableFuture<Boolean> result;
+            try {
+                result = handshake.apply(target);
+            } catch (RuntimeException e) {
+                result = CompletableFuture.failedFuture(e);
+            }
+            handshaking = result.handle((success, e) -> {
+                binding.set(false);
+                release(target);
+                if (e != null || !Boolean.TRUE.equals(success)) {
+                    synchronized (this) {
+                        if (invalidated) return false;
+                        // 服务端可能尚未感知旧连接断开（客户端ID冲突），退避后重试
+                        long delayMs = retryPolicy.backoffMillis(failures++);
+                        log.warn("会话握手失败，{}ms后重试：{}:{}, session={}, 原因={}", delayMs, host, port, id,
+                                e == null ? "服务端拒绝" : e.getMessage());
+                        retry = RequestTimer.getInstance().schedule(this::rebind, delayMs);
+                    }
+                    return false;
+                }
+                failures = 0;
+                channel = target;
+                target.closeFuture().addListener(f -> onClosed(target));
+                log.debug("会话已绑定连接：{}:{}, session={}, channelId={}", host, port, id, target.id());
+                return true;
+            });
+            return handshaking;
+        }
+
+        /**
+         * 作废会话：取消待执行的重试，进行中的握手结束后交出其绑定的连接（握手失败或连接已断开时为null）
+         */
+        CompletableFuture<Channel> invalidate() {
+            CompletableFuture<Boolean> pending;
+            synchronized (this) {
+                invalidated = true;
+                Timeout pendingRetry = retry;
+                if (pendingRetry != null) pendingRetry.cancel();
+                pending = handshaking;
+            }
+            return pending.handle((success, e) -> {
+                Channel bound = channel;
+                channel = null;
+                return bound;
+            });
+        }
+
+        private void onClosed(Channel closedChannel) {
+            if (channel != closedChannel) return;
+            channel = null;
+            log.info("会话所在连接断开，准备重放：{}:{}, session={}", host, port, id);
+            rebind();
+        }
+
+        // 在仍可用的连接上重放；没有可用连接时由重连的新连接重放
+        private void rebind() {
+            if (closed || invalidated || sessions.get(id) != this || channel != null) return;
+            Channel alive = select();
+            if (alive != null) {
+                bind(alive);
+            }
+        }
+    }
+
+    /**
+     * 一条长连接槽位：断开后在原槽位重连
+     */
+    private class Slot {
+        private final int index;
+        private final AtomicInteger inFlight = new AtomicInteger(0);
+        // 正在连接或等待重连
+        private final AtomicBoolean connecting = new AtomicBoolean(false);
+        private volatile Channel channel;
+        // 连续连接失败次数（决定退避时长）
+        private volatile int failures;
+
+        Slot(int index) {
+            this.index = index;
+        }
+
+        void connect() {
+            if (closed || (channel != null && channel.isActive()) || !connecting.compareAndSet(false, true)) return;
+            ChannelFuture connectFuture = bootstrap.connect();
+            connectFuture.addListener(future -> {
+                if (!future.isSuccess()) {
+                    connecting.set(false);
+                    scheduleReconnect(future.cause());
+                    return;
+                }
+                Channel connected = connectFuture.channel();
+                connected.attr(SLOT).set(this);
+                failures = 0;
+                inFlight.set(0);
+                log.debug("连接已建立：{}:{}, slot={}, channelId={}", host, port, index, connected.id());
+                connected.closeFuture().addListener(f -> onClosed(connected));
+                if (closed) {
+                    connecting.set(false);
+                    connected.close();
+                    return;
+                }
+                // 断线的会话先在新连接上重放注册，完成后连接才对获取方可用
+                replaySessions(connected).whenComplete((v, e) -> {
+                    connecting.set(false);
+                    if (!connected.isActive()) {
+                        scheduleReconnect(null);
+                        return;
+                    }
+                    channel = connected;
+                    drainWaiters();
+                });
+            });
+        }
+
+        private void onClosed(Channel closedChannel) {
+            if (channel != closedChannel) return;
+            channel = null;
+            if (closed) return;
+            log.warn("连接已断开，准备重连：{}:{}, slot={}", host, port, index);
+            scheduleReconnect(null);
+        }
+
+        // 在时间轮上按抖动退避重连
+        private void scheduleReconnect(Throwable cause) {
+            if (closed) return;
+            long delayMs = retryPolicy.backoffMillis(failures++);
+            if (cause != null) {
+                log.warn("连接失败，{}ms后重连：{}:{}, slot={}, 原因={}", delayMs, host, port, index, cause.getMessage());
+            }
+            RequestTimer.getInstance().schedule(this::connect, delayMs);
+        }
+    }
 }
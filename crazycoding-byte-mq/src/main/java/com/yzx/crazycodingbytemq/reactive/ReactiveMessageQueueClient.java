@@ -0,0 +1,136 @@
+package com.yzx.crazycodingbytemq.reactive;
+
+import com.yzx.crazycodingbytemq.config.ClientConfig;
+import com.yzx.crazycodingbytemq.config.ConfigLoader;
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import com.yzx.crazycodingbytemq.server.MessageQueueClient;
+import com.yzx.crazycodingbytemq.server.MessageQueueConsumer;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @className: ReactiveMessageQueueClient
+ * @author: yzx
+ * @date: 2025/11/24 19:00
+ * @Version: 1.0
+ * @description: 响应式客户端（订阅按下游request(n)换算为拉取条数，下游不请求就不向broker拉取；
+ * 批量发送按在途上限向上游请求，同一时刻的在途消息由生产者累加器自动攒批）
+ */
+@Slf4j
+public class ReactiveMessageQueueClient {
+    // 服务端单次拉取上限
+    private static final int MAX_PULL_SIZE = 100;
+    private final MessageQueueClient producer;
+    private final MessageQueueConsumer consumer;
+    private final int maxInFlight;
+    private final long fetchMaxWaitMs;
+
+    public ReactiveMessageQueueClient(String host, int port, String clientId) {
+        this(List.of(host + ":" + port), clientId);
+    }
+
+    // broker地址列表（host:port），队列按路由故障转移
+    public ReactiveMessageQueueClient(List<String> brokers, String clientId) {
+        ClientConfig clientConfig = ConfigLoader.bindConfig(ClientConfig.class, "mq.client");
+        this.producer = new MessageQueueClient(brokers, clientId);
+        this.consumer = new MessageQueueConsumer(clientId, brokers);
+        this.maxInFlight = clientConfig.getReactiveMaxInFlight();
+        this.fetchMaxWaitMs = clientConfig.getFetchMaxWait().toMillis();
+    }
+
+    /**
+     * 发送一条消息（订阅时才发送）
+     */
+    public Mono<SendResult> send(String queueName, String messageBody) {
+        return send(queueName, null, messageBody);
+    }
+
+    /**
+     * 发送带消息键的消息（相同键进入同一分区）
+     */
+    public Mono<SendResult> send(String queueName, String messageKey, String messageBody) {
+        return Mono.fromFuture(() -> producer.send(queueName, messageKey, messageBody, 0, null))
+                .map(SendResult::of);
+    }
+
+    /**
+     * 批量发送：最多maxInFlight条在途，结果按上游顺序发出；下游消费慢时在途占满，不再向上游请求
+     */
+    public Flux<SendResult> sendMany(String queueName, Publisher<String> messageBodies) {
+        return Flux.from(messageBodies)
+                .flatMapSequential(body -> send(queueName, body), maxInFlight, maxInFlight);
+    }
+
+    /**
+     * 订阅队列：下游每请求n条，最多向broker长轮询拉取n条（单次不超过100）；
+     * 消息在IO线程上发出，耗时处理请publishOn切换线程，处理完用ack确认，未确认的由服务端可见性超时重投
+     */
+    public Flux<MqMessage.MessageItem> subscribe(String queueName) {
+        return Flux.create(sink -> new DemandPuller(queueName, sink).bind(), FluxSink.OverflowStrategy.ERROR);
+    }
+
+    /**
+     * 确认消息
+     */
+    public Mono<Boolean> ack(MqMessage.MessageItem messageItem) {
+        return Mono.fromFuture(() -> consumer.ackMessage(messageItem));
+    }
+
+    public void close() {
+        producer.close();
+        consumer.close();
+    }
+
+    /**
+     * 按下游需求拉取：同一时刻只有一个拉取请求在途，拉取条数不超过未满足的需求
+     */
+    private class DemandPuller {
+        private final String queueName;
+        private final FluxSink<MqMessage.MessageItem> sink;
+        private final AtomicLong demand = new AtomicLong(0);
+        private final AtomicBoolean pulling = new AtomicBoolean(false);
+        private volatile boolean cancelled;
+
+        DemandPuller(String queueName, FluxSink<MqMessage.MessageItem> sink) {
+            this.queueName = queueName;
+            this.sink = sink;
+        }
+
+        void bind() {
+            sink.onRequest(n -> {
+                // 累加需求，溢出按无界处理
+                demand.accumulateAndGet(n, (current, add) -> current + add < 0 ? Long.MAX_VALUE : current + add);
+                pull();
+            });
+            sink.onCancel(() -> cancelled = true);
+            sink.onDispose(() -> cancelled = true);
+        }
+
+        private void pull() {
+            if (cancelled || demand.get() <= 0 || !pulling.compareAndSet(false, true)) return;
+            int batchSize = (int) Math.min(demand.get(), MAX_PULL_SIZE);
+            consumer.pullMessage(queueName, batchSize, fetchMaxWaitMs).whenComplete((messages, e) -> {
+                if (e != null) {
+                    pulling.set(false);
+                    log.warn("响应式订阅拉取失败：queueName={}", queueName, e);
+                    sink.error(e);
+                    return;
+                }
+                for (MqMessage.MessageItem messageItem : messages) {
+                    demand.getAndUpdate(current -> current == Long.MAX_VALUE ? current : current - 1);
+                    sink.next(messageItem);
+                }
+                pulling.set(false);
+                // 还有需求则继续拉取（长轮询为空时也继续等待）
+                pull();
+            });
+        }
+    }
+}
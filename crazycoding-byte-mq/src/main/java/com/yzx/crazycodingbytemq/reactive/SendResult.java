@@ -0,0 +1,17 @@
+package com.yzx.crazycodingbytemq.reactive;
+
+import com.yzx.crazycodingbytemq.model.MqMessage;
+
+/**
+ * @className: SendResult
+ * @author: yzx
+ * @date: 2025/11/24 19:00
+ * @Version: 1.0
+ * @description: 响应式发送结果
+ */
+public record SendResult(String messageId, MqMessage.SendStatus status, boolean success, String message) {
+
+    public static SendResult of(MqMessage.SendMessageResponse response) {
+        return new SendResult(response.getMessageId(), response.getStatus(), response.getSuccess(), response.getMessage());
+    }
+}
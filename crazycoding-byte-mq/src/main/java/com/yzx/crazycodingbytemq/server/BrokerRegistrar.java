@@ -0,0 +1,166 @@
+package com.yzx.crazycodingbytemq.server;
+
+import com.yzx.crazycodingbytemq.codec.ProtocolConstant;
+import com.yzx.crazycodingbytemq.codec.ProtocolDecoder;
+import com.yzx.crazycodingbytemq.codec.ProtocolEncoder;
+import com.yzx.crazycodingbytemq.codec.ProtocolFrame;
+import com.yzx.crazycodingbytemq.config.ServerConfig;
+import com.yzx.crazycodingbytemq.enums.MessageTypeEnum;
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import com.yzx.crazycodingbytemq.ssl.SslContextFactory;
+import com.yzx.crazycodingbytemq.transport.NettyTransport;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.traffic.TrafficCounter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @className: BrokerRegistrar
+ * @author: yzx
+ * @date: 2025/11/25 15:30
+ * @Version: 1.0
+ * @description: 向name server定时注册本broker（上报已有队列的积压和最近一秒的出入流量），注册同时作为心跳；
+ * 每个name server独立连接，断线后下个周期重连，某个name server不可用不影响向其他name server注册
+ */
+@Slf4j
+public class BrokerRegistrar {
+    private final ServerConfig config;
+    private final TrafficCounter trafficCounter;
+    private final String brokerId;
+    private final String address;
+    private final QueueManager queueManager = QueueManager.getInstance();
+    private final NettyTransport transport;
+    private final EventLoopGroup group;
+    // name server地址->连接（只在registrar线程访问）
+    private final Map<String, Channel> channels = new HashMap<>();
+    private Bootstrap bootstrap;
+
+    public BrokerRegistrar(ServerConfig config, NettyTransport transport, TrafficCounter trafficCounter) {
+        this.config = config;
+        this.transport = transport;
+        this.group = transport.newEventLoopGroup(1, "broker-registrar");
+        this.trafficCounter = trafficCounter;
+        this.brokerId = config.getBrokerId().isBlank() ? "broker-" + config.getPort() : config.getBrokerId();
+        this.address = config.getAdvertisedAddress().isBlank()
+                ? localHost() + ":" + config.getPort() : config.getAdvertisedAddress().trim();
+    }
+
+    public void start() {
+        SslContext sslContext = config.isSslEnable() ? SslContextFactory.createClientContext() : null;
+        this.bootstrap = new Bootstrap()
+                .group(group)
+                .channel(transport.channelClass())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel channel) {
+                        var pipeline = channel.pipeline();
+                        if (sslContext != null) {
+                            pipeline.addLast(sslContext.newHandler(channel.alloc()));
+                        }
+                        pipeline.addLast(new ProtocolDecoder(config.getMaxFrameLength()))
+                                .addLast(new ProtocolEncoder())
+                                .addLast(new RegisterResponseHandler());
+                    }
+                });
+        long intervalMs = config.getRegisterInterval().toMillis();
+        group.scheduleAtFixedRate(this::registerAll, 0, intervalMs, TimeUnit.MILLISECONDS);
+        log.info("开始向name server注册：brokerId={}, address={}, nameServers={}", brokerId, address, config.getNameServers());
+    }
+
+    public void close() {
+        group.shutdownGracefully(0, 5, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+
+    private void registerAll() {
+        byte[] body = buildRequest().toByteArray();
+        for (String nameServer : config.getNameServers()) {
+            Channel channel = channels.get(nameServer);
+            if (channel != null && channel.isActive()) {
+                send(channel, body);
+                continue;
+            }
+            String[] parts = nameServer.trim().split(":");
+            if (parts.length != 2) {
+                log.error("name server地址格式错误（host:port）：{}", nameServer);
+                continue;
+            }
+            bootstrap.connect(parts[0], Integer.parseInt(parts[1])).addListener((ChannelFutureListener) future -> {
+                if (future.isSuccess()) {
+                    channels.put(nameServer, future.channel());
+                    send(future.channel(), body);
+                } else {
+                    log.warn("连接name server失败：{}，{}", nameServer, future.cause().getMessage());
+                }
+            });
+        }
+    }
+
+    private MqMessage.BrokerRegisterRequest buildRequest() {
+        MqMessage.BrokerRegisterRequest.Builder request = MqMessage.BrokerRegisterRequest.newBuilder()
+                .setBrokerId(brokerId)
+                .setAddress(address)
+                .setBytesInRate(trafficCounter.lastReadThroughput())
+                .setBytesOutRate(trafficCounter.lastWriteThroughput());
+        queueManager.queueDepths().forEach((queueName, depth) -> request.addQueues(
+                MqMessage.QueueLoad.newBuilder().setQueueName(queueName).setDepth(depth)));
+        return request.build();
+    }
+
+    private void send(Channel channel, byte[] body) {
+        channel.writeAndFlush(new ProtocolFrame(
+                ProtocolConstant.MAGIC,
+                ProtocolConstant.Version,
+                body.length,
+                MessageTypeEnum.BROKER_REGISTER.getCode(),
+                body
+        ));
+    }
+
+    private static String localHost() {
+        try {
+            return InetAddress.getLocalHost().getHostAddress();
+        } catch (UnknownHostException e) {
+            return "127.0.0.1";
+        }
+    }
+
+    /**
+     * 注册响应：失败只记录日志，下个周期重新注册
+     */
+    private static class RegisterResponseHandler extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            if (!(msg instanceof ProtocolFrame frame)
+                    || frame.getMessageType() != MessageTypeEnum.BROKER_REGISTER_RESPONSE.getCode()) {
+                ctx.fireChannelRead(msg);
+                return;
+            }
+            MqMessage.BrokerRegisterResponse response = MqMessage.BrokerRegisterResponse.parseFrom(frame.getBody());
+            if (!response.getSuccess()) {
+                log.warn("向name server注册失败：{}，{}", ctx.channel().remoteAddress(), response.getMessage());
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            log.warn("name server连接异常：{}", cause.getMessage());
+            ctx.close();
+        }
+    }
+}
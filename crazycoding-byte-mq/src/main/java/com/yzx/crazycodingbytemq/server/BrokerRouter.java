@@ -0,0 +1,305 @@
+package com.yzx.crazycodingbytemq.server;
+
+import com.yzx.crazycodingbytemq.config.ClientConfig;
+import com.yzx.crazycodingbytemq.exception.BrokerUnavailableException;
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import com.yzx.crazycodingbytemq.pool.ClientConnectionPool;
+import com.yzx.crazycodingbytemq.util.HashUtils;
+import io.netty.channel.Channel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * @className: BrokerRouter
+ * @author: yzx
+ * @date: 2025/11/25 10:10
+ * @Version: 1.0
+ * @description: 客户端多broker路由（队列按最高随机权重哈希在leader中确定归属broker，首次路由后固定不变；
+ * 归属broker不可用时只故障转移到复制它的只读副本，不转移到其他leader，避免同一队列的消息分散到多个broker而消费者只读其中之一；
+ * 副本拒绝写入返回NOT_LEADER，生产者退避重试直到leader恢复。副本组由连接响应中的leader地址确定，
+ * 后台定时探测各broker连接状态，健康的副本排在前面）。
+ * 未配置broker地址时从name server发现broker：新队列先向name server查询分配，归属broker以name server分配为准，
+ * 后台定时拉取全量路由表，新注册的broker自动加入路由，扩容无需修改客户端配置
+ */
+@Slf4j
+public class BrokerRouter {
+    // broker地址->broker（发现模式下随路由表增加）
+    private final Map<String, Broker> brokers = new ConcurrentHashMap<>();
+    private final long refreshIntervalMs;
+    // 队列名->候选broker顺序（健康状态、副本组、broker列表或路由表变化时清空重建）
+    private final Map<String, List<Broker>> routes = new ConcurrentHashMap<>();
+    // 队列名->本地确定的归属broker地址（无name server分配时使用，确定后不随broker增减变化）
+    private final Map<String, String> homes = new ConcurrentHashMap<>();
+    // 发现模式：name server客户端（静态broker列表时为空）
+    private final NameServerClient nameServerClient;
+    // 队列名->name server分配的broker顺序（归属broker在前）
+    private final Map<String, List<String>> assignedRoutes = new ConcurrentHashMap<>();
+    // 新队列正在进行的路由查询（同一队列并发请求共用一次查询）
+    private final Map<String, CompletableFuture<List<Broker>>> pendingQueries = new ConcurrentHashMap<>();
+    // 发现新broker时的回调（如发送连接请求）
+    private final List<Consumer<ClientConnectionPool>> brokerListeners = new CopyOnWriteArrayList<>();
+    // 首次拉取路由表完成（静态broker列表时立即完成）
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+    private volatile long routeVersion = -1;
+    private volatile boolean closed;
+
+    public BrokerRouter(List<String> addresses, ClientConfig clientConfig) {
+        if (addresses.isEmpty() && clientConfig.getNameServers().isEmpty()) {
+            throw new IllegalArgumentException("broker地址和name server地址不能同时为空");
+        }
+        addresses.forEach(this::addBroker);
+        this.refreshIntervalMs = clientConfig.getRouteRefreshInterval().toMillis();
+        if (addresses.isEmpty()) {
+            this.nameServerClient = new NameServerClient(clientConfig.getNameServers(), clientConfig);
+            // 首次拉取失败也视为就绪：后台刷新继续重试，期间请求以BrokerUnavailableException失败
+            refreshRoutes().whenComplete((v, e) -> ready.complete(null));
+        } else {
+            this.nameServerClient = null;
+            ready.complete(null);
+        }
+        scheduleRefresh();
+    }
+
+    /**
+     * 按队列路由获取连接：依次尝试归属broker及其副本，全部失败时以BrokerUnavailableException结束
+     */
+    public CompletableFuture<Channel> acquire(String queueName) {
+        CompletableFuture<Channel> future = new CompletableFuture<>();
+        resolve(queueName).whenComplete((candidates, e) -> acquire(e == null ? candidates : List.of(), 0, future, e));
+        return future;
+    }
+
+    /**
+     * 获取任一可用broker的连接（与队列无关的请求，可在全部broker间故障转移）
+     */
+    public CompletableFuture<Channel> acquireAny() {
+        return acquire("");
+    }
+
+    public void release(Channel channel) {
+        ClientConnectionPool.releaseChannel(channel);
+    }
+
+    /**
+     * 所有broker的连接池（需要广播的请求，如连接请求、加入消费组）
+     */
+    public List<ClientConnectionPool> pools() {
+        return brokers.values().stream().map(broker -> broker.pool).toList();
+    }
+
+    /**
+     * 连接请求成功后记录broker的角色（连接响应带leader地址表示只读副本），副本组变化时重建路由
+     */
+    public void onConnected(ClientConnectionPool pool, MqMessage.ConnectResponse response) {
+        Broker broker = brokers.get(pool.address());
+        String leader = response.getLeaderAddress().trim();
+        if (broker != null && !broker.leader.equals(leader)) {
+            broker.leader = leader;
+            routes.clear();
+            log.info("broker副本组变化：broker={}, leader={}", pool.address(), leader.isEmpty() ? "本节点" : leader);
+        }
+    }
+
+    /**
+     * 首次拉取路由表完成（发现模式下在此之后pools()才包含已注册的broker）
+     */
+    public CompletableFuture<Void> ready() {
+        return ready.copy();
+    }
+
+    /**
+     * 注册发现新broker的回调（只通知注册之后发现的broker）
+     */
+    public void onBrokerAdded(Consumer<ClientConnectionPool> listener) {
+        brokerListeners.add(listener);
+    }
+
+    public void close() {
+        closed = true;
+        brokers.values().forEach(broker -> broker.pool.close());
+        if (nameServerClient != null) {
+            nameServerClient.close();
+        }
+    }
+
+    private void acquire(List<Broker> candidates, int index, CompletableFuture<Channel> future, Throwable lastError) {
+        if (index >= candidates.size()) {
+            future.completeExceptionally(new BrokerUnavailableException("没有可用的broker", lastError));
+            return;
+        }
+        Broker broker = candidates.get(index);
+        broker.pool.acquire().whenComplete((channel, e) -> {
+            if (e == null) {
+                future.complete(channel);
+                return;
+            }
+            log.warn("broker不可用，故障转移到下一个：broker={}, 原因={}", broker.pool.address(), e.getMessage());
+            markHealthy(broker, false);
+            acquire(candidates, index + 1, future, e);
+        });
+    }
+
+    // 已有路由直接返回；发现模式下未分配的新队列先向name server查询（查询失败按哈希权重路由）
+    private CompletableFuture<List<Broker>> resolve(String queueName) {
+        List<Broker> route = routes.get(queueName);
+        if (route != null) {
+            return CompletableFuture.completedFuture(route);
+        }
+        if (nameServerClient == null || queueName.isEmpty() || assignedRoutes.containsKey(queueName)) {
+            return ready.thenApply(v -> routeOf(queueName));
+        }
+        return pendingQueries.computeIfAbsent(queueName, name -> {
+            CompletableFuture<List<Broker>> query = ready
+                    .thenCompose(v -> nameServerClient.query(List.of(name)))
+                    .handle((response, e) -> {
+                        if (e != null) {
+                            log.warn("查询队列路由失败，按哈希权重路由：queue={}, 原因={}", name, e.getMessage());
+                        } else {
+                            applyRoutes(response);
+                        }
+                        return routeOf(name);
+                    });
+            query.whenComplete((r, e) -> pendingQueries.remove(name));
+            return query;
+        });
+    }
+
+    // 队列的候选broker：归属broker所在副本组，健康的在前、leader先于副本；与队列无关的请求按哈希权重使用全部broker
+    private List<Broker> routeOf(String queueName) {
+        return routes.computeIfAbsent(queueName, name -> {
+            if (name.isEmpty()) {
+                return brokers.values().stream()
+                        .sorted(Comparator.comparing((Broker broker) -> !broker.healthy)
+                                .thenComparing(broker -> weight(name, broker), Comparator.reverseOrder()))
+                        .toList();
+            }
+            String home = leaderOf(homeOf(name));
+            return brokers.values().stream()
+                    .filter(broker -> broker.pool.address().equals(home) || broker.leader.equals(home))
+                    .sorted(Comparator.comparing((Broker broker) -> !broker.healthy)
+                            .thenComparing(broker -> !broker.leader.isEmpty()))
+                    .toList();
+        });
+    }
+
+    // 归属broker：name server分配的优先；否则首次路由时在leader中按哈希权重选出并固定（broker增减不迁移已有队列）
+    private String homeOf(String queueName) {
+        List<String> assigned = assignedRoutes.get(queueName);
+        if (assigned != null && !assigned.isEmpty() && brokers.containsKey(assigned.get(0))) {
+            return assigned.get(0);
+        }
+        String home = homes.get(queueName);
+        if (home != null) {
+            return home;
+        }
+        // 尚无broker时不固定，broker加入后重新选择
+        return brokers.values().stream()
+                .sorted(Comparator.comparing((Broker broker) -> !broker.leader.isEmpty())
+                        .thenComparing(broker -> weight(queueName, broker), Comparator.reverseOrder()))
+                .map(broker -> homes.computeIfAbsent(queueName, name -> broker.pool.address()))
+                .findFirst()
+                .orElse("");
+    }
+
+    // 副本的归属按其leader计（leader也已配置时），写入只能由leader接收
+    private String leaderOf(String address) {
+        Broker broker = brokers.get(address);
+        return broker != null && !broker.leader.isEmpty() && brokers.containsKey(broker.leader) ? broker.leader : address;
+    }
+
+    private static long weight(String queueName, Broker broker) {
+        return HashUtils.mix64(HashUtils.fnv1a64(queueName + "@" + broker.pool.address()));
+    }
+
+    private void addBroker(String address) {
+        int index = address.lastIndexOf(':');
+        if (index <= 0) {
+            throw new IllegalArgumentException("broker地址格式错误（host:port）：" + address);
+        }
+        ClientConnectionPool pool = ClientConnectionPool.getInstance(address.substring(0, index).trim(),
+                Integer.parseInt(address.substring(index + 1).trim()));
+        if (brokers.putIfAbsent(pool.address(), new Broker(pool)) == null) {
+            routes.clear();
+            if (nameServerClient != null) {
+                log.info("发现新broker：{}，broker数={}", pool.address(), brokers.size());
+            }
+            brokerListeners.forEach(listener -> listener.accept(pool));
+        }
+    }
+
+    // 合并name server返回的broker和队列路由，路由表版本变化时重建全部路由
+    private void applyRoutes(MqMessage.RouteQueryResponse response) {
+        for (MqMessage.BrokerInfo broker : response.getBrokersList()) {
+            try {
+                addBroker(broker.getAddress());
+            } catch (IllegalArgumentException e) {
+                log.warn("忽略name server返回的非法broker地址：{}", broker.getAddress());
+            }
+        }
+        for (MqMessage.QueueRoute route : response.getRoutesList()) {
+            assignedRoutes.put(route.getQueueName(), List.copyOf(route.getBrokersList()));
+            routes.remove(route.getQueueName());
+        }
+        if (response.getVersion() != routeVersion) {
+            routeVersion = response.getVersion();
+            routes.clear();
+        }
+    }
+
+    private CompletableFuture<Void> refreshRoutes() {
+        return nameServerClient.query(List.of())
+                .thenAccept(this::applyRoutes)
+                .exceptionally(e -> {
+                    log.warn("刷新路由表失败：{}", e.getMessage());
+                    return null;
+                });
+    }
+
+    private void markHealthy(Broker broker, boolean healthy) {
+        if (broker.healthy != healthy) {
+            broker.healthy = healthy;
+            routes.clear();
+            log.info("broker状态变化：broker={}, healthy={}", broker.pool.address(), healthy);
+        }
+    }
+
+    // 后台探测：未连接的broker触发重连，按当前连接状态更新健康标记；发现模式下同时刷新路由表
+    private void scheduleRefresh() {
+        RequestTimer.getInstance().schedule(() -> {
+            if (closed) return;
+            for (Broker broker : brokers.values()) {
+                if (!broker.pool.isConnected()) {
+                    broker.pool.connect();
+                    markHealthy(broker, false);
+                } else {
+                    markHealthy(broker, true);
+                }
+            }
+            if (nameServerClient != null) {
+                refreshRoutes();
+            }
+            scheduleRefresh();
+        }, refreshIntervalMs);
+    }
+
+    /**
+     * 单个broker（初始视为健康和leader，首次请求时建立连接）
+     */
+    private static class Broker {
+        private final ClientConnectionPool pool;
+        private volatile boolean healthy = true;
+        // 只读副本复制的leader地址（leader为空）
+        private volatile String leader = "";
+
+        Broker(ClientConnectionPool pool) {
+            this.pool = pool;
+        }
+    }
+}
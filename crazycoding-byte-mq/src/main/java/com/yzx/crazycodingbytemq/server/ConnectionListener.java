@@ -0,0 +1,14 @@
+package com.yzx.crazycodingbytemq.server;
+
+/**
+ * @className: ConnectionListener
+ * @author: yzx
+ * @date: 2025/11/21 10:10
+ * @Version: 1.0
+ * @description: 连接注册/注销事件监听（如消费组成员变更触发再均衡）
+ */
+public interface ConnectionListener {
+    void onRegister(ConnectionManager.ConnectionMeta meta);
+
+    void onUnregister(ConnectionManager.ConnectionMeta meta);
+}
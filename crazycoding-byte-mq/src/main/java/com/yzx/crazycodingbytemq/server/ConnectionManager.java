@@ -23,9 +23,11 @@ import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -40,13 +42,15 @@ public class ConnectionManager {
     public static ConnectionManager getInstance() {
         return INSTANCE;
     }
-    //连接存储
-    private final Map<ChannelId, ConnectionMeta> connections  = new ConcurrentHashMap<>();
+    //连接存储:通道->(客户端id->会话元数据),连接池复用通道时一条通道上可有多个客户端会话
+    private final Map<ChannelId, Map<String, ConnectionMeta>> connections  = new ConcurrentHashMap<>();
     //客户端id映射
     private final Map<String, ChannelId> clientIdMapping = new ConcurrentHashMap<>();
-    //当前连接数
+    //当前连接数(按通道计)
     private final AtomicInteger connectionCount = new AtomicInteger(0);
     private final int maxConnections;
+    //连接事件监听器
+    private final List<ConnectionListener> listeners = new CopyOnWriteArrayList<>();
 
     private ConnectionManager() {
         ServerConfig config = ConfigLoader.bindConfig(ServerConfig.class, "mq.server");
@@ -54,22 +58,24 @@ public class ConnectionManager {
     }
 
     /**
-     * 注册新连接(带客户端id冲突)
+     * 注册客户端会话(带客户端id冲突):同一通道上同一客户端id重复连接视为重新注册(更新订阅/消费组),
+     * 客户端id已在其他通道上注册则拒绝
      * @param channel
      * @param request
      * @return
      */
     public boolean register(Channel channel, MqMessage.ConnectRequest request) {
-        //1.检查连接数是否超限
-        if (connectionCount.get() >= maxConnections) {
+        String clientId = request.getClientId();
+        ChannelId channelId = channel.id();
+        Map<String, ConnectionMeta> sessions = connections.get(channelId);
+        //1.新通道才检查连接数是否超限
+        if (sessions == null && connectionCount.get() >= maxConnections) {
             log.warn("连接数超限，当前连接数：{}", connectionCount.get());
             return false;
         }
-        String clientId = request.getClientId();
-        ChannelId channelId = channel.id();
         //检查客户端id是否存在
         ChannelId existingChannelId = clientIdMapping.putIfAbsent(clientId, channelId);
-        if (existingChannelId != null) {
+        if (existingChannelId != null && !existingChannelId.equals(channelId)) {
             log.warn("客户端已存在，ID: {}", clientId);
             return false;
         }
@@ -80,32 +86,64 @@ public class ConnectionManager {
         meta.setConnectTime(Instant.now());
         meta.setLastActiveTime(Instant.now());
         meta.setClientType(request.getClientType());
-        connections.put(channelId, meta);
-        //连接关闭自动注销
-        channel.closeFuture().addListener(future -> {
-            unregister(channel);
-        });
-        //递增连接数
-        connectionCount.incrementAndGet();
+        meta.setConsumerGroup(request.getConsumerGroup());
+        meta.setSubscriptions(List.copyOf(request.getSubscriptionsList()));
+        if (sessions == null) {
+            sessions = new ConcurrentHashMap<>();
+            connections.put(channelId, sessions);
+            //连接关闭自动注销
+            channel.closeFuture().addListener(future -> {
+                unregister(channel);
+            });
+            //递增连接数
+            connectionCount.incrementAndGet();
+        }
+        ConnectionMeta previous = sessions.put(clientId, meta);
         log.info("连接注册成功:clientId={},当前连接数={}", clientId, connectionCount.get());
+        if (previous != null) {
+            fireEvent(previous, false);
+        }
+        fireEvent(meta, true);
         return true;
     }
 
     /**
-     *移除连接
+     *移除连接(通道上的全部客户端会话)
      * @param channel
      */
     public void unregister(Channel channel) {
         if (channel == null) return;
         ChannelId id = channel.id();
-        ConnectionMeta connectionMeta = connections.remove(id);
-        if (connectionMeta == null){
+        Map<String, ConnectionMeta> sessions = connections.remove(id);
+        if (sessions == null){
             log.warn("注销未知连接: channelId={}", id);
             return;
         }
         connectionCount.decrementAndGet();
-        log.info("连接注销:clientId={},当前连接数={}", connectionMeta.getClientId(), connectionCount.get());
-        clientIdMapping.remove(connectionMeta.getClientId());
+        for (ConnectionMeta connectionMeta : sessions.values()) {
+            log.info("连接注销:clientId={},当前连接数={}", connectionMeta.getClientId(), connectionCount.get());
+            clientIdMapping.remove(connectionMeta.getClientId(), id);
+            fireEvent(connectionMeta, false);
+        }
+    }
+
+    public void addListener(ConnectionListener listener) {
+        listeners.add(listener);
+    }
+
+    //监听器异常不影响连接注册/注销
+    private void fireEvent(ConnectionMeta meta, boolean register) {
+        for (ConnectionListener listener : listeners) {
+            try {
+                if (register) {
+                    listener.onRegister(meta);
+                } else {
+                    listener.onUnregister(meta);
+                }
+            } catch (Exception e) {
+                log.error("连接事件处理失败:clientId={}", meta.getClientId(), e);
+            }
+        }
     }
 
     /**
@@ -114,7 +152,8 @@ public class ConnectionManager {
     public Channel getChannelByClientId(String clientId) {
         ChannelId channelId = clientIdMapping.get(clientId);
         if (channelId == null) return null;
-        ConnectionMeta meta = connections.get(channelId);
+        Map<String, ConnectionMeta> sessions = connections.get(channelId);
+        ConnectionMeta meta = sessions == null ? null : sessions.get(clientId);
         return meta != null ? meta.getChannel() : null;
     }
 
@@ -122,9 +161,10 @@ public class ConnectionManager {
      * 更新最后活跃时间
      */
     public void updateLastActiveTime(Channel channel) {
-        ConnectionMeta meta = connections.get(channel.id());
-        if (meta == null) return;
-        meta.setLastActiveTime(Instant.now());
+        Map<String, ConnectionMeta> sessions = connections.get(channel.id());
+        if (sessions == null) return;
+        Instant now = Instant.now();
+        sessions.values().forEach(meta -> meta.setLastActiveTime(now));
     }
 
     @Data
@@ -134,5 +174,7 @@ public class ConnectionManager {
         private String clientType;
         private Instant connectTime;
         private Instant lastActiveTime;
+        private String consumerGroup;
+        private List<String> subscriptions;
     }
 }
\ No newline at end of file
@@ -0,0 +1,116 @@
+package com.yzx.crazycodingbytemq.server;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @className: ConsumerGroupManager
+ * @author: yzx
+ * @date: 2025/11/21 10:30
+ * @Version: 1.0
+ * @description: 消费组管理（成员随连接注册/注销加入或离开，分区在订阅同一队列的成员间轮流分配；
+ * 各组的读游标和已提交偏移量由分区队列维护，见TieredMessageQueue）
+ */
+@Slf4j
+public class ConsumerGroupManager implements ConnectionListener {
+    private static final ConsumerGroupManager INSTANCE = new ConsumerGroupManager();
+    // 消费组名->消费组
+    private final Map<String, ConsumerGroup> groups = new ConcurrentHashMap<>();
+    // 消费者客户端ID->所在消费组
+    private final Map<String, String> groupOfClient = new ConcurrentHashMap<>();
+
+    public static ConsumerGroupManager getInstance() {
+        return INSTANCE;
+    }
+
+    private ConsumerGroupManager() {
+    }
+
+    @Override
+    public void onRegister(ConnectionManager.ConnectionMeta meta) {
+        if (meta.getConsumerGroup() == null || meta.getConsumerGroup().isEmpty()) return;
+        ConsumerGroup group = groups.computeIfAbsent(meta.getConsumerGroup(), ConsumerGroup::new);
+        groupOfClient.put(meta.getClientId(), group.name);
+        group.join(meta.getClientId(), meta.getSubscriptions());
+    }
+
+    @Override
+    public void onUnregister(ConnectionManager.ConnectionMeta meta) {
+        String groupName = groupOfClient.remove(meta.getClientId());
+        if (groupName == null) return;
+        ConsumerGroup group = groups.get(groupName);
+        if (group != null) {
+            group.leave(meta.getClientId());
+        }
+    }
+
+    /**
+     * 查询分配给消费者的分区
+     * @return 不是该组成员或未订阅该队列返回null
+     */
+    public int[] assignedPartitions(String groupName, String queueName, String consumerClientId) {
+        ConsumerGroup group = groups.get(groupName);
+        if (group == null) return null;
+        Map<String, int[]> queueAssignment = group.assignment.get(queueName);
+        return queueAssignment == null ? null : queueAssignment.get(consumerClientId);
+    }
+
+    /**
+     * 单个消费组：成员变更时整组重新计算分配，分配结果整体替换（读路径无锁）
+     */
+    private static class ConsumerGroup {
+        private final String name;
+        // 成员->订阅的队列（按成员ID排序，保证各次分配结果稳定）
+        private final TreeMap<String, List<String>> members = new TreeMap<>();
+        // 队列名->(成员->分区列表)
+        private volatile Map<String, Map<String, int[]>> assignment = Map.of();
+        private int generation;
+
+        ConsumerGroup(String name) {
+            this.name = name;
+        }
+
+        synchronized void join(String clientId, List<String> subscriptions) {
+            members.put(clientId, subscriptions == null ? List.of() : subscriptions);
+            rebalance("成员加入:" + clientId);
+        }
+
+        synchronized void leave(String clientId) {
+            if (members.remove(clientId) != null) {
+                rebalance("成员离开:" + clientId);
+            }
+        }
+
+        // 分区p分配给订阅该队列的第(p % 成员数)个成员
+        private void rebalance(String reason) {
+            Map<String, List<String>> subscribers = new HashMap<>();
+            members.forEach((clientId, queues) ->
+                    queues.forEach(queue -> subscribers.computeIfAbsent(queue, k -> new ArrayList<>()).add(clientId)));
+            Map<String, Map<String, int[]>> next = new HashMap<>();
+            QueueManager queueManager = QueueManager.getInstance();
+            for (Map.Entry<String, List<String>> entry : subscribers.entrySet()) {
+                List<String> consumers = entry.getValue();
+                int partitionCount = queueManager.partitionCount(entry.getKey());
+                Map<String, List<Integer>> owned = new HashMap<>();
+                consumers.forEach(clientId -> owned.put(clientId, new ArrayList<>()));
+                for (int p = 0; p < partitionCount; p++) {
+                    owned.get(consumers.get(p % consumers.size())).add(p);
+                }
+                Map<String, int[]> queueAssignment = new HashMap<>();
+                owned.forEach((clientId, partitions) ->
+                        queueAssignment.put(clientId, partitions.stream().mapToInt(Integer::intValue).toArray()));
+                next.put(entry.getKey(), Map.copyOf(queueAssignment));
+            }
+            assignment = Map.copyOf(next);
+            generation++;
+            log.info("消费组再均衡完成：group={}, generation={}, 原因={}, 成员数={}, 队列={}",
+                    name, generation, reason, members.size(), next.keySet());
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.yzx.crazycodingbytemq.server;
+
+import com.yzx.crazycodingbytemq.config.ClientConfig;
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import com.yzx.crazycodingbytemq.util.RetryPolicy;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @className: ConsumerPrefetcher
+ * @author: yzx
+ * @date: 2025/11/24 14:00
+ * @Version: 1.0
+ * @description: 消费者预取（每个队列一个后台拉取循环，用长轮询把消息拉进本地有界缓冲；
+ * poll只从内存取，缓冲超过条数或字节上限时暂停拉取，消费到一半以下再恢复）
+ */
+@Slf4j
+public class ConsumerPrefetcher {
+    private final MessageQueueConsumer consumer;
+    private final int maxMessages;
+    private final long maxBytes;
+    private final int fetchBatchSize;
+    private final long fetchMaxWaitMs;
+    private final int maxPollRecords;
+    private final RetryPolicy retryPolicy;
+    // 本地缓冲（lock保护）
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final ArrayDeque<MqMessage.MessageItem> buffer = new ArrayDeque<>();
+    private long bufferedBytes;
+    // 等待消息的异步poll
+    private final Queue<CompletableFuture<List<MqMessage.MessageItem>>> asyncWaiters = new ConcurrentLinkedQueue<>();
+    // 队列名->拉取循环
+    private final Map<String, Fetcher> fetchers = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    public ConsumerPrefetcher(MessageQueueConsumer consumer, ClientConfig clientConfig) {
+        this.consumer = consumer;
+        this.maxMessages = clientConfig.getPrefetchMessages();
+        this.maxBytes = clientConfig.getPrefetchBytes();
+        this.fetchBatchSize = Math.min(clientConfig.getFetchBatchSize(), 100);
+        this.fetchMaxWaitMs = clientConfig.getFetchMaxWait().toMillis();
+        this.maxPollRecords = clientConfig.getMaxPollRecords();
+        this.retryPolicy = new RetryPolicy(Integer.MAX_VALUE, clientConfig.getRetryInterval(), clientConfig.getRetryMaxInterval());
+    }
+
+    public void start(String queueName) {
+        if (closed) {
+            throw new IllegalStateException("消费者已关闭");
+        }
+        Fetcher fetcher = new Fetcher(queueName);
+        if (fetchers.putIfAbsent(queueName, fetcher) == null) {
+            log.info("开始预取队列：queueName={}", queueName);
+            fetcher.fetch();
+        }
+    }
+
+    public void stop(String queueName) {
+        Fetcher fetcher = fetchers.remove(queueName);
+        if (fetcher != null) {
+            fetcher.stopped = true;
+        }
+    }
+
+    public List<MqMessage.MessageItem> poll(Duration timeout) throws InterruptedException {
+        long remainingNanos = timeout.toNanos();
+        List<MqMessage.MessageItem> records;
+        lock.lock();
+        try {
+            while (buffer.isEmpty() && remainingNanos > 0 && !closed) {
+                remainingNanos = notEmpty.awaitNanos(remainingNanos);
+            }
+            records = drain();
+        } finally {
+            lock.unlock();
+        }
+        resumeFetchers();
+        return records;
+    }
+
+    public CompletableFuture<List<MqMessage.MessageItem>> pollAsync(Duration timeout) {
+        CompletableFuture<List<MqMessage.MessageItem>> future = new CompletableFuture<>();
+        lock.lock();
+        try {
+            if (!buffer.isEmpty() || closed) {
+                future.complete(drain());
+            } else {
+                asyncWaiters.offer(future);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (future.isDone()) {
+            resumeFetchers();
+            return future;
+        }
+        // 超时返回空列表
+        RequestTimer.getInstance().schedule(() -> {
+            if (asyncWaiters.remove(future)) {
+                future.complete(List.of());
+            }
+        }, timeout.toMillis());
+        return future;
+    }
+
+    public void close() {
+        closed = true;
+        fetchers.values().forEach(fetcher -> fetcher.stopped = true);
+        fetchers.clear();
+        lock.lock();
+        try {
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        CompletableFuture<List<MqMessage.MessageItem>> waiter;
+        while ((waiter = asyncWaiters.poll()) != null) {
+            waiter.complete(List.of());
+        }
+    }
+
+    // 取出最多maxPollRecords条（调用方持锁）
+    private List<MqMessage.MessageItem> drain() {
+        int count = Math.min(buffer.size(), maxPollRecords);
+        List<MqMessage.MessageItem> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            MqMessage.MessageItem messageItem = buffer.poll();
+            bufferedBytes -= messageItem.getSerializedSize();
+            records.add(messageItem);
+        }
+        return records;
+    }
+
+    private void append(List<MqMessage.MessageItem> messages) {
+        if (messages.isEmpty()) return;
+        lock.lock();
+        try {
+            for (MqMessage.MessageItem messageItem : messages) {
+                buffer.offer(messageItem);
+                bufferedBytes += messageItem.getSerializedSize();
+            }
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        // 唤醒异步poll（在锁外完成，避免回调在锁内执行）
+        CompletableFuture<List<MqMessage.MessageItem>> waiter;
+        while ((waiter = asyncWaiters.poll()) != null) {
+            List<MqMessage.MessageItem> records;
+            lock.lock();
+            try {
+                records = drain();
+            } finally {
+                lock.unlock();
+            }
+            if (records.isEmpty()) {
+                // 已被其他poll取空，放回继续等待
+                asyncWaiters.offer(waiter);
+                break;
+            }
+            waiter.complete(records);
+        }
+    }
+
+    // 剩余可拉取的条数，超过字节上限时为0
+    private int room() {
+        lock.lock();
+        try {
+            if (bufferedBytes >= maxBytes) return 0;
+            return maxMessages - buffer.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 缓冲降到一半以下时恢复暂停的拉取
+    private void resumeFetchers() {
+        boolean belowHalf;
+        lock.lock();
+        try {
+            belowHalf = buffer.size() <= maxMessages / 2 && bufferedBytes <= maxBytes / 2;
+        } finally {
+            lock.unlock();
+        }
+        if (!belowHalf) return;
+        for (Fetcher fetcher : fetchers.values()) {
+            if (fetcher.paused.compareAndSet(true, false)) {
+                fetcher.fetch();
+            }
+        }
+    }
+
+    /**
+     * 单个队列的后台拉取循环：上一次拉取完成后才发起下一次，同一队列同时只有一个在途请求
+     */
+    private class Fetcher {
+        private final String queueName;
+        private volatile boolean stopped;
+        // 缓冲已满暂停中（恢复时由CAS保证只有一方重新发起拉取）
+        private final AtomicBoolean paused = new AtomicBoolean(false);
+        // 连续失败次数（决定退避时长）
+        private int failures;
+
+        Fetcher(String queueName) {
+            this.queueName = queueName;
+        }
+
+        void fetch() {
+            if (stopped || closed) return;
+            int room = room();
+            if (room <= 0) {
+                paused.set(true);
+                // 暂停前缓冲可能已被取走过半（丢失唤醒），再检查一次
+                if (room() <= maxMessages / 2 || !paused.compareAndSet(true, false)) {
+                    return;
+                }
+                room = room();
+            }
+            consumer.pullMessage(queueName, Math.max(1, Math.min(fetchBatchSize, room)), fetchMaxWaitMs)
+                    .whenComplete((messages, e) -> {
+                        if (e != null) {
+                            long delayMs = retryPolicy.backoffMillis(failures++);
+                            log.warn("预取拉取失败，{}ms后重试：queueName={}, 原因={}", delayMs, queueName, e.getMessage());
+                            RequestTimer.getInstance().schedule(this::fetch, delayMs);
+                            return;
+                        }
+                        failures = 0;
+                        if (stopped || closed) {
+                            // 已停止：丢弃的消息未确认，由服务端可见性超时重投
+                            return;
+                        }
+                        append(messages);
+                        fetch();
+                    });
+        }
+    }
+}
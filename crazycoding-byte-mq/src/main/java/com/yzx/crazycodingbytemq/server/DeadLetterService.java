@@ -0,0 +1,83 @@
+package com.yzx.crazycodingbytemq.server;
+
+import com.yzx.crazycodingbytemq.config.ConfigLoader;
+import com.yzx.crazycodingbytemq.config.ServerConfig;
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * @className: DeadLetterService
+ * @author: yzx
+ * @date: 2025/11/18 16:20
+ * @Version: 1.0
+ * @description: 消息重试与死信（按投递次数分级退避重试，超过最大投递次数进入死信队列）
+ */
+@Slf4j
+public class DeadLetterService {
+    private static final DeadLetterService INSTANCE = new DeadLetterService();
+    // 分级重试延迟：第N次投递失败后使用第N个延迟（超出则使用最后一个）
+    private final List<Duration> retryDelays;
+    // 最大投递次数（达到后进入死信队列）
+    private final int maxDeliveryAttempts;
+
+    public static DeadLetterService getInstance() {
+        return INSTANCE;
+    }
+
+    private DeadLetterService() {
+        ServerConfig config = ConfigLoader.bindConfig(ServerConfig.class, "mq.server");
+        this.retryDelays = List.copyOf(config.getRetryDelays());
+        this.maxDeliveryAttempts = config.getMaxDeliveryAttempts();
+    }
+
+    /**
+     * 消息投递失败（消费者NACK或超时未确认）
+     * @return true表示超过最大投递次数、进入死信队列，false表示已安排重试
+     */
+    public boolean onDeliveryFailed(MqMessage.MessageItem messageItem, String reason) {
+        int deliveryCount = Math.max(1, messageItem.getDeliveryCount());
+        if (deliveryCount >= maxDeliveryAttempts) {
+            String deadLetterQueue = QueueManager.deadLetterQueueName(messageItem.getQueueName());
+            MqMessage.MessageItem deadLetter = messageItem.toBuilder()
+                    .setQueueName(deadLetterQueue)
+                    .setDeliverAt(0)
+                    .clearConsumerGroup()
+                    .build();
+            if (!QueueManager.getInstance().enqueue(deadLetter)) {
+                // 死信队列是日志队列没有容量上限，写入失败只能是磁盘错误：原消息保持未结算，重启后从消费位点重新投递
+                log.error("写入死信队列失败，消息保持未结算：queueName={}, messageId={}", deadLetterQueue, messageItem.getMessageId());
+                return true;
+            }
+            settleDeadLetter(messageItem);
+            log.warn("消息超过最大投递次数，进入死信队列：queueName={}, messageId={}, 投递次数={}, 原因={}",
+                    deadLetterQueue, messageItem.getMessageId(), deliveryCount, reason);
+            return true;
+        }
+        // 基于定时投递实现退避重试，到期后进入重试队列
+        long delayMs = retryDelays.isEmpty() ? 0 : retryDelays.get(Math.min(deliveryCount, retryDelays.size()) - 1).toMillis();
+        MqMessage.MessageItem retryItem = messageItem.toBuilder()
+                .setDeliveryCount(deliveryCount)
+                .setDeliverAt(System.currentTimeMillis() + delayMs)
+                .build();
+        ScheduledMessageService.getInstance().schedule(retryItem).thenAccept(saved -> {
+            if (!saved && !QueueManager.getInstance().deliverScheduled(retryItem)) {
+                // 定时存储不可用且重试队列已满：原消息未结算，重启后从消费位点重新投递
+                log.error("消息重试安排失败，保持未结算：queueName={}, messageId={}",
+                        messageItem.getQueueName(), messageItem.getMessageId());
+            }
+        });
+        log.info("消息投递失败，{}ms后重试：queueName={}, messageId={}, 投递次数={}, 原因={}",
+                delayMs, messageItem.getQueueName(), messageItem.getMessageId(), deliveryCount, reason);
+        return false;
+    }
+
+    // 进入死信（或已持久化在去往死信队列的定时存储中）后原消息才结算，消费位点可以越过它；
+    // 顺序队列此时才释放消息键（重试期间同键后续消息保持等待）
+    private void settleDeadLetter(MqMessage.MessageItem messageItem) {
+        QueueManager.getInstance().settle(messageItem);
+        QueueManager.getInstance().releaseOrderingKey(messageItem);
+    }
+}
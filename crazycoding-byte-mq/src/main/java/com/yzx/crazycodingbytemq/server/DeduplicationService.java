@@ -0,0 +1,229 @@
+package com.yzx.crazycodingbytemq.server;
+
+import com.yzx.crazycodingbytemq.config.ConfigLoader;
+import com.yzx.crazycodingbytemq.config.ServerConfig;
+import com.yzx.crazycodingbytemq.util.HashUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @className: DeduplicationService
+ * @author: yzx
+ * @date: 2025/11/22 10:20
+ * @Version: 1.0
+ * @description: 消息去重窗口（按队列维护：分时间桶的布隆过滤器做快速判断，命中后再查有界的精确ID集合；
+ * 只对带幂等ID的消息去重，时间桶按需分配，窗口期内没有新记录的队列整体回收）
+ */
+@Slf4j
+public class DeduplicationService {
+    private static final DeduplicationService INSTANCE = new DeduplicationService();
+    private final boolean enabled;
+    // 去重窗口时长
+    private final long windowMs;
+    // 布隆过滤器时间桶数（窗口按桶滚动，最老的桶整体清空复用）
+    private final int bucketCount;
+    // 单个时间桶的位数和哈希函数个数
+    private final int bitsPerBucket;
+    private final int hashFunctions;
+    // 精确ID集合容量
+    private final int exactSetSize;
+    // 队列名->去重窗口
+    private final Map<String, DedupWindow> windows = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService idleWindowSweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "dedup-window-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public static DeduplicationService getInstance() {
+        return INSTANCE;
+    }
+
+    private DeduplicationService() {
+        ServerConfig config = ConfigLoader.bindConfig(ServerConfig.class, "mq.server");
+        this.enabled = config.isDedupEnabled();
+        this.windowMs = config.getDedupWindow().toMillis();
+        this.bucketCount = Math.max(1, config.getDedupBloomBuckets());
+        // 按期望元素数和误判率计算：m = -n·ln(p)/(ln2)^2，k = m/n·ln2
+        long expected = Math.max(1, config.getDedupExpectedIdsPerBucket());
+        double fpp = config.getDedupFalsePositiveRate();
+        long bits = (long) Math.ceil(-expected * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        // 位数取2的幂，下标用位运算
+        this.bitsPerBucket = (int) Math.min(1L << 30, Long.highestOneBit(Math.max(64, bits - 1)) << 1);
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bitsPerBucket / expected * Math.log(2)));
+        // 精确集合至少能容纳整个窗口的ID（桶数×每桶期望数），否则窗口内较早的ID被挤出后重复消息无法识别；未配置时按窗口计算
+        long windowIds = (long) bucketCount * expected;
+        if (config.getDedupExactSetSize() > 0 && config.getDedupExactSetSize() < windowIds) {
+            throw new IllegalArgumentException("去重精确集合容量小于窗口内期望ID数（桶数×每桶期望数=" + windowIds
+                    + "）：dedup-exact-set-size=" + config.getDedupExactSetSize());
+        }
+        this.exactSetSize = (int) Math.min(Integer.MAX_VALUE,
+                config.getDedupExactSetSize() > 0 ? config.getDedupExactSetSize() : windowIds);
+        if (enabled) {
+            idleWindowSweeper.scheduleWithFixedDelay(this::sweepIdleWindows, windowMs, windowMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 检查并记录幂等ID
+     * @return true表示窗口内已出现过（重复消息）
+     */
+    public boolean checkAndRecord(String queueName, String idempotencyKey) {
+        if (!enabled || idempotencyKey == null || idempotencyKey.isEmpty()) return false;
+        long now = System.currentTimeMillis();
+        while (true) {
+            Boolean duplicate = windows.computeIfAbsent(queueName, k -> new DedupWindow()).checkAndRecord(idempotencyKey, now);
+            // 窗口刚被回收则换新窗口重试
+            if (duplicate != null) return duplicate;
+        }
+    }
+
+    /**
+     * 撤销记录（消息最终未入队时调用，生产者重试不被误判为重复）
+     */
+    public void forget(String queueName, String idempotencyKey) {
+        if (!enabled || idempotencyKey == null || idempotencyKey.isEmpty()) return;
+        DedupWindow window = windows.get(queueName);
+        if (window != null) {
+            window.forget(idempotencyKey);
+        }
+    }
+
+    // 回收窗口期内没有新记录的队列窗口（队列不再使用时释放布隆过滤器和精确集合）
+    private void sweepIdleWindows() {
+        long deadline = System.currentTimeMillis() - windowMs;
+        windows.forEach((queueName, window) -> {
+            if (window.retireIfIdle(deadline)) {
+                windows.remove(queueName, window);
+                log.debug("回收空闲的去重窗口：queueName={}", queueName);
+            }
+        });
+    }
+
+    /**
+     * 单个队列的去重窗口（布隆过滤器不支持删除，撤销只作用于精确集合，布隆误判会回落到精确集合判定）
+     */
+    private class DedupWindow {
+        private final long bucketMs = Math.max(1, windowMs / bucketCount);
+        // 环形排列的时间桶，每个桶一个位图（首次写入该桶时分配）
+        private final long[][] buckets = new long[bucketCount][];
+        // 每个桶对应的时间段编号（-1表示空）
+        private final long[] bucketEpochs = new long[bucketCount];
+        // 精确ID集合及其插入顺序（按容量和窗口双重淘汰）
+        private final Set<String> exactIds = new HashSet<>();
+        private final ArrayDeque<RecentId> recentIds = new ArrayDeque<>();
+
+        // 最近一次记录的时间
+        private long lastRecordMs = System.currentTimeMillis();
+        // 已回收（不再记录，调用方换新窗口）
+        private boolean retired;
+
+        DedupWindow() {
+            Arrays.fill(bucketEpochs, -1);
+        }
+
+        /**
+         * @return 窗口已回收返回null
+         */
+        synchronized Boolean checkAndRecord(String id, long now) {
+            if (retired) return null;
+            lastRecordMs = now;
+            long epoch = now / bucketMs;
+            long hash = HashUtils.mix64(HashUtils.fnv1a64(id));
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            expire(now);
+            // 布隆过滤器：窗口内所有桶都未命中则一定是新ID
+            if (mightContain(h1, h2, epoch) && exactIds.contains(id)) {
+                return true;
+            }
+            add(currentBucket(epoch), h1, h2);
+            if (exactIds.add(id)) {
+                recentIds.addLast(new RecentId(id, now));
+                if (recentIds.size() > exactSetSize) {
+                    exactIds.remove(recentIds.pollFirst().id);
+                }
+            }
+            return false;
+        }
+
+        synchronized boolean retireIfIdle(long deadline) {
+            if (lastRecordMs < deadline) {
+                retired = true;
+            }
+            return retired;
+        }
+
+        synchronized void forget(String id) {
+            // 队尾即最近记录的ID，绝大多数撤销在这里命中
+            if (exactIds.remove(id)) {
+                RecentId last = recentIds.peekLast();
+                if (last != null && last.id.equals(id)) {
+                    recentIds.pollLast();
+                } else {
+                    recentIds.removeIf(recent -> recent.id.equals(id));
+                }
+            }
+        }
+
+        private boolean mightContain(int h1, int h2, long epoch) {
+            for (int i = 0; i < bucketCount; i++) {
+                long bucketEpoch = bucketEpochs[i];
+                if (bucketEpoch < 0 || epoch - bucketEpoch >= bucketCount || buckets[i] == null) continue;
+                if (contains(buckets[i], h1, h2)) return true;
+            }
+            return false;
+        }
+
+        // 当前时间段对应的桶，过期的桶清空复用
+        private long[] currentBucket(long epoch) {
+            int index = (int) (epoch % bucketCount);
+            if (buckets[index] == null) {
+                buckets[index] = new long[bitsPerBucket >>> 6];
+                bucketEpochs[index] = epoch;
+            } else if (bucketEpochs[index] != epoch) {
+                Arrays.fill(buckets[index], 0L);
+                bucketEpochs[index] = epoch;
+            }
+            return buckets[index];
+        }
+
+        // Kirsch-Mitzenmacher双重哈希：第i个哈希为h1+i*h2
+        private void add(long[] bits, int h1, int h2) {
+            int mask = bitsPerBucket - 1;
+            for (int i = 0; i < hashFunctions; i++) {
+                int bit = (h1 + i * h2) & mask;
+                bits[bit >>> 6] |= 1L << bit;
+            }
+        }
+
+        private boolean contains(long[] bits, int h1, int h2) {
+            int mask = bitsPerBucket - 1;
+            for (int i = 0; i < hashFunctions; i++) {
+                int bit = (h1 + i * h2) & mask;
+                if ((bits[bit >>> 6] & (1L << bit)) == 0) return false;
+            }
+            return true;
+        }
+
+        private void expire(long now) {
+            RecentId oldest;
+            while ((oldest = recentIds.peekFirst()) != null && now - oldest.timestamp >= windowMs) {
+                recentIds.pollFirst();
+                exactIds.remove(oldest.id);
+            }
+        }
+    }
+
+    private record RecentId(String id, long timestamp) {
+    }
+}
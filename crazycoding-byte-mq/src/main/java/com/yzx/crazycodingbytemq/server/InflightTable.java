@@ -0,0 +1,123 @@
+package com.yzx.crazycodingbytemq.server;
+
+import com.yzx.crazycodingbytemq.config.ConfigLoader;
+import com.yzx.crazycodingbytemq.config.ServerConfig;
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import com.yzx.crazycodingbytemq.timer.HierarchicalTimer;
+import com.yzx.crazycodingbytemq.timer.TimerTask;
+import io.netty.util.collection.LongObjectHashMap;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @className: InflightTable
+ * @author: yzx
+ * @date: 2025/11/19 15:10
+ * @Version: 1.0
+ * @description: 已投递未确认消息表（按投递标签分段的long主键哈希表，超时由时间轮触发重投）
+ */
+@Slf4j
+public class InflightTable {
+    private static final InflightTable INSTANCE = new InflightTable();
+    // 投递标签生成器（broker内全局递增，0保留表示无标签）
+    private final AtomicLong deliveryTagSequence = new AtomicLong(0);
+    // 分段的long主键开放寻址哈希表，避免装箱和链表节点开销
+    private final LongObjectHashMap<InflightMessage>[] segments;
+    private final int segmentMask;
+    // 可见性超时扫描器（与定时消息共用分层时间轮实现）
+    private final HierarchicalTimer timer;
+    private final long defaultVisibilityTimeoutMs;
+    private final AtomicLong inflightCount = new AtomicLong(0);
+
+    public static InflightTable getInstance() {
+        return INSTANCE;
+    }
+
+    @SuppressWarnings("unchecked")
+    private InflightTable() {
+        ServerConfig config = ConfigLoader.bindConfig(ServerConfig.class, "mq.server");
+        int segmentCount = Integer.highestOneBit(Math.max(1, config.getInflightTableSegments() - 1)) << 1;
+        this.segments = (LongObjectHashMap<InflightMessage>[]) new LongObjectHashMap<?>[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new LongObjectHashMap<>(1024);
+        }
+        this.segmentMask = segmentCount - 1;
+        this.defaultVisibilityTimeoutMs = config.getVisibilityTimeout().toMillis();
+        this.timer = new HierarchicalTimer("inflight-timer", config.getTimerTickMs(), config.getTimerWheelSize());
+    }
+
+    /**
+     * 登记已投递消息：分配投递标签并注册可见性超时
+     * @param visibilityTimeoutMs 可见性超时（<=0使用默认值）
+     * @return 带投递标签的消息（返回给消费者）
+     */
+    public MqMessage.MessageItem track(MqMessage.MessageItem messageItem, String consumerClientId, long visibilityTimeoutMs) {
+        long deliveryTag = deliveryTagSequence.incrementAndGet();
+        MqMessage.MessageItem delivered = messageItem.toBuilder().setDeliveryTag(deliveryTag).build();
+        long timeoutMs = visibilityTimeoutMs > 0 ? visibilityTimeoutMs : defaultVisibilityTimeoutMs;
+        InflightMessage inflight = new InflightMessage(delivered, consumerClientId, System.currentTimeMillis() + timeoutMs);
+        LongObjectHashMap<InflightMessage> segment = segmentOf(deliveryTag);
+        synchronized (segment) {
+            segment.put(deliveryTag, inflight);
+        }
+        inflightCount.incrementAndGet();
+        timer.add(inflight);
+        return delivered;
+    }
+
+    /**
+     * 移除已投递消息（确认/消费失败时调用），同时取消超时任务
+     * @return 不存在（已确认或已超时重投）返回null
+     */
+    public InflightMessage remove(long deliveryTag) {
+        InflightMessage inflight;
+        LongObjectHashMap<InflightMessage> segment = segmentOf(deliveryTag);
+        synchronized (segment) {
+            inflight = segment.remove(deliveryTag);
+        }
+        if (inflight == null) return null;
+        inflightCount.decrementAndGet();
+        inflight.cancel();
+        return inflight;
+    }
+
+    public long size() {
+        return inflightCount.get();
+    }
+
+    private LongObjectHashMap<InflightMessage> segmentOf(long deliveryTag) {
+        return segments[(int) (deliveryTag & segmentMask)];
+    }
+
+    /**
+     * 已投递未确认的消息（自身即超时任务）
+     */
+    @Getter
+    public class InflightMessage extends TimerTask {
+        private final MqMessage.MessageItem messageItem;
+        private final String consumerClientId;
+
+        InflightMessage(MqMessage.MessageItem messageItem, String consumerClientId, long deadlineMs) {
+            super(deadlineMs);
+            this.messageItem = messageItem;
+            this.consumerClientId = consumerClientId;
+        }
+
+        // 可见性超时：仍未确认则按投递失败处理（重试或死信）
+        @Override
+        public void run() {
+            long deliveryTag = messageItem.getDeliveryTag();
+            LongObjectHashMap<InflightMessage> segment = segmentOf(deliveryTag);
+            synchronized (segment) {
+                if (segment.get(deliveryTag) != this) return;
+                segment.remove(deliveryTag);
+            }
+            inflightCount.decrementAndGet();
+            log.warn("消息可见性超时未确认，重新投递：queueName={}, messageId={}, consumer={}",
+                    messageItem.getQueueName(), messageItem.getMessageId(), consumerClientId);
+            DeadLetterService.getInstance().onDeliveryFailed(messageItem, "可见性超时");
+        }
+    }
+}
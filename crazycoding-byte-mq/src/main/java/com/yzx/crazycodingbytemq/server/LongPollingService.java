@@ -0,0 +1,216 @@
+package com.yzx.crazycodingbytemq.server;
+
+import com.yzx.crazycodingbytemq.config.ConfigLoader;
+import com.yzx.crazycodingbytemq.config.ServerConfig;
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * @className: LongPollingService
+ * @author: yzx
+ * @date: 2025/11/20 10:30
+ * @Version: 1.0
+ * @description: 长轮询拉取（队列为空时挂起拉取请求，有消息入队立即唤醒，超时由哈希时间轮触发空响应）
+ */
+@Slf4j
+public class LongPollingService {
+    private static final LongPollingService INSTANCE = new LongPollingService();
+    // 挂起状态：等待中 / 正在处理 / 已完成
+    private static final int WAITING = 0;
+    private static final int PROCESSING = 1;
+    private static final int DONE = 2;
+    // 消息不属于特定分区（重试队列），组内任一成员都可拉取
+    public static final int ANY_PARTITION = -1;
+    // 队列名->(消费组->挂起的拉取请求)，不带消费组的共享消费者视为同一组
+    private final Map<String, Map<String, Queue<PendingPull>>> waiters = new ConcurrentHashMap<>();
+    // 队列名->消息到达次数
+    private final Map<String, AtomicLong> arrivalCounts = new ConcurrentHashMap<>();
+    private final HashedWheelTimer timer = new HashedWheelTimer(
+            new DefaultThreadFactory("long-polling-timer"), 10, TimeUnit.MILLISECONDS);
+    // 单次挂起最长等待时间
+    private final long maxWaitMs;
+
+    public static LongPollingService getInstance() {
+        return INSTANCE;
+    }
+
+    private LongPollingService() {
+        ServerConfig config = ConfigLoader.bindConfig(ServerConfig.class, "mq.server");
+        this.maxWaitMs = config.getMaxLongPollWait().toMillis();
+    }
+
+    /**
+     * 挂起拉取请求，直到有消息入队或超时
+     * @param responder 响应回写（在队列归属线程或通道所属EventLoop上调用）
+     */
+    public void park(ChannelHandlerContext ctx, MqMessage.PullMessageRequest request,
+                     BiConsumer<ChannelHandlerContext, MqMessage.PullMessageResponse> responder) {
+        long waitMs = Math.min(request.getMaxWaitMs(), maxWaitMs);
+        // 按时间回溯已在首次拉取时重置读游标，唤醒后重新拉取不能再次重置
+        if (request.getStartTimestamp() > 0) {
+            request = request.toBuilder().clearStartTimestamp().build();
+        }
+        PendingPull pending = new PendingPull(ctx, request, responder, System.currentTimeMillis() + waitMs);
+        pending.timeout = timer.newTimeout(pending, waitMs, TimeUnit.MILLISECONDS);
+        enqueue(pending);
+    }
+
+    /**
+     * 消息入队后调用：每个消费组唤醒一个挂起的拉取请求（各组都要消费这条消息）。
+     * 消费组成员只拉取分配给自己的分区，分区已知时唤醒该分区的归属成员，唤醒其他成员拉不到消息；
+     * 归属成员不在等待时唤醒组内全部等待者
+     * @param partition 消息所在分区，ANY_PARTITION表示组内任一成员都可拉取（重试队列）
+     */
+    public void notifyMessageArrived(String queueName, int partition) {
+        arrivalCounter(queueName).incrementAndGet();
+        Map<String, Queue<PendingPull>> groups = waiters.get(queueName);
+        if (groups == null) return;
+        groups.forEach((group, queue) -> {
+            if (group.isEmpty() || partition == ANY_PARTITION) {
+                wakeOne(queue);
+            } else {
+                wakeOwner(queueName, group, partition, queue);
+            }
+        });
+    }
+
+    private void wakeOne(Queue<PendingPull> queue) {
+        PendingPull pending;
+        while ((pending = queue.poll()) != null) {
+            if (pending.state.compareAndSet(WAITING, PROCESSING)) {
+                dispatch(pending);
+                return;
+            }
+        }
+    }
+
+    // 按当前分配查找分区的归属成员（再均衡后挂起时的分配可能已过期，不按挂起时的分区建索引）
+    private void wakeOwner(String queueName, String group, int partition, Queue<PendingPull> queue) {
+        ConsumerGroupManager groupManager = ConsumerGroupManager.getInstance();
+        for (PendingPull pending : queue) {
+            int[] assigned = groupManager.assignedPartitions(group, queueName, pending.request.getConsumerClientId());
+            if (assigned != null && contains(assigned, partition) && pending.state.compareAndSet(WAITING, PROCESSING)) {
+                queue.remove(pending);
+                dispatch(pending);
+                return;
+            }
+        }
+        // 归属成员没有挂起（正在处理或分配变化中），唤醒组内全部等待者，由各自按最新分配重新拉取
+        PendingPull pending;
+        while ((pending = queue.poll()) != null) {
+            if (pending.state.compareAndSet(WAITING, PROCESSING)) {
+                dispatch(pending);
+            }
+        }
+    }
+
+    private static boolean contains(int[] partitions, int partition) {
+        for (int p : partitions) {
+            if (p == partition) return true;
+        }
+        return false;
+    }
+
+    // 重新拉取投递到队列归属线程（未绑定时回到通道所属线程）
+    private void dispatch(PendingPull pending) {
+        EventExecutor owner = QueueOwnerRegistry.getInstance().ownerOf(pending.request.getQueueName());
+        (owner != null ? owner : pending.ctx.executor()).execute(() -> process(pending));
+    }
+
+    // 进入等待；入队前后可能有消息到达（丢失唤醒），入队后按该消费者可拉取的分区再检查一次
+    private void enqueue(PendingPull pending) {
+        waitersOf(pending.request).offer(pending);
+        if (!QueueManager.getInstance().isEmpty(pending.request) && pending.state.compareAndSet(WAITING, PROCESSING)) {
+            waitersOf(pending.request).remove(pending);
+            dispatch(pending);
+        }
+    }
+
+    private AtomicLong arrivalCounter(String queueName) {
+        return arrivalCounts.computeIfAbsent(queueName, k -> new AtomicLong());
+    }
+
+    public void shutdown() {
+        timer.stop();
+    }
+
+    // 在队列归属线程上重新拉取：拉到消息则响应，被其他消费者抢先则继续挂起
+    private void process(PendingPull pending) {
+        if (!pending.ctx.channel().isActive()) {
+            pending.state.set(DONE);
+            pending.timeout.cancel();
+            return;
+        }
+        // 处理期间到达的消息找不到等待中的请求，重新挂起后据此补检查
+        long arrivals = arrivalCounter(pending.request.getQueueName()).get();
+        MqMessage.PullMessageResponse response = QueueManager.getInstance().pullMessage(pending.request);
+        if (response.getMessageListCount() > 0 || System.currentTimeMillis() >= pending.deadlineMs) {
+            pending.state.set(DONE);
+            pending.timeout.cancel();
+            pending.responder.accept(pending.ctx, response);
+            return;
+        }
+        pending.state.set(WAITING);
+        // 没有新消息到达时直接挂起（顺序队列积压到上限时队列非空但拉不到消息，不能反复重拉）
+        if (arrivalCounter(pending.request.getQueueName()).get() == arrivals) {
+            waitersOf(pending.request).offer(pending);
+        } else {
+            enqueue(pending);
+        }
+    }
+
+    private Queue<PendingPull> waitersOf(MqMessage.PullMessageRequest request) {
+        return waiters.computeIfAbsent(request.getQueueName(), k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(request.getConsumerGroup(), k -> new ConcurrentLinkedQueue<>());
+    }
+
+    /**
+     * 挂起的拉取请求（自身即超时任务）
+     */
+    private class PendingPull implements TimerTask {
+        private final ChannelHandlerContext ctx;
+        private final MqMessage.PullMessageRequest request;
+        private final BiConsumer<ChannelHandlerContext, MqMessage.PullMessageResponse> responder;
+        private final long deadlineMs;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        private volatile Timeout timeout;
+
+        PendingPull(ChannelHandlerContext ctx, MqMessage.PullMessageRequest request,
+                    BiConsumer<ChannelHandlerContext, MqMessage.PullMessageResponse> responder, long deadlineMs) {
+            this.ctx = ctx;
+            this.request = request;
+            this.responder = responder;
+            this.deadlineMs = deadlineMs;
+        }
+
+        // 超时：返回空响应；正在处理中则稍后再检查
+        @Override
+        public void run(Timeout ignored) {
+            if (state.compareAndSet(WAITING, DONE)) {
+                waitersOf(request).remove(this);
+                MqMessage.PullMessageResponse response = MqMessage.PullMessageResponse.newBuilder()
+                        .setSuccess(true)
+                        .setMessage("队列不存在或已空")
+                        .build();
+                ctx.executor().execute(() -> responder.accept(ctx, response));
+            } else if (state.get() == PROCESSING) {
+                timeout = timer.newTimeout(this, 10, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+}
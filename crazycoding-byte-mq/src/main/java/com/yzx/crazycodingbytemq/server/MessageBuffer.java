@@ -0,0 +1,19 @@
+package com.yzx.crazycodingbytemq.server;
+
+import com.yzx.crazycodingbytemq.model.MqMessage;
+
+/**
+ * @className: MessageBuffer
+ * @author: yzx
+ * @date: 2025/11/23 10:30
+ * @Version: 1.0
+ * @description: 待拉取消息的出队视图（内存环形队列和磁盘分层队列共用的拉取接口）
+ */
+public interface MessageBuffer {
+    /**
+     * 出队，没有可立即投递的消息返回null
+     */
+    MqMessage.MessageItem poll();
+
+    boolean isEmpty();
+}
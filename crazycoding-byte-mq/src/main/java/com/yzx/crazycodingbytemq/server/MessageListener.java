@@ -0,0 +1,15 @@
+package com.yzx.crazycodingbytemq.server;
+
+import com.yzx.crazycodingbytemq.model.MqMessage;
+
+/**
+ * @className: MessageListener
+ * @author: yzx
+ * @date: 2025/11/24 16:00
+ * @Version: 1.0
+ * @description: 并行消费监听器（在虚拟线程上回调，可以直接做阻塞IO；正常返回视为消费成功，抛出异常视为消费失败并上报broker重试）
+ */
+@FunctionalInterface
+public interface MessageListener {
+    void onMessage(MqMessage.MessageItem messageItem) throws Exception;
+}
@@ -1,29 +1,34 @@
 package com.yzx.crazycodingbytemq.server;
 
 import com.yzx.crazycodingbytemq.codec.ProtocolConstant;
-import com.yzx.crazycodingbytemq.codec.ProtocolDecoder;
-import com.yzx.crazycodingbytemq.codec.ProtocolEncoder;
 import com.yzx.crazycodingbytemq.config.ClientConfig;
 import com.yzx.crazycodingbytemq.config.ConfigLoader;
+import com.yzx.crazycodingbytemq.enums.LocalTransactionState;
 import com.yzx.crazycodingbytemq.enums.MessageTypeEnum;
+import com.yzx.crazycodingbytemq.exception.BrokerUnavailableException;
+import com.yzx.crazycodingbytemq.exception.BufferExhaustedException;
+import com.yzx.crazycodingbytemq.exception.ConnectionLostException;
+import com.yzx.crazycodingbytemq.exception.RequestTimeoutException;
 import com.yzx.crazycodingbytemq.handler.ClientResponseHandler;
-import com.yzx.crazycodingbytemq.handler.HeartbeatHandler;
 import com.yzx.crazycodingbytemq.model.MqMessage;
 import com.yzx.crazycodingbytemq.pool.ClientConnectionPool;
-import io.netty.bootstrap.Bootstrap;
+import com.yzx.crazycodingbytemq.util.RetryPolicy;
 import io.netty.channel.Channel;
-import io.netty.channel.ChannelInitializer;
-import io.netty.channel.ChannelOption;
-import io.netty.channel.ChannelPipeline;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
-import io.netty.handler.timeout.IdleStateHandler;
 import lombok.extern.slf4j.Slf4j;
 import com.yzx.crazycodingbytemq.codec.ProtocolFrame;
 
+import java.nio.channels.ClosedChannelException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -35,135 +40,362 @@ import java.util.concurrent.TimeUnit;
  */
 @Slf4j
 public class MessageQueueClient {
-    private final String host;
-    private final int port;
     private final String clientId;
-    private final ClientConnectionPool connectionPool;
+    // 多broker路由与故障转移
+    private final BrokerRouter brokerRouter;
     private final ClientConfig clientConfig;
+    // 生产者消息按队列攒批发送
+    private final ProducerAccumulator accumulator;
+    // 请求截止时间与退避重试
+    private final RequestTimer requestTimer = RequestTimer.getInstance();
+    private final RetryPolicy retryPolicy;
+    // 事务消息监听器及执行本地事务/回查的线程池（设置监听器后创建）
+    private volatile TransactionListener transactionListener;
+    private volatile ExecutorService transactionExecutor;
 
     // 构造器：传入服务端地址+客户端ID
     public MessageQueueClient(String host, int port, String clientId) {
-        this.host = host;
-        this.port = port;
+        this(List.of(host + ":" + port), clientId);
+    }
+
+    // 构造器：使用配置中的broker地址列表
+    public MessageQueueClient(String clientId) {
+        this(ConfigLoader.bindConfig(ClientConfig.class, "mq.client").getBrokers(), clientId);
+    }
+
+    // 构造器：传入broker地址列表（host:port）+客户端ID
+    public MessageQueueClient(List<String> brokers, String clientId) {
         this.clientId = clientId;
-        this.connectionPool = ClientConnectionPool.getInstance(host, port);
         this.clientConfig = ConfigLoader.bindConfig(ClientConfig.class, "mq.client");
+        this.brokerRouter = new BrokerRouter(brokers, clientConfig);
+        this.accumulator = new ProducerAccumulator(brokerRouter, clientConfig);
+        this.retryPolicy = new RetryPolicy(clientConfig.getRetryCount(), clientConfig.getRetryInterval(),
+                clientConfig.getRetryMaxInterval());
     }
 
-    //启动客户端发送连接请求
+    //启动客户端:向每个broker发送连接请求,任一broker连接成功即视为启动成功(发现模式下之后新注册的broker也会自动连接)
     public CompletableFuture<Boolean> start() {
-        CompletableFuture<Boolean> booleanCompletableFuture = new CompletableFuture<>();
-        //从连接池获取连接
-        connectionPool.acquire().whenComplete((channel, throwable) -> {
-            if (throwable != null) {
-                log.error("获取连接失败:{}", throwable.getMessage());
-                booleanCompletableFuture.complete(false);
-                return;
+        brokerRouter.onBrokerAdded(this::connectBroker);
+        return brokerRouter.ready().thenCompose(ready -> {
+            List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+            for (ClientConnectionPool pool : brokerRouter.pools()) {
+                futures.add(connectBroker(pool));
             }
-            //发送连接请求
-            sendConnectRequest(channel);
-            booleanCompletableFuture.complete(true);
+            return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                    .thenApply(v -> futures.stream().anyMatch(CompletableFuture::join));
+        });
+    }
+
+    //连接会话:断线重连后连接池在新连接上重放连接请求和事务回查绑定
+    private CompletableFuture<Boolean> connectBroker(ClientConnectionPool pool) {
+        return pool.openSession(clientId, channel -> {
+            //broker按客户端ID在该连接上回查事务
+            bindTransactionChecker(channel);
+            MqMessage.ConnectRequest request = MqMessage.ConnectRequest.newBuilder()
+                    .setClientId(clientId)
+                    .setClientType(clientConfig.getClientType())
+                    .setClientVersion(clientConfig.getClientVersion())
+                    .build();
+            return sendConnectRequest(channel, request, clientConfig.getConnectTimeout().toMillis())
+                    .thenApply(response -> {
+                        if (!response.getSuccess()) {
+                            log.error("连接请求被拒绝:broker={}, {}", pool.address(), response.getMessage());
+                            return false;
+                        }
+                        //按连接响应中的leader地址划分副本组
+                        brokerRouter.onConnected(pool, response);
+                        return true;
+                    });
+        }).exceptionally(throwable -> {
+            log.error("连接broker失败:broker={}, {}", pool.address(), throwable.getMessage());
+            return false;
         });
-        return booleanCompletableFuture;
     }
 
     /**
-     * 发送连接请求
+     * 发送连接请求,按服务端的连接响应完成
      */
-    private void sendConnectRequest(Channel channel) {
-        //发送连接请求
-        MqMessage.ConnectRequest request = MqMessage.ConnectRequest.newBuilder()
-                .setClientId(clientId)
-                .setClientType(clientConfig.getClientType())
-                .setClientVersion(clientConfig.getClientVersion())
-                .build();
+    static CompletableFuture<MqMessage.ConnectResponse> sendConnectRequest(Channel channel, MqMessage.ConnectRequest request,
+                                                                           long timeoutMs) {
+        channel.attr(ClientResponseHandler.CONNECT_FUTURES).setIfAbsent(new ConcurrentLinkedQueue<>());
+        CompletableFuture<MqMessage.ConnectResponse> response = new CompletableFuture<>();
+        channel.attr(ClientResponseHandler.CONNECT_FUTURES).get().add(response);
         byte[] body = request.toByteArray();
-        ProtocolFrame protocolFrame = new ProtocolFrame(
+        channel.writeAndFlush(new ProtocolFrame(
                 ProtocolConstant.MAGIC,
                 ProtocolConstant.Version,
                 body.length,
                 MessageTypeEnum.CONNECT_REQUEST.getCode(),
                 body
-        );
-        channel.writeAndFlush(protocolFrame);
-        log.info("发送连接请求:{}", protocolFrame);
+        )).addListener(result -> {
+            if (!result.isSuccess()) {
+                response.completeExceptionally(result.cause());
+            }
+        });
+        log.info("发送连接请求:clientId={}, channelId={}", request.getClientId(), channel.id());
+        return RequestTimer.getInstance().withTimeout(response, timeoutMs, "连接请求");
     }
 
     /**
      *发送消息(生产者api)
      */
     public CompletableFuture<Boolean> sendMessage(String queueName, String messageBody) {
-        CompletableFuture<Boolean> booleanCompletableFuture = new CompletableFuture<>();
-        long minutes = clientConfig.getConnectTimeout().toMinutes();
-        connectionPool.acquire().whenComplete((channel, throwable) -> {
+        return sendMessage(queueName, messageBody, 0);
+    }
+
+    /**
+     * 发送延迟消息(生产者api)
+     * @param delay 延迟时长，到期后消费者才可见
+     */
+    public CompletableFuture<Boolean> sendDelayMessage(String queueName, String messageBody, Duration delay) {
+        return sendMessage(queueName, messageBody, System.currentTimeMillis() + delay.toMillis());
+    }
+
+    /**
+     * 发送定时消息(生产者api)
+     * @param deliverAt 投递时间戳(毫秒)，0表示立即投递
+     */
+    public CompletableFuture<Boolean> sendMessage(String queueName, String messageBody, long deliverAt) {
+        return sendMessage(queueName, null, messageBody, deliverAt);
+    }
+
+    /**
+     * 发送带消息键的消息(生产者api)：分区队列中相同键的消息进入同一分区，保证顺序
+     */
+    public CompletableFuture<Boolean> sendMessage(String queueName, String messageKey, String messageBody, long deliverAt) {
+        return sendMessage(queueName, messageKey, messageBody, deliverAt, null);
+    }
+
+    /**
+     * 发送带幂等ID的消息(生产者api)：超时重试时传入相同的幂等ID，broker在去重窗口内只接收一次
+     */
+    public CompletableFuture<Boolean> sendIdempotentMessage(String queueName, String idempotencyKey, String messageBody) {
+        return sendMessage(queueName, null, messageBody, 0, idempotencyKey);
+    }
+
+    private CompletableFuture<Boolean> sendMessage(String queueName, String messageKey, String messageBody,
+                                                   long deliverAt, String idempotencyKey) {
+        return send(queueName, messageKey, messageBody, deliverAt, idempotencyKey).thenApply(response -> {
+            if (!response.getSuccess()) {
+                log.warn("消息发送未成功：messageId={}, status={}, message={}",
+                        response.getMessageId(), response.getStatus(), response.getMessage());
+            }
+            return response.getSuccess();
+        });
+    }
+
+    /**
+     * 发送消息并返回broker的完整响应(生产者api)：可据此区分重复、队列满等状态;
+     * 生产者缓冲区满时阻塞调用方线程最多maxBlock,仍无空间则以BufferExhaustedException失败
+     */
+    public CompletableFuture<MqMessage.SendMessageResponse> send(String queueName, String messageKey, String messageBody,
+                                                                 long deliverAt, String idempotencyKey) {
+        //构建发送消息请求
+        MqMessage.SendMessageRequest request = MqMessage.SendMessageRequest.newBuilder()
+                .setQueueName(queueName)
+                .setMessageId(UUID.randomUUID().toString())
+                .setMessageBody(messageBody)
+                .setProducerClientId(clientId)
+                .setPriority(0) //默认优先级
+                .setDeliverAt(deliverAt)
+                .setMessageKey(messageKey == null ? "" : messageKey)
+                .setIdempotencyKey(idempotencyKey == null ? "" : idempotencyKey)
+                .setAckMode(clientConfig.getAckMode())
+                .build();
+        //交给累加器攒批发送，broker确认入队后完成；队列满、副本拒绝写入、无可用broker、写出失败（均未入队）可安全重试，
+        //超时、响应前断连和副本数不足只在带幂等ID时重试（重发可能已入队，由broker去重）
+        boolean idempotent = !request.getIdempotencyKey().isEmpty();
+        //缓冲区在重试结束、得到最终结果后才释放;缓冲区满时在调用方线程阻塞,超过maxBlock则不发送
+        int size = request.getSerializedSize();
+        if (!accumulator.reserve(size)) {
+            return CompletableFuture.failedFuture(new BufferExhaustedException(
+                    "生产者缓冲区已满：queueName=" + queueName + ", bufferMemory=" + clientConfig.getBufferMemory()));
+        }
+        CompletableFuture<MqMessage.SendMessageResponse> result = requestTimer.retry("发送消息", retryPolicy, () -> accumulator.append(request),
+                (response, e) -> e == null
+                        ? response.getStatus() == MqMessage.SendStatus.QUEUE_FULL
+                        || response.getStatus() == MqMessage.SendStatus.NOT_LEADER
+                        || (idempotent && response.getStatus() == MqMessage.SendStatus.NOT_ENOUGH_REPLICAS)
+                        : e instanceof BrokerUnavailableException || e instanceof ClosedChannelException
+                        || (idempotent && (e instanceof RequestTimeoutException || e instanceof ConnectionLostException)),
+                //队列满时broker在retry_after_ms中给出建议等待时间,退避不短于该值
+                MqMessage.SendMessageResponse::getRetryAfterMs);
+        result.whenComplete((response, e) -> accumulator.release(size));
+        return result;
+    }
+
+    /**
+     * 设置事务消息监听器（使用sendMessageInTransaction前必须设置）
+     */
+    public synchronized void setTransactionListener(TransactionListener listener) {
+        this.transactionListener = listener;
+        if (transactionExecutor == null) {
+            AtomicInteger threadIndex = new AtomicInteger(0);
+            transactionExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                    r -> new Thread(r, "tx-local-" + threadIndex.incrementAndGet()));
+        }
+    }
+
+    /**
+     * 发送事务消息(生产者api)：先写半消息（消费者不可见），写入成功后执行本地事务，按结果提交或回滚；
+     * 本地事务返回UNKNOWN或结果未送达时，由broker回查checkLocalTransaction决定
+     * @param arg 透传给executeLocalTransaction的业务参数
+     * @return 本地事务状态（COMMIT_MESSAGE表示消息已对消费者可见）
+     */
+    public CompletableFuture<LocalTransactionState> sendMessageInTransaction(String queueName, String messageBody, Object arg) {
+        CompletableFuture<LocalTransactionState> result = new CompletableFuture<>();
+        TransactionListener listener = transactionListener;
+        if (listener == null) {
+            result.completeExceptionally(new IllegalStateException("未设置事务消息监听器"));
+            return result;
+        }
+        long timeoutMs = clientConfig.getRequestTimeout().toMillis();
+        brokerRouter.acquire(queueName).whenComplete((channel, throwable) -> {
             if (throwable != null) {
-                log.error("发送消息失败:{}", throwable.getMessage());
-                booleanCompletableFuture.completeExceptionally(throwable);
+                log.error("发送事务消息失败:{}", throwable.getMessage());
+                result.completeExceptionally(throwable);
                 return;
             }
-            //构建发送消息请求
-            String str = UUID.randomUUID().toString();
-            MqMessage.SendMessageRequest request = MqMessage.SendMessageRequest.newBuilder()
+            bindTransactionChecker(channel);
+            String transactionId = UUID.randomUUID().toString();
+            MqMessage.SendMessageRequest message = MqMessage.SendMessageRequest.newBuilder()
                     .setQueueName(queueName)
-                    .setMessageId(str)
+                    .setMessageId(UUID.randomUUID().toString())
                     .setMessageBody(messageBody)
                     .setProducerClientId(clientId)
-                    .setPriority(0) //默认优先级
                     .build();
-            //封装协议栈
-            ProtocolFrame protocolFrame = new ProtocolFrame(
-                    ProtocolConstant.MAGIC,
-                    ProtocolConstant.Version,
-                    request.toByteArray().length,
-                    MessageTypeEnum.SEND_MESSAGE.getCode(),
-                    request.toByteArray()
-            );
-            //发送消息
-            channel.writeAndFlush(protocolFrame).addListener(future -> {
-                if (future.isSuccess()) {
-                    log.info("发送消息成功:{}", protocolFrame);
-                    booleanCompletableFuture.complete(true);
-                } else {
-                    log.error("发送消息失败:{}", protocolFrame);
-                    booleanCompletableFuture.complete(false);
-                }
-            });
-            //释放连接
-            connectionPool.release(channel);
+            MqMessage.TransactionPrepareRequest prepare = MqMessage.TransactionPrepareRequest.newBuilder()
+                    .setTransactionId(transactionId)
+                    .setMessage(message)
+                    .build();
+            sendTransactionRequest(channel, transactionId, MessageTypeEnum.TRANSACTION_PREPARE, prepare.toByteArray(), timeoutMs)
+                    .thenApplyAsync(response -> {
+                        if (!response.getSuccess()) {
+                            throw new IllegalStateException("半消息写入失败:" + response.getMessage());
+                        }
+                        return executeLocalTransaction(listener, transactionId, message, arg);
+                    }, transactionExecutor)
+                    .thenCompose(state -> {
+                        if (state == LocalTransactionState.UNKNOWN) {
+                            return CompletableFuture.completedFuture(state);
+                        }
+                        MessageTypeEnum type = state == LocalTransactionState.COMMIT_MESSAGE
+                                ? MessageTypeEnum.TRANSACTION_COMMIT : MessageTypeEnum.TRANSACTION_ROLLBACK;
+                        return sendTransactionRequest(channel, transactionId, type, endRequest(transactionId, false), timeoutMs)
+                                .thenApply(response -> {
+                                    if (!response.getSuccess()) {
+                                        // 半消息仍在broker，稍后经回查结束
+                                        log.warn("事务结束请求未成功，等待回查：transactionId={}, message={}",
+                                                transactionId, response.getMessage());
+                                        return LocalTransactionState.UNKNOWN;
+                                    }
+                                    return state;
+                                });
+                    })
+                    .whenComplete((state, e) -> {
+                        brokerRouter.release(channel);
+                        if (e != null) {
+                            result.completeExceptionally(e);
+                        } else {
+                            result.complete(state);
+                        }
+                    });
         });
-        //超时处理
-        CompletableFuture.runAsync(() -> {
-            try {
-                TimeUnit.MILLISECONDS.sleep(minutes);
-                if (!booleanCompletableFuture.isDone()) {
-                    booleanCompletableFuture.completeExceptionally(new RuntimeException("发送消息超时" + minutes + "分钟"));
-                }
-            } catch (InterruptedException e) {
-                log.error("发送消息超时:{}", minutes);
-                Thread.currentThread().interrupt();
-                booleanCompletableFuture.completeExceptionally(e);
+        return result;
+    }
+
+    // 执行本地事务，异常视为状态未知（交给回查）
+    private LocalTransactionState executeLocalTransaction(TransactionListener listener, String transactionId,
+                                                          MqMessage.SendMessageRequest message, Object arg) {
+        try {
+            LocalTransactionState state = listener.executeLocalTransaction(toMessageItem(message), arg);
+            return state == null ? LocalTransactionState.UNKNOWN : state;
+        } catch (Exception e) {
+            log.error("执行本地事务异常，等待回查：transactionId={}", transactionId, e);
+            return LocalTransactionState.UNKNOWN;
+        }
+    }
+
+    // 在连接上注册回查处理器：回查在事务线程池中执行，结果通过原连接回传
+    private void bindTransactionChecker(Channel channel) {
+        channel.attr(ClientResponseHandler.TRANSACTION_CHECKER).set((ch, request) -> {
+            TransactionListener listener = transactionListener;
+            ExecutorService executor = transactionExecutor;
+            if (listener == null || executor == null) {
+                log.warn("收到事务回查但未设置事务监听器：transactionId={}", request.getTransactionId());
+                return;
             }
+            executor.execute(() -> {
+                LocalTransactionState state;
+                try {
+                    state = listener.checkLocalTransaction(request.getMessage());
+                } catch (Exception e) {
+                    log.error("事务回查异常：transactionId={}", request.getTransactionId(), e);
+                    return;
+                }
+                if (state == null || state == LocalTransactionState.UNKNOWN) return;
+                MessageTypeEnum type = state == LocalTransactionState.COMMIT_MESSAGE
+                        ? MessageTypeEnum.TRANSACTION_COMMIT : MessageTypeEnum.TRANSACTION_ROLLBACK;
+                byte[] body = endRequest(request.getTransactionId(), true);
+                ch.writeAndFlush(new ProtocolFrame(ProtocolConstant.MAGIC, ProtocolConstant.Version, body.length, type.getCode(), body));
+                log.info("事务回查结果已回传：transactionId={}, state={}", request.getTransactionId(), state);
+            });
         });
-        return booleanCompletableFuture;
+    }
+
+    // 发送事务请求并按事务ID等待响应
+    private CompletableFuture<MqMessage.TransactionResponse> sendTransactionRequest(Channel channel, String transactionId,
+                                                                                    MessageTypeEnum type, byte[] body, long timeoutMs) {
+        channel.attr(ClientResponseHandler.TRANSACTION_FUTURES).setIfAbsent(new ConcurrentHashMap<>());
+        Map<String, CompletableFuture<MqMessage.TransactionResponse>> futures = channel.attr(ClientResponseHandler.TRANSACTION_FUTURES).get();
+        CompletableFuture<MqMessage.TransactionResponse> future = new CompletableFuture<>();
+        futures.put(transactionId, future);
+        channel.writeAndFlush(new ProtocolFrame(ProtocolConstant.MAGIC, ProtocolConstant.Version, body.length, type.getCode(), body))
+                .addListener(f -> {
+                    if (!f.isSuccess()) {
+                        future.completeExceptionally(f.cause());
+                    }
+                });
+        return requestTimer.withTimeout(future, timeoutMs, "事务请求" + type)
+                .whenComplete((response, e) -> futures.remove(transactionId, future));
+    }
+
+    private byte[] endRequest(String transactionId, boolean fromCheck) {
+        return MqMessage.TransactionEndRequest.newBuilder()
+                .setTransactionId(transactionId)
+                .setProducerClientId(clientId)
+                .setFromCheck(fromCheck)
+                .build()
+                .toByteArray();
+    }
+
+    private static MqMessage.MessageItem toMessageItem(MqMessage.SendMessageRequest message) {
+        return MqMessage.MessageItem.newBuilder()
+                .setMessageId(message.getMessageId())
+                .setMessageBody(message.getMessageBody())
+                .setQueueName(message.getQueueName())
+                .setMessageKey(message.getMessageKey())
+                .build();
     }
 
     /**
      * 拉取消息消费者API
      * @param queueName
      * @param batchSize
-     * @return
+     * @return 服务端的拉取响应（按请求ID匹配）
      */
     public CompletableFuture<MqMessage.PullMessageResponse> pullMessage(String queueName, int batchSize) {
         CompletableFuture<MqMessage.PullMessageResponse> future = new CompletableFuture<>();
-        long seconds = clientConfig.getConnectTimeout().getSeconds();
-        connectionPool.acquire().whenComplete(((channel, throwable) -> {
+        brokerRouter.acquire(queueName).whenComplete(((channel, throwable) -> {
             if (throwable != null) {
                 log.error("拉取消息失败:{}", throwable.getMessage());
                 future.completeExceptionally(throwable);
                 return;
             }
-            //构建拉取消息请求
+            //构建拉取消息请求(请求ID用于在复用的连接上匹配响应)
+            long requestId = ClientResponseHandler.nextPullRequestId();
             MqMessage.PullMessageRequest request = MqMessage.PullMessageRequest.newBuilder()
+                    .setRequestId(requestId)
                     .setQueueName(queueName)
                     .setConsumerClientId(clientId)
                     .setBatchSize(batchSize)
@@ -176,41 +408,36 @@ public class MessageQueueClient {
                     MessageTypeEnum.PULL_MESSAGE.getCode(),
                     request.toByteArray()
             );
+            //登记等待响应,由ClientResponseHandler按请求ID完成
+            channel.attr(ClientResponseHandler.PULL_FUTURES).setIfAbsent(new ConcurrentHashMap<>());
+            Map<Long, CompletableFuture<MqMessage.PullMessageResponse>> futures = channel.attr(ClientResponseHandler.PULL_FUTURES).get();
+            futures.put(requestId, future);
+            future.whenComplete((response, e) -> {
+                //响应到达、发送失败或超时后注销并释放连接
+                futures.remove(requestId, future);
+                brokerRouter.release(channel);
+            });
             channel.writeAndFlush(protocolFrame).addListener(result -> {
-                if (result.isSuccess()) {
-                    log.info("拉取消息成功:queueName={},bathSize={}", protocolFrame, batchSize);
-                    // 实际需在ClientResponseHandler中接收响应并回调，这里先返回空响应（后续补全）
-                    future.complete(MqMessage.PullMessageResponse.newBuilder()
-                            .setSuccess(true)
-                            .setMessage("拉取请求已经发送")
-                            .build());
-                } else {
-                    log.error("拉取消息请求发送失败:queueName{}", protocolFrame, result.cause());
+                if (!result.isSuccess()) {
+                    log.error("拉取消息请求发送失败:queueName={}, batchSize={}", queueName, batchSize, result.cause());
                     future.completeExceptionally(result.cause());
                 }
-                connectionPool.release(channel);
-            });
-            //超时处理
-            CompletableFuture.runAsync(() -> {
-                try {
-                    TimeUnit.SECONDS.sleep(seconds);
-                    if (!future.isDone()) {
-                        future.completeExceptionally(new RuntimeException("拉取消息超时" + seconds + "秒"));
-                    }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    future.completeExceptionally(e);
-                }
             });
         }));
-        return future;
+        //超时处理
+        return requestTimer.withTimeout(future, clientConfig.getRequestTimeout().toMillis(), "拉取消息");
     }
 
     /**
      * 关闭客户端
      */
     public void close() {
-        connectionPool.close();
+        //先发出未满的批次再关闭连接池
+        accumulator.close();
+        brokerRouter.close();
+        if (transactionExecutor != null) {
+            transactionExecutor.shutdown();
+        }
         log.info("客户端已关闭：clientId={}", clientId);
     }
 
@@ -1,15 +1,21 @@
 package com.yzx.crazycodingbytemq.server;
 
 import com.yzx.crazycodingbytemq.codec.ProtocolConstant;
+import com.yzx.crazycodingbytemq.config.ClientConfig;
+import com.yzx.crazycodingbytemq.config.ConfigLoader;
 import com.yzx.crazycodingbytemq.enums.MessageTypeEnum;
+import com.yzx.crazycodingbytemq.handler.ClientResponseHandler;
 import com.yzx.crazycodingbytemq.model.MqMessage;
 import com.yzx.crazycodingbytemq.pool.ClientConnectionPool;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import lombok.extern.slf4j.Slf4j;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.yzx.crazycodingbytemq.codec.ProtocolFrame;
 
@@ -21,31 +27,91 @@ import com.yzx.crazycodingbytemq.codec.ProtocolFrame;
  * @description:
  */
 @Slf4j
-public class MessageQueueConsumer {
+public final class MessageQueueConsumer {
     private final String clientId;
-    private final ClientConnectionPool connectionPool;
+    // 多broker路由与故障转移
+    private final BrokerRouter brokerRouter;
     private final long timeout = 3000;
-    private final String host;
-    private final int port;
+    // 所在消费组（为空表示不加入消费组，拉取全部分区）
+    private volatile String consumerGroup = "";
+    // 推模式订阅：队列名->订阅（订阅期间固定使用一个连接，计入该连接的在途数）
+    private final Map<String, PushSubscription> pushSubscriptions = new ConcurrentHashMap<>();
+    // 预取：后台按队列拉取到本地缓冲，poll直接从内存取
+    private final ConsumerPrefetcher prefetcher;
 
     // 构造器：需要传入服务端地址+端口+客户端ID（和生产者保持一致的初始化方式）
     public MessageQueueConsumer(String clientId, int port, String host) {
-        this.host = host;
-        this.port = port;
+        this(clientId, List.of(host + ":" + port));
+    }
+
+    // 构造器：使用配置中的broker地址列表（为空时从name server发现broker）
+    public MessageQueueConsumer(String clientId) {
+        this(clientId, ConfigLoader.bindConfig(ClientConfig.class, "mq.client").getBrokers());
+    }
+
+    // 构造器：broker地址列表（host:port）+客户端ID
+    public MessageQueueConsumer(String clientId, List<String> brokers) {
+        ClientConfig clientConfig = ConfigLoader.bindConfig(ClientConfig.class, "mq.client");
         this.clientId = clientId;
-        // 获取单例连接池（同一host:port全局唯一）
-        this.connectionPool = ClientConnectionPool.getInstance(host, port);
+        // 每个broker一个单例连接池（同一host:port全局唯一）
+        this.brokerRouter = new BrokerRouter(brokers, clientConfig);
+        this.prefetcher = new ConsumerPrefetcher(this, clientConfig);
         connect();
     }
 
     public void connect() {
-        connectionPool.acquire().whenComplete((channel, throwable) -> {
+        brokerRouter.acquireAny().whenComplete((channel, throwable) -> {
             if (throwable != null) {
                 log.error("消费者连接失败：clientId={}", clientId, throwable);
                 throw new RuntimeException("连接服务端失败", throwable);
             }
             log.info("消费者连接成功：clientId={}, channelId={}", clientId, channel.id());
-            connectionPool.release(channel);
+            brokerRouter.release(channel);
+        });
+    }
+
+    /**
+     * 加入消费组：服务端把订阅队列的分区在组内成员间分配，连接断开后自动离组并再均衡（向每个broker加入，任一成功即可；
+     * 发现模式下之后新注册的broker也自动加入）
+     */
+    public CompletableFuture<Boolean> joinGroup(String consumerGroup, List<String> queueNames) {
+        brokerRouter.onBrokerAdded(pool -> joinGroup(pool, consumerGroup, queueNames));
+        return brokerRouter.ready().thenCompose(ready -> {
+            List<CompletableFuture<Boolean>> futures = brokerRouter.pools().stream()
+                    .map(pool -> joinGroup(pool, consumerGroup, queueNames))
+                    .toList();
+            return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                    .thenApply(v -> futures.stream().anyMatch(CompletableFuture::join));
+        });
+    }
+
+    // 消费组成员身份作为连接会话：所在连接断开后连接池在新连接上重新加入，新连接在重新加入完成后才用于拉取
+    private CompletableFuture<Boolean> joinGroup(ClientConnectionPool pool, String consumerGroup, List<String> queueNames) {
+        ClientConfig clientConfig = ConfigLoader.bindConfig(ClientConfig.class, "mq.client");
+        MqMessage.ConnectRequest request = MqMessage.ConnectRequest.newBuilder()
+                .setClientId(clientId)
+                .setClientType("CONSUMER")
+                .setClientVersion(clientConfig.getClientVersion())
+                .setConsumerGroup(consumerGroup)
+                .addAllSubscriptions(queueNames)
+                .build();
+        return pool.openSession(clientId, channel ->
+                MessageQueueClient.sendConnectRequest(channel, request, clientConfig.getConnectTimeout().toMillis())
+                        .thenApply(response -> {
+                            if (!response.getSuccess()) {
+                                log.error("加入消费组被拒绝：clientId={}, group={}, broker={}, 原因={}",
+                                        clientId, consumerGroup, pool.address(), response.getMessage());
+                                return false;
+                            }
+                            this.consumerGroup = consumerGroup;
+                            brokerRouter.onConnected(pool, response);
+                            log.info("加入消费组成功：clientId={}, group={}, queues={}, broker={}",
+                                    clientId, consumerGroup, queueNames, pool.address());
+                            return true;
+                        })
+        ).exceptionally(throwable -> {
+            log.error("加入消费组失败：broker={}", pool.address(), throwable);
+            return false;
         });
     }
 
@@ -53,10 +119,34 @@ public class MessageQueueConsumer {
      * 拉取消息
      */
     public CompletableFuture<List<MqMessage.MessageItem>> pullMessage(String queueName, int batchSize) {
+        return pullMessage(queueName, batchSize, 0);
+    }
+
+    /**
+     * 长轮询拉取消息：队列为空时服务端最多挂起maxWaitMs，有消息到达立即返回
+     */
+    public CompletableFuture<List<MqMessage.MessageItem>> pullMessage(String queueName, int batchSize, long maxWaitMs) {
+        return pull(queueName, batchSize, maxWaitMs, 0);
+    }
+
+    /**
+     * 按时间回溯拉取（需先加入消费组）：组在本消费者所分配分区上的读游标重置到该时间之后的第一条消息，再从那里拉取
+     * @param startTimestamp 毫秒时间戳，早于日志保留范围时从最早的消息开始，晚于全部消息时从日志末端开始
+     */
+    public CompletableFuture<List<MqMessage.MessageItem>> pullMessageFromTimestamp(String queueName, int batchSize,
+                                                                                    long maxWaitMs, long startTimestamp) {
+        if (consumerGroup.isEmpty()) {
+            return CompletableFuture.failedFuture(new IllegalStateException("按时间回溯拉取需先加入消费组"));
+        }
+        return pull(queueName, batchSize, maxWaitMs, startTimestamp);
+    }
+
+    private CompletableFuture<List<MqMessage.MessageItem>> pull(String queueName, int batchSize, long maxWaitMs,
+                                                                long startTimestamp) {
         CompletableFuture<List<MqMessage.MessageItem>> future = new CompletableFuture<>();
 
         // 1. 从连接池获取连接（异步获取，带重试）
-        connectionPool.acquire().whenComplete((channel, throwable) -> {
+        brokerRouter.acquire(queueName).whenComplete((channel, throwable) -> {
             if (throwable != null) {
                 log.error("拉取消息失败：获取连接异常", throwable);
                 future.completeExceptionally(throwable);
@@ -68,11 +158,16 @@ public class MessageQueueConsumer {
                 return;
             }
 
-            // 2. 构建拉取消息请求
+            // 2. 构建拉取消息请求（请求ID用于在复用的连接上匹配响应）
+            long requestId = ClientResponseHandler.nextPullRequestId();
             MqMessage.PullMessageRequest request = MqMessage.PullMessageRequest.newBuilder()
+                    .setRequestId(requestId)
                     .setQueueName(queueName)
                     .setConsumerClientId(clientId)
                     .setBatchSize(batchSize)
+                    .setMaxWaitMs(maxWaitMs)
+                    .setConsumerGroup(consumerGroup)
+                    .setStartTimestamp(startTimestamp)
                     .build();
 
             // 3. 封装协议帧
@@ -84,46 +179,80 @@ public class MessageQueueConsumer {
                     request.toByteArray()
             );
 
-            // 4. 发送请求并监听响应
-            ChannelFuture channelFuture = channel.writeAndFlush(frame);
-            channelFuture.addListener(result -> {
-                if (result.isSuccess()) {
-                    log.info("拉取消息请求发送成功：queueName={}, batchSize={}", queueName, batchSize);
-                    // 注意：实际需在ClientResponseHandler中接收响应并回调
-                    // 这里临时返回空列表，后续需完善响应处理逻辑
-                    future.complete(List.of());
+            // 4. 登记等待响应，发送请求
+            channel.attr(ClientResponseHandler.PULL_FUTURES).setIfAbsent(new ConcurrentHashMap<>());
+            Map<Long, CompletableFuture<MqMessage.PullMessageResponse>> futures = channel.attr(ClientResponseHandler.PULL_FUTURES).get();
+            CompletableFuture<MqMessage.PullMessageResponse> response = new CompletableFuture<>();
+            futures.put(requestId, response);
+            future.whenComplete((messages, e) -> {
+                futures.remove(requestId, response);
+                // 响应到达或超时后释放连接回池
+                brokerRouter.release(channel);
+            });
+            response.whenComplete((result, e) -> {
+                if (e != null) {
+                    future.completeExceptionally(e);
+                } else if (!result.getSuccess()) {
+                    future.completeExceptionally(new IllegalStateException("拉取消息失败：" + result.getMessage()));
                 } else {
-                    log.error("拉取消息请求发送失败：queueName={}, batchSize={}", queueName, batchSize, result.cause());
-                    future.completeExceptionally(result.cause());
+                    future.complete(result.getMessageListList());
                 }
-                // 释放连接回池
-                connectionPool.release(channel);
             });
-        });
-        // 5. 超时处理
-        CompletableFuture.runAsync(() -> {
-            try {
-                TimeUnit.MILLISECONDS.sleep(timeout);
-                if (!future.isDone()) {
-                    future.completeExceptionally(new RuntimeException("拉取消息超时（" + timeout + "ms）"));
+            channel.writeAndFlush(frame).addListener(result -> {
+                if (!result.isSuccess()) {
+                    log.error("拉取消息请求发送失败：queueName={}, batchSize={}", queueName, batchSize, result.cause());
+                    response.completeExceptionally(result.cause());
                 }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                future.completeExceptionally(e);
-            }
+            });
         });
+        // 5. 超时处理（长轮询请求的超时需覆盖服务端挂起时间）
+        return RequestTimer.getInstance().withTimeout(future, timeout + maxWaitMs, "拉取消息");
+    }
 
-        return future;
+    /**
+     * 开始预取队列：后台持续长轮询拉取，本地缓冲按条数和字节数限界，满了暂停拉取
+     */
+    public void prefetch(String queueName) {
+        prefetcher.start(queueName);
+    }
+
+    /**
+     * 停止预取队列（已缓冲的消息仍可poll，未消费的由服务端可见性超时重投）
+     */
+    public void stopPrefetch(String queueName) {
+        prefetcher.stop(queueName);
+    }
+
+    /**
+     * 从本地预取缓冲取消息，缓冲为空时最多阻塞timeout
+     * @return 最多max-poll-records条消息，超时返回空列表
+     */
+    public List<MqMessage.MessageItem> poll(Duration timeout) throws InterruptedException {
+        return prefetcher.poll(timeout);
+    }
+
+    /**
+     * poll的异步版本：缓冲有消息立即完成，否则在消息到达或超时（空列表）时完成，不占用调用线程
+     */
+    public CompletableFuture<List<MqMessage.MessageItem>> pollAsync(Duration timeout) {
+        return prefetcher.pollAsync(timeout);
+    }
+
+    /**
+     * 消息消费确认(回传拉取时broker分配的投递标签)
+     */
+    public CompletableFuture<Boolean> ackMessage(MqMessage.MessageItem messageItem) {
+        return ackMessage(messageItem.getQueueName(), messageItem.getMessageId(), messageItem.getDeliveryTag());
     }
 
     /**
      * 消息消费确认
      */
-    public CompletableFuture<Boolean> ackMessage(String queueName, String messageId) {
+    public CompletableFuture<Boolean> ackMessage(String queueName, String messageId, long deliveryTag) {
         CompletableFuture<Boolean> future = new CompletableFuture<>();
 
         // 从连接池获取连接
-        connectionPool.acquire().whenComplete((channel, throwable) -> {
+        brokerRouter.acquire(queueName).whenComplete((channel, throwable) -> {
             if (throwable != null) {
                 log.error("消息确认失败：获取连接异常", throwable);
                 future.completeExceptionally(throwable);
@@ -140,6 +269,7 @@ public class MessageQueueConsumer {
                     .setQueueName(queueName)
                     .setConsumerClientId(clientId)
                     .setMessageId(messageId)
+                    .setDeliveryTag(deliveryTag)
                     .build();
 
             // 封装协议帧
@@ -162,18 +292,239 @@ public class MessageQueueConsumer {
                     future.complete(false);
                 }
                 // 释放连接
-                connectionPool.release(channel);
+                brokerRouter.release(channel);
             });
         });
 
         return future;
     }
 
+    /**
+     * 批量消息消费确认（一个请求帧确认同一队列的多条消息）
+     */
+    public CompletableFuture<Boolean> ackMessages(String queueName, List<MqMessage.MessageItem> messageItems) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        brokerRouter.acquire(queueName).whenComplete((channel, throwable) -> {
+            if (throwable != null) {
+                log.error("批量消息确认失败：获取连接异常", throwable);
+                future.completeExceptionally(throwable);
+                return;
+            }
+            MqMessage.MessageAckBatchRequest.Builder request = MqMessage.MessageAckBatchRequest.newBuilder()
+                    .setQueueName(queueName)
+                    .setConsumerClientId(clientId);
+            for (MqMessage.MessageItem messageItem : messageItems) {
+                request.addAcks(MqMessage.MessageAckRequest.newBuilder()
+                        .setQueueName(messageItem.getQueueName())
+                        .setConsumerClientId(clientId)
+                        .setMessageId(messageItem.getMessageId())
+                        .setDeliveryTag(messageItem.getDeliveryTag()));
+            }
+            byte[] body = request.build().toByteArray();
+            ProtocolFrame frame = new ProtocolFrame(
+                    ProtocolConstant.MAGIC,
+                    ProtocolConstant.Version,
+                    body.length,
+                    MessageTypeEnum.MESSAGE_ACK_BATCH.getCode(),
+                    body
+            );
+            channel.writeAndFlush(frame).addListener(result -> {
+                if (result.isSuccess()) {
+                    log.debug("批量消息确认请求发送成功：queueName={}, 数量={}", queueName, messageItems.size());
+                    future.complete(true);
+                } else {
+                    log.error("批量消息确认请求发送失败：queueName={}, 数量={}", queueName, messageItems.size(), result.cause());
+                    future.complete(false);
+                }
+                brokerRouter.release(channel);
+            });
+        });
+        return future;
+    }
+
+    /**
+     * 消息消费失败(broker按退避策略重试,超过最大投递次数进入死信队列)
+     */
+    public CompletableFuture<Boolean> nackMessage(String queueName, MqMessage.MessageItem messageItem, String reason) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        brokerRouter.acquire(queueName).whenComplete((channel, throwable) -> {
+            if (throwable != null) {
+                log.error("消息消费失败上报失败：获取连接异常", throwable);
+                future.completeExceptionally(throwable);
+                return;
+            }
+
+            if (channel == null || !channel.isActive()) {
+                future.completeExceptionally(new RuntimeException("无可用连接"));
+                return;
+            }
+
+            MqMessage.MessageNackRequest request = MqMessage.MessageNackRequest.newBuilder()
+                    .setQueueName(queueName)
+                    .setConsumerClientId(clientId)
+                    .setMessage(messageItem)
+                    .setReason(reason == null ? "" : reason)
+                    .build();
+
+            ProtocolFrame frame = new ProtocolFrame(
+                    ProtocolConstant.MAGIC,
+                    ProtocolConstant.Version,
+                    request.toByteArray().length,
+                    MessageTypeEnum.MESSAGE_NACK.getCode(),
+                    request.toByteArray()
+            );
+
+            channel.writeAndFlush(frame).addListener(result -> {
+                if (result.isSuccess()) {
+                    log.info("消息消费失败上报成功：messageId={}", messageItem.getMessageId());
+                    future.complete(true);
+                } else {
+                    log.error("消息消费失败上报失败：messageId={}", messageItem.getMessageId(), result.cause());
+                    future.complete(false);
+                }
+                brokerRouter.release(channel);
+            });
+        });
+
+        return future;
+    }
+
+    /**
+     * 推模式订阅：服务端在额度内主动推送消息，监听器每处理完半个额度窗口自动补充额度
+     * @param messageCredits 消息条数额度窗口
+     * @param byteCredits    字节数额度窗口（0表示不按字节限制）
+     */
+    public CompletableFuture<Void> subscribe(String queueName, int messageCredits, long byteCredits,
+                                             PushMessageListener listener) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (messageCredits <= 0 || byteCredits < 0) {
+            future.completeExceptionally(new IllegalArgumentException("订阅额度非法"));
+            return future;
+        }
+        if (pushSubscriptions.containsKey(queueName)) {
+            future.completeExceptionally(new IllegalStateException("队列已订阅：" + queueName));
+            return future;
+        }
+        brokerRouter.acquire(queueName).whenComplete((channel, throwable) -> {
+            if (throwable != null) {
+                log.error("订阅失败：获取连接异常", throwable);
+                future.completeExceptionally(throwable);
+                return;
+            }
+            if (channel == null || !channel.isActive()) {
+                future.completeExceptionally(new RuntimeException("无可用连接"));
+                return;
+            }
+            PushSubscription subscription = new PushSubscription(channel, queueName, messageCredits, byteCredits, listener);
+            pushSubscriptions.put(queueName, subscription);
+            // 先注册监听器再发订阅请求，避免首批推送到达时找不到监听器
+            channel.attr(ClientResponseHandler.PUSH_LISTENERS).setIfAbsent(new ConcurrentHashMap<>());
+            channel.attr(ClientResponseHandler.PUSH_LISTENERS).get().put(queueName, subscription::onMessage);
+            sendSubscribe(channel, queueName, messageCredits, byteCredits, false).addListener(result -> {
+                if (result.isSuccess()) {
+                    log.info("推模式订阅请求发送成功：queueName={}, messageCredits={}, byteCredits={}",
+                            queueName, messageCredits, byteCredits);
+                    future.complete(null);
+                } else {
+                    log.error("推模式订阅请求发送失败：queueName={}", queueName, result.cause());
+                    removeSubscription(queueName);
+                    future.completeExceptionally(result.cause());
+                }
+            });
+        });
+        return future;
+    }
+
+    /**
+     * 取消推模式订阅并归还连接
+     */
+    public CompletableFuture<Boolean> unsubscribe(String queueName) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        PushSubscription subscription = pushSubscriptions.get(queueName);
+        if (subscription == null) {
+            future.complete(false);
+            return future;
+        }
+        sendSubscribe(subscription.channel, queueName, 0, 0, true).addListener(result -> {
+            removeSubscription(queueName);
+            future.complete(result.isSuccess());
+        });
+        return future;
+    }
+
+    private void removeSubscription(String queueName) {
+        PushSubscription subscription = pushSubscriptions.remove(queueName);
+        if (subscription == null) return;
+        Map<String, PushMessageListener> listeners = subscription.channel.attr(ClientResponseHandler.PUSH_LISTENERS).get();
+        if (listeners != null) {
+            listeners.remove(queueName);
+        }
+        brokerRouter.release(subscription.channel);
+    }
+
+    private ChannelFuture sendSubscribe(Channel channel, String queueName, int messageCredits, long byteCredits,
+                                        boolean unsubscribe) {
+        MqMessage.SubscribeRequest request = MqMessage.SubscribeRequest.newBuilder()
+                .setQueueName(queueName)
+                .setConsumerClientId(clientId)
+                .setMessageCredits(messageCredits)
+                .setByteCredits(byteCredits)
+                .setUnsubscribe(unsubscribe)
+                .build();
+        ProtocolFrame frame = new ProtocolFrame(
+                ProtocolConstant.MAGIC,
+                ProtocolConstant.Version,
+                request.toByteArray().length,
+                MessageTypeEnum.SUBSCRIBE.getCode(),
+                request.toByteArray()
+        );
+        return channel.writeAndFlush(frame);
+    }
+
+    /**
+     * 单个队列的推模式订阅：统计已消费的消息数/字节数，过半个窗口时补充额度
+     */
+    private class PushSubscription {
+        private final Channel channel;
+        private final String queueName;
+        private final int messageWindow;
+        private final long byteWindow;
+        private final PushMessageListener listener;
+        // 仅在连接的EventLoop上读写
+        private int consumedMessages;
+        private long consumedBytes;
+
+        PushSubscription(Channel channel, String queueName, int messageWindow, long byteWindow, PushMessageListener listener) {
+            this.channel = channel;
+            this.queueName = queueName;
+            this.messageWindow = messageWindow;
+            this.byteWindow = byteWindow;
+            this.listener = listener;
+        }
+
+        void onMessage(MqMessage.MessageItem messageItem) {
+            try {
+                listener.onMessage(messageItem);
+            } finally {
+                consumedMessages++;
+                consumedBytes += messageItem.getSerializedSize();
+                if (consumedMessages >= Math.max(1, messageWindow / 2)
+                        || (byteWindow > 0 && consumedBytes >= byteWindow / 2)) {
+                    sendSubscribe(channel, queueName, consumedMessages, byteWindow > 0 ? consumedBytes : 0, false);
+                    consumedMessages = 0;
+                    consumedBytes = 0;
+                }
+            }
+        }
+    }
+
     /**
      * 关闭消费者
      */
     public void close() {
-        connectionPool.close();
+        prefetcher.close();
+        brokerRouter.close();
         log.info("消费者关闭：clientId={}", clientId);
     }
 
@@ -190,7 +541,7 @@ public class MessageQueueConsumer {
             log.info("拉取到{}条消息", messages.size());
             // 消费后确认（示例）
             for (MqMessage.MessageItem msg : messages) {
-                consumer.ackMessage("test-queue", msg.getMessageId());
+                consumer.ackMessage(msg);
             }
         });
         // 阻塞避免退出
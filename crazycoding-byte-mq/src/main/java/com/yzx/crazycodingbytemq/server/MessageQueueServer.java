@@ -7,6 +7,7 @@ import com.yzx.crazycodingbytemq.config.ServerConfig;
 import com.yzx.crazycodingbytemq.handler.*;
 import com.yzx.crazycodingbytemq.metrics.MetricHandler;
 import com.yzx.crazycodingbytemq.ssl.SslContextFactory;
+import com.yzx.crazycodingbytemq.transport.NettyTransport;
 import io.micrometer.core.instrument.binder.jvm.JvmGcMetrics;
 import io.micrometer.core.instrument.binder.jvm.JvmMemoryMetrics;
 import io.micrometer.core.instrument.binder.jvm.JvmThreadMetrics;
@@ -17,12 +18,15 @@ import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslHandler;
 import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.handler.traffic.GlobalTrafficShapingHandler;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
 import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutorGroup;
 import io.netty.channel.socket.SocketChannel;
 import lombok.extern.slf4j.Slf4j;
 
@@ -31,6 +35,8 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableEntryException;
 import java.security.cert.CertificateException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -43,27 +49,52 @@ import java.util.concurrent.TimeUnit;
 @Slf4j
 public class MessageQueueServer {
     private final ServerConfig config;
-    private final NioEventLoopGroup bossGroup;
-    private final NioEventLoopGroup workerGroup;
+    // 网络传输（NIO/epoll/io_uring）
+    private final NettyTransport transport;
+    private final EventLoopGroup bossGroup;
+    private final EventLoopGroup workerGroup;
+    // 队列归属线程（队列日志写入和读盘在此执行，不阻塞IO线程）
+    private final EventExecutorGroup queueStoreGroup;
     private final PrometheusMeterRegistry meterRegistry;
-    private Channel serverChannel;
+    // 监听通道（epoll下SO_REUSEPORT可绑定多个，每个acceptor一个）
+    private final List<Channel> serverChannels = new ArrayList<>();
+    private final int acceptorCount;
+    // 副本节点从leader复制日志（leader节点为空）
+    private ReplicaFetcher replicaFetcher;
+    // 统计全部连接的出入流量（不限速），向name server上报负载
+    private final GlobalTrafficShapingHandler trafficHandler;
+    // 向name server定时注册（未配置name server或副本节点为空）
+    private BrokerRegistrar brokerRegistrar;
 
     public MessageQueueServer() {
         this.config = ConfigLoader.bindConfig(ServerConfig.class, "mq.server");
-        // 修复：方法名拼写错误（Work → Worker）
-        this.bossGroup = new NioEventLoopGroup(
-                config.getBossThreadCount(),
-                new DefaultThreadFactory("mq-server-boss")
+        this.transport = NettyTransport.select(config.getTransport());
+        this.acceptorCount = transport.supportsReusePort() ? Math.max(1, config.getAcceptorCount()) : 1;
+        if (config.getAcceptorCount() > 1 && acceptorCount == 1) {
+            log.warn("传输{}不支持SO_REUSEPORT，只绑定一个监听通道", transport);
+        }
+        // 修复：方法名拼写错误（Work → Worker）；每个acceptor独占一个boss线程
+        this.bossGroup = transport.newEventLoopGroup(
+                Math.max(config.getBossThreadCount(), acceptorCount),
+                "mq-server-boss"
         );
-        this.workerGroup = new NioEventLoopGroup(
+        this.workerGroup = transport.newEventLoopGroup(
                 config.getWorkThreadCount(), // 修复：正确方法名
-                new DefaultThreadFactory("mq-server-worker")
+                "mq-server-worker"
         );
         this.meterRegistry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
         new JvmMemoryMetrics().bindTo(meterRegistry);
         new JvmGcMetrics().bindTo(meterRegistry);
         new JvmThreadMetrics().bindTo(meterRegistry);
         new ProcessorMetrics().bindTo(meterRegistry);
+        QuotaManager.getInstance().bindMetrics(meterRegistry);
+        // 消费组成员随连接注册/注销触发分区再均衡
+        ConnectionManager.getInstance().addListener(ConsumerGroupManager.getInstance());
+        // 队列按名称归属到队列存储线程
+        this.queueStoreGroup = new DefaultEventExecutorGroup(config.getQueueStoreThreads(),
+                new DefaultThreadFactory("mq-queue-store"));
+        QueueOwnerRegistry.getInstance().bind(queueStoreGroup);
+        this.trafficHandler = new GlobalTrafficShapingHandler(workerGroup, 0, 0, 1000);
     }
 
     public void start() throws InterruptedException, IOException, UnrecoverableEntryException, CertificateException, KeyStoreException, NoSuchAlgorithmException {
@@ -72,17 +103,21 @@ public class MessageQueueServer {
 
         ServerBootstrap bootstrap = new ServerBootstrap()
                 .group(bossGroup, workerGroup)
-                .channel(NioServerSocketChannel.class)
+                .channel(transport.serverChannelClass())
                 .option(ChannelOption.SO_BACKLOG, config.getBacklog())
                 .option(ChannelOption.SO_REUSEADDR, true)
                 .childOption(ChannelOption.SO_KEEPALIVE, config.isKeepAlive())
                 .childOption(ChannelOption.TCP_NODELAY, true)
                 .childOption(ChannelOption.SO_SNDBUF, config.getSendBufSize())
                 .childOption(ChannelOption.SO_RCVBUF, config.getRcvBufSize())
+                // 推模式按写缓冲水位暂停/恢复推送
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(
+                        config.getWriteBufferLowWaterMark(), config.getWriteBufferHighWaterMark()))
                 .childHandler(new ChannelInitializer<SocketChannel>() {
                     @Override
                     protected void initChannel(SocketChannel ch) {
                         var pipeline = ch.pipeline();
+                        pipeline.addLast("trafficHandler", trafficHandler);
 
                         if (sslContext != null) {
                             SslHandler sslHandler = sslContext.newHandler(ch.alloc());
@@ -105,11 +140,27 @@ public class MessageQueueServer {
                         pipeline.addLast("sendMessageHandler",new SendMessageHandler());
                         pipeline.addLast("pullMessageHandler", new PullMessageHandler());
                         pipeline.addLast("messageAckHandler", new MessageAckHandler());
+                        pipeline.addLast("messageNackHandler", new MessageNackHandler());
+                        pipeline.addLast("subscribeHandler", new SubscribeHandler());
+                        pipeline.addLast("transactionHandler", new TransactionHandler());
+                        pipeline.addLast("replicaFetchHandler", new ReplicaFetchHandler());
                     }
                 });
+        transport.configure(bootstrap, acceptorCount > 1, config.isTcpQuickAck(), config.isEpollEdgeTriggered());
 
-        serverChannel = bootstrap.bind(config.getPort()).sync().channel();
-        log.info("消息队列服务端启动成功，端口：{}，SSL启用：{}", config.getPort(), sslContext != null);
+        // 每次bind创建一个监听通道，注册到boss组的下一个线程
+        for (int i = 0; i < acceptorCount; i++) {
+            serverChannels.add(bootstrap.bind(config.getPort()).sync().channel());
+        }
+        log.info("消息队列服务端启动成功，端口：{}，SSL启用：{}，传输：{}，acceptor数：{}",
+                config.getPort(), sslContext != null, transport, acceptorCount);
+        if (ReplicaManager.getInstance().isFollower()) {
+            replicaFetcher = new ReplicaFetcher(config, transport);
+            replicaFetcher.start();
+        } else if (!config.getNameServers().isEmpty()) {
+            brokerRegistrar = new BrokerRegistrar(config, transport, trafficHandler.trafficCounter());
+            brokerRegistrar.start();
+        }
 
         Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
     }
@@ -117,13 +168,17 @@ public class MessageQueueServer {
     public void shutdown() {
         log.info("开始优雅关闭服务端...");
         try {
-            if (serverChannel != null && serverChannel.isOpen()) {
-                boolean closed = serverChannel.close().await(5, TimeUnit.SECONDS);
-                if (!closed) {
+            for (Channel serverChannel : serverChannels) {
+                if (serverChannel.isOpen() && !serverChannel.close().await(5, TimeUnit.SECONDS)) {
                     log.warn("服务端通道关闭超时，强制关闭");
                 }
             }
 
+            if (brokerRegistrar != null) {
+                brokerRegistrar.close();
+            }
+            trafficHandler.release();
+
             if (!workerGroup.isShuttingDown()) {
                 workerGroup.shutdownGracefully(10, 30, TimeUnit.SECONDS).sync();
             }
@@ -131,12 +186,22 @@ public class MessageQueueServer {
             if (!bossGroup.isShuttingDown()) {
                 bossGroup.shutdownGracefully(10, 30, TimeUnit.SECONDS).sync();
             }
+            if (!queueStoreGroup.isShuttingDown()) {
+                queueStoreGroup.shutdownGracefully(0, 30, TimeUnit.SECONDS).sync();
+            }
+            if (replicaFetcher != null) {
+                replicaFetcher.close();
+            }
+            // IO线程退出后再关闭事务日志和队列日志，已排队的写入全部落盘
+            TransactionService.getInstance().shutdown();
+            QueueManager.getInstance().shutdown();
 
             log.info("服务端已优雅关闭");
         } catch (Exception e) {
             log.error("服务端关闭异常，强制终止", e);
-            workerGroup.shutdownNow();
-            bossGroup.shutdownNow();
+            workerGroup.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+            bossGroup.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+            queueStoreGroup.shutdownGracefully(0, 0, TimeUnit.SECONDS);
         }
     }
 
@@ -0,0 +1,125 @@
+package com.yzx.crazycodingbytemq.server;
+
+import com.yzx.crazycodingbytemq.model.MqMessage;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * @className: MessageRingBuffer
+ * @author: yzx
+ * @date: 2025/11/19 10:15
+ * @Version: 1.0
+ * @description: 有界无锁多生产者多消费者环形队列（槽位预分配，按消息数和字节数双重限流）
+ */
+public class MessageRingBuffer implements MessageBuffer {
+    private final int capacity;
+    private final int mask;
+    // 每个槽位的序号：等于入队位置表示可写，等于入队位置+1表示可读
+    private final AtomicLongArray sequences;
+    private final AtomicReferenceArray<MqMessage.MessageItem> slots;
+    private final PaddedAtomicLong enqueuePosition = new PaddedAtomicLong();
+    private final PaddedAtomicLong dequeuePosition = new PaddedAtomicLong();
+    // 字节数上限（<=0表示不限制）
+    private final long maxBytes;
+    private final AtomicLong bytes = new AtomicLong(0);
+
+    public MessageRingBuffer(int capacity, long maxBytes) {
+        // 容量向上取2的幂，下标用位运算代替取模
+        this.capacity = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = this.capacity - 1;
+        this.maxBytes = maxBytes;
+        this.sequences = new AtomicLongArray(this.capacity);
+        this.slots = new AtomicReferenceArray<>(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * 入队，队列已满（消息数或字节数超限）返回false
+     */
+    public boolean offer(MqMessage.MessageItem messageItem) {
+        int size = messageItem.getSerializedSize();
+        // 先占用字节额度，失败则回滚
+        if (maxBytes > 0 && bytes.addAndGet(size) > maxBytes) {
+            bytes.addAndGet(-size);
+            return false;
+        }
+        long position = enqueuePosition.get();
+        int index;
+        for (; ; ) {
+            index = (int) (position & mask);
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (enqueuePosition.compareAndSet(position, position + 1)) break;
+                position = enqueuePosition.get();
+            } else if (diff < 0) {
+                // 槽位尚未被消费，队列已满
+                if (maxBytes > 0) bytes.addAndGet(-size);
+                return false;
+            } else {
+                position = enqueuePosition.get();
+            }
+        }
+        slots.lazySet(index, messageItem);
+        sequences.set(index, position + 1);
+        if (maxBytes <= 0) bytes.addAndGet(size);
+        return true;
+    }
+
+    /**
+     * 出队，队列为空返回null
+     */
+    @Override
+    public MqMessage.MessageItem poll() {
+        long position = dequeuePosition.get();
+        int index;
+        for (; ; ) {
+            index = (int) (position & mask);
+            long diff = sequences.get(index) - (position + 1);
+            if (diff == 0) {
+                if (dequeuePosition.compareAndSet(position, position + 1)) break;
+                position = dequeuePosition.get();
+            } else if (diff < 0) {
+                return null;
+            } else {
+                position = dequeuePosition.get();
+            }
+        }
+        MqMessage.MessageItem messageItem = slots.get(index);
+        slots.lazySet(index, null);
+        // 槽位释放给下一圈的生产者
+        sequences.set(index, position + capacity);
+        bytes.addAndGet(-messageItem.getSerializedSize());
+        return messageItem;
+    }
+
+    // 当前消息数（O(1)，并发下为近似值）
+    public int size() {
+        long size = enqueuePosition.get() - dequeuePosition.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public long bytes() {
+        return bytes.get();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 前后填充的AtomicLong，避免入队/出队指针落在同一缓存行产生伪共享
+     */
+    @SuppressWarnings("unused")
+    private static final class PaddedAtomicLong extends AtomicLong {
+        private long p1, p2, p3, p4, p5, p6, p7;
+    }
+}
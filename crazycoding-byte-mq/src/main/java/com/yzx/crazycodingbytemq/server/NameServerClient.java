@@ -0,0 +1,109 @@
+package com.yzx.crazycodingbytemq.server;
+
+import com.yzx.crazycodingbytemq.codec.ProtocolConstant;
+import com.yzx.crazycodingbytemq.codec.ProtocolFrame;
+import com.yzx.crazycodingbytemq.config.ClientConfig;
+import com.yzx.crazycodingbytemq.enums.MessageTypeEnum;
+import com.yzx.crazycodingbytemq.exception.BrokerUnavailableException;
+import com.yzx.crazycodingbytemq.handler.ClientResponseHandler;
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import com.yzx.crazycodingbytemq.pool.ClientConnectionPool;
+import io.netty.channel.Channel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @className: NameServerClient
+ * @author: yzx
+ * @date: 2025/11/25 16:00
+ * @Version: 1.0
+ * @description: 客户端查询name server路由（按配置顺序尝试各name server，全部失败时以BrokerUnavailableException结束）
+ */
+@Slf4j
+public class NameServerClient {
+    private final List<ClientConnectionPool> pools;
+    private final long timeoutMs;
+    private final AtomicLong requestIdGenerator = new AtomicLong(0);
+
+    public NameServerClient(List<String> addresses, ClientConfig clientConfig) {
+        List<ClientConnectionPool> list = new ArrayList<>();
+        for (String address : addresses) {
+            int index = address.lastIndexOf(':');
+            if (index <= 0) {
+                throw new IllegalArgumentException("name server地址格式错误（host:port）：" + address);
+            }
+            list.add(ClientConnectionPool.getInstance(address.substring(0, index).trim(),
+                    Integer.parseInt(address.substring(index + 1).trim())));
+        }
+        this.pools = List.copyOf(list);
+        this.timeoutMs = clientConfig.getConnectTimeout().toMillis();
+    }
+
+    /**
+     * 查询队列路由（队列为空时返回全部已分配队列的路由；未分配的队列由name server按负载分配）
+     */
+    public CompletableFuture<MqMessage.RouteQueryResponse> query(Collection<String> queueNames) {
+        CompletableFuture<MqMessage.RouteQueryResponse> future = new CompletableFuture<>();
+        query(queueNames, 0, future, null);
+        return future;
+    }
+
+    public void close() {
+        pools.forEach(ClientConnectionPool::close);
+    }
+
+    private void query(Collection<String> queueNames, int index,
+                       CompletableFuture<MqMessage.RouteQueryResponse> future, Throwable lastError) {
+        if (index >= pools.size()) {
+            future.completeExceptionally(new BrokerUnavailableException("没有可用的name server", lastError));
+            return;
+        }
+        ClientConnectionPool pool = pools.get(index);
+        pool.acquire()
+                .thenCompose(channel -> send(channel, queueNames))
+                .whenComplete((response, e) -> {
+                    if (e == null) {
+                        future.complete(response);
+                        return;
+                    }
+                    log.warn("查询路由失败，尝试下一个name server：nameServer={}, 原因={}", pool.address(), e.getMessage());
+                    query(queueNames, index + 1, future, e);
+                });
+    }
+
+    private CompletableFuture<MqMessage.RouteQueryResponse> send(Channel channel, Collection<String> queueNames) {
+        long requestId = requestIdGenerator.incrementAndGet();
+        byte[] body = MqMessage.RouteQueryRequest.newBuilder()
+                .setRequestId(requestId)
+                .addAllQueueNames(queueNames)
+                .build()
+                .toByteArray();
+        channel.attr(ClientResponseHandler.ROUTE_FUTURES).setIfAbsent(new ConcurrentHashMap<>());
+        Map<Long, CompletableFuture<MqMessage.RouteQueryResponse>> futures = channel.attr(ClientResponseHandler.ROUTE_FUTURES).get();
+        CompletableFuture<MqMessage.RouteQueryResponse> response = new CompletableFuture<>();
+        futures.put(requestId, response);
+        response.whenComplete((result, e) -> {
+            futures.remove(requestId, response);
+            ClientConnectionPool.releaseChannel(channel);
+        });
+        channel.writeAndFlush(new ProtocolFrame(
+                ProtocolConstant.MAGIC,
+                ProtocolConstant.Version,
+                body.length,
+                MessageTypeEnum.ROUTE_QUERY.getCode(),
+                body
+        )).addListener(result -> {
+            if (!result.isSuccess()) {
+                response.completeExceptionally(result.cause());
+            }
+        });
+        return RequestTimer.getInstance().withTimeout(response, timeoutMs, "查询路由");
+    }
+}
@@ -0,0 +1,216 @@
+package com.yzx.crazycodingbytemq.server;
+
+import com.yzx.crazycodingbytemq.config.ConfigLoader;
+import com.yzx.crazycodingbytemq.config.ServerConfig;
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import com.yzx.crazycodingbytemq.util.HashUtils;
+import io.netty.util.collection.LongObjectHashMap;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @className: OrderedDeliveryManager
+ * @author: yzx
+ * @date: 2025/11/21 16:00
+ * @Version: 1.0
+ * @description: 按键顺序投递（同一消息键同时最多一条在途消息，不同键并行；键状态只在有在途或积压消息时存在，空闲即回收；
+ * 持有者超过租约时间未确认也未重投时收回消息键，交给同键下一条等待的消息）
+ */
+@Slf4j
+public class OrderedDeliveryManager {
+    private static final OrderedDeliveryManager INSTANCE = new OrderedDeliveryManager();
+    // 开启按键顺序投递的队列
+    private final Set<String> orderedQueues;
+    // 单个队列按键积压的消息上限（达到后暂停从环形队列取消息，背压传回生产者）
+    private final int maxPendingPerQueue;
+    // 消息键租约：持有者超过该时间没有确认或重投则收回（兜底持有者消息丢失导致键永久占用，有积压时交给下一条）
+    private final long keyIdleTimeoutMs;
+    private final ScheduledExecutorService idleKeySweeper = Executors.newSingleThreadScheduledExecutor(
+            r -> new Thread(r, "ordered-key-sweeper"));
+    // 物理分区队列名(消费组消息为"分区队列名@消费组")->键状态
+    private final Map<String, PartitionState> partitions = new ConcurrentHashMap<>();
+    // 队列名->按键积压的消息数
+    private final Map<String, AtomicInteger> pendingCounts = new ConcurrentHashMap<>();
+
+    public static OrderedDeliveryManager getInstance() {
+        return INSTANCE;
+    }
+
+    private OrderedDeliveryManager() {
+        ServerConfig config = ConfigLoader.bindConfig(ServerConfig.class, "mq.server");
+        this.orderedQueues = Set.copyOf(config.getOrderedQueues());
+        this.maxPendingPerQueue = config.getOrderedMaxPending();
+        this.keyIdleTimeoutMs = config.getOrderedKeyIdleTimeout().toMillis();
+        // 按租约的十分之一检查，收回延迟不超过租约的1.1倍
+        long sweepIntervalMs = Math.max(1000, keyIdleTimeoutMs / 10);
+        idleKeySweeper.scheduleAtFixedRate(this::sweepIdleKeys, sweepIntervalMs, sweepIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isOrdered(String queueName) {
+        return orderedQueues.contains(queueName);
+    }
+
+    /**
+     * 积压消息是否已达上限
+     */
+    public boolean isBackedUp(String queueName) {
+        AtomicInteger pending = pendingCounts.get(queueName);
+        return pending != null && pending.get() >= maxPendingPerQueue;
+    }
+
+    /**
+     * 尝试占用消息键：键空闲或由该消息自己持有（重试）时可投递，否则按键排队等待前一条确认
+     * @return true表示可立即投递
+     */
+    public boolean tryAcquire(MqMessage.MessageItem messageItem) {
+        if (messageItem.getMessageKey().isEmpty()) return true;
+        PartitionState state = stateOf(messageItem);
+        long keyHash = HashUtils.fnv1a64(messageItem.getMessageKey());
+        synchronized (state) {
+            KeyState keyState = state.keys.get(keyHash);
+            if (keyState == null) {
+                state.keys.put(keyHash, new KeyState(messageItem.getMessageId()));
+                return true;
+            }
+            if (keyState.owner.equals(messageItem.getMessageId())) {
+                keyState.lastActiveMs = System.currentTimeMillis();
+                return true;
+            }
+            if (keyState.pending == null) {
+                keyState.pending = new ArrayDeque<>(4);
+            }
+            keyState.pending.addLast(messageItem);
+        }
+        pendingCounts.computeIfAbsent(messageItem.getQueueName(), k -> new AtomicInteger(0)).incrementAndGet();
+        return false;
+    }
+
+    /**
+     * 释放消息键（确认或进入死信队列后调用）：同键的下一条消息转入就绪队列，无积压则回收键状态
+     * @return 是否有消息转为就绪
+     */
+    public boolean release(MqMessage.MessageItem messageItem) {
+        if (!isOrdered(messageItem.getQueueName()) || messageItem.getMessageKey().isEmpty()) return false;
+        PartitionState state = partitions.get(partitionKey(messageItem));
+        if (state == null) return false;
+        long keyHash = HashUtils.fnv1a64(messageItem.getMessageKey());
+        MqMessage.MessageItem next;
+        synchronized (state) {
+            KeyState keyState = state.keys.get(keyHash);
+            if (keyState == null || !keyState.owner.equals(messageItem.getMessageId())) return false;
+            next = keyState.pending == null ? null : keyState.pending.pollFirst();
+            if (next == null) {
+                state.keys.remove(keyHash);
+                return false;
+            }
+            keyState.owner = next.getMessageId();
+            keyState.lastActiveMs = System.currentTimeMillis();
+            state.ready.addLast(next);
+        }
+        pendingCounts.get(messageItem.getQueueName()).decrementAndGet();
+        return true;
+    }
+
+    /**
+     * 取出一条已获得消息键的就绪消息
+     */
+    public MqMessage.MessageItem pollReady(String partitionQueue) {
+        PartitionState state = partitions.get(partitionQueue);
+        if (state == null) return null;
+        synchronized (state) {
+            return state.ready.pollFirst();
+        }
+    }
+
+    public boolean hasReady(String partitionQueue) {
+        PartitionState state = partitions.get(partitionQueue);
+        if (state == null) return false;
+        synchronized (state) {
+            return !state.ready.isEmpty();
+        }
+    }
+
+    public void shutdown() {
+        idleKeySweeper.shutdown();
+    }
+
+    // 收回租约到期的键：无积压则回收键状态，有积压则交给同键下一条消息（原持有者之后确认不再释放该键，重投时重新排队）
+    private void sweepIdleKeys() {
+        long now = System.currentTimeMillis();
+        long deadline = now - keyIdleTimeoutMs;
+        int evicted = 0;
+        List<MqMessage.MessageItem> handedOff = new ArrayList<>();
+        for (PartitionState state : partitions.values()) {
+            synchronized (state) {
+                List<Long> idleKeys = new ArrayList<>();
+                for (LongObjectHashMap.PrimitiveEntry<KeyState> entry : state.keys.entries()) {
+                    KeyState keyState = entry.value();
+                    if (keyState.lastActiveMs >= deadline) continue;
+                    MqMessage.MessageItem next = keyState.pending == null ? null : keyState.pending.pollFirst();
+                    if (next == null) {
+                        idleKeys.add(entry.key());
+                        continue;
+                    }
+                    log.warn("消息键租约到期，交给下一条消息：queueName={}, 原持有者={}, 新持有者={}",
+                            next.getQueueName(), keyState.owner, next.getMessageId());
+                    keyState.owner = next.getMessageId();
+                    keyState.lastActiveMs = now;
+                    state.ready.addLast(next);
+                    pendingCounts.get(next.getQueueName()).decrementAndGet();
+                    handedOff.add(next);
+                }
+                idleKeys.forEach(state.keys::remove);
+                evicted += idleKeys.size();
+            }
+        }
+        if (evicted > 0) {
+            log.warn("回收长时间未释放的消息键：{}个", evicted);
+        }
+        // 就绪消息唤醒消费者
+        handedOff.forEach(next -> QueueManager.getInstance().notifyMessageArrived(next.getQueueName(), next.getPartition()));
+    }
+
+    private PartitionState stateOf(MqMessage.MessageItem messageItem) {
+        return partitions.computeIfAbsent(partitionKey(messageItem), k -> new PartitionState());
+    }
+
+    // 重试消息与原消息落在同一分区的键状态上；各消费组独立占用消息键
+    private String partitionKey(MqMessage.MessageItem messageItem) {
+        return QueueManager.groupScopedName(
+                QueueManager.getInstance().partitionQueueName(messageItem.getQueueName(), messageItem.getPartition()),
+                messageItem.getConsumerGroup());
+    }
+
+    /**
+     * 单个分区的键状态：键哈希->键状态（long主键开放寻址表），以及已获得键的就绪消息
+     */
+    private static class PartitionState {
+        // 64位FNV-1a哈希碰撞只会让两个键互相串行，不影响正确性
+        private final LongObjectHashMap<KeyState> keys = new LongObjectHashMap<>();
+        private final ArrayDeque<MqMessage.MessageItem> ready = new ArrayDeque<>();
+    }
+
+    /**
+     * 单个键：当前持有者（在途或等待重试的消息ID）和等待中的同键消息
+     */
+    private static class KeyState {
+        private String owner;
+        private long lastActiveMs = System.currentTimeMillis();
+        // 大多数键没有积压，按需创建
+        private ArrayDeque<MqMessage.MessageItem> pending;
+
+        KeyState(String owner) {
+            this.owner = owner;
+        }
+    }
+}
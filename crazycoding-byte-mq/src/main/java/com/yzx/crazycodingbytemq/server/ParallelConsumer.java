@@ -0,0 +1,229 @@
+package com.yzx.crazycodingbytemq.server;
+
+import com.yzx.crazycodingbytemq.config.ClientConfig;
+import com.yzx.crazycodingbytemq.config.ConfigLoader;
+import com.yzx.crazycodingbytemq.enums.ConsumeOrder;
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @className: ParallelConsumer
+ * @author: yzx
+ * @date: 2025/11/24 16:10
+ * @Version: 1.0
+ * @description: 并行消费者（从预取缓冲取消息，每条在虚拟线程上处理，最多consumeConcurrency条同时处理，可按消息键串行；
+ * 完成情况记在按分发顺序编号的滑动窗口里，只提交到最早一条未完成的消息为止，攒批后一帧确认，
+ * 消费组偏移量不会越过仍在处理的消息）
+ */
+@Slf4j
+public class ParallelConsumer {
+    private final MessageQueueConsumer consumer;
+    private final MessageListener listener;
+    private final ConsumeOrder consumeOrder;
+    private final int ackBatchSize;
+    // 同时处理的条数（在虚拟线程内获取，按键排队等待的消息不占用）
+    private final Semaphore concurrency;
+    // 窗口剩余位置（分发时获取，提交时归还）
+    private final Semaphore windowPermits;
+    private final Slot[] window;
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService ackFlusher;
+    // 消息键->该键最后一条消息的处理结果（KEY模式下后一条接在前一条之后）
+    private final Map<String, CompletableFuture<Void>> keyTails = new ConcurrentHashMap<>();
+    // 以下字段在this上加锁访问：下一个分发序号、最早未提交序号、待提交的确认
+    private long nextSeq;
+    private long commitSeq;
+    private List<MqMessage.MessageItem> pendingAcks = new ArrayList<>();
+    private volatile boolean running;
+    private Thread dispatcher;
+
+    public ParallelConsumer(MessageQueueConsumer consumer, MessageListener listener) {
+        ClientConfig clientConfig = ConfigLoader.bindConfig(ClientConfig.class, "mq.client");
+        this.consumer = consumer;
+        this.listener = listener;
+        this.consumeOrder = clientConfig.getConsumeOrder();
+        this.ackBatchSize = clientConfig.getAckBatchSize();
+        this.concurrency = new Semaphore(clientConfig.getConsumeConcurrency());
+        this.windowPermits = new Semaphore(clientConfig.getConsumeWindow());
+        this.window = new Slot[clientConfig.getConsumeWindow()];
+        this.ackFlusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "consumer-ack-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long flushMs = clientConfig.getAckFlushInterval().toMillis();
+        ackFlusher.scheduleWithFixedDelay(this::flushAcks, flushMs, flushMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 开始消费：预取这些队列并在分发线程上持续分发
+     */
+    public synchronized void start(List<String> queueNames) {
+        if (running) {
+            throw new IllegalStateException("并行消费者已启动");
+        }
+        running = true;
+        queueNames.forEach(consumer::prefetch);
+        dispatcher = new Thread(this::dispatchLoop, "parallel-consumer-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        log.info("并行消费者启动：queues={}, order={}, concurrency={}, window={}",
+                queueNames, consumeOrder, concurrency.availablePermits(), window.length);
+    }
+
+    /**
+     * 停止分发，等待已分发的消息处理完并提交确认（最多timeout）
+     */
+    public void close(Duration timeout) {
+        running = false;
+        try {
+            // 先停分发线程，再等已分发的消息处理完
+            if (dispatcher != null) {
+                dispatcher.interrupt();
+                dispatcher.join(timeout.toMillis());
+            }
+            workers.shutdown();
+            if (!workers.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("并行消费者关闭超时，未完成的消息由服务端可见性超时重投");
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        ackFlusher.shutdown();
+        flushAcks();
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            try {
+                for (MqMessage.MessageItem messageItem : consumer.poll(Duration.ofMillis(100))) {
+                    // 窗口已满（最早一条还没处理完）时等待，不再分发
+                    windowPermits.acquire();
+                    dispatch(messageItem);
+                }
+            } catch (InterruptedException e) {
+                if (running) {
+                    log.warn("并行消费分发线程被中断");
+                }
+                return;
+            } catch (Exception e) {
+                log.error("并行消费分发异常", e);
+            }
+        }
+    }
+
+    private void dispatch(MqMessage.MessageItem messageItem) {
+        long seq;
+        synchronized (this) {
+            seq = nextSeq++;
+            window[(int) (seq % window.length)] = new Slot(messageItem);
+        }
+        String key = messageItem.getMessageKey();
+        if (consumeOrder == ConsumeOrder.UNORDERED || key.isEmpty()) {
+            workers.execute(() -> process(seq, messageItem));
+            return;
+        }
+        // 同一键的消息接在前一条之后处理
+        CompletableFuture<Void> tail = keyTails.compute(key, (k, previous) -> previous == null
+                ? CompletableFuture.runAsync(() -> process(seq, messageItem), workers)
+                : previous.thenRunAsync(() -> process(seq, messageItem), workers));
+        tail.whenComplete((v, e) -> keyTails.remove(key, tail));
+    }
+
+    private void process(long seq, MqMessage.MessageItem messageItem) {
+        boolean success = false;
+        try {
+            concurrency.acquire();
+            try {
+                listener.onMessage(messageItem);
+                success = true;
+            } finally {
+                concurrency.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("消息消费失败：queueName={}, messageId={}", messageItem.getQueueName(), messageItem.getMessageId(), e);
+            consumer.nackMessage(messageItem.getQueueName(), messageItem, e.getMessage());
+        }
+        complete(seq, success);
+    }
+
+    // 标记完成并推进提交点：从最早未提交的序号开始，连续完成的消息进入待确认（失败的已上报，不确认）
+    private void complete(long seq, boolean ack) {
+        List<MqMessage.MessageItem> ready = null;
+        int released = 0;
+        synchronized (this) {
+            Slot slot = window[(int) (seq % window.length)];
+            slot.done = true;
+            slot.ack = ack;
+            while (commitSeq < nextSeq) {
+                Slot head = window[(int) (commitSeq % window.length)];
+                if (!head.done) break;
+                if (head.ack) {
+                    pendingAcks.add(head.messageItem);
+                }
+                window[(int) (commitSeq % window.length)] = null;
+                commitSeq++;
+                released++;
+            }
+            if (pendingAcks.size() >= ackBatchSize) {
+                ready = pendingAcks;
+                pendingAcks = new ArrayList<>();
+            }
+        }
+        if (released > 0) {
+            windowPermits.release(released);
+        }
+        if (ready != null) {
+            sendAcks(ready);
+        }
+    }
+
+    private void flushAcks() {
+        List<MqMessage.MessageItem> ready;
+        synchronized (this) {
+            if (pendingAcks.isEmpty()) return;
+            ready = pendingAcks;
+            pendingAcks = new ArrayList<>();
+        }
+        sendAcks(ready);
+    }
+
+    // 按队列分组，每个队列一帧
+    private void sendAcks(List<MqMessage.MessageItem> messageItems) {
+        Map<String, List<MqMessage.MessageItem>> byQueue = new LinkedHashMap<>();
+        for (MqMessage.MessageItem messageItem : messageItems) {
+            byQueue.computeIfAbsent(messageItem.getQueueName(), k -> new ArrayList<>()).add(messageItem);
+        }
+        byQueue.forEach(consumer::ackMessages);
+    }
+
+    /**
+     * 窗口中的一条消息
+     */
+    private static class Slot {
+        private final MqMessage.MessageItem messageItem;
+        private boolean done;
+        private boolean ack;
+
+        Slot(MqMessage.MessageItem messageItem) {
+            this.messageItem = messageItem;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.yzx.crazycodingbytemq.server;
+
+import com.yzx.crazycodingbytemq.codec.ProtocolConstant;
+import com.yzx.crazycodingbytemq.codec.ProtocolFrame;
+import com.yzx.crazycodingbytemq.config.ClientConfig;
+import com.yzx.crazycodingbytemq.enums.MessageTypeEnum;
+import com.yzx.crazycodingbytemq.handler.ClientResponseHandler;
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @className: ProducerAccumulator
+ * @author: yzx
+ * @date: 2025/11/23 19:30
+ * @Version: 1.0
+ * @description: 生产者消息累加器（按队列攒批：批次字节数达到batchSize立即发送，否则等待linger后发送；
+ * 一批消息封装为一个SEND_BATCH帧，broker逐条入队后一次返回全部结果，再按下标完成每条消息的future；
+ * 同一队列同时只有一个批次在途，前一批响应后才发下一批，连接池中不同连接上的批次不会乱序到达broker；
+ * 未得到最终结果的消息按字节数占用缓冲区，缓冲区满时发送方阻塞等待，超过maxBlock仍无空间则发送失败）
+ */
+@Slf4j
+public class ProducerAccumulator {
+    private final BrokerRouter brokerRouter;
+    private final int batchSize;
+    private final long lingerMs;
+    private final long timeoutMs;
+    // 缓冲区字节数上限（<=0表示不限制）及缓冲区满时最长阻塞时间
+    private final long bufferMemory;
+    private final long maxBlockMs;
+    // 已占用的缓冲区字节数（在this上加锁访问）
+    private long bufferedBytes;
+    // 发送线程：执行linger到期和批次发送，不占用调用方线程
+    private final ScheduledExecutorService sender;
+    private final AtomicLong batchIdGenerator = new AtomicLong(0);
+    // 队列名->正在攒的批次（在this上加锁访问）
+    private final Map<String, Batch> openBatches = new HashMap<>();
+    // 队列名->已攒满、等待前一批响应的批次（在this上加锁访问）
+    private final Map<String, ArrayDeque<Batch>> queuedBatches = new HashMap<>();
+    // 有批次在途的队列（在this上加锁访问）
+    private final Set<String> inflightQueues = new HashSet<>();
+    private boolean closed;
+
+    public ProducerAccumulator(BrokerRouter brokerRouter, ClientConfig clientConfig) {
+        this.brokerRouter = brokerRouter;
+        this.batchSize = clientConfig.getBatchSize();
+        this.lingerMs = clientConfig.getLinger().toMillis();
+        this.timeoutMs = clientConfig.getRequestTimeout().toMillis();
+        this.bufferMemory = clientConfig.getBufferMemory();
+        this.maxBlockMs = clientConfig.getMaxBlock().toMillis();
+        this.sender = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "producer-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 占用缓冲区（发送前在调用方线程调用）：空间不足时最多阻塞maxBlock等待已发出的消息得到结果
+     * @return 超时、被中断或已关闭时返回false，消息不应发出
+     */
+    public boolean reserve(int size) {
+        if (bufferMemory <= 0) return true;
+        // 单条消息超过缓冲区上限，等多久都放不下
+        if (size > bufferMemory) return false;
+        long deadline = System.currentTimeMillis() + maxBlockMs;
+        synchronized (this) {
+            try {
+                while (!closed && bufferedBytes + size > bufferMemory) {
+                    long waitMs = deadline - System.currentTimeMillis();
+                    if (waitMs <= 0) return false;
+                    wait(waitMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            if (closed) return false;
+            bufferedBytes += size;
+            return true;
+        }
+    }
+
+    /**
+     * 释放缓冲区（消息得到最终结果后调用，含重试结束），唤醒阻塞的发送方
+     */
+    public void release(int size) {
+        if (bufferMemory <= 0) return;
+        synchronized (this) {
+            bufferedBytes -= size;
+            notifyAll();
+        }
+    }
+
+    /**
+     * 追加一条消息到所属队列的批次
+     * @return 该消息的发送结果（批次响应到达后完成）
+     */
+    public CompletableFuture<MqMessage.SendMessageResponse> append(MqMessage.SendMessageRequest request) {
+        CompletableFuture<MqMessage.SendMessageResponse> future = new CompletableFuture<>();
+        String queueName = request.getQueueName();
+        int size = request.getSerializedSize();
+        List<Batch> ready = new ArrayList<>(2);
+        synchronized (this) {
+            if (closed) {
+                future.completeExceptionally(new IllegalStateException("客户端已关闭"));
+                return future;
+            }
+            Batch batch = openBatches.get(queueName);
+            // 放不下则先发出当前批次（单条超过batchSize的消息独占一批）
+            if (batch != null && batch.bytes + size > batchSize) {
+                openBatches.remove(queueName);
+                ready.add(batch);
+                batch = null;
+            }
+            if (batch == null) {
+                Batch created = new Batch(queueName);
+                openBatches.put(queueName, created);
+                sender.schedule(() -> expire(created), lingerMs, TimeUnit.MILLISECONDS);
+                batch = created;
+            }
+            batch.add(request, size, future);
+            if (batch.bytes >= batchSize) {
+                openBatches.remove(queueName);
+                ready.add(batch);
+            }
+        }
+        for (Batch batch : ready) {
+            sender.execute(() -> dispatch(batch));
+        }
+        return future;
+    }
+
+    /**
+     * 关闭：发出所有未满的批次，等待排队的批次依次发出后停止发送线程（已发出批次的响应仍按超时等待）
+     */
+    public void close() {
+        List<Batch> remaining;
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            remaining = new ArrayList<>(openBatches.values());
+            openBatches.clear();
+            // 唤醒等待缓冲区的发送方
+            notifyAll();
+        }
+        for (Batch batch : remaining) {
+            sender.execute(() -> dispatch(batch));
+        }
+        sender.shutdown();
+        try {
+            long deadline = System.currentTimeMillis() + timeoutMs;
+            if (!sender.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS)) {
+                sender.shutdownNow();
+            }
+            synchronized (this) {
+                long waitMs;
+                while (!queuedBatches.isEmpty() && (waitMs = deadline - System.currentTimeMillis()) > 0) {
+                    wait(waitMs);
+                }
+            }
+        } catch (InterruptedException e) {
+            sender.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // linger到期：批次仍未发出则发送
+    private void expire(Batch batch) {
+        synchronized (this) {
+            if (!openBatches.remove(batch.queueName, batch)) return;
+        }
+        dispatch(batch);
+    }
+
+    // 队列没有在途批次则立即发送，否则排队等前一批响应
+    private void dispatch(Batch batch) {
+        synchronized (this) {
+            if (!inflightQueues.add(batch.queueName)) {
+                queuedBatches.computeIfAbsent(batch.queueName, k -> new ArrayDeque<>()).addLast(batch);
+                return;
+            }
+        }
+        send(batch);
+    }
+
+    // 批次已结束（响应、失败或超时）：发出该队列排队的下一批
+    private void sendNext(String queueName) {
+        Batch next;
+        synchronized (this) {
+            ArrayDeque<Batch> queued = queuedBatches.get(queueName);
+            next = queued == null ? null : queued.pollFirst();
+            if (next == null) {
+                inflightQueues.remove(queueName);
+                return;
+            }
+            if (queued.isEmpty()) {
+                queuedBatches.remove(queueName);
+                notifyAll();
+            }
+        }
+        send(next);
+    }
+
+    private void send(Batch batch) {
+        long batchId = batchIdGenerator.incrementAndGet();
+        brokerRouter.acquire(batch.queueName).whenComplete((channel, throwable) -> {
+            if (throwable != null) {
+                log.error("批量发送失败，获取连接异常：queue={}, 数量={}", batch.queueName, batch.requests.size(), throwable);
+                batch.fail(throwable);
+                sendNext(batch.queueName);
+                return;
+            }
+            MqMessage.SendBatchRequest request = MqMessage.SendBatchRequest.newBuilder()
+                    .setBatchId(batchId)
+                    .setQueueName(batch.queueName)
+                    .addAllMessages(batch.requests)
+                    .build();
+            byte[] body = request.toByteArray();
+            channel.attr(ClientResponseHandler.BATCH_FUTURES).setIfAbsent(new ConcurrentHashMap<>());
+            Map<Long, CompletableFuture<MqMessage.SendBatchResponse>> futures = channel.attr(ClientResponseHandler.BATCH_FUTURES).get();
+            CompletableFuture<MqMessage.SendBatchResponse> response = new CompletableFuture<>();
+            futures.put(batchId, response);
+            RequestTimer.getInstance().withTimeout(response, timeoutMs, "批量发送")
+                    .whenComplete((result, e) -> {
+                        futures.remove(batchId, response);
+                        if (e != null) {
+                            log.error("批量发送失败：queue={}, batchId={}, 数量={}", batch.queueName, batchId, batch.requests.size(), e);
+                            batch.fail(e);
+                        } else {
+                            batch.complete(result);
+                        }
+                        sendNext(batch.queueName);
+                    });
+            channel.writeAndFlush(new ProtocolFrame(ProtocolConstant.MAGIC, ProtocolConstant.Version, body.length,
+                            MessageTypeEnum.SEND_BATCH.getCode(), body))
+                    .addListener(f -> {
+                        if (!f.isSuccess()) {
+                            response.completeExceptionally(f.cause());
+                        }
+                    });
+            //响应按连接上的批次ID回调，写出后即可归还连接
+            brokerRouter.release(channel);
+        });
+    }
+
+    /**
+     * 同一队列的一批消息
+     */
+    private static class Batch {
+        private final String queueName;
+        private final List<MqMessage.SendMessageRequest> requests = new ArrayList<>();
+        private final List<CompletableFuture<MqMessage.SendMessageResponse>> futures = new ArrayList<>();
+        private int bytes;
+
+        Batch(String queueName) {
+            this.queueName = queueName;
+        }
+
+        void add(MqMessage.SendMessageRequest request, int size, CompletableFuture<MqMessage.SendMessageResponse> future) {
+            requests.add(request);
+            futures.add(future);
+            bytes += size;
+        }
+
+        // 结果与请求按下标一一对应
+        void complete(MqMessage.SendBatchResponse response) {
+            for (int i = 0; i < futures.size(); i++) {
+                if (i < response.getResultsCount()) {
+                    futures.get(i).complete(response.getResults(i));
+                } else {
+                    futures.get(i).completeExceptionally(new IllegalStateException("批量响应缺少结果：index=" + i));
+                }
+            }
+        }
+
+        void fail(Throwable e) {
+            futures.forEach(f -> f.completeExceptionally(e));
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.yzx.crazycodingbytemq.server;
+
+import com.yzx.crazycodingbytemq.model.MqMessage;
+
+/**
+ * @className: PushMessageListener
+ * @author: yzx
+ * @date: 2025/11/20 16:20
+ * @Version: 1.0
+ * @description: 推模式消息监听器（在连接的EventLoop线程上回调，耗时处理应自行切换线程）
+ */
+@FunctionalInterface
+public interface PushMessageListener {
+    void onMessage(MqMessage.MessageItem messageItem);
+}
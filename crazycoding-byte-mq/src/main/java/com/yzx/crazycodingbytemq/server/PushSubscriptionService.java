@@ -0,0 +1,198 @@
+package com.yzx.crazycodingbytemq.server;
+
+import com.yzx.crazycodingbytemq.codec.ProtocolConstant;
+import com.yzx.crazycodingbytemq.codec.ProtocolFrame;
+import com.yzx.crazycodingbytemq.config.ConfigLoader;
+import com.yzx.crazycodingbytemq.config.ServerConfig;
+import com.yzx.crazycodingbytemq.enums.MessageTypeEnum;
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @className: PushSubscriptionService
+ * @author: yzx
+ * @date: 2025/11/20 15:20
+ * @Version: 1.0
+ * @description: 推模式消费（消费者授予消息数/字节数额度，消息入队即推送；额度耗尽或通道不可写时暂停，补充额度或通道恢复可写后继续）
+ */
+@Slf4j
+public class PushSubscriptionService {
+    private static final PushSubscriptionService INSTANCE = new PushSubscriptionService();
+    // 队列名->该队列的订阅（按通道区分）
+    private final Map<String, Map<Channel, Subscription>> subscriptionsByQueue = new ConcurrentHashMap<>();
+    // 通道->该通道上的订阅（按队列区分），用于可写性变化和连接断开
+    private final Map<Channel, Map<String, Subscription>> subscriptionsByChannel = new ConcurrentHashMap<>();
+    // 单次推送任务最多推送的消息数
+    private final int pushBatchLimit;
+
+    public static PushSubscriptionService getInstance() {
+        return INSTANCE;
+    }
+
+    private PushSubscriptionService() {
+        ServerConfig config = ConfigLoader.bindConfig(ServerConfig.class, "mq.server");
+        this.pushBatchLimit = config.getPushBatchLimit();
+    }
+
+    /**
+     * 订阅或补充额度（同一通道对同一队列重复订阅时累加额度）
+     * @return 是否为新建订阅（同一通道上的请求在其EventLoop上串行处理）
+     */
+    public boolean subscribe(ChannelHandlerContext ctx, MqMessage.SubscribeRequest request) {
+        Channel channel = ctx.channel();
+        Map<String, Subscription> existing = subscriptionsByChannel.get(channel);
+        boolean created = existing == null || !existing.containsKey(request.getQueueName());
+        Subscription subscription = subscriptionsByChannel
+                .computeIfAbsent(channel, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(request.getQueueName(), k -> {
+                    Subscription newSubscription = new Subscription(ctx, request.getQueueName(),
+                            request.getConsumerClientId(), request.getVisibilityTimeoutMs(), request.getByteCredits() > 0);
+                    subscriptionsByQueue.computeIfAbsent(k, q -> new ConcurrentHashMap<>()).put(channel, newSubscription);
+                    log.info("推模式订阅成功：queueName={}, consumer={}", k, request.getConsumerClientId());
+                    return newSubscription;
+                });
+        subscription.messageCredits.addAndGet(request.getMessageCredits());
+        if (request.getByteCredits() > 0) {
+            subscription.byteCredits.addAndGet(request.getByteCredits());
+        }
+        scheduleDrain(subscription);
+        return created;
+    }
+
+    public void unsubscribe(Channel channel, String queueName) {
+        Map<String, Subscription> subscriptions = subscriptionsByChannel.get(channel);
+        if (subscriptions == null) return;
+        Subscription subscription = subscriptions.remove(queueName);
+        if (subscription != null) {
+            removeFromQueue(subscription);
+            log.info("取消推模式订阅：queueName={}, consumer={}", queueName, subscription.consumerClientId);
+        }
+    }
+
+    /**
+     * 连接断开：清理该通道上的全部订阅（已推送未确认的消息由可见性超时重投）
+     */
+    public void onChannelInactive(Channel channel) {
+        Map<String, Subscription> subscriptions = subscriptionsByChannel.remove(channel);
+        if (subscriptions == null) return;
+        subscriptions.values().forEach(this::removeFromQueue);
+    }
+
+    /**
+     * 通道恢复可写：继续推送该通道上的全部订阅
+     */
+    public void onWritable(Channel channel) {
+        Map<String, Subscription> subscriptions = subscriptionsByChannel.get(channel);
+        if (subscriptions == null) return;
+        subscriptions.values().forEach(this::scheduleDrain);
+    }
+
+    /**
+     * 消息入队后调用：唤醒有额度的订阅
+     */
+    public void notifyMessageArrived(String queueName) {
+        Map<Channel, Subscription> subscriptions = subscriptionsByQueue.get(queueName);
+        if (subscriptions == null || subscriptions.isEmpty()) return;
+        for (Subscription subscription : subscriptions.values()) {
+            if (subscription.canPush()) {
+                scheduleDrain(subscription);
+            }
+        }
+    }
+
+    private void removeFromQueue(Subscription subscription) {
+        subscription.cancelled = true;
+        Map<Channel, Subscription> subscriptions = subscriptionsByQueue.get(subscription.queueName);
+        if (subscriptions != null) {
+            subscriptions.remove(subscription.ctx.channel(), subscription);
+        }
+    }
+
+    // 同一订阅同一时刻只有一个推送任务在EventLoop上排队
+    private void scheduleDrain(Subscription subscription) {
+        if (subscription.drainScheduled.compareAndSet(false, true)) {
+            subscription.ctx.executor().execute(() -> drain(subscription));
+        }
+    }
+
+    // 在通道EventLoop上推送，直到额度耗尽、通道不可写、队列为空或达到单次上限
+    private void drain(Subscription subscription) {
+        QueueManager queueManager = QueueManager.getInstance();
+        int pushed = 0;
+        try {
+            while (pushed < pushBatchLimit && subscription.canPush()) {
+                subscription.preferRetry = !subscription.preferRetry;
+                MqMessage.MessageItem messageItem = queueManager.pollForPush(subscription.queueName,
+                        subscription.preferRetry, subscription.consumerClientId, subscription.visibilityTimeoutMs);
+                if (messageItem == null) break;
+                subscription.messageCredits.decrementAndGet();
+                // 字节额度允许最后一条消息透支，保证大消息也能推出
+                subscription.byteCredits.addAndGet(-messageItem.getSerializedSize());
+                write(subscription, messageItem);
+                pushed++;
+            }
+        } finally {
+            if (pushed > 0) {
+                subscription.ctx.flush();
+            }
+            subscription.drainScheduled.set(false);
+        }
+        // 释放标记后再检查一次，避免与入队通知交错导致的丢失唤醒
+        if (subscription.canPush() && !queueManager.isEmpty(subscription.queueName)) {
+            scheduleDrain(subscription);
+        }
+    }
+
+    private void write(Subscription subscription, MqMessage.MessageItem messageItem) {
+        MqMessage.PushMessage pushMessage = MqMessage.PushMessage.newBuilder()
+                .setQueueName(subscription.queueName)
+                .setMessage(messageItem)
+                .build();
+        byte[] body = pushMessage.toByteArray();
+        subscription.ctx.write(new ProtocolFrame(
+                ProtocolConstant.MAGIC,
+                ProtocolConstant.Version,
+                body.length,
+                MessageTypeEnum.PUSH_MESSAGE.getCode(),
+                body
+        ));
+    }
+
+    /**
+     * 单个通道对单个队列的订阅
+     */
+    private static class Subscription {
+        private final ChannelHandlerContext ctx;
+        private final String queueName;
+        private final String consumerClientId;
+        private final long visibilityTimeoutMs;
+        private final AtomicLong messageCredits = new AtomicLong(0);
+        // 首次订阅未设置字节额度时视为不限制
+        private final AtomicLong byteCredits;
+        private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+        private volatile boolean cancelled;
+        // 仅在通道EventLoop上读写
+        private boolean preferRetry;
+
+        Subscription(ChannelHandlerContext ctx, String queueName, String consumerClientId,
+                     long visibilityTimeoutMs, boolean byteLimited) {
+            this.ctx = ctx;
+            this.queueName = queueName;
+            this.consumerClientId = consumerClientId;
+            this.visibilityTimeoutMs = visibilityTimeoutMs;
+            this.byteCredits = new AtomicLong(byteLimited ? 0 : Long.MAX_VALUE / 2);
+        }
+
+        boolean canPush() {
+            return !cancelled && messageCredits.get() > 0 && byteCredits.get() > 0
+                    && ctx.channel().isActive() && ctx.channel().isWritable();
+        }
+    }
+}
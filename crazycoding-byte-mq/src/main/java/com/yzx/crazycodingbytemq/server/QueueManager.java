@@ -1,11 +1,25 @@
 package com.yzx.crazycodingbytemq.server;
 
+import com.yzx.crazycodingbytemq.config.ConfigLoader;
+import com.yzx.crazycodingbytemq.config.MessageStoreConfig;
+import com.yzx.crazycodingbytemq.config.ServerConfig;
 import com.yzx.crazycodingbytemq.model.MqMessage;
+import com.yzx.crazycodingbytemq.store.DiskStripeManager;
+import com.yzx.crazycodingbytemq.store.QueueLog;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @className: QueueManager
@@ -17,54 +31,386 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 @Slf4j
 public class QueueManager {
     private static final QueueManager INSTANCE = new QueueManager();
-    //队列存储: queueName->消息队列
-    private final Map<String, ConcurrentLinkedQueue<MqMessage.MessageItem>> queueMap = new ConcurrentHashMap<>();
+    //重试队列后缀(重试消息单独存放,不阻塞主队列队头)
+    public static final String RETRY_QUEUE_SUFFIX = ".RETRY";
+    //死信队列后缀
+    public static final String DLQ_SUFFIX = ".DLQ";
+    //分区分隔符(多分区队列的物理队列名为"队列名#分区号")
+    public static final String PARTITION_SEPARATOR = "#";
+    //消费组分隔符(消费组自己的重试队列、顺序键状态以"名称@消费组"区分)
+    public static final String GROUP_SEPARATOR = "@";
+    //分区队列: 物理队列名->分层队列(磁盘日志+内存缓存)
+    private final Map<String, TieredMessageQueue> partitionQueues = new ConcurrentHashMap<>();
+    //重试队列: 重试队列名->有界环形队列
+    private final Map<String, MessageRingBuffer> retryQueues = new ConcurrentHashMap<>();
+    //队列默认分区数
+    private final int defaultPartitions;
+    //指定了分区数的队列
+    private final Map<String, Integer> partitionCounts;
+    //队列名->无消息键时的轮询计数
+    private final Map<String, AtomicInteger> roundRobinCounters = new ConcurrentHashMap<>();
+    //单队列容量(消息数)
+    private final int queueCapacity;
+    //单队列容量(字节数)
+    private final long queueMaxBytes;
+    //队列日志所在磁盘(分区按策略分布到多个挂载点)及段大小
+    private final DiskStripeManager queueStripes;
+    private final long queueLogSegmentBytes;
+    //积压时单次换入的消息数
+    private final int queuePageSize;
+    //队列日志时间索引采样间隔
+    private final long queueTimeIndexIntervalMs;
+    //磁盘换入线程(读盘不占用IO线程)
+    private final ExecutorService pageInExecutor = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors() / 2), r -> new Thread(r, "queue-page-in"));
+    //定时刷盘并保存消费位点
+    private final ScheduledExecutorService storeFlusher = Executors.newSingleThreadScheduledExecutor(
+            r -> new Thread(r, "queue-store-flusher"));
+    //已投递未确认消息表
+    private final InflightTable inflightTable = InflightTable.getInstance();
+    //按键顺序投递
+    private final OrderedDeliveryManager orderedDelivery = OrderedDeliveryManager.getInstance();
 
     public static QueueManager getInstance() {
         return INSTANCE;
     }
 
+    private QueueManager() {
+        ServerConfig config = ConfigLoader.bindConfig(ServerConfig.class, "mq.server");
+        this.queueCapacity = config.getQueueCapacity();
+        this.queueMaxBytes = config.getQueueMaxBytes();
+        this.defaultPartitions = Math.max(1, config.getDefaultQueuePartitions());
+        this.partitionCounts = parsePartitionCounts(config);
+        this.queueLogSegmentBytes = config.getQueueLogSegmentBytes();
+        this.queueStripes = new DiskStripeManager(queueStoreConfig(config));
+        this.queuePageSize = config.getQueuePageSize();
+        this.queueTimeIndexIntervalMs = config.getQueueTimeIndexInterval().toMillis();
+        recoverPartitionQueues();
+        long flushIntervalMs = config.getQueueStoreFlushInterval().toMillis();
+        //副本未复制的日志段暂不删除(延迟获取单例,避免初始化互相依赖)
+        storeFlusher.scheduleWithFixedDelay(() -> partitionQueues.forEach((name, queue) ->
+                        queue.flush(ReplicaManager.getInstance().replicatedOffset(name))),
+                flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    //队列日志的磁盘分布配置(段大小即磁盘至少要预留的空间)
+    private static MessageStoreConfig queueStoreConfig(ServerConfig config) {
+        MessageStoreConfig storeConfig = new MessageStoreConfig();
+        storeConfig.setBaseDir(config.getQueueStoreDir());
+        storeConfig.setBaseDirs(config.getQueueStoreDirs());
+        storeConfig.setDiskSelectPolicy(config.getQueueDiskSelectPolicy());
+        storeConfig.setDiskMinFreeBytes(config.getQueueDiskMinFreeBytes());
+        storeConfig.setMaxFileSize(config.getQueueLogSegmentBytes());
+        return storeConfig;
+    }
+
+    //启动时恢复各磁盘上已有的分区队列,积压消息按需换入
+    private void recoverPartitionQueues() {
+        for (String name : queueStripes.existingQueues()) {
+            partitionQueue(name);
+        }
+        log.info("队列日志恢复完成：分区队列数={}", partitionQueues.size());
+    }
+
+    private TieredMessageQueue partitionQueue(String partitionQueue) {
+        return partitionQueues.computeIfAbsent(partitionQueue, name -> {
+            //物理队列名去掉分区号即逻辑队列名
+            int separator = name.lastIndexOf(PARTITION_SEPARATOR);
+            String queueName = separator < 0 ? name : name.substring(0, separator);
+            int partition = separator < 0 ? 0 : Integer.parseInt(name.substring(separator + 1));
+            try {
+                return new TieredMessageQueue(name,
+                        new QueueLog(name, queueStripes, queueLogSegmentBytes, queueTimeIndexIntervalMs),
+                        queueCapacity, queueMaxBytes, queuePageSize, pageInExecutor,
+                        () -> notifyMessageArrived(queueName, partition));
+            } catch (IOException e) {
+                throw new RuntimeException("打开队列日志失败：" + name, e);
+            }
+        });
+    }
+
+    /**
+     * 全部分区队列的物理队列名(副本据此发现新分区)
+     */
+    List<String> partitionQueueNames() {
+        return List.copyOf(partitionQueues.keySet());
+    }
+
+    /**
+     * 已存在的分区队列(leader响应副本拉取),不存在返回null
+     */
+    TieredMessageQueue existingPartition(String partitionQueue) {
+        return partitionQueues.get(partitionQueue);
+    }
+
+    /**
+     * 副本复制的分区队列(不存在则按leader上的物理队列名创建)
+     */
+    TieredMessageQueue replicaPartition(String partitionQueue) {
+        return partitionQueue(partitionQueue);
+    }
+
+    /**
+     * 各逻辑队列的积压消息数(各分区日志末端-已消费位置之和，向name server上报负载)
+     */
+    Map<String, Long> queueDepths() {
+        Map<String, Long> depths = new HashMap<>();
+        partitionQueues.forEach((name, queue) -> {
+            int index = name.lastIndexOf(PARTITION_SEPARATOR);
+            String queueName = index > 0 ? name.substring(0, index) : name;
+            depths.merge(queueName, queue.backlog(), Long::sum);
+        });
+        return depths;
+    }
+
+    //解析"队列名:分区数"配置
+    private static Map<String, Integer> parsePartitionCounts(ServerConfig config) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String entry : config.getQueuePartitions()) {
+            int index = entry.lastIndexOf(':');
+            if (index <= 0) {
+                throw new IllegalArgumentException("队列分区配置格式错误（队列名:分区数）：" + entry);
+            }
+            counts.put(entry.substring(0, index).trim(), Math.max(1, Integer.parseInt(entry.substring(index + 1).trim())));
+        }
+        return Map.copyOf(counts);
+    }
+
     /**
-     * 向队列发送消息(生产者调用)
+     * 向队列发送消息(生产者调用,在队列归属线程上执行)
+     * @return 发送状态(队列满时返回QUEUE_FULL,生产者应退避重试);立即投递的消息直接完成,定时消息在定时存储落盘后完成
      */
-    public boolean sendMessage(MqMessage.SendMessageRequest request) {
+    public CompletableFuture<MqMessage.SendStatus> sendMessage(MqMessage.SendMessageRequest request) {
+        //去重:生产者重试时幂等ID不变;未带幂等ID的消息ID每次随机生成,不会重复,不进入去重窗口
+        String idempotencyKey = request.getIdempotencyKey();
+        DeduplicationService deduplicationService = DeduplicationService.getInstance();
+        if (deduplicationService.checkAndRecord(request.getQueueName(), idempotencyKey)) {
+            log.info("重复消息，忽略：queueName={}, idempotencyKey={}", request.getQueueName(), idempotencyKey);
+            return CompletableFuture.completedFuture(MqMessage.SendStatus.DUPLICATE);
+        }
+        return doSendMessage(request).thenApply(status -> {
+            if (status != MqMessage.SendStatus.SEND_OK) {
+                //未入队则撤销记录,生产者重试不被误判为重复
+                deduplicationService.forget(request.getQueueName(), idempotencyKey);
+            }
+            return status;
+        });
+    }
+
+    private CompletableFuture<MqMessage.SendStatus> doSendMessage(MqMessage.SendMessageRequest request) {
         try {
-            //不存在则创建队列(懒加载)
-            ConcurrentLinkedQueue<MqMessage.MessageItem> queue = queueMap.computeIfAbsent(request.getQueueName(), k -> new ConcurrentLinkedQueue<>());
             //构建MessageItem
             MqMessage.MessageItem messageItem = MqMessage.MessageItem.newBuilder()
                     .setMessageId(request.getMessageId())
                     .setMessageBody(request.getMessageBody())
                     .setQueueName(request.getQueueName())
                     .setPriority(request.getPriority())
+                    .setCreateTime(System.currentTimeMillis())
+                    .setDeliverAt(request.getDeliverAt())
+                    .setMessageKey(request.getMessageKey())
                     .build();
-            //入队
-            queue.offer(messageItem);
-            log.info("消息入队成功：queueName={}, messageId={}, 队列长度={}",
-                    request.getQueueName(), request.getMessageId(), queue.size());
-            return true;
+            //定时消息先进入定时存储(由存储写线程攒批落盘,不阻塞归属线程),到期后再入队
+            if (request.getDeliverAt() > messageItem.getCreateTime()) {
+                return ScheduledMessageService.getInstance().schedule(messageItem)
+                        .thenApply(saved -> saved ? MqMessage.SendStatus.SEND_OK : MqMessage.SendStatus.SEND_FAILED);
+            }
+            return CompletableFuture.completedFuture(
+                    enqueue(messageItem) ? MqMessage.SendStatus.SEND_OK : MqMessage.SendStatus.QUEUE_FULL);
 
         } catch (Exception e) {
             log.error("消息入队失败：queueName={}, messageId={}",
                     request.getQueueName(), request.getMessageId(), e);
+            return CompletableFuture.completedFuture(MqMessage.SendStatus.SEND_FAILED);
+        }
+    }
+
+    /**
+     * 消息直接入队(立即投递消息及到期的定时消息):选择分区,先追加到分区日志(分配分区内偏移量)再进入内存缓存
+     * @return 写入日志失败返回false
+     */
+    public boolean enqueue(MqMessage.MessageItem messageItem) {
+        String queueName = messageItem.getQueueName();
+        int partition = selectPartition(queueName, messageItem.getMessageKey());
+        MqMessage.MessageItem appended = partitionQueue(partitionQueueName(queueName, partition))
+                .append(messageItem.toBuilder().setPartition(partition));
+        if (appended == null) return false;
+        log.debug("消息入队成功：queueName={}, partition={}, offset={}", queueName, partition, appended.getOffset());
+        ReplicaManager.getInstance().notifyAppended();
+        notifyMessageArrived(queueName, partition);
+        return true;
+    }
+
+    /**
+     * 有消息键按键哈希选分区(同键同分区,保证顺序),否则轮询
+     */
+    public int selectPartition(String queueName, String messageKey) {
+        int partitionCount = partitionCount(queueName);
+        if (partitionCount == 1) return 0;
+        if (messageKey != null && !messageKey.isEmpty()) {
+            return (messageKey.hashCode() & Integer.MAX_VALUE) % partitionCount;
+        }
+        return (roundRobinCounters.computeIfAbsent(queueName, k -> new AtomicInteger(0)).getAndIncrement()
+                & Integer.MAX_VALUE) % partitionCount;
+    }
+
+    public int partitionCount(String queueName) {
+        return partitionCounts.getOrDefault(queueName, defaultPartitions);
+    }
+
+    /**
+     * 分区的日志末端偏移量(下一条入队消息的偏移量)
+     */
+    public long logEndOffset(String queueName, int partition) {
+        TieredMessageQueue queue = partitionQueues.get(partitionQueueName(queueName, partition));
+        return queue == null ? 0 : queue.logEndOffset();
+    }
+
+    /**
+     * 定时消息到期投递:已投递过的消息(重试)进入所属消费组的重试队列,其余(含延后进入死信队列的消息)进入主队列
+     */
+    public boolean deliverScheduled(MqMessage.MessageItem messageItem) {
+        if (messageItem.getDeliveryCount() == 0 || isDeadLetterQueue(messageItem.getQueueName())) {
+            return enqueue(messageItem);
+        }
+        String retryQueue = groupScopedName(retryQueueName(messageItem.getQueueName()), messageItem.getConsumerGroup());
+        if (!offerRetry(retryQueue, messageItem)) return false;
+        //重试队列与主队列共用同一组订阅者/长轮询等待者
+        notifyMessageArrived(messageItem.getQueueName());
+        return true;
+    }
+
+    /**
+     * 队列(含重试队列)是否没有待拉取消息
+     */
+    public boolean isEmpty(String queueName) {
+        return isEmpty(queueName, "");
+    }
+
+    /**
+     * 消费组在队列(含组的重试队列)上是否没有待拉取消息,消费组为空表示共享消费
+     */
+    public boolean isEmpty(String queueName, String group) {
+        int[] partitions = new int[partitionCount(queueName)];
+        for (int p = 0; p < partitions.length; p++) {
+            partitions[p] = p;
+        }
+        return isEmpty(queueName, group, partitions);
+    }
+
+    /**
+     * 拉取请求能拉到的范围(组的重试队列及分配给该消费者的分区)是否没有待拉取消息
+     */
+    public boolean isEmpty(MqMessage.PullMessageRequest request) {
+        int[] partitions = partitionsToPull(request);
+        return partitions == null || isEmpty(request.getQueueName(), request.getConsumerGroup(), partitions);
+    }
+
+    private boolean isEmpty(String queueName, String group, int[] partitions) {
+        MessageRingBuffer retryQueue = retryQueues.get(groupScopedName(retryQueueName(queueName), group));
+        if (retryQueue != null && !retryQueue.isEmpty()) return false;
+        boolean ordered = orderedDelivery.isOrdered(queueName);
+        for (int p : partitions) {
+            String partitionQueue = partitionQueueName(queueName, p);
+            TieredMessageQueue queue = partitionQueues.get(partitionQueue);
+            if (queue != null && (group.isEmpty() ? !queue.isEmpty() : queue.hasGroupBacklog(group))) return false;
+            if (ordered && orderedDelivery.hasReady(groupScopedName(partitionQueue, group))) return false;
+        }
+        return true;
+    }
+
+    //唤醒推模式订阅者和长轮询等待者(延迟获取单例,避免初始化互相依赖)
+    void notifyMessageArrived(String queueName) {
+        notifyMessageArrived(queueName, LongPollingService.ANY_PARTITION);
+    }
+
+    //消息在已知分区上:消费组只唤醒该分区的归属成员
+    void notifyMessageArrived(String queueName, int partition) {
+        PushSubscriptionService.getInstance().notifyMessageArrived(queueName);
+        LongPollingService.getInstance().notifyMessageArrived(queueName, partition);
+    }
+
+    //重试消息已在原分区日志中,重试队列只在内存
+    private boolean offerRetry(String queueName, MqMessage.MessageItem messageItem) {
+        //不存在则创建队列(懒加载)
+        MessageRingBuffer queue = retryQueues.computeIfAbsent(queueName, k -> new MessageRingBuffer(queueCapacity, queueMaxBytes));
+        if (!queue.offer(messageItem)) {
+            log.warn("队列已满，拒绝入队：queueName={}, messageId={}, 消息数={}, 字节数={}",
+                    queueName, messageItem.getMessageId(), queue.size(), queue.bytes());
             return false;
         }
+        log.debug("消息入队成功：queueName={}, messageId={}, 队列长度={}",
+                queueName, messageItem.getMessageId(), queue.size());
+        return true;
+    }
+
+    //单分区队列沿用原队列名
+    public String partitionQueueName(String queueName, int partition) {
+        return partitionCount(queueName) == 1 ? queueName : queueName + PARTITION_SEPARATOR + partition;
+    }
+
+    public static String retryQueueName(String queueName) {
+        return queueName + RETRY_QUEUE_SUFFIX;
+    }
+
+    public static String deadLetterQueueName(String queueName) {
+        return queueName + DLQ_SUFFIX;
+    }
+
+    public static boolean isDeadLetterQueue(String queueName) {
+        return queueName.endsWith(DLQ_SUFFIX);
+    }
+
+    /**
+     * 消费组自己的重试队列名/顺序键分区名,消费组为空(共享消费)时沿用原名
+     */
+    public static String groupScopedName(String name, String group) {
+        return group == null || group.isEmpty() ? name : name + GROUP_SEPARATOR + group;
     }
 
     /**
      * 从队列拉取消息(消费者调用)
      */
     public MqMessage.PullMessageResponse pullMessage(MqMessage.PullMessageRequest request) {
-        //校验批量大小(最大100)
-        if (request.getBatchSize() < 0 || request.getBatchSize() > 100) {
+        //校验批量大小(1-100)
+        if (request.getBatchSize() < 1 || request.getBatchSize() > 100) {
             return MqMessage.PullMessageResponse.newBuilder()
                     .setSuccess(false)
                     .setMessage("批量拉取数量非法（1-100）")
                     .build();
         }
-        //获取队列(不存在则返回空)
-        ConcurrentLinkedQueue<MqMessage.MessageItem> queue = queueMap.get(request.getQueueName());
-        if (queue == null || queue.isEmpty()) {
+        //消费组成员只拉取分配给自己的分区,否则拉取全部分区
+        int[] partitions = partitionsToPull(request);
+        if (partitions == null) {
+            return MqMessage.PullMessageResponse.newBuilder()
+                    .setSuccess(false)
+                    .setMessage("消费者未加入消费组或未订阅该队列")
+                    .build();
+        }
+        //消费组从组自己的读游标和重试队列拉取,各组互不抢占;不带消费组时共享消费
+        String group = request.getConsumerGroup();
+        //按时间回溯:先重置组在所拉分区上的读游标
+        if (request.getStartTimestamp() > 0) {
+            if (group.isEmpty()) {
+                return MqMessage.PullMessageResponse.newBuilder()
+                        .setSuccess(false)
+                        .setMessage("按时间回溯只支持消费组")
+                        .build();
+            }
+            for (int partition : partitions) {
+                try {
+                    partitionQueue(partitionQueueName(request.getQueueName(), partition)).seekGroup(group, request.getStartTimestamp());
+                } catch (IOException e) {
+                    log.error("按时间重置读游标失败：queueName={}, partition={}, group={}", request.getQueueName(), partition, group, e);
+                    return MqMessage.PullMessageResponse.newBuilder()
+                            .setSuccess(false)
+                            .setMessage("按时间定位消息失败")
+                            .build();
+                }
+            }
+        }
+        //获取重试队列(不存在则返回空)
+        MessageRingBuffer retryQueue = retryQueues.get(groupScopedName(retryQueueName(request.getQueueName()), group));
+        if (isEmpty(request.getQueueName(), group, partitions)) {
             return MqMessage.PullMessageResponse.newBuilder()
                     .setSuccess(true)
                     .setMessage("队列不存在或已空")
@@ -74,26 +420,196 @@ public class QueueManager {
         MqMessage.PullMessageResponse.Builder responseBuilder = MqMessage.PullMessageResponse.newBuilder();
         responseBuilder.setSuccess(true)
                 .setMessage("拉取成功");
+        //重试消息最多占半个批量,避免重试风暴挤占主队列;主队列不足时再用重试消息补齐
+        int batchSize = request.getBatchSize();
+        String queueName = request.getQueueName();
+        //顺序队列:前一条已确认、刚获得键的消息最先投递
         int pullCount = 0;
-        while (pullCount < request.getBatchSize()) {
-            MqMessage.MessageItem messageItem = queue.poll();
-            if (messageItem == null) break; //队列为空则退出
-            responseBuilder.addMessageList(messageItem);
-            pullCount++;
+        if (orderedDelivery.isOrdered(queueName)) {
+            for (int i = 0; i < partitions.length && pullCount < batchSize; i++) {
+                pullCount += drainReady(groupScopedName(partitionQueueName(queueName, partitions[i]), group),
+                        request, responseBuilder, batchSize - pullCount);
+            }
         }
-        log.info("从队列拉取消息成功：queueName={}, 拉取数量={}", request.getQueueName(), pullCount);
+        pullCount += drainTo(queueName, retryQueue, request, responseBuilder, Math.min(batchSize - pullCount, Math.max(1, batchSize / 2)));
+        //从随机分区开始轮流拉取,避免总是先拉空0号分区
+        int start = partitions.length > 1 ? ThreadLocalRandom.current().nextInt(partitions.length) : 0;
+        for (int i = 0; i < partitions.length && pullCount < batchSize; i++) {
+            String partitionQueue = partitionQueueName(queueName, partitions[(start + i) % partitions.length]);
+            pullCount += drainTo(queueName, pullSource(partitionQueue, group), request, responseBuilder, batchSize - pullCount);
+        }
+        pullCount += drainTo(queueName, retryQueue, request, responseBuilder, batchSize - pullCount);
+        log.debug("从队列拉取消息成功：queueName={}, 拉取数量={}", request.getQueueName(), pullCount);
         return responseBuilder.build();
     }
 
+    private int[] partitionsToPull(MqMessage.PullMessageRequest request) {
+        if (!request.getConsumerGroup().isEmpty()) {
+            return ConsumerGroupManager.getInstance().assignedPartitions(
+                    request.getConsumerGroup(), request.getQueueName(), request.getConsumerClientId());
+        }
+        int[] partitions = new int[partitionCount(request.getQueueName())];
+        for (int p = 0; p < partitions.length; p++) {
+            partitions[p] = p;
+        }
+        return partitions;
+    }
+
+    //消费组从组读游标取(取出的消息标记所属消费组,重试/确认/顺序键按组区分),否则从共享缓存取
+    private MessageBuffer pullSource(String partitionQueue, String group) {
+        TieredMessageQueue queue = partitionQueues.get(partitionQueue);
+        if (queue == null || group.isEmpty()) return queue;
+        return new MessageBuffer() {
+            @Override
+            public MqMessage.MessageItem poll() {
+                MqMessage.MessageItem messageItem = queue.pollGroup(group);
+                return messageItem == null ? null : messageItem.toBuilder().setConsumerGroup(group).build();
+            }
+
+            @Override
+            public boolean isEmpty() {
+                return !queue.hasGroupBacklog(group);
+            }
+        };
+    }
+
+    //从队列取出最多max条消息,投递次数+1,并登记到已投递未确认表(超时未确认则重投)
+    private int drainTo(String queueName, MessageBuffer queue, MqMessage.PullMessageRequest request,
+                        MqMessage.PullMessageResponse.Builder responseBuilder, int max) {
+        if (queue == null) return 0;
+        int count = 0;
+        while (count < max) {
+            MqMessage.MessageItem messageItem = pollDeliverable(queueName, queue);
+            if (messageItem == null) break; //队列为空则退出
+            responseBuilder.addMessageList(track(messageItem, request.getConsumerClientId(), request.getVisibilityTimeoutMs()));
+            count++;
+        }
+        return count;
+    }
+
+    private int drainReady(String partitionQueue, MqMessage.PullMessageRequest request,
+                           MqMessage.PullMessageResponse.Builder responseBuilder, int max) {
+        int count = 0;
+        while (count < max) {
+            MqMessage.MessageItem messageItem = orderedDelivery.pollReady(partitionQueue);
+            if (messageItem == null) break;
+            responseBuilder.addMessageList(track(messageItem, request.getConsumerClientId(), request.getVisibilityTimeoutMs()));
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 取出一条可投递的消息:顺序队列中键已被占用的消息转入按键等待,继续取下一条
+     */
+    private MqMessage.MessageItem pollDeliverable(String queueName, MessageBuffer queue) {
+        if (queue == null) return null;
+        if (!orderedDelivery.isOrdered(queueName)) return queue.poll();
+        MqMessage.MessageItem messageItem;
+        //按键积压达到上限后不再取,消息留在环形队列里,背压传回生产者
+        while (!orderedDelivery.isBackedUp(queueName) && (messageItem = queue.poll()) != null) {
+            if (orderedDelivery.tryAcquire(messageItem)) return messageItem;
+        }
+        return null;
+    }
+
+    /**
+     * 释放顺序队列的消息键(确认或进入死信队列后调用),同键下一条消息变为可投递时唤醒消费者
+     */
+    public void releaseOrderingKey(MqMessage.MessageItem messageItem) {
+        if (orderedDelivery.release(messageItem)) {
+            notifyMessageArrived(messageItem.getQueueName(), messageItem.getPartition());
+        }
+    }
+
     /**
-     * 消息消费确认(暂未实现持久化)
+     * 取出一条消息用于推送(推模式调用),已登记到已投递未确认表
+     * @param preferRetry 优先取重试队列(推送方交替传入,主队列和重试队列互不饿死)
+     * @return 队列为空返回null
+     */
+    public MqMessage.MessageItem pollForPush(String queueName, boolean preferRetry,
+                                             String consumerClientId, long visibilityTimeoutMs) {
+        MessageRingBuffer retryQueue = retryQueues.get(retryQueueName(queueName));
+        MqMessage.MessageItem messageItem = preferRetry
+                ? pollDeliverable(queueName, retryQueue) : pollAnyPartition(queueName);
+        if (messageItem == null) {
+            messageItem = preferRetry
+                    ? pollAnyPartition(queueName) : pollDeliverable(queueName, retryQueue);
+        }
+        return messageItem == null ? null : track(messageItem, consumerClientId, visibilityTimeoutMs);
+    }
+
+    //推模式不区分消费组,从随机分区开始取第一条可用消息(顺序队列优先取就绪消息)
+    private MqMessage.MessageItem pollAnyPartition(String queueName) {
+        int partitionCount = partitionCount(queueName);
+        int start = partitionCount > 1 ? ThreadLocalRandom.current().nextInt(partitionCount) : 0;
+        boolean ordered = orderedDelivery.isOrdered(queueName);
+        for (int i = 0; i < partitionCount; i++) {
+            String partitionQueue = partitionQueueName(queueName, (start + i) % partitionCount);
+            MqMessage.MessageItem messageItem = ordered ? orderedDelivery.pollReady(partitionQueue) : null;
+            if (messageItem == null) {
+                messageItem = pollDeliverable(queueName, partitionQueues.get(partitionQueue));
+            }
+            if (messageItem != null) return messageItem;
+        }
+        return null;
+    }
+
+    //投递次数+1并登记到已投递未确认表
+    private MqMessage.MessageItem track(MqMessage.MessageItem messageItem, String consumerClientId, long visibilityTimeoutMs) {
+        MqMessage.MessageItem delivered = messageItem.toBuilder()
+                .setDeliveryCount(messageItem.getDeliveryCount() + 1)
+                .build();
+        return inflightTable.track(delivered, consumerClientId, visibilityTimeoutMs);
+    }
+
+    /**
+     * 消息已结算(确认或进入死信队列):原分区日志的消费位点(消费组消息为组的已提交偏移量)可以越过这条消息
+     */
+    public void settle(MqMessage.MessageItem messageItem) {
+        TieredMessageQueue queue = partitionQueues.get(
+                partitionQueueName(messageItem.getQueueName(), messageItem.getPartition()));
+        if (queue == null) return;
+        if (messageItem.getConsumerGroup().isEmpty()) {
+            queue.settle(messageItem.getOffset());
+        } else {
+            queue.settleGroup(messageItem.getConsumerGroup(), messageItem.getOffset());
+        }
+    }
+
+    /**
+     * 消息消费确认:从已投递未确认表移除,不再超时重投
      */
     public MqMessage.MessageAckResponse ackMessage(MqMessage.MessageAckRequest request) {
-        log.info("消息确认成功：queueName={}, messageId={}", request.getQueueName(), request.getMessageId());
+        InflightTable.InflightMessage inflight = inflightTable.remove(request.getDeliveryTag());
+        if (inflight == null) {
+            log.warn("消息确认失败，消息不存在或已超时重投：queueName={}, messageId={}, deliveryTag={}",
+                    request.getQueueName(), request.getMessageId(), request.getDeliveryTag());
+            return MqMessage.MessageAckResponse.newBuilder()
+                    .setSuccess(false)
+                    .setMessage("消息不存在或已超时重投")
+                    .setMessageId(request.getMessageId())
+                    .build();
+        }
+        //推进消费位点(消费组消息推进组的已提交偏移量),释放顺序队列的消息键
+        settle(inflight.getMessageItem());
+        releaseOrderingKey(inflight.getMessageItem());
+        log.debug("消息确认成功：queueName={}, messageId={}", request.getQueueName(), request.getMessageId());
         return MqMessage.MessageAckResponse.newBuilder()
                 .setSuccess(true)
                 .setMessage("确认成功")
                 .setMessageId(request.getMessageId())
                 .build();
     }
+
+    /**
+     * 关闭:停止换入和定时刷盘,所有分区日志刷盘并保存消费位点
+     */
+    public void shutdown() {
+        storeFlusher.shutdown();
+        pageInExecutor.shutdown();
+        partitionQueues.values().forEach(TieredMessageQueue::close);
+        queueStripes.shutdown();
+        log.info("队列日志已关闭：分区队列数={}", partitionQueues.size());
+    }
 }
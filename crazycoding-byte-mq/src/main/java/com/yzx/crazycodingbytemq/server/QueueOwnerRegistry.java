@@ -0,0 +1,63 @@
+package com.yzx.crazycodingbytemq.server;
+
+import com.yzx.crazycodingbytemq.util.HashUtils;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @className: QueueOwnerRegistry
+ * @author: yzx
+ * @date: 2025/11/23 15:00
+ * @Version: 1.0
+ * @description: 队列归属（每个队列按名称哈希固定归属一个队列存储线程，客户端对该队列的发送和拉取都投递到归属线程的任务队列执行，
+ * 同一队列的发送、拉取按到达顺序串行，日志写入和读盘不阻塞IO线程；归属只是执行线程的分配，不是线程封闭：
+ * 定时投递、死信、副本复制和换入也会从各自的线程访问队列，队列自身的并发安全由TieredMessageQueue的锁保证）
+ */
+@Slf4j
+public class QueueOwnerRegistry {
+    private static final QueueOwnerRegistry INSTANCE = new QueueOwnerRegistry();
+    // 未绑定时为空数组，调用方在当前线程直接执行
+    private volatile EventExecutor[] owners = new EventExecutor[0];
+
+    public static QueueOwnerRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    private QueueOwnerRegistry() {
+    }
+
+    /**
+     * 绑定队列存储线程组（服务端启动时调用）
+     */
+    public void bind(EventExecutorGroup storeGroup) {
+        List<EventExecutor> executors = new ArrayList<>();
+        storeGroup.forEach(executors::add);
+        this.owners = executors.toArray(new EventExecutor[0]);
+        log.info("队列归属线程绑定完成：线程数={}", owners.length);
+    }
+
+    /**
+     * 队列的归属线程，未绑定返回null
+     */
+    public EventExecutor ownerOf(String queueName) {
+        EventExecutor[] executors = owners;
+        if (executors.length == 0) return null;
+        return executors[(int) ((HashUtils.mix64(HashUtils.fnv1a64(queueName)) >>> 1) % executors.length)];
+    }
+
+    /**
+     * 在队列归属线程上执行：当前已是归属线程（或未绑定）则直接执行，否则投递到归属线程的任务队列
+     */
+    public void execute(String queueName, Runnable task) {
+        EventExecutor owner = ownerOf(queueName);
+        if (owner == null || owner.inEventLoop()) {
+            task.run();
+        } else {
+            owner.execute(task);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.yzx.crazycodingbytemq.server;
+
+import com.yzx.crazycodingbytemq.config.ConfigLoader;
+import com.yzx.crazycodingbytemq.config.ServerConfig;
+import com.yzx.crazycodingbytemq.util.TokenBucket;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.AttributeKey;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @className: QuotaManager
+ * @author: yzx
+ * @date: 2025/11/23 17:20
+ * @Version: 1.0
+ * @description: 生产者/队列配额（消息数和字节数两个维度的无锁令牌桶；超出配额不拒绝消息，而是暂停该连接的读取，
+ * 暂停时长按透支量计算，背压经TCP窗口传回生产者）
+ */
+@Slf4j
+public class QuotaManager {
+    private static final QuotaManager INSTANCE = new QuotaManager();
+    // 连接恢复读取的截止时间（纳秒）
+    private static final AttributeKey<Long> THROTTLED_UNTIL = AttributeKey.valueOf("quotaThrottledUntil");
+    private final Duration burst;
+    private final long maxThrottleNanos;
+    // 默认配额（0表示不限）
+    private final Rate defaultProducerRate;
+    private final Rate defaultQueueRate;
+    // 指定的配额
+    private final Map<String, Rate> producerRates;
+    private final Map<String, Rate> queueRates;
+    // 客户端ID/队列名->令牌桶（首次发送时创建）
+    private final Map<String, Quota> producerQuotas = new ConcurrentHashMap<>();
+    private final Map<String, Quota> queueQuotas = new ConcurrentHashMap<>();
+    // 当前暂停读取的连接数
+    private final AtomicInteger throttledChannels = new AtomicInteger(0);
+    private volatile Timer producerThrottleTimer;
+    private volatile Timer queueThrottleTimer;
+
+    public static QuotaManager getInstance() {
+        return INSTANCE;
+    }
+
+    private QuotaManager() {
+        ServerConfig config = ConfigLoader.bindConfig(ServerConfig.class, "mq.server");
+        this.burst = config.getQuotaBurst();
+        this.maxThrottleNanos = config.getQuotaMaxThrottle().toNanos();
+        this.defaultProducerRate = new Rate(config.getProducerMessageRate(), config.getProducerByteRate());
+        this.defaultQueueRate = new Rate(config.getQueueMessageRate(), config.getQueueByteRate());
+        this.producerRates = parseRates(config.getProducerQuotas());
+        this.queueRates = parseRates(config.getQueueQuotas());
+    }
+
+    //解析"名称:条/秒:字节/秒"配置
+    private static Map<String, Rate> parseRates(List<String> entries) {
+        Map<String, Rate> rates = new HashMap<>();
+        for (String entry : entries) {
+            String[] parts = entry.split(":");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("配额配置格式错误（名称:条/秒:字节/秒）：" + entry);
+            }
+            rates.put(parts[0].trim(), new Rate(Long.parseLong(parts[1].trim()), Long.parseLong(parts[2].trim())));
+        }
+        return Map.copyOf(rates);
+    }
+
+    /**
+     * 注册节流指标（服务端启动时调用）
+     */
+    public void bindMetrics(MeterRegistry registry) {
+        this.producerThrottleTimer = Timer.builder("mq.quota.throttle.time").tag("quota", "producer").register(registry);
+        this.queueThrottleTimer = Timer.builder("mq.quota.throttle.time").tag("quota", "queue").register(registry);
+        registry.gauge("mq.quota.throttled.channels", throttledChannels);
+    }
+
+    /**
+     * 记录一次发送（单条或一批）并按需暂停连接读取（在连接所属EventLoop上调用）
+     */
+    public void record(ChannelHandlerContext ctx, String producerClientId, String queueName, long messages, long bytes) {
+        long producerDelay = acquire(producerQuotas, producerRates, defaultProducerRate, producerClientId, messages, bytes);
+        long queueDelay = acquire(queueQuotas, queueRates, defaultQueueRate, queueName, messages, bytes);
+        if (producerDelay > 0) recordThrottle(producerThrottleTimer, producerDelay);
+        if (queueDelay > 0) recordThrottle(queueThrottleTimer, queueDelay);
+        long delay = Math.min(Math.max(producerDelay, queueDelay), maxThrottleNanos);
+        if (delay > 0) {
+            throttle(ctx, delay);
+        }
+    }
+
+    private long acquire(Map<String, Quota> quotas, Map<String, Rate> rates, Rate defaultRate, String name,
+                         long messages, long bytes) {
+        if (name == null || name.isEmpty()) return 0;
+        Quota quota = quotas.get(name);
+        if (quota == null) {
+            Rate rate = rates.getOrDefault(name, defaultRate);
+            if (rate.isUnlimited()) return 0;
+            quota = quotas.computeIfAbsent(name, k -> new Quota(rate, burst));
+        }
+        return quota.acquire(messages, bytes);
+    }
+
+    // 暂停读取直到截止时间；已暂停则只延后截止时间，由恢复任务按最新截止时间续期
+    private void throttle(ChannelHandlerContext ctx, long delayNanos) {
+        Channel channel = ctx.channel();
+        long until = System.nanoTime() + delayNanos;
+        Long current = channel.attr(THROTTLED_UNTIL).get();
+        if (current != null) {
+            channel.attr(THROTTLED_UNTIL).set(Math.max(current, until));
+            return;
+        }
+        channel.attr(THROTTLED_UNTIL).set(until);
+        channel.config().setAutoRead(false);
+        throttledChannels.incrementAndGet();
+        log.debug("连接超出配额，暂停读取：channel={}, {}ms", channel.id(), TimeUnit.NANOSECONDS.toMillis(delayNanos));
+        ctx.executor().schedule(() -> resume(ctx), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void resume(ChannelHandlerContext ctx) {
+        Channel channel = ctx.channel();
+        Long until = channel.attr(THROTTLED_UNTIL).get();
+        long remaining = until == null ? 0 : until - System.nanoTime();
+        if (remaining > 0 && channel.isActive()) {
+            ctx.executor().schedule(() -> resume(ctx), remaining, TimeUnit.NANOSECONDS);
+            return;
+        }
+        channel.attr(THROTTLED_UNTIL).set(null);
+        throttledChannels.decrementAndGet();
+        if (channel.isActive()) {
+            channel.config().setAutoRead(true);
+        }
+    }
+
+    private static void recordThrottle(Timer timer, long delayNanos) {
+        if (timer != null) {
+            timer.record(delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 配额速率（条/秒，字节/秒；0表示该维度不限）
+     */
+    private record Rate(long messagesPerSecond, long bytesPerSecond) {
+        boolean isUnlimited() {
+            return messagesPerSecond <= 0 && bytesPerSecond <= 0;
+        }
+    }
+
+    /**
+     * 单个生产者或队列的两个令牌桶
+     */
+    private static class Quota {
+        private final TokenBucket messageBucket;
+        private final TokenBucket byteBucket;
+
+        Quota(Rate rate, Duration burst) {
+            this.messageBucket = rate.messagesPerSecond() > 0 ? new TokenBucket(rate.messagesPerSecond(), burst) : null;
+            this.byteBucket = rate.bytesPerSecond() > 0 ? new TokenBucket(rate.bytesPerSecond(), burst) : null;
+        }
+
+        long acquire(long messages, long bytes) {
+            long messageDelay = messageBucket == null ? 0 : messageBucket.acquire(messages);
+            long byteDelay = byteBucket == null ? 0 : byteBucket.acquire(bytes);
+            return Math.max(messageDelay, byteDelay);
+        }
+    }
+}
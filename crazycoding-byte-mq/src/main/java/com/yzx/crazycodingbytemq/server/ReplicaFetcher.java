@@ -0,0 +1,263 @@
+package com.yzx.crazycodingbytemq.server;
+
+import com.yzx.crazycodingbytemq.codec.ProtocolConstant;
+import com.yzx.crazycodingbytemq.codec.ProtocolDecoder;
+import com.yzx.crazycodingbytemq.codec.ProtocolEncoder;
+import com.yzx.crazycodingbytemq.codec.ProtocolFrame;
+import com.yzx.crazycodingbytemq.config.ServerConfig;
+import com.yzx.crazycodingbytemq.enums.MessageTypeEnum;
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import com.yzx.crazycodingbytemq.ssl.SslContextFactory;
+import com.yzx.crazycodingbytemq.transport.NettyTransport;
+import com.yzx.crazycodingbytemq.util.RetryPolicy;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @className: ReplicaFetcher
+ * @author: yzx
+ * @date: 2025/11/24 17:00
+ * @Version: 1.0
+ * @description: 日志复制（副本端）：单连接循环向leader拉取全部分区的新日志，原始记录按leader的偏移量原样追加到本地分区日志；
+ * leader挂起拉取直到有新消息，因此副本追平后复制延迟约为一次往返；断线后按指数退避重连并从本地日志末端继续
+ */
+@Slf4j
+public class ReplicaFetcher {
+    private final ServerConfig config;
+    private final String replicaId;
+    private final String leaderHost;
+    private final int leaderPort;
+    private final QueueManager queueManager = QueueManager.getInstance();
+    private final RetryPolicy retryPolicy;
+    private final NettyTransport transport;
+    private final EventLoopGroup group;
+    // 分区队列->复制状态（只在fetcher线程访问）
+    private final Map<String, FetchState> states = new HashMap<>();
+    private Bootstrap bootstrap;
+    private int retries;
+    private volatile boolean running;
+
+    public ReplicaFetcher(ServerConfig config, NettyTransport transport) {
+        this.config = config;
+        this.transport = transport;
+        this.group = transport.newEventLoopGroup(1, "replica-fetcher");
+        this.replicaId = config.getBrokerId().isBlank() ? "broker-" + config.getPort() : config.getBrokerId();
+        String[] parts = config.getReplicaOf().trim().split(":");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("leader地址格式错误（host:port）：" + config.getReplicaOf());
+        }
+        this.leaderHost = parts[0];
+        this.leaderPort = Integer.parseInt(parts[1]);
+        this.retryPolicy = new RetryPolicy(Integer.MAX_VALUE, config.getReplicaRetryInterval(),
+                config.getReplicaRetryInterval().multipliedBy(30));
+    }
+
+    public void start() {
+        SslContext sslContext = config.isSslEnable() ? SslContextFactory.createClientContext() : null;
+        long readTimeoutMs = config.getReplicaFetchMaxWait().plus(config.getHeartbeatTimeout()).toMillis();
+        this.bootstrap = new Bootstrap()
+                .group(group)
+                .remoteAddress(leaderHost, leaderPort)
+                .channel(transport.channelClass())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.SO_RCVBUF, config.getRcvBufSize())
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel channel) {
+                        var pipeline = channel.pipeline();
+                        if (sslContext != null) {
+                            pipeline.addLast(sslContext.newHandler(channel.alloc(), leaderHost, leaderPort));
+                        }
+                        //leader挂起拉取最长replicaFetchMaxWait，超过心跳超时仍无响应视为连接失效
+                        pipeline.addLast(new ReadTimeoutHandler(readTimeoutMs, TimeUnit.MILLISECONDS))
+                                .addLast(new ProtocolDecoder(config.getMaxFrameLength()))
+                                .addLast(new ProtocolEncoder())
+                                .addLast(new FetchResponseHandler());
+                    }
+                });
+        transport.configure(bootstrap, config.isTcpQuickAck(), config.isEpollEdgeTriggered());
+        running = true;
+        group.execute(this::connect);
+        log.info("副本开始从leader复制日志：replica={}, leader={}:{}", replicaId, leaderHost, leaderPort);
+    }
+
+    public void close() {
+        running = false;
+        group.shutdownGracefully(0, 5, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+
+    private void connect() {
+        if (!running) return;
+        bootstrap.connect().addListener((ChannelFutureListener) future -> {
+            if (future.isSuccess()) {
+                retries = 0;
+                log.info("已连接leader：{}:{}", leaderHost, leaderPort);
+                fetch(future.channel());
+            } else {
+                log.warn("连接leader失败：{}:{}，{}", leaderHost, leaderPort, future.cause().getMessage());
+                scheduleReconnect();
+            }
+        });
+    }
+
+    private void scheduleReconnect() {
+        if (!running) return;
+        group.schedule(this::connect, retryPolicy.backoffMillis(retries++), TimeUnit.MILLISECONDS);
+    }
+
+    // 上报各分区本地日志末端并拉取之后的日志（首次拉取时带上本地已有的分区）
+    private void fetch(Channel channel) {
+        if (states.isEmpty()) {
+            queueManager.partitionQueueNames().forEach(this::state);
+        }
+        MqMessage.ReplicaFetchRequest.Builder request = MqMessage.ReplicaFetchRequest.newBuilder()
+                .setReplicaId(replicaId)
+                .setMaxWaitMs(config.getReplicaFetchMaxWait().toMillis())
+                .setMaxBytes(config.getReplicaFetchMaxBytes());
+        states.forEach((partitionQueue, state) -> request.addPartitions(MqMessage.PartitionFetch.newBuilder()
+                .setPartitionQueue(partitionQueue)
+                .setFetchOffset(state.offset)
+                .setSegmentBase(state.segmentBase)
+                .setPosition(state.position)));
+        byte[] body = request.build().toByteArray();
+        channel.writeAndFlush(new ProtocolFrame(
+                ProtocolConstant.MAGIC,
+                ProtocolConstant.Version,
+                body.length,
+                MessageTypeEnum.REPLICA_FETCH.getCode(),
+                body
+        ));
+    }
+
+    private FetchState state(String partitionQueue) {
+        return states.computeIfAbsent(partitionQueue,
+                name -> new FetchState(queueManager.replicaPartition(name).logEndOffset()));
+    }
+
+    /**
+     * 应用拉取响应：帧体为[4字节头长度][ReplicaFetchResponse][各分区原始日志]，每个分区只追加完整记录，
+     * 末尾不完整的记录下次重新拉取；记录偏移量连续，只解析首条记录校验与本地日志末端衔接
+     */
+    private void apply(byte[] body) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        int headerLength = buffer.getInt();
+        MqMessage.ReplicaFetchResponse response = MqMessage.ReplicaFetchResponse.parseFrom(
+                ByteBuffer.wrap(body, 4, headerLength));
+        response.getPartitionQueuesList().forEach(this::state);
+        int dataOffset = 4 + headerLength;
+        for (MqMessage.PartitionData data : response.getPartitionsList()) {
+            FetchState state = state(data.getPartitionQueue());
+            TieredMessageQueue queue = queueManager.replicaPartition(data.getPartitionQueue());
+            if (data.getOutOfRange()) {
+                log.warn("副本日志超出leader日志范围，从leader日志起点重新复制：partitionQueue={}, 本地末端={}, leader范围=[{}, {})",
+                        data.getPartitionQueue(), state.offset, data.getLogStartOffset(), data.getLogEndOffset());
+                queue.resetReplica(data.getLogStartOffset());
+                state.reset(data.getLogStartOffset());
+                continue;
+            }
+            ByteBuffer records = ByteBuffer.wrap(body, dataOffset, data.getLength()).slice();
+            dataOffset += data.getLength();
+            int complete = 0;
+            int count = 0;
+            while (records.limit() - complete >= 4) {
+                int length = records.getInt(complete);
+                if (records.limit() - complete - 4 < length) break;
+                complete += 4 + length;
+                count++;
+            }
+            if (count > 0) {
+                long firstOffset = MqMessage.MessageItem.parseFrom(
+                        records.duplicate().position(4).limit(4 + records.getInt(0))).getOffset();
+                if (firstOffset == state.offset && queue.appendReplica(records.limit(complete), count, firstOffset)) {
+                    state.advance(count, data.getSegmentBase(), data.getPosition() + complete);
+                } else {
+                    // 读位置与偏移量不符或本地日志不连续：按本地日志末端请leader重新定位
+                    log.warn("副本复制位置不一致，重新定位：partitionQueue={}, 期望偏移量={}, 收到={}",
+                            data.getPartitionQueue(), state.offset, firstOffset);
+                    state.reset(queue.logEndOffset());
+                }
+            } else if (data.getLength() == 0) {
+                // 已追平：记住leader日志末端的读位置，下次拉取不必重新定位
+                state.segmentBase = data.getSegmentBase();
+                state.position = data.getPosition();
+            }
+            queue.advanceConsumedOffset(Math.min(data.getConsumedOffset(), state.offset));
+        }
+    }
+
+    /**
+     * 接收leader的拉取响应：应用后立即发起下一次拉取
+     */
+    private class FetchResponseHandler extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            if (!(msg instanceof ProtocolFrame frame)
+                    || frame.getMessageType() != MessageTypeEnum.REPLICA_FETCH_RESPONSE.getCode()) {
+                ctx.fireChannelRead(msg);
+                return;
+            }
+            try {
+                apply(frame.getBody());
+            } catch (Exception e) {
+                log.error("应用副本拉取响应失败，断开后重连", e);
+                ctx.close();
+                return;
+            }
+            fetch(ctx.channel());
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            log.warn("与leader的复制连接断开：{}:{}", leaderHost, leaderPort);
+            scheduleReconnect();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            log.warn("复制连接异常：{}", cause.getMessage());
+            ctx.close();
+        }
+    }
+
+    /**
+     * 单个分区的复制状态：本地日志末端偏移量及其在leader日志中的读位置（-1表示未知，由leader定位）
+     */
+    private static class FetchState {
+        private long offset;
+        private long segmentBase = -1;
+        private long position = -1;
+
+        FetchState(long offset) {
+            this.offset = offset;
+        }
+
+        void advance(int count, long segmentBase, long position) {
+            this.offset += count;
+            this.segmentBase = segmentBase;
+            this.position = position;
+        }
+
+        void reset(long offset) {
+            this.offset = offset;
+            this.segmentBase = -1;
+            this.position = -1;
+        }
+    }
+}
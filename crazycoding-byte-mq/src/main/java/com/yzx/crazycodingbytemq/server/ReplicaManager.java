@@ -0,0 +1,359 @@
+package com.yzx.crazycodingbytemq.server;
+
+import com.yzx.crazycodingbytemq.codec.ProtocolConstant;
+import com.yzx.crazycodingbytemq.config.ConfigLoader;
+import com.yzx.crazycodingbytemq.config.ServerConfig;
+import com.yzx.crazycodingbytemq.enums.MessageTypeEnum;
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import com.yzx.crazycodingbytemq.store.QueueLog;
+import com.yzx.crazycodingbytemq.transport.NettyTransport;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.util.ReferenceCountUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @className: ReplicaManager
+ * @author: yzx
+ * @date: 2025/11/24 16:00
+ * @Version: 1.0
+ * @description: 日志复制（leader端）：副本按分区上报已复制到的偏移量并拉取之后的原始日志，日志文件区间直接发送，不经过消息解码/编码；
+ * 没有新数据时挂起拉取直到有消息追加；按生产者的确认模式等待副本进度；同步中的副本未复制的日志段不删除；
+ * 定位区间和读盘在复制IO线程上执行，只有写出回到副本连接的EventLoop）
+ */
+@Slf4j
+public class ReplicaManager {
+    private static final ReplicaManager INSTANCE = new ReplicaManager();
+    private final QueueManager queueManager = QueueManager.getInstance();
+    private final boolean follower;
+    // 只读副本复制的leader地址（leader节点为空）
+    private final String leaderAddress;
+    private final int replicationFactor;
+    // SYNC_MAJORITY需要的副本数（多数派扣除leader自身）
+    private final int requiredReplicas;
+    private final long lagTimeoutNanos;
+    private final long ackTimeoutMs;
+    private final long maxFetchWaitMs;
+    private final int defaultFetchMaxBytes;
+    // 副本ID->复制进度
+    private final Map<String, ReplicaProgress> replicas = new ConcurrentHashMap<>();
+    // 等待副本复制的发送
+    private final Set<AckWaiter> waiters = ConcurrentHashMap.newKeySet();
+    // 挂起的副本拉取（每个副本连接同时最多一个）
+    private final Map<Channel, ParkedFetch> parkedFetches = new ConcurrentHashMap<>();
+    // 复制IO线程：定位日志区间、打开和读取段文件（不阻塞IO线程）
+    private final ExecutorService replicaIoExecutor = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors() / 2), r -> {
+                Thread thread = new Thread(r, "replica-io");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    public static ReplicaManager getInstance() {
+        return INSTANCE;
+    }
+
+    private ReplicaManager() {
+        ServerConfig config = ConfigLoader.bindConfig(ServerConfig.class, "mq.server");
+        this.follower = !config.getReplicaOf().isBlank();
+        this.leaderAddress = config.getReplicaOf().trim();
+        this.replicationFactor = Math.max(1, config.getReplicationFactor());
+        this.requiredReplicas = replicationFactor / 2;
+        this.lagTimeoutNanos = config.getReplicaLagTimeout().toNanos();
+        this.ackTimeoutMs = config.getReplicaAckTimeout().toMillis();
+        this.maxFetchWaitMs = config.getReplicaFetchMaxWait().toMillis();
+        this.defaultFetchMaxBytes = config.getReplicaFetchMaxBytes();
+    }
+
+    /**
+     * 本节点是否为只读副本（不接受生产和消费）
+     */
+    public boolean isFollower() {
+        return follower;
+    }
+
+    /**
+     * 只读副本复制的leader地址（leader节点为空），随连接响应告知客户端
+     */
+    public String leaderAddress() {
+        return leaderAddress;
+    }
+
+    /**
+     * 处理副本拉取（在副本连接的EventLoop上调用）：先记录副本进度，再到复制IO线程上返回新日志或挂起
+     */
+    public void fetch(ChannelHandlerContext ctx, MqMessage.ReplicaFetchRequest request) {
+        replicas.computeIfAbsent(request.getReplicaId(), replicaId -> {
+            log.info("副本开始复制：replica={}, channel={}", replicaId, ctx.channel().remoteAddress());
+            return new ReplicaProgress();
+        }).update(request);
+        checkWaiters();
+        long waitMs = Math.min(Math.max(0, request.getMaxWaitMs()), maxFetchWaitMs);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMs);
+        replicaIoExecutor.execute(() -> respond(ctx, request, deadline));
+    }
+
+    // 在复制IO线程上执行：有新数据、新分区或需要副本重新复制时立即响应，否则挂起到有消息追加或超时
+    private void respond(ChannelHandlerContext ctx, MqMessage.ReplicaFetchRequest request, long deadline) {
+        List<String> partitionQueues = queueManager.partitionQueueNames();
+        MqMessage.ReplicaFetchResponse.Builder header = MqMessage.ReplicaFetchResponse.newBuilder()
+                .addAllPartitionQueues(partitionQueues);
+        List<QueueLog.Region> regions = new ArrayList<>();
+        Set<String> requested = new HashSet<>();
+        long budget = request.getMaxBytes() > 0 ? request.getMaxBytes() : defaultFetchMaxBytes;
+        long total = 0;
+        boolean outOfRange = false;
+        for (MqMessage.PartitionFetch fetch : request.getPartitionsList()) {
+            requested.add(fetch.getPartitionQueue());
+            TieredMessageQueue queue = queueManager.existingPartition(fetch.getPartitionQueue());
+            // 本次字节数已用完的分区不返回，副本下次继续拉取
+            if (queue == null || total >= budget) continue;
+            MqMessage.PartitionData.Builder data = MqMessage.PartitionData.newBuilder()
+                    .setPartitionQueue(fetch.getPartitionQueue())
+                    .setLogStartOffset(queue.logStartOffset())
+                    .setLogEndOffset(queue.logEndOffset())
+                    .setConsumedOffset(queue.retainOffset());
+            QueueLog.Region region;
+            try {
+                region = queue.replicaRegion(fetch.getFetchOffset(), fetch.getSegmentBase(), fetch.getPosition(),
+                        (int) (budget - total));
+            } catch (IOException e) {
+                log.warn("定位副本拉取区间失败：replica={}, partitionQueue={}, offset={}",
+                        request.getReplicaId(), fetch.getPartitionQueue(), fetch.getFetchOffset(), e);
+                continue;
+            }
+            if (region == null) {
+                data.setOutOfRange(true);
+                outOfRange = true;
+            } else {
+                data.setSegmentBase(region.segmentBase()).setPosition(region.position()).setLength(region.length());
+                if (region.length() > 0) {
+                    regions.add(region);
+                    total += region.length();
+                }
+            }
+            header.addPartitions(data);
+        }
+        boolean newPartitions = !requested.containsAll(partitionQueues);
+        if (total == 0 && !outOfRange && !newPartitions && System.nanoTime() < deadline) {
+            park(ctx, request, deadline);
+            return;
+        }
+        write(ctx, header.build(), regions, total);
+    }
+
+    // 在复制IO线程上准备帧：帧头和响应头写入堆外缓冲，日志区间未启用SSL时以FileRegion经sendfile直接从页缓存发送；
+    // SSL需要在用户态加密，读入直接内存后发送（仍然不解码消息）；准备好后回到EventLoop写出
+    private void write(ChannelHandlerContext ctx, MqMessage.ReplicaFetchResponse header,
+                       List<QueueLog.Region> regions, long total) {
+        // SSL需要加密明文、io_uring通道不接受FileRegion，这两种情况读入缓冲区写出
+        boolean zeroCopy = ctx.pipeline().get(SslHandler.class) == null && NettyTransport.supportsFileRegion(ctx.channel());
+        List<Object> parts = new ArrayList<>(regions.size() + 1);
+        for (QueueLog.Region region : regions) {
+            try {
+                FileChannel file = FileChannel.open(region.file(), StandardOpenOption.READ);
+                if (zeroCopy) {
+                    parts.add(new DefaultFileRegion(file, region.position(), region.length()));
+                } else {
+                    parts.add(readRegion(ctx, file, region));
+                }
+            } catch (IOException e) {
+                // 帧体无法补齐，断开连接由副本重连后重新拉取
+                log.error("读取副本拉取区间失败，断开副本连接：file={}", region.file(), e);
+                parts.forEach(ReferenceCountUtil::release);
+                ctx.close();
+                return;
+            }
+        }
+        byte[] headerBytes = header.toByteArray();
+        ByteBuf head = ctx.alloc().directBuffer(ProtocolConstant.FRAME_HEADER_LENGTH + 4 + headerBytes.length);
+        head.writeInt(ProtocolConstant.MAGIC)
+                .writeByte(ProtocolConstant.Version)
+                .writeInt((int) (4 + headerBytes.length + total))
+                .writeByte(MessageTypeEnum.REPLICA_FETCH_RESPONSE.getCode())
+                .writeInt(headerBytes.length)
+                .writeBytes(headerBytes);
+        parts.add(0, head);
+        ctx.executor().execute(() -> {
+            if (!ctx.channel().isActive()) {
+                parts.forEach(ReferenceCountUtil::release);
+                return;
+            }
+            parts.forEach(ctx::write);
+            ctx.flush();
+        });
+    }
+
+    private static ByteBuf readRegion(ChannelHandlerContext ctx, FileChannel file, QueueLog.Region region) throws IOException {
+        try (file) {
+            ByteBuf buffer = ctx.alloc().directBuffer(region.length());
+            while (buffer.writerIndex() < region.length()) {
+                int read = buffer.writeBytes(file, region.position() + buffer.writerIndex(),
+                        region.length() - buffer.writerIndex());
+                if (read <= 0) {
+                    buffer.release();
+                    throw new EOFException("日志区间不完整：" + region);
+                }
+            }
+            return buffer;
+        }
+    }
+
+    private void park(ChannelHandlerContext ctx, MqMessage.ReplicaFetchRequest request, long deadline) {
+        ParkedFetch parked = new ParkedFetch(ctx, request, deadline);
+        parkedFetches.put(ctx.channel(), parked);
+        ctx.executor().schedule(() -> wake(parked), deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 有消息追加到分区日志（在队列归属线程调用）：唤醒挂起的副本拉取
+     */
+    public void notifyAppended() {
+        if (parkedFetches.isEmpty()) return;
+        parkedFetches.values().forEach(this::wake);
+    }
+
+    // 追加通知和超时竞争，同一次挂起只唤醒一次
+    private void wake(ParkedFetch parked) {
+        ChannelHandlerContext ctx = parked.ctx();
+        if (!parkedFetches.remove(ctx.channel(), parked)) return;
+        replicaIoExecutor.execute(() -> {
+            if (ctx.channel().isActive()) {
+                respond(ctx, parked.request(), parked.deadline());
+            }
+        });
+    }
+
+    /**
+     * 按确认模式等待副本复制（在队列归属线程、消息追加之后调用）：以此刻该队列各分区的日志末端为目标，
+     * 达到目标的副本数满足要求时完成；超时返回NOT_ENOUGH_REPLICAS（消息已在leader日志中，不撤销）
+     */
+    public CompletableFuture<MqMessage.SendStatus> awaitReplicas(String queueName, MqMessage.AckMode ackMode) {
+        if (ackMode == MqMessage.AckMode.ASYNC_REPLICAS) {
+            boolean replicating = replicationFactor == 1 || inSyncReplicas() > 0;
+            return CompletableFuture.completedFuture(
+                    replicating ? MqMessage.SendStatus.SEND_OK : MqMessage.SendStatus.NOT_ENOUGH_REPLICAS);
+        }
+        if (ackMode != MqMessage.AckMode.SYNC_MAJORITY || requiredReplicas == 0) {
+            return CompletableFuture.completedFuture(MqMessage.SendStatus.SEND_OK);
+        }
+        Map<String, Long> targets = new HashMap<>();
+        int partitionCount = queueManager.partitionCount(queueName);
+        for (int p = 0; p < partitionCount; p++) {
+            targets.put(queueManager.partitionQueueName(queueName, p), queueManager.logEndOffset(queueName, p));
+        }
+        AckWaiter waiter = new AckWaiter(targets);
+        if (isSatisfied(waiter)) {
+            return CompletableFuture.completedFuture(MqMessage.SendStatus.SEND_OK);
+        }
+        waiters.add(waiter);
+        waiter.future.completeOnTimeout(MqMessage.SendStatus.NOT_ENOUGH_REPLICAS, ackTimeoutMs, TimeUnit.MILLISECONDS)
+                .whenComplete((status, e) -> waiters.remove(waiter));
+        // 加入等待集合前副本可能已上报进度
+        if (isSatisfied(waiter)) {
+            waiter.future.complete(MqMessage.SendStatus.SEND_OK);
+        }
+        return waiter.future;
+    }
+
+    private void checkWaiters() {
+        if (waiters.isEmpty()) return;
+        for (AckWaiter waiter : waiters) {
+            if (isSatisfied(waiter)) {
+                waiter.future.complete(MqMessage.SendStatus.SEND_OK);
+            }
+        }
+    }
+
+    private boolean isSatisfied(AckWaiter waiter) {
+        int replicated = 0;
+        for (ReplicaProgress progress : replicas.values()) {
+            if (progress.reached(waiter.targets) && ++replicated >= requiredReplicas) return true;
+        }
+        return false;
+    }
+
+    private int inSyncReplicas() {
+        long now = System.nanoTime();
+        int count = 0;
+        for (ReplicaProgress progress : replicas.values()) {
+            if (now - progress.lastFetchNanos < lagTimeoutNanos) count++;
+        }
+        return count;
+    }
+
+    /**
+     * 同步中的副本都已复制到的偏移量（日志清理不越过此处；没有同步中的副本返回Long.MAX_VALUE，
+     * 掉队副本恢复后从leader日志起点重新复制）
+     */
+    public long replicatedOffset(String partitionQueue) {
+        long now = System.nanoTime();
+        long min = Long.MAX_VALUE;
+        for (ReplicaProgress progress : replicas.values()) {
+            if (now - progress.lastFetchNanos < lagTimeoutNanos) {
+                min = Math.min(min, progress.offset(partitionQueue));
+            }
+        }
+        return min;
+    }
+
+    /**
+     * 单个副本的复制进度（副本每次拉取时上报各分区日志末端）
+     */
+    private static class ReplicaProgress {
+        private final Map<String, Long> offsets = new ConcurrentHashMap<>();
+        private volatile long lastFetchNanos;
+
+        void update(MqMessage.ReplicaFetchRequest request) {
+            for (MqMessage.PartitionFetch fetch : request.getPartitionsList()) {
+                offsets.put(fetch.getPartitionQueue(), fetch.getFetchOffset());
+            }
+            lastFetchNanos = System.nanoTime();
+        }
+
+        long offset(String partitionQueue) {
+            return offsets.getOrDefault(partitionQueue, 0L);
+        }
+
+        boolean reached(Map<String, Long> targets) {
+            for (Map.Entry<String, Long> target : targets.entrySet()) {
+                if (offset(target.getKey()) < target.getValue()) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 等待副本复制的发送（按引用区分，同一目标的多次发送各自等待）
+     */
+    private static class AckWaiter {
+        private final Map<String, Long> targets;
+        private final CompletableFuture<MqMessage.SendStatus> future = new CompletableFuture<>();
+
+        AckWaiter(Map<String, Long> targets) {
+            this.targets = targets;
+        }
+    }
+
+    private record ParkedFetch(ChannelHandlerContext ctx, MqMessage.ReplicaFetchRequest request, long deadline) {
+    }
+}
@@ -0,0 +1,101 @@
+package com.yzx.crazycodingbytemq.server;
+
+import com.yzx.crazycodingbytemq.exception.RequestTimeoutException;
+import com.yzx.crazycodingbytemq.util.RetryPolicy;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * @className: RequestTimer
+ * @author: yzx
+ * @date: 2025/11/24 10:20
+ * @Version: 1.0
+ * @description: 客户端请求截止时间（全局一个时间轮线程：注册和取消超时都是O(1)，
+ * 在途请求再多也不为每个请求占用一个睡眠线程；重试的退避等待同样挂在时间轮上）
+ */
+@Slf4j
+public class RequestTimer {
+    private static final RequestTimer INSTANCE = new RequestTimer();
+    private final HashedWheelTimer timer = new HashedWheelTimer(
+            new DefaultThreadFactory("client-request-timer", true), 10, TimeUnit.MILLISECONDS);
+
+    public static RequestTimer getInstance() {
+        return INSTANCE;
+    }
+
+    private RequestTimer() {
+    }
+
+    /**
+     * 为请求设置截止时间：到期未完成则以RequestTimeoutException失败，先完成则取消超时
+     */
+    public <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, long timeoutMs, String operation) {
+        if (future.isDone()) return future;
+        Timeout timeout = timer.newTimeout(t -> future.completeExceptionally(
+                new RequestTimeoutException(operation, timeoutMs)), timeoutMs, TimeUnit.MILLISECONDS);
+        future.whenComplete((result, e) -> timeout.cancel());
+        return future;
+    }
+
+    /**
+     * 延迟执行（在时间轮线程上执行，任务本身不应阻塞）
+     * @return 可用于在到期前取消任务
+     */
+    public Timeout schedule(Runnable task, long delayMs) {
+        return timer.newTimeout(t -> task.run(), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 按重试策略执行异步请求：shouldRetry对结果或异常判定需要重试时，按抖动退避等待后重新发起
+     */
+    public <T> CompletableFuture<T> retry(String operation, RetryPolicy policy, Supplier<CompletableFuture<T>> action,
+                                          BiPredicate<T, Throwable> shouldRetry) {
+        return retry(operation, policy, action, shouldRetry, value -> 0);
+    }
+
+    /**
+     * 按重试策略执行异步请求，retryAfter从响应中取服务端建议的最短等待时间（毫秒），退避等待不短于该值
+     */
+    public <T> CompletableFuture<T> retry(String operation, RetryPolicy policy, Supplier<CompletableFuture<T>> action,
+                                          BiPredicate<T, Throwable> shouldRetry, ToLongFunction<T> retryAfter) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attempt(operation, policy, action, shouldRetry, retryAfter, result, 0);
+        return result;
+    }
+
+    private <T> void attempt(String operation, RetryPolicy policy, Supplier<CompletableFuture<T>> action,
+                             BiPredicate<T, Throwable> shouldRetry, ToLongFunction<T> retryAfter,
+                             CompletableFuture<T> result, int retries) {
+        CompletableFuture<T> future;
+        try {
+            future = action.get();
+        } catch (Exception e) {
+            result.completeExceptionally(e);
+            return;
+        }
+        future.whenComplete((value, e) -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (policy.canRetry(retries) && shouldRetry.test(value, cause)) {
+                long delayMs = policy.backoffMillis(retries);
+                if (cause == null) {
+                    delayMs = Math.max(delayMs, retryAfter.applyAsLong(value));
+                }
+                log.debug("{}失败，{}ms后第{}次重试", operation, delayMs, retries + 1);
+                schedule(() -> attempt(operation, policy, action, shouldRetry, retryAfter, result, retries + 1), delayMs);
+            } else if (cause != null) {
+                result.completeExceptionally(cause);
+            } else {
+                result.complete(value);
+            }
+        });
+    }
+}
@@ -0,0 +1,202 @@
+package com.yzx.crazycodingbytemq.server;
+
+import com.yzx.crazycodingbytemq.config.ConfigLoader;
+import com.yzx.crazycodingbytemq.config.ServerConfig;
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import com.yzx.crazycodingbytemq.store.ScheduledMessageStore;
+import com.yzx.crazycodingbytemq.timer.HierarchicalTimer;
+import com.yzx.crazycodingbytemq.timer.TimerTask;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @className: ScheduledMessageService
+ * @author: yzx
+ * @date: 2025/11/18 11:30
+ * @Version: 1.0
+ * @description: 定时/延迟消息投递（近期消息放分层时间轮，远期消息留在磁盘按时间桶加载）
+ */
+@Slf4j
+public class ScheduledMessageService {
+    private static final ScheduledMessageService INSTANCE = new ScheduledMessageService();
+    private final ScheduledMessageStore store;
+    private final HierarchicalTimer timer;
+    // 时间桶跨度
+    private final long bucketMs;
+    // 提前加载进时间轮的窗口（窗口外的消息只在磁盘上）
+    private final long memoryWindowMs;
+    // 已加载进时间轮的时间上界（该时间之前的桶都在内存中）
+    private long loadedUntil;
+    // 已加载桶剩余未投递消息数（归零后删除桶文件）
+    private final Map<Long, AtomicInteger> pendingPerBucket = new ConcurrentHashMap<>();
+    // 投递失败（目标队列写入失败或异常）后的重新投递间隔：从基础间隔起每次翻倍，不超过上限
+    private static final long REDELIVER_BASE_MS = 100;
+    private static final long REDELIVER_MAX_MS = 30_000;
+    private final ScheduledExecutorService bucketLoader = Executors.newSingleThreadScheduledExecutor(
+            r -> new Thread(r, "schedule-bucket-loader"));
+
+    public static ScheduledMessageService getInstance() {
+        return INSTANCE;
+    }
+
+    private ScheduledMessageService() {
+        ServerConfig config = ConfigLoader.bindConfig(ServerConfig.class, "mq.server");
+        this.bucketMs = config.getScheduleBucketDuration().toMillis();
+        this.memoryWindowMs = config.getScheduleMemoryWindow().toMillis();
+        this.store = new ScheduledMessageStore(config.getScheduleStoreDir(), bucketMs);
+        this.timer = new HierarchicalTimer("schedule-timer", config.getTimerTickMs(), config.getTimerWheelSize());
+        recover();
+        bucketLoader.scheduleAtFixedRate(this::loadNearTermBuckets, bucketMs, bucketMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 定时消息入库：提交给存储写线程批量落盘，落盘后完成；投递时间落在已加载窗口内的落盘后放入时间轮
+     * @return 是否已落盘（调用线程不等待刷盘）
+     */
+    public CompletableFuture<Boolean> schedule(MqMessage.MessageItem messageItem) {
+        long bucket = store.bucketOf(messageItem.getDeliverAt());
+        boolean inMemory;
+        CompletableFuture<Void> appended;
+        // 在锁内决定是否进入时间轮并提交写入：窗口推进时先等待已提交的写入落盘再加载桶，不会漏读也不会重复加载
+        synchronized (this) {
+            inMemory = bucket < loadedUntil;
+            if (inMemory) {
+                // 先计入待投递数，落盘期间桶文件不会因已加载的消息投递完而被删除
+                pendingPerBucket.computeIfAbsent(bucket, k -> new AtomicInteger(0)).incrementAndGet();
+            }
+            appended = store.append(messageItem);
+        }
+        return appended.handle((v, e) -> {
+            if (e != null) {
+                log.error("定时消息保存失败：queueName={}, messageId={}",
+                        messageItem.getQueueName(), messageItem.getMessageId(), e);
+                if (inMemory) onDelivered(bucket);
+                return false;
+            }
+            if (inMemory) {
+                timer.add(new DeliverTask(messageItem, bucket, messageItem.getDeliverAt()));
+            }
+            log.debug("定时消息已保存：queueName={}, messageId={}, deliverAt={}",
+                    messageItem.getQueueName(), messageItem.getMessageId(), messageItem.getDeliverAt());
+            return true;
+        });
+    }
+
+    // 内存中待投递的定时消息数
+    public int pendingInMemory() {
+        return timer.size();
+    }
+
+    public void shutdown() {
+        bucketLoader.shutdown();
+        timer.shutdown();
+        store.close();
+    }
+
+    /**
+     * 启动恢复：磁盘上窗口内（含已过期）的桶全部加载，过期消息立即投递
+     */
+    private synchronized void recover() {
+        long horizon = nextHorizon();
+        int recovered = 0;
+        for (Long bucket : store.listBuckets()) {
+            if (bucket >= horizon) break;
+            recovered += loadBucket(bucket);
+        }
+        loadedUntil = horizon;
+        log.info("定时消息恢复完成：加载{}条，内存窗口至{}", recovered, loadedUntil);
+    }
+
+    /**
+     * 定时任务：窗口随时间推进，把新进入窗口的桶从磁盘加载进时间轮
+     */
+    private synchronized void loadNearTermBuckets() {
+        try {
+            // 已提交（按旧窗口判定为只在磁盘上）的写入先落盘
+            store.sync().join();
+            long horizon = nextHorizon();
+            for (long bucket = loadedUntil; bucket < horizon; bucket += bucketMs) {
+                loadBucket(bucket);
+            }
+            loadedUntil = Math.max(loadedUntil, horizon);
+        } catch (Exception e) {
+            log.error("加载定时消息桶失败", e);
+        }
+    }
+
+    private int loadBucket(long bucket) {
+        List<MqMessage.MessageItem> messageItems = store.loadBucket(bucket);
+        if (messageItems.isEmpty()) return 0;
+        pendingPerBucket.computeIfAbsent(bucket, k -> new AtomicInteger(0)).addAndGet(messageItems.size());
+        for (MqMessage.MessageItem messageItem : messageItems) {
+            timer.add(new DeliverTask(messageItem, bucket, messageItem.getDeliverAt()));
+        }
+        return messageItems.size();
+    }
+
+    private long nextHorizon() {
+        return store.bucketOf(System.currentTimeMillis() + memoryWindowMs) + bucketMs;
+    }
+
+    private synchronized void onDelivered(long bucket) {
+        AtomicInteger pending = pendingPerBucket.get(bucket);
+        if (pending != null && pending.decrementAndGet() <= 0) {
+            pendingPerBucket.remove(bucket);
+            store.deleteBucket(bucket);
+        }
+    }
+
+    /**
+     * 到期投递任务：放入目标队列
+     */
+    private class DeliverTask extends TimerTask {
+        private final MqMessage.MessageItem messageItem;
+        private final long bucket;
+        // 已失败的投递次数
+        private final int failures;
+
+        DeliverTask(MqMessage.MessageItem messageItem, long bucket, long expirationMs) {
+            this(messageItem, bucket, expirationMs, 0);
+        }
+
+        private DeliverTask(MqMessage.MessageItem messageItem, long bucket, long expirationMs, int failures) {
+            super(expirationMs);
+            this.messageItem = messageItem;
+            this.bucket = bucket;
+            this.failures = failures;
+        }
+
+        @Override
+        public void run() {
+            boolean delivered;
+            try {
+                delivered = QueueManager.getInstance().deliverScheduled(messageItem);
+            } catch (Exception e) {
+                log.error("定时消息投递异常：queueName={}, messageId={}",
+                        messageItem.getQueueName(), messageItem.getMessageId(), e);
+                delivered = false;
+            }
+            if (delivered) {
+                onDelivered(bucket);
+                return;
+            }
+            // 投递成功前不计数，桶文件保留（期间重启也会重新投递）
+            long delayMs = backoffMs();
+            log.warn("定时消息写入目标队列失败，{}ms后重新投递：queueName={}, messageId={}",
+                    delayMs, messageItem.getQueueName(), messageItem.getMessageId());
+            timer.add(new DeliverTask(messageItem, bucket, System.currentTimeMillis() + delayMs, failures + 1));
+        }
+
+        private long backoffMs() {
+            return Math.min(REDELIVER_MAX_MS, REDELIVER_BASE_MS << Math.min(failures, 20));
+        }
+    }
+}
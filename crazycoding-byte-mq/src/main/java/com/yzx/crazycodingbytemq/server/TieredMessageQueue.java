@@ -0,0 +1,452 @@
+package com.yzx.crazycodingbytemq.server;
+
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import com.yzx.crazycodingbytemq.store.QueueLog;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * @className: TieredMessageQueue
+ * @author: yzx
+ * @date: 2025/11/23 11:00
+ * @Version: 1.0
+ * @description: 分层分区队列（消息先追加到磁盘日志；无积压时同时进入有界内存缓存，消费者追平时全程不读盘；
+ * 缓存放不下的消息只留在磁盘，缓存消费过半后按读游标从磁盘顺序换入，内存占用与积压量无关；
+ * 消费位点保存为最小的未结算偏移量，已取出但未确认或仍在重试的消息重启后重新投递；
+ * 每个消费组在日志上有独立的读游标，各组互不抢占消息，组的已提交偏移量随刷盘保存，日志按所有消费方中最慢者保留；
+ * 最近追加的消息另保留一个不随取出删除的窗口，消费组读游标落在窗口内时直接从内存读取，落后于窗口才读盘；
+ * 除归属线程外，定时投递、死信、副本复制和换入线程也会访问队列：追加和换入在this上加锁，组读游标在游标上加锁）
+ */
+@Slf4j
+public class TieredMessageQueue implements MessageBuffer {
+    private final String name;
+    private final QueueLog queueLog;
+    // 内存缓存：始终是日志中一段连续消息，末尾紧接cachedUpTo
+    private final MessageRingBuffer cache;
+    private final int pageSize;
+    private final Executor pageInExecutor;
+    // 换入完成回调（唤醒推模式订阅者和长轮询等待者）
+    private final Runnable onPagedIn;
+    private final AtomicBoolean pageInScheduled = new AtomicBoolean(false);
+    // 第一条未进入缓存的消息的读游标（写入和换入在this上加锁修改）
+    private volatile QueueLog.Cursor cachedUpTo;
+    // 已从队列取出的消息的下一偏移量（下一条待投递消息）
+    private final AtomicLong consumedOffset;
+    // 已取出但尚未结算（确认或进入死信队列）的消息偏移量，投递中、等待重试、顺序键等待的消息都在其中
+    private final ConcurrentSkipListSet<Long> unsettled = new ConcurrentSkipListSet<>();
+    // 是否有不属于消费组的消费方（推模式或不带消费组的拉取）取过消息，没有则日志保留不受共享位点限制
+    private volatile boolean sharedConsumed;
+    // 消费组名->组读游标
+    private final Map<String, GroupCursor> groupCursors = new ConcurrentHashMap<>();
+    // 最近追加消息窗口：下标为偏移量&recentMask，始终是日志末尾一段连续消息[recentStart, recentEnd)（写入在this上加锁修改）
+    private final AtomicReferenceArray<QueueLog.StoredMessage> recent;
+    private final int recentMask;
+    private final long recentMaxBytes;
+    private long recentBytes;
+    private volatile long recentStart;
+    private volatile long recentEnd;
+
+    public TieredMessageQueue(String name, QueueLog queueLog, int cacheCapacity, long cacheMaxBytes, int pageSize,
+                              Executor pageInExecutor, Runnable onPagedIn) throws IOException {
+        this.name = name;
+        this.queueLog = queueLog;
+        this.cache = new MessageRingBuffer(cacheCapacity, cacheMaxBytes);
+        this.pageSize = pageSize;
+        this.pageInExecutor = pageInExecutor;
+        this.onPagedIn = onPagedIn;
+        this.recent = new AtomicReferenceArray<>(cache.capacity());
+        this.recentMask = cache.capacity() - 1;
+        this.recentMaxBytes = cacheMaxBytes;
+        this.cachedUpTo = queueLog.recover();
+        this.recentStart = queueLog.nextOffset();
+        this.recentEnd = recentStart;
+        this.consumedOffset = new AtomicLong(cachedUpTo.offset());
+        this.sharedConsumed = cachedUpTo.offset() > queueLog.logStartOffset();
+        // 消费组从已提交偏移量继续（早于日志起点时从日志起点开始）
+        for (Map.Entry<String, Long> entry : queueLog.readGroupOffsets().entrySet()) {
+            groupCursors.put(entry.getKey(), new GroupCursor(queueLog.cursorAt(entry.getValue())));
+        }
+        if (hasBacklog()) {
+            log.info("分区队列恢复积压消息：queue={}, 消费位点={}, 日志末端={}", name, cachedUpTo.offset(), queueLog.nextOffset());
+            schedulePageIn();
+        }
+    }
+
+    /**
+     * 追加消息：分配分区内偏移量并写入日志，无积压时同时放入缓存
+     * @return 写入日志失败返回null
+     */
+    public synchronized MqMessage.MessageItem append(MqMessage.MessageItem.Builder builder) {
+        MqMessage.MessageItem messageItem = builder.setOffset(queueLog.nextOffset()).build();
+        QueueLog.Cursor next;
+        try {
+            next = queueLog.append(messageItem);
+        } catch (IOException e) {
+            log.error("写入队列日志失败：queue={}, messageId={}", name, messageItem.getMessageId(), e);
+            return null;
+        }
+        // 有积压或缓存已满则只留在磁盘，由换入按顺序读取
+        if (cachedUpTo.offset() == messageItem.getOffset() && cache.offer(messageItem)) {
+            cachedUpTo = next;
+        }
+        addRecent(new QueueLog.StoredMessage(messageItem, next));
+        return messageItem;
+    }
+
+    // 放入最近追加窗口，超出条数或字节上限时从窗口头部淘汰
+    private void addRecent(QueueLog.StoredMessage message) {
+        long offset = message.messageItem().getOffset();
+        if (offset != recentEnd) {
+            clearRecent(offset);
+        }
+        int size = message.messageItem().getSerializedSize();
+        while (recentStart < recentEnd
+                && (recentEnd - recentStart >= recent.length() || (recentMaxBytes > 0 && recentBytes + size > recentMaxBytes))) {
+            int index = (int) (recentStart & recentMask);
+            recentBytes -= recent.get(index).messageItem().getSerializedSize();
+            recent.set(index, null);
+            recentStart++;
+        }
+        recent.set((int) (offset & recentMask), message);
+        recentBytes += size;
+        recentEnd = offset + 1;
+    }
+
+    private void clearRecent(long offset) {
+        for (int i = 0; i < recent.length(); i++) {
+            recent.set(i, null);
+        }
+        recentBytes = 0;
+        recentStart = offset;
+        recentEnd = offset;
+    }
+
+    // 从最近追加窗口读取读游标之后的消息（不加锁：槽位中的偏移量不符说明已被淘汰，停止读取）
+    private int readRecent(QueueLog.Cursor from, ArrayDeque<QueueLog.StoredMessage> into, int max) {
+        long offset = from.offset();
+        if (offset < recentStart) return 0;
+        int read = 0;
+        long end = recentEnd;
+        while (offset < end && read < max) {
+            QueueLog.StoredMessage message = recent.get((int) (offset & recentMask));
+            if (message == null || message.messageItem().getOffset() != offset) break;
+            into.addLast(message);
+            offset++;
+            read++;
+        }
+        return read;
+    }
+
+    @Override
+    public MqMessage.MessageItem poll() {
+        MqMessage.MessageItem messageItem = cache.poll();
+        if (messageItem != null) {
+            sharedConsumed = true;
+            // 先登记未结算再推进取出位置，保存位点时不会越过这条消息
+            unsettled.add(messageItem.getOffset());
+            consumedOffset.accumulateAndGet(messageItem.getOffset() + 1, Math::max);
+        }
+        maybePageIn();
+        return messageItem;
+    }
+
+    /**
+     * 缓存为空即视为暂无可投递消息；有磁盘积压时触发换入，换入完成后回调唤醒等待者
+     */
+    @Override
+    public boolean isEmpty() {
+        if (!cache.isEmpty()) return false;
+        maybePageIn();
+        return true;
+    }
+
+    public long logEndOffset() {
+        return queueLog.nextOffset();
+    }
+
+    public long logStartOffset() {
+        return queueLog.logStartOffset();
+    }
+
+    public long consumedOffset() {
+        return consumedOffset.get();
+    }
+
+    /**
+     * 消息已结算（消费确认或进入死信队列），不再阻止消费位点推进
+     */
+    public void settle(long offset) {
+        unsettled.remove(offset);
+    }
+
+    /**
+     * 共享消费的可保存位点：最小的未结算偏移量，没有未结算消息时为取出位置
+     */
+    public long checkpointOffset() {
+        long consumed = consumedOffset.get();
+        Long lowest = unsettled.ceiling(Long.MIN_VALUE);
+        return lowest == null ? consumed : Math.min(lowest, consumed);
+    }
+
+    /**
+     * 从消费组读游标取出一条消息（拉取在队列归属线程上调用，在游标上加锁），登记为组内未结算；
+     * 读游标在最近追加窗口内时从内存预取，落后于窗口时按页读盘预取
+     * @return 已读到日志末端返回null
+     */
+    public MqMessage.MessageItem pollGroup(String group) {
+        GroupCursor cursor = groupCursor(group);
+        synchronized (cursor) {
+            if (cursor.prefetched.isEmpty()) {
+                if (cursor.readUpTo.offset() >= queueLog.nextOffset()) return null;
+                if (readRecent(cursor.readUpTo, cursor.prefetched, pageSize) == 0) {
+                    try {
+                        List<QueueLog.StoredMessage> messages = queueLog.read(cursor.readUpTo, pageSize);
+                        if (messages.isEmpty()) return null;
+                        cursor.prefetched.addAll(messages);
+                    } catch (IOException e) {
+                        log.error("消费组读取队列日志失败：queue={}, group={}, 读游标={}", name, group, cursor.readUpTo, e);
+                        return null;
+                    }
+                }
+                cursor.readUpTo = cursor.prefetched.peekLast().next();
+            }
+            QueueLog.StoredMessage message = cursor.prefetched.pollFirst();
+            // 先登记未结算再推进读游标，保存已提交偏移量时不会越过这条消息
+            cursor.unsettled.add(message.messageItem().getOffset());
+            cursor.next = message.next();
+            return message.messageItem();
+        }
+    }
+
+    /**
+     * 把消费组读游标重置到第一条创建时间不早于timestamp的消息（按时间回溯或跳过），组内未结算的消息不再阻止提交偏移量
+     * @return 重置后的读游标偏移量
+     */
+    public long seekGroup(String group, long timestamp) throws IOException {
+        QueueLog.Cursor target = queueLog.cursorAt(queueLog.offsetForTimestamp(timestamp));
+        GroupCursor cursor = groupCursor(group);
+        synchronized (cursor) {
+            cursor.prefetched.clear();
+            cursor.unsettled.clear();
+            cursor.readUpTo = target;
+            cursor.next = target;
+        }
+        log.info("消费组按时间重置读游标：queue={}, group={}, timestamp={}, offset={}", name, group, timestamp, target.offset());
+        return target.offset();
+    }
+
+    /**
+     * 消费组是否还有未取出的消息
+     */
+    public boolean hasGroupBacklog(String group) {
+        GroupCursor cursor = groupCursors.get(group);
+        return cursor == null ? queueLog.logStartOffset() < queueLog.nextOffset() : cursor.next.offset() < queueLog.nextOffset();
+    }
+
+    /**
+     * 消费组内的消息已结算（确认或进入死信队列），组的已提交偏移量可以越过它
+     */
+    public void settleGroup(String group, long offset) {
+        GroupCursor cursor = groupCursors.get(group);
+        if (cursor != null) {
+            cursor.unsettled.remove(offset);
+        }
+    }
+
+    /**
+     * 各消费组已提交的偏移量：组内最小的未结算偏移量，没有未结算消息时为组读游标位置
+     */
+    public Map<String, Long> groupOffsets() {
+        Map<String, Long> offsets = new HashMap<>();
+        groupCursors.forEach((group, cursor) -> offsets.put(group, cursor.committedOffset()));
+        return offsets;
+    }
+
+    /**
+     * 日志可删除到的偏移量：共享位点和各消费组已提交偏移量中最小者（只有消费组消费时不受共享位点限制），
+     * 副本据此保存位点和清理日志
+     */
+    public long retainOffset() {
+        long retain = groupCursors.isEmpty() || sharedConsumed ? checkpointOffset() : Long.MAX_VALUE;
+        for (GroupCursor cursor : groupCursors.values()) {
+            retain = Math.min(retain, cursor.committedOffset());
+        }
+        return retain;
+    }
+
+    /**
+     * 积压消息数：日志末端与最慢消费方的取出位置之差
+     */
+    public long backlog() {
+        long end = queueLog.nextOffset();
+        long position = groupCursors.isEmpty() || sharedConsumed ? consumedOffset.get() : end;
+        for (GroupCursor cursor : groupCursors.values()) {
+            position = Math.min(position, cursor.next.offset());
+        }
+        return Math.max(0, end - position);
+    }
+
+    // 新消费组从日志起点开始消费
+    private GroupCursor groupCursor(String group) {
+        return groupCursors.computeIfAbsent(group, k -> {
+            try {
+                return new GroupCursor(queueLog.cursorAt(queueLog.logStartOffset()));
+            } catch (IOException e) {
+                throw new UncheckedIOException("定位消费组读游标失败：" + name + "@" + group, e);
+            }
+        });
+    }
+
+    /**
+     * 副本拉取的日志文件区间（leader调用）
+     */
+    public QueueLog.Region replicaRegion(long fetchOffset, long segmentBase, long position, int maxBytes) throws IOException {
+        return queueLog.region(fetchOffset, segmentBase, position, maxBytes);
+    }
+
+    /**
+     * 追加从leader复制来的原始记录（副本调用）：只写日志不进缓存，副本不对消费者投递
+     * @return 首条记录偏移量与本地日志末端不连续时不写入，返回false
+     */
+    public synchronized boolean appendReplica(ByteBuffer records, int count, long firstOffset) throws IOException {
+        if (firstOffset != queueLog.nextOffset()) return false;
+        queueLog.appendRecords(records, count);
+        return true;
+    }
+
+    /**
+     * 丢弃本地日志，从leader日志起点重新复制（副本调用）
+     */
+    public synchronized void resetReplica(long offset) throws IOException {
+        cachedUpTo = queueLog.resetTo(offset);
+        while (cache.poll() != null) ;
+        clearRecent(offset);
+        unsettled.clear();
+        consumedOffset.set(offset);
+    }
+
+    /**
+     * 跟随leader推进消费位点（副本调用，刷盘时据此保存位点和清理日志）
+     */
+    public void advanceConsumedOffset(long offset) {
+        consumedOffset.accumulateAndGet(offset, Math::max);
+    }
+
+    /**
+     * 刷盘并保存消费位点（定时调用）
+     */
+    public void flush() {
+        flush(Long.MAX_VALUE);
+    }
+
+    /**
+     * 刷盘并保存消费位点（最小未结算偏移量）和消费组已提交偏移量，任一消费方未结算和副本尚未复制的段不删除
+     * @param replicatedOffset 全部副本都已复制到的偏移量（没有副本时传Long.MAX_VALUE）
+     */
+    public void flush(long replicatedOffset) {
+        try {
+            queueLog.flush(checkpointOffset(), groupOffsets(), Math.min(retainOffset(), replicatedOffset));
+        } catch (IOException e) {
+            log.error("队列日志刷盘失败：queue={}", name, e);
+        }
+    }
+
+    public void close() {
+        flush();
+        queueLog.close();
+    }
+
+    private synchronized void skipToLogStart() throws IOException {
+        long start = queueLog.logStartOffset();
+        if (cachedUpTo.offset() >= start) return;
+        cachedUpTo = queueLog.cursorAt(start);
+        consumedOffset.accumulateAndGet(start, Math::max);
+    }
+
+    private boolean hasBacklog() {
+        return cachedUpTo.offset() < queueLog.nextOffset();
+    }
+
+    // 有积压且缓存消费过半时换入
+    private void maybePageIn() {
+        if (hasBacklog() && cache.size() <= cache.capacity() / 2) {
+            schedulePageIn();
+        }
+    }
+
+    private void schedulePageIn() {
+        if (pageInScheduled.compareAndSet(false, true)) {
+            pageInExecutor.execute(this::pageIn);
+        }
+    }
+
+    // 在换入线程上读盘，不阻塞IO线程；读盘不持锁，只在放入缓存时加锁
+    private void pageIn() {
+        int loaded = 0;
+        try {
+            // 只有消费组消费时日志按组的进度删除，共享读游标所在段可能已删除，跳到日志起点
+            if (cachedUpTo.offset() < queueLog.logStartOffset()) {
+                skipToLogStart();
+            }
+            QueueLog.Cursor from = cachedUpTo;
+            int room = cache.capacity() - cache.size();
+            List<QueueLog.StoredMessage> messages = queueLog.read(from, Math.min(pageSize, room));
+            synchronized (this) {
+                // 读盘期间积压已被追平（写入直接进了缓存），本次读到的消息作废
+                if (cachedUpTo == from) {
+                    for (QueueLog.StoredMessage message : messages) {
+                        if (!cache.offer(message.messageItem())) break;
+                        cachedUpTo = message.next();
+                        loaded++;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.error("从磁盘换入消息失败：queue={}, 读游标={}", name, cachedUpTo, e);
+        } finally {
+            pageInScheduled.set(false);
+        }
+        if (loaded > 0) {
+            log.debug("从磁盘换入消息：queue={}, 数量={}, 剩余积压={}", name, loaded, queueLog.nextOffset() - cachedUpTo.offset());
+            onPagedIn.run();
+            maybePageIn();
+        }
+    }
+
+    /**
+     * 单个消费组的读游标：预取的消息只在取出时才推进读游标和登记未结算
+     */
+    private static class GroupCursor {
+        // 下一条待取出消息的读游标
+        private volatile QueueLog.Cursor next;
+        // 已预取消息之后的读游标
+        private QueueLog.Cursor readUpTo;
+        private final ArrayDeque<QueueLog.StoredMessage> prefetched = new ArrayDeque<>();
+        private final ConcurrentSkipListSet<Long> unsettled = new ConcurrentSkipListSet<>();
+
+        GroupCursor(QueueLog.Cursor start) {
+            this.next = start;
+            this.readUpTo = start;
+        }
+
+        // 先读读游标再读未结算集合，与取出时的登记顺序相反，不会越过刚取出的消息
+        long committedOffset() {
+            long position = next.offset();
+            Long lowest = unsettled.ceiling(Long.MIN_VALUE);
+            return lowest == null ? position : Math.min(lowest, position);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.yzx.crazycodingbytemq.server;
+
+import com.yzx.crazycodingbytemq.enums.LocalTransactionState;
+import com.yzx.crazycodingbytemq.model.MqMessage;
+
+/**
+ * @className: TransactionListener
+ * @author: yzx
+ * @date: 2025/11/22 17:00
+ * @Version: 1.0
+ * @description: 事务消息监听器（半消息写入后执行本地事务；broker回查时查询本地事务状态；均在客户端事务线程上回调）
+ */
+public interface TransactionListener {
+    /**
+     * 执行本地事务
+     * @param arg sendMessageInTransaction传入的业务参数
+     */
+    LocalTransactionState executeLocalTransaction(MqMessage.MessageItem messageItem, Object arg);
+
+    /**
+     * 回查本地事务状态（本地事务结果未送达broker时调用，需幂等）
+     */
+    LocalTransactionState checkLocalTransaction(MqMessage.MessageItem messageItem);
+}
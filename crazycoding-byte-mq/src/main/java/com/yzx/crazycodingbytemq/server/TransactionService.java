@@ -0,0 +1,255 @@
+package com.yzx.crazycodingbytemq.server;
+
+import com.yzx.crazycodingbytemq.codec.ProtocolConstant;
+import com.yzx.crazycodingbytemq.codec.ProtocolFrame;
+import com.yzx.crazycodingbytemq.config.ConfigLoader;
+import com.yzx.crazycodingbytemq.config.ServerConfig;
+import com.yzx.crazycodingbytemq.enums.MessageTypeEnum;
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import com.yzx.crazycodingbytemq.store.TransactionLog;
+import io.netty.channel.Channel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @className: TransactionService
+ * @author: yzx
+ * @date: 2025/11/22 16:10
+ * @Version: 1.0
+ * @description: 事务消息（半消息落盘但不入队；提交后才对消费者可见；长时间未结束的半消息回查生产者）
+ */
+@Slf4j
+public class TransactionService {
+    private static final TransactionService INSTANCE = new TransactionService();
+    private final TransactionLog transactionLog;
+    // 未结束的半消息：事务ID->半消息
+    private final Map<String, HalfMessage> halfMessages = new ConcurrentHashMap<>();
+    private final long checkTimeoutMs;
+    private final int maxChecks;
+    private final ScheduledExecutorService checkScheduler = Executors.newSingleThreadScheduledExecutor(
+            r -> new Thread(r, "tx-check-scheduler"));
+
+    public static TransactionService getInstance() {
+        return INSTANCE;
+    }
+
+    private TransactionService() {
+        ServerConfig config = ConfigLoader.bindConfig(ServerConfig.class, "mq.server");
+        this.checkTimeoutMs = config.getTransactionCheckTimeout().toMillis();
+        this.maxChecks = config.getTransactionMaxChecks();
+        this.transactionLog = new TransactionLog(config.getTransactionStoreDir(), config.getTransactionLogSegmentBytes());
+        for (MqMessage.TransactionRecord record : transactionLog.recover()) {
+            halfMessages.put(record.getTransactionId(), new HalfMessage(record));
+        }
+        long intervalMs = config.getTransactionCheckInterval().toMillis();
+        checkScheduler.scheduleWithFixedDelay(this::checkStaleHalfMessages, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 半消息落盘（落盘完成后才响应生产者执行本地事务）
+     */
+    public CompletableFuture<Void> prepare(MqMessage.TransactionPrepareRequest request) {
+        MqMessage.TransactionRecord record = MqMessage.TransactionRecord.newBuilder()
+                .setType(MqMessage.TransactionRecordType.TX_PREPARE)
+                .setTransactionId(request.getTransactionId())
+                .setProducerClientId(request.getMessage().getProducerClientId())
+                .setPrepareTime(System.currentTimeMillis())
+                .setMessage(request.getMessage())
+                .build();
+        HalfMessage halfMessage = new HalfMessage(record);
+        if (halfMessages.putIfAbsent(request.getTransactionId(), halfMessage) != null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("事务ID已存在：" + request.getTransactionId()));
+        }
+        return transactionLog.append(record).whenComplete((v, e) -> {
+            if (e != null) {
+                halfMessages.remove(request.getTransactionId(), halfMessage);
+            }
+        });
+    }
+
+    /**
+     * 提交：与普通发送一致，半消息在队列归属线程上入队并按确认模式等待副本，满足后才追加提交标记
+     * @return 入队状态（队列满、副本数不足时半消息保留，生产者重试提交或等待回查，重复入队由幂等ID去重）
+     */
+    public CompletableFuture<MqMessage.SendStatus> commit(String transactionId) {
+        HalfMessage halfMessage = halfMessages.get(transactionId);
+        if (halfMessage == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("事务不存在或已结束：" + transactionId));
+        }
+        // 同一事务的提交/回滚/回查互斥，避免重复入队
+        synchronized (halfMessage) {
+            if (halfMessage.ended) {
+                return CompletableFuture.failedFuture(new IllegalStateException("事务已结束：" + transactionId));
+            }
+            if (halfMessage.committing) {
+                return CompletableFuture.failedFuture(new IllegalStateException("事务正在提交：" + transactionId));
+            }
+            halfMessage.committing = true;
+        }
+        // 恢复后重复提交以消息ID去重（半消息的消息ID不变）
+        MqMessage.SendMessageRequest record = halfMessage.record.getMessage();
+        MqMessage.SendMessageRequest message = record.getIdempotencyKey().isEmpty()
+                ? record.toBuilder().setIdempotencyKey(record.getMessageId()).build() : record;
+        CompletableFuture<MqMessage.SendStatus> enqueued = new CompletableFuture<>();
+        QueueOwnerRegistry.getInstance().execute(message.getQueueName(), () -> {
+            try {
+                if (ReplicaManager.getInstance().isFollower()) {
+                    enqueued.complete(MqMessage.SendStatus.NOT_LEADER);
+                    return;
+                }
+                QueueManager.getInstance().sendMessage(message).whenComplete((status, e) -> {
+                    if (e != null) {
+                        enqueued.completeExceptionally(e);
+                    } else {
+                        enqueued.complete(status);
+                    }
+                });
+            } catch (Exception e) {
+                enqueued.completeExceptionally(e);
+            }
+        });
+        return enqueued.thenCompose(status -> {
+            if (status != MqMessage.SendStatus.SEND_OK && status != MqMessage.SendStatus.DUPLICATE) {
+                return CompletableFuture.completedFuture(status);
+            }
+            return message.getAckMode() == MqMessage.AckMode.LEADER
+                    ? CompletableFuture.completedFuture(MqMessage.SendStatus.SEND_OK)
+                    : ReplicaManager.getInstance().awaitReplicas(message.getQueueName(), message.getAckMode());
+        }).thenCompose(status -> {
+            synchronized (halfMessage) {
+                halfMessage.committing = false;
+                if (status != MqMessage.SendStatus.SEND_OK) {
+                    return CompletableFuture.completedFuture(status);
+                }
+                halfMessage.ended = true;
+            }
+            return end(transactionId, MqMessage.TransactionRecordType.TX_COMMIT).thenApply(v -> MqMessage.SendStatus.SEND_OK);
+        }).whenComplete((status, e) -> {
+            if (e != null) {
+                synchronized (halfMessage) {
+                    halfMessage.committing = false;
+                }
+            }
+        });
+    }
+
+    /**
+     * 回滚：丢弃半消息，追加回滚标记
+     */
+    public CompletableFuture<Void> rollback(String transactionId) {
+        HalfMessage halfMessage = halfMessages.get(transactionId);
+        if (halfMessage == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("事务不存在或已结束：" + transactionId));
+        }
+        synchronized (halfMessage) {
+            if (halfMessage.ended) {
+                return CompletableFuture.failedFuture(new IllegalStateException("事务已结束：" + transactionId));
+            }
+            if (halfMessage.committing) {
+                return CompletableFuture.failedFuture(new IllegalStateException("事务正在提交：" + transactionId));
+            }
+            halfMessage.ended = true;
+        }
+        return end(transactionId, MqMessage.TransactionRecordType.TX_ROLLBACK);
+    }
+
+    public int halfMessageCount() {
+        return halfMessages.size();
+    }
+
+    public void shutdown() {
+        checkScheduler.shutdown();
+        transactionLog.close();
+    }
+
+    // 追加结束标记（与其他标记攒批落盘），落盘后移除半消息
+    private CompletableFuture<Void> end(String transactionId, MqMessage.TransactionRecordType type) {
+        MqMessage.TransactionRecord marker = MqMessage.TransactionRecord.newBuilder()
+                .setType(type)
+                .setTransactionId(transactionId)
+                .build();
+        return transactionLog.append(marker).whenComplete((v, e) -> {
+            if (e == null) {
+                halfMessages.remove(transactionId);
+            } else {
+                // 标记未落盘：重启后半消息恢复，经回查再次结束
+                log.error("事务结束标记写入失败：transactionId={}, type={}", transactionId, type, e);
+            }
+        });
+    }
+
+    /**
+     * 定时扫描：超时未结束的半消息回查生产者，超过最大回查次数则回滚
+     */
+    private void checkStaleHalfMessages() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, HalfMessage> entry : halfMessages.entrySet()) {
+            HalfMessage halfMessage = entry.getValue();
+            if (halfMessage.ended || halfMessage.committing || now - halfMessage.lastCheckTime < checkTimeoutMs) continue;
+            try {
+                if (halfMessage.checkCount >= maxChecks) {
+                    log.warn("事务回查次数超限，回滚：transactionId={}, 回查次数={}", entry.getKey(), halfMessage.checkCount);
+                    rollback(entry.getKey());
+                    continue;
+                }
+                halfMessage.checkCount++;
+                halfMessage.lastCheckTime = now;
+                sendCheck(entry.getKey(), halfMessage);
+            } catch (Exception e) {
+                log.error("事务回查失败：transactionId={}", entry.getKey(), e);
+            }
+        }
+    }
+
+    private void sendCheck(String transactionId, HalfMessage halfMessage) {
+        String producerClientId = halfMessage.record.getProducerClientId();
+        Channel channel = ConnectionManager.getInstance().getChannelByClientId(producerClientId);
+        if (channel == null || !channel.isActive()) {
+            log.warn("事务回查跳过，生产者不在线：transactionId={}, producer={}", transactionId, producerClientId);
+            return;
+        }
+        MqMessage.SendMessageRequest message = halfMessage.record.getMessage();
+        MqMessage.TransactionCheckRequest request = MqMessage.TransactionCheckRequest.newBuilder()
+                .setTransactionId(transactionId)
+                .setMessage(MqMessage.MessageItem.newBuilder()
+                        .setMessageId(message.getMessageId())
+                        .setMessageBody(message.getMessageBody())
+                        .setQueueName(message.getQueueName())
+                        .setMessageKey(message.getMessageKey())
+                        .setCreateTime(halfMessage.record.getPrepareTime()))
+                .build();
+        byte[] body = request.toByteArray();
+        channel.writeAndFlush(new ProtocolFrame(
+                ProtocolConstant.MAGIC,
+                ProtocolConstant.Version,
+                body.length,
+                MessageTypeEnum.TRANSACTION_CHECK.getCode(),
+                body
+        ));
+        log.info("事务回查：transactionId={}, producer={}, 第{}次", transactionId, producerClientId, halfMessage.checkCount);
+    }
+
+    /**
+     * 半消息
+     */
+    private static class HalfMessage {
+        private final MqMessage.TransactionRecord record;
+        private volatile boolean ended;
+        // 提交进行中：已投递入队、等待副本确认（在halfMessage上加锁修改）
+        private volatile boolean committing;
+        // 以下字段仅回查线程读写
+        private int checkCount;
+        private long lastCheckTime;
+
+        HalfMessage(MqMessage.TransactionRecord record) {
+            this.record = record;
+            this.lastCheckTime = record.getPrepareTime();
+        }
+    }
+}
@@ -84,7 +84,7 @@ public class SslContextFactory {
             log.warn("ssl客户端未启动");
             return null;
         }
-        File cert = new File(config.getSslTruestCertPath());
+        File cert = new File(config.getSslTrustCertPath());
         validateFile(cert, "ssl信任证书");
         return SslContextBuilder.forClient()
                 .sslProvider(SslProvider.JDK)
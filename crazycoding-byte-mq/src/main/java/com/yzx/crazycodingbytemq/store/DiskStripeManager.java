@@ -0,0 +1,234 @@
+package com.yzx.crazycodingbytemq.store;
+
+import com.yzx.crazycodingbytemq.config.MessageStoreConfig;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @className: DiskStripeManager
+ * @author: yzx
+ * @date: 2025/11/17 15:40
+ * @Version: 1.0
+ * @description: 多磁盘条带化管理（队列按哈希/剩余空间分布到多个挂载点，每块盘一个写线程；
+ * 队列所在磁盘持久化到首块盘的placements文件，重启后队列仍写入原磁盘）
+ */
+@Slf4j
+public class DiskStripeManager {
+    // 队列分布记录文件（队列名=磁盘目录）
+    private static final String PLACEMENT_FILE = "placements";
+    private final MessageStoreConfig config;
+    @Getter
+    private final List<Disk> disks;
+    // 队列->当前所在磁盘（磁盘写满后可迁移）
+    private final Map<String, Disk> placements = new ConcurrentHashMap<>();
+    private final Path placementFile;
+
+    public DiskStripeManager(MessageStoreConfig config) {
+        this.config = config;
+        List<String> dirs = config.getBaseDirs().isEmpty() ? List.of(config.getBaseDir()) : config.getBaseDirs();
+        List<Disk> list = new ArrayList<>(dirs.size());
+        for (int i = 0; i < dirs.size(); i++) {
+            Path baseDir = Paths.get(dirs.get(i));
+            // 目录不存在时读不到剩余空间，会被当作写满的盘
+            try {
+                Files.createDirectories(baseDir);
+            } catch (IOException e) {
+                throw new IllegalStateException("创建存储目录失败：" + baseDir, e);
+            }
+            list.add(new Disk(i, baseDir));
+        }
+        this.disks = Collections.unmodifiableList(list);
+        this.placementFile = disks.get(0).getBaseDir().resolve(PLACEMENT_FILE);
+        loadPlacements();
+        log.info("存储磁盘初始化完成：{}，分布策略：{}，已记录队列数：{}", dirs, config.getDiskSelectPolicy(), placements.size());
+    }
+
+    /**
+     * 获取队列所在磁盘（首次访问时按策略分配并持久化）
+     */
+    public Disk diskFor(String queueName) {
+        Disk disk = placements.get(queueName);
+        if (disk != null) return disk;
+        synchronized (this) {
+            disk = placements.get(queueName);
+            if (disk == null) {
+                disk = selectDisk(queueName);
+                placements.put(queueName, disk);
+                persistPlacements();
+            }
+            return disk;
+        }
+    }
+
+    /**
+     * 队列所在磁盘空间不足时迁移到其他磁盘（后续新段写入新磁盘，旧段保留原地直至过期）
+     * @return 迁移后的磁盘，无需迁移或无可用磁盘时返回原磁盘
+     */
+    public Disk relocateIfFull(String queueName) {
+        Disk current = diskFor(queueName);
+        if (!current.isFull()) return current;
+        Disk target = selectByFreeSpace();
+        if (target == current || target.isFull()) {
+            log.error("所有存储磁盘空间不足，队列继续写入原磁盘：queueName={}, disk={}", queueName, current.getBaseDir());
+            return current;
+        }
+        synchronized (this) {
+            placements.put(queueName, target);
+            persistPlacements();
+        }
+        log.warn("磁盘空间不足，队列迁移：queueName={}, {} -> {}", queueName, current.getBaseDir(), target.getBaseDir());
+        return target;
+    }
+
+    /**
+     * 所有磁盘上已有存储目录的队列（崩溃恢复时扫描）
+     */
+    public Set<String> existingQueues() {
+        Set<String> queues = new TreeSet<>();
+        for (Disk disk : disks) {
+            if (!Files.isDirectory(disk.getBaseDir())) continue;
+            try (DirectoryStream<Path> dirs = Files.newDirectoryStream(disk.getBaseDir(), Files::isDirectory)) {
+                for (Path dir : dirs) {
+                    queues.add(dir.getFileName().toString());
+                }
+            } catch (IOException e) {
+                log.error("扫描存储磁盘失败：{}", disk.getBaseDir(), e);
+            }
+        }
+        return queues;
+    }
+
+    public void shutdown() {
+        disks.forEach(disk -> {
+            disk.getWriter().shutdown();
+            try {
+                if (!disk.getWriter().awaitTermination(10, TimeUnit.SECONDS)) {
+                    log.warn("磁盘写线程关闭超时：{}", disk.getBaseDir());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    private void loadPlacements() {
+        if (!Files.exists(placementFile)) return;
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(placementFile, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            throw new IllegalStateException("读取队列分布记录失败：" + placementFile, e);
+        }
+        for (String queueName : properties.stringPropertyNames()) {
+            Path dir = Paths.get(properties.getProperty(queueName)).normalize();
+            Disk disk = disks.stream().filter(d -> d.getBaseDir().normalize().equals(dir)).findFirst().orElse(null);
+            if (disk == null) {
+                // 磁盘已从配置中移除：重新分配，旧数据所在目录仍由恢复扫描读取
+                log.warn("队列记录的磁盘已不在配置中，重新分配：queueName={}, disk={}", queueName, dir);
+                continue;
+            }
+            placements.put(queueName, disk);
+        }
+    }
+
+    // 先写临时文件再原子替换，崩溃时不会留下半个记录文件
+    private void persistPlacements() {
+        Properties properties = new Properties();
+        placements.forEach((queueName, disk) -> properties.setProperty(queueName, disk.getBaseDir().toString()));
+        Path tmp = placementFile.resolveSibling(PLACEMENT_FILE + ".tmp");
+        try {
+            Files.createDirectories(placementFile.getParent());
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                properties.store(writer, "queue -> disk");
+            }
+            Files.move(tmp, placementFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IllegalStateException("保存队列分布记录失败：" + placementFile, e);
+        }
+    }
+
+    private Disk selectDisk(String queueName) {
+        if (disks.size() == 1) return disks.get(0);
+        if (config.getDiskSelectPolicy() == MessageStoreConfig.DiskSelectPolicy.FREE_SPACE) {
+            return selectByFreeSpace();
+        }
+        //哈希分布，目标盘已满时顺延到下一块盘
+        int start = Math.floorMod(queueName.hashCode(), disks.size());
+        for (int i = 0; i < disks.size(); i++) {
+            Disk disk = disks.get((start + i) % disks.size());
+            if (!disk.isFull()) return disk;
+        }
+        return disks.get(start);
+    }
+
+    private Disk selectByFreeSpace() {
+        Disk best = disks.get(0);
+        for (Disk disk : disks) {
+            if (disk.usableSpace() > best.usableSpace()) {
+                best = disk;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 单个存储磁盘（挂载点）
+     */
+    @Getter
+    public class Disk {
+        private final int index;
+        private final Path baseDir;
+        // 每块盘一个写线程：该盘上队列的写入、刷盘、段轮转都在这里串行执行，慢盘不拖累其他盘
+        private final ScheduledExecutorService writer;
+
+        private Disk(int index, Path baseDir) {
+            this.index = index;
+            this.baseDir = baseDir;
+            this.writer = Executors.newSingleThreadScheduledExecutor(
+                    r -> new Thread(r, "store-writer-disk-" + index));
+        }
+
+        public Path queueDir(String queueName) {
+            return baseDir.resolve(queueName);
+        }
+
+        public long usableSpace() {
+            try {
+                return Files.getFileStore(baseDir).getUsableSpace();
+            } catch (IOException e) {
+                log.error("读取磁盘剩余空间失败：{}", baseDir, e);
+                return 0;
+            }
+        }
+
+        // 剩余空间低于阈值视为写满（至少预留一个段文件大小）
+        public boolean isFull() {
+            return usableSpace() < Math.max(config.getDiskMinFreeBytes(), config.getMaxFileSize());
+        }
+
+        public void schedule(Runnable task, long periodMs) {
+            writer.scheduleAtFixedRate(task, periodMs, periodMs, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,587 @@
+package com.yzx.crazycodingbytemq.store;
+
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * @className: QueueLog
+ * @author: yzx
+ * @date: 2025/11/23 10:00
+ * @Version: 1.0
+ * @description: 单个分区的消息日志（只追加；段文件以段内首条消息偏移量命名；按读游标顺序换入积压消息；消费位点之前的整段删除；
+ * 副本复制时按文件区间直接发送原始记录，副本原样追加；各消费组的已提交偏移量与消费位点一起保存；
+ * 每段一个时间索引，按时间戳定位偏移量；配置多块磁盘时新段写入分区所在磁盘，磁盘写满后新段迁移到其他磁盘，
+ * 消费位点和消费组偏移量固定保存在首块盘上）
+ */
+@Slf4j
+public class QueueLog {
+    // 段文件命名：首条消息偏移量.log
+    private static final String SEGMENT_SUFFIX = ".log";
+    // 段的时间索引文件：首条消息偏移量.timeindex
+    private static final String TIME_INDEX_SUFFIX = ".timeindex";
+    // 默认时间索引采样间隔
+    private static final long DEFAULT_TIME_INDEX_INTERVAL_MS = 1000;
+    // 消费位点文件
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    // 消费组已提交偏移量文件
+    private static final String GROUP_OFFSETS_FILE = "group-offsets";
+    // 读取时的初始缓冲区大小
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    // 消费位点、消费组偏移量所在目录
+    private final Path dir;
+    // 多磁盘条带化：段文件按分区所在磁盘放置（为空时段文件都在dir下）
+    private final DiskStripeManager stripes;
+    private final String queueName;
+    private final long segmentBytes;
+    // 段起始偏移量->段文件（读线程和删除并发访问）
+    private final ConcurrentSkipListMap<Long, Path> segments = new ConcurrentSkipListMap<>();
+    // 段起始偏移量->段的时间索引（写入段可追加，其余已封存）
+    private final ConcurrentSkipListMap<Long, TimeIndex> timeIndexes = new ConcurrentSkipListMap<>();
+    private final long timeIndexIntervalMs;
+    // 以下字段由append的调用方加锁保护（activeChannel另由刷盘线程读取）
+    private volatile FileChannel activeChannel;
+    private long activeBase;
+    private long activeSize;
+    // 下一条消息的偏移量（写入完成后才推进，读线程据此判断可读范围）
+    private volatile long nextOffset;
+    // 日志末端的读游标（写入完成后整体替换，副本拉取据此确定可发送的文件区间）
+    private volatile Cursor end;
+    // 最近一次保存的消费位点和消费组偏移量（仅刷盘线程访问）
+    private long checkpointOffset = -1;
+    private Map<String, Long> savedGroupOffsets = Map.of();
+
+    public QueueLog(String dir, long segmentBytes) {
+        this(dir, segmentBytes, DEFAULT_TIME_INDEX_INTERVAL_MS);
+    }
+
+    /**
+     * @param timeIndexIntervalMs 时间索引采样间隔，按时间定位的结果最多提前一个间隔，再顺序读取到目标时间
+     */
+    public QueueLog(String dir, long segmentBytes, long timeIndexIntervalMs) {
+        this(Paths.get(dir), null, null, segmentBytes, timeIndexIntervalMs);
+    }
+
+    /**
+     * 段文件分布到多块磁盘：新段写入分区当前所在磁盘（写满时迁移），消费位点保存在首块盘上
+     */
+    public QueueLog(String queueName, DiskStripeManager stripes, long segmentBytes, long timeIndexIntervalMs) {
+        this(stripes.getDisks().get(0).queueDir(queueName), stripes, queueName, segmentBytes, timeIndexIntervalMs);
+    }
+
+    private QueueLog(Path dir, DiskStripeManager stripes, String queueName, long segmentBytes, long timeIndexIntervalMs) {
+        this.dir = dir;
+        this.stripes = stripes;
+        this.queueName = queueName;
+        this.segmentBytes = segmentBytes;
+        this.timeIndexIntervalMs = timeIndexIntervalMs;
+        try {
+            Files.createDirectories(this.dir);
+        } catch (IOException e) {
+            throw new RuntimeException("队列日志目录初始化失败：" + dir, e);
+        }
+    }
+
+    /**
+     * 启动恢复：定位日志末端（截断末尾不完整记录），并返回消费位点对应的读游标
+     */
+    public Cursor recover() throws IOException {
+        for (Path file : listSegmentFiles()) {
+            String name = file.getFileName().toString();
+            segments.put(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), file);
+        }
+        if (segments.isEmpty()) {
+            openSegment(0);
+            nextOffset = 0;
+            end = new Cursor(0, 0, 0);
+            return end;
+        }
+        // 扫描最后一段确定末端偏移量
+        long lastBase = segments.lastKey();
+        long[] end = scan(lastBase, Long.MAX_VALUE);
+        activeBase = lastBase;
+        activeChannel = FileChannel.open(segments.get(lastBase), StandardOpenOption.WRITE);
+        if (activeChannel.size() > end[1]) {
+            log.warn("队列日志段末尾记录不完整，截断：{}，{}->{}", segments.get(lastBase), activeChannel.size(), end[1]);
+            activeChannel.truncate(end[1]);
+        }
+        activeSize = end[1];
+        activeChannel.position(activeSize);
+        nextOffset = end[0];
+        this.end = new Cursor(activeBase, activeSize, nextOffset);
+        for (long base : segments.keySet()) {
+            timeIndexes.put(base, openTimeIndex(base, base == activeBase));
+        }
+        // 定位消费位点
+        return cursorAt(readCheckpoint());
+    }
+
+    /**
+     * 偏移量对应的读游标（早于最早段时从最早段开始，晚于末端时为末端）
+     */
+    public Cursor cursorAt(long offset) throws IOException {
+        Cursor end = this.end;
+        if (offset >= end.offset()) return end;
+        long target = Math.max(offset, segments.firstKey());
+        long base = segments.floorKey(target);
+        long[] position = scan(base, target);
+        return new Cursor(base, position[1], position[0]);
+    }
+
+    /**
+     * 启动时读取各消费组已提交的偏移量
+     */
+    public Map<String, Long> readGroupOffsets() throws IOException {
+        Path file = dir.resolve(GROUP_OFFSETS_FILE);
+        if (!Files.exists(file)) return Map.of();
+        Map<String, Long> offsets = new HashMap<>();
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        while (buffer.remaining() >= 4) {
+            int length = buffer.getInt();
+            if (length < 0 || buffer.remaining() < length + 8) break;
+            byte[] name = new byte[length];
+            buffer.get(name);
+            offsets.put(new String(name, StandardCharsets.UTF_8), buffer.getLong());
+        }
+        savedGroupOffsets = Map.copyOf(offsets);
+        return savedGroupOffsets;
+    }
+
+    /**
+     * 追加一条消息（调用方保证串行）
+     * @return 写入后的读游标（指向下一条消息）
+     */
+    public Cursor append(MqMessage.MessageItem messageItem) throws IOException {
+        if (activeSize >= segmentBytes) {
+            rollSegment();
+        }
+        byte[] bytes = messageItem.toByteArray();
+        ByteBuffer buffer = ByteBuffer.allocate(4 + bytes.length).putInt(bytes.length).put(bytes).flip();
+        while (buffer.hasRemaining()) {
+            activeChannel.write(buffer);
+        }
+        activeSize += 4 + bytes.length;
+        nextOffset = messageItem.getOffset() + 1;
+        end = new Cursor(activeBase, activeSize, nextOffset);
+        timeIndexes.get(activeBase).maybeAppend(messageItem.getCreateTime(), messageItem.getOffset());
+        return end;
+    }
+
+    /**
+     * 追加副本从leader复制来的原始记录（调用方保证串行，且记录偏移量从nextOffset开始连续）
+     * @param count 记录条数
+     */
+    public Cursor appendRecords(ByteBuffer records, int count) throws IOException {
+        if (activeSize >= segmentBytes) {
+            rollSegment();
+        }
+        int bytes = records.remaining();
+        indexRecords(records.duplicate());
+        while (records.hasRemaining()) {
+            activeChannel.write(records);
+        }
+        activeSize += bytes;
+        nextOffset += count;
+        end = new Cursor(activeBase, activeSize, nextOffset);
+        return end;
+    }
+
+    // 副本同样建时间索引：逐条解析记录取创建时间
+    private void indexRecords(ByteBuffer records) throws IOException {
+        TimeIndex index = timeIndexes.get(activeBase);
+        while (records.remaining() >= 4) {
+            int length = records.getInt();
+            byte[] body = new byte[length];
+            records.get(body);
+            MqMessage.MessageItem messageItem = MqMessage.MessageItem.parseFrom(body);
+            index.maybeAppend(messageItem.getCreateTime(), messageItem.getOffset());
+        }
+    }
+
+    /**
+     * 丢弃全部日志，从指定偏移量重新开始（副本落后于leader日志起点或与leader不一致时调用，调用方保证串行）
+     */
+    public Cursor resetTo(long offset) throws IOException {
+        activeChannel.close();
+        for (Map.Entry<Long, Path> segment : segments.entrySet()) {
+            deleteSegment(segment.getKey(), segment.getValue());
+        }
+        segments.clear();
+        openSegment(offset);
+        nextOffset = offset;
+        end = new Cursor(offset, 0, offset);
+        log.warn("队列日志已重置：{}，起始偏移量={}", dir, offset);
+        return end;
+    }
+
+    public long nextOffset() {
+        return nextOffset;
+    }
+
+    /**
+     * 日志中最早一条消息的偏移量
+     */
+    public long logStartOffset() {
+        Map.Entry<Long, Path> first = segments.firstEntry();
+        return first == null ? nextOffset : first.getKey();
+    }
+
+    /**
+     * 按时间戳定位偏移量：先按段的首个索引时间定位段，再在段内二分查找索引项，从索引项顺序读到第一条不早于该时间的消息
+     * @return 第一条创建时间不早于timestamp的消息偏移量，所有消息都早于该时间时返回日志末端
+     */
+    public long offsetForTimestamp(long timestamp) throws IOException {
+        TimeIndex index = null;
+        for (TimeIndex candidate : timeIndexes.values()) {
+            if (candidate.isEmpty()) continue;
+            if (index != null && candidate.firstTimestamp() > timestamp) break;
+            index = candidate;
+        }
+        if (index == null) return nextOffset;
+        int entry = index.floorEntry(timestamp);
+        long from = Math.max(entry < 0 ? index.firstOffset() : index.offsetAt(entry), logStartOffset());
+        // 索引项是采样的，最多再顺序读一个采样间隔内的消息
+        Cursor cursor = cursorAt(from);
+        while (cursor.offset() < nextOffset) {
+            List<StoredMessage> messages = read(cursor, 256);
+            if (messages.isEmpty()) break;
+            for (StoredMessage message : messages) {
+                if (message.messageItem().getCreateTime() >= timestamp) return message.messageItem().getOffset();
+            }
+            cursor = messages.get(messages.size() - 1).next();
+        }
+        return cursor.offset();
+    }
+
+    /**
+     * 定位副本拉取的文件区间（只读记录长度前缀，不解析消息；末尾记录可能不完整，由副本丢弃后重新拉取）
+     * @param segmentBase 副本记录的leader读位置（与position一起，-1或与偏移量不符时重新扫描定位）
+     * @param maxBytes 区间字节数上限（至少包含一条完整记录）
+     * @return fetchOffset不在日志范围内返回null，没有新数据返回长度为0的区间
+     */
+    public Region region(long fetchOffset, long segmentBase, long position, int maxBytes) throws IOException {
+        Cursor end = this.end;
+        if (fetchOffset < logStartOffset() || fetchOffset > end.offset()) return null;
+        if (fetchOffset == end.offset()) {
+            return new Region(null, end.segmentBase(), end.position(), 0);
+        }
+        long base = segmentBase;
+        if (position < 0 || base > fetchOffset || !segments.containsKey(base)) {
+            base = segments.floorKey(fetchOffset);
+            position = scan(base, fetchOffset)[1];
+        }
+        long limit = segmentLimit(base, end);
+        // 已封存段读完则转到下一段
+        if (position >= limit) {
+            if (base == end.segmentBase()) {
+                return new Region(null, base, position, 0);
+            }
+            base = segments.higherKey(base);
+            position = 0;
+            limit = segmentLimit(base, end);
+        }
+        Path file = segments.get(base);
+        long available = limit - position;
+        long length = Math.min(available, maxBytes);
+        if (length < available) {
+            length = Math.max(length, Math.min(available, 4L + readLength(file, position)));
+        }
+        return new Region(file, base, position, (int) length);
+    }
+
+    // 写入段读到末端游标为止，已封存段读到文件末尾
+    private long segmentLimit(long base, Cursor end) throws IOException {
+        return base == end.segmentBase() ? end.position() : Files.size(segments.get(base));
+    }
+
+    private static int readLength(Path file, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(4);
+            while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) ;
+            return buffer.hasRemaining() ? 0 : buffer.flip().getInt();
+        }
+    }
+
+    /**
+     * 从读游标开始顺序读取最多max条已写入的消息（不加锁，只读到当前日志末端）
+     */
+    public List<StoredMessage> read(Cursor cursor, int max) throws IOException {
+        List<StoredMessage> messages = new ArrayList<>(Math.min(max, 256));
+        long end = nextOffset;
+        long base = cursor.segmentBase();
+        long position = cursor.position();
+        long offset = cursor.offset();
+        while (messages.size() < max && offset < end) {
+            Path file = segments.get(base);
+            if (file == null) {
+                throw new IOException("队列日志段不存在：" + dir + "/" + base);
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+                buffer.flip();
+                while (messages.size() < max && offset < end) {
+                    if (buffer.remaining() < 4 && !fill(channel, position, buffer, 4)) break;
+                    int length = buffer.getInt(buffer.position());
+                    if (buffer.remaining() < 4 + length) {
+                        if (buffer.capacity() < 4 + length) {
+                            buffer = ByteBuffer.allocate(4 + length).flip();
+                        }
+                        if (!fill(channel, position, buffer, 4 + length)) break;
+                    }
+                    buffer.getInt();
+                    byte[] bytes = new byte[length];
+                    buffer.get(bytes);
+                    position += 4 + length;
+                    MqMessage.MessageItem messageItem = MqMessage.MessageItem.parseFrom(bytes);
+                    offset = messageItem.getOffset() + 1;
+                    messages.add(new StoredMessage(messageItem, new Cursor(base, position, offset)));
+                }
+            }
+            // 本段读完则转到下一段
+            if (messages.size() < max && offset < end) {
+                Long next = segments.higherKey(base);
+                if (next == null || next > offset) break;
+                base = next;
+                position = 0;
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * 刷盘并保存消费位点，删除消费位点之前的整段
+     */
+    public void flush(long consumedOffset) throws IOException {
+        flush(consumedOffset, consumedOffset);
+    }
+
+    /**
+     * 刷盘并保存消费位点，删除retainFrom之前的整段（retainFrom为消费位点和副本复制进度中较小者）
+     */
+    public void flush(long consumedOffset, long retainFrom) throws IOException {
+        flush(consumedOffset, null, retainFrom);
+    }
+
+    /**
+     * 刷盘并保存消费位点和消费组偏移量（为空表示不变），删除retainFrom之前的整段
+     */
+    public void flush(long consumedOffset, Map<String, Long> groupOffsets, long retainFrom) throws IOException {
+        FileChannel channel = activeChannel;
+        if (channel != null && channel.isOpen()) {
+            channel.force(false);
+        }
+        if (consumedOffset != checkpointOffset) {
+            writeCheckpoint(consumedOffset);
+            checkpointOffset = consumedOffset;
+        }
+        if (groupOffsets != null && !groupOffsets.equals(savedGroupOffsets)) {
+            writeGroupOffsets(groupOffsets);
+            savedGroupOffsets = Map.copyOf(groupOffsets);
+        }
+        Map.Entry<Long, Path> first;
+        while ((first = segments.firstEntry()) != null) {
+            Long next = segments.higherKey(first.getKey());
+            // 当前写入段和仍有未消费、未复制消息的段保留
+            if (next == null || next > retainFrom) break;
+            segments.remove(first.getKey());
+            deleteSegment(first.getKey(), first.getValue());
+            log.debug("删除已消费的队列日志段：{}", first.getValue());
+        }
+    }
+
+    public void close() {
+        try {
+            if (activeChannel != null) {
+                activeChannel.force(true);
+                activeChannel.close();
+            }
+        } catch (IOException e) {
+            log.error("关闭队列日志失败：{}", dir, e);
+        }
+        timeIndexes.values().forEach(TimeIndex::close);
+    }
+
+    // 从文件读取数据补足缓冲区，至少需要need字节，文件数据不足返回false
+    private boolean fill(FileChannel channel, long position, ByteBuffer buffer, int need) throws IOException {
+        buffer.compact();
+        long filePosition = position + buffer.position();
+        while (buffer.position() < need) {
+            int read = channel.read(buffer, filePosition);
+            if (read <= 0) break;
+            filePosition += read;
+        }
+        buffer.flip();
+        return buffer.remaining() >= need;
+    }
+
+    /**
+     * 顺序扫描段内记录，直到偏移量到达target或段末尾
+     * @return [下一条消息偏移量, 文件位置]
+     */
+    private long[] scan(long base, long target) throws IOException {
+        long offset = base;
+        long position = 0;
+        try (FileChannel channel = FileChannel.open(segments.get(base), StandardOpenOption.READ)) {
+            ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+            while (offset < target) {
+                lengthBuffer.clear();
+                if (channel.read(lengthBuffer, position) != 4) break;
+                int length = lengthBuffer.flip().getInt();
+                ByteBuffer body = ByteBuffer.allocate(length);
+                while (body.hasRemaining() && channel.read(body, position + 4 + body.position()) > 0) ;
+                if (body.hasRemaining()) break;
+                offset = MqMessage.MessageItem.parseFrom(body.array()).getOffset() + 1;
+                position += 4 + length;
+            }
+        }
+        return new long[]{offset, position};
+    }
+
+    private void rollSegment() throws IOException {
+        activeChannel.force(false);
+        activeChannel.close();
+        // 封存段的索引只保留内存中的索引项
+        timeIndexes.get(activeBase).close();
+        openSegment(nextOffset);
+    }
+
+    private void openSegment(long base) throws IOException {
+        Path file = segmentDir().resolve(String.format("%020d", base) + SEGMENT_SUFFIX);
+        activeChannel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        activeBase = base;
+        activeSize = activeChannel.size();
+        segments.put(base, file);
+        timeIndexes.put(base, new TimeIndex(timeIndexFile(file), timeIndexIntervalMs));
+    }
+
+    // 段的时间索引与段文件放在同一目录
+    private static Path timeIndexFile(Path segmentFile) {
+        String name = segmentFile.getFileName().toString();
+        return segmentFile.resolveSibling(name.substring(0, name.length() - SEGMENT_SUFFIX.length()) + TIME_INDEX_SUFFIX);
+    }
+
+    // 启动时打开段的时间索引：没有索引文件的段（索引写入前崩溃）扫描段内消息重建
+    private TimeIndex openTimeIndex(long base, boolean active) throws IOException {
+        Path file = timeIndexFile(segments.get(base));
+        if (Files.exists(file) && !active) {
+            return TimeIndex.loadSealed(file);
+        }
+        boolean rebuild = !Files.exists(file);
+        TimeIndex index = new TimeIndex(file, timeIndexIntervalMs);
+        if (rebuild) {
+            Cursor cursor = new Cursor(base, 0, base);
+            List<StoredMessage> messages;
+            while (!(messages = read(cursor, 256)).isEmpty()) {
+                for (StoredMessage message : messages) {
+                    if (message.next().segmentBase() != base) break;
+                    index.maybeAppend(message.messageItem().getCreateTime(), message.messageItem().getOffset());
+                }
+                cursor = messages.get(messages.size() - 1).next();
+                if (cursor.segmentBase() != base) break;
+            }
+            log.info("重建队列日志段的时间索引：{}", file);
+        }
+        if (!active) {
+            index.close();
+        }
+        return index;
+    }
+
+    private void deleteSegment(long base, Path file) throws IOException {
+        TimeIndex index = timeIndexes.remove(base);
+        if (index != null) {
+            index.close();
+        }
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(timeIndexFile(file));
+    }
+
+    private long readCheckpoint() throws IOException {
+        Path file = dir.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(file)) return 0;
+        byte[] bytes = Files.readAllBytes(file);
+        return bytes.length == 8 ? ByteBuffer.wrap(bytes).getLong() : 0;
+    }
+
+    // 先写临时文件再原子替换，避免宕机留下半个位点
+    private void writeCheckpoint(long offset) throws IOException {
+        Path temp = dir.resolve(CHECKPOINT_FILE + ".tmp");
+        Files.write(temp, ByteBuffer.allocate(8).putLong(offset).array());
+        Files.move(temp, dir.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // 格式：[组名长度(4)][组名UTF-8][偏移量(8)]...，同样先写临时文件再原子替换
+    private void writeGroupOffsets(Map<String, Long> groupOffsets) throws IOException {
+        int size = 0;
+        for (String group : groupOffsets.keySet()) {
+            size += 12 + group.getBytes(StandardCharsets.UTF_8).length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        groupOffsets.forEach((group, offset) -> {
+            byte[] name = group.getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(name.length).put(name).putLong(offset);
+        });
+        Path temp = dir.resolve(GROUP_OFFSETS_FILE + ".tmp");
+        Files.write(temp, buffer.array());
+        Files.move(temp, dir.resolve(GROUP_OFFSETS_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // 新段所在目录：分区当前所在磁盘，磁盘剩余空间不足时先迁移
+    private Path segmentDir() throws IOException {
+        if (stripes == null) return dir;
+        Path segmentDir = stripes.relocateIfFull(queueName).queueDir(queueName);
+        Files.createDirectories(segmentDir);
+        return segmentDir;
+    }
+
+    // 分区迁移过磁盘时段文件分散在多块盘上，恢复时扫描全部磁盘
+    private List<Path> listSegmentFiles() throws IOException {
+        List<Path> dirs = new ArrayList<>();
+        if (stripes == null) {
+            dirs.add(dir);
+        } else {
+            stripes.getDisks().forEach(disk -> dirs.add(disk.queueDir(queueName)));
+        }
+        List<Path> files = new ArrayList<>();
+        for (Path segmentDir : dirs) {
+            if (!Files.isDirectory(segmentDir)) continue;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(segmentDir, "*" + SEGMENT_SUFFIX)) {
+                stream.forEach(files::add);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * 读游标：段起始偏移量 + 段内文件位置 + 该位置上消息的偏移量
+     */
+    public record Cursor(long segmentBase, long position, long offset) {
+    }
+
+    /**
+     * 副本拉取的文件区间（file为null表示没有新数据）
+     */
+    public record Region(Path file, long segmentBase, long position, int length) {
+    }
+
+    /**
+     * 从磁盘读出的消息及其之后的读游标
+     */
+    public record StoredMessage(MqMessage.MessageItem messageItem, Cursor next) {
+    }
+}
@@ -0,0 +1,231 @@
+package com.yzx.crazycodingbytemq.store;
+
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * @className: ScheduledMessageStore
+ * @author: yzx
+ * @date: 2025/11/18 11:02
+ * @Version: 1.0
+ * @description: 定时消息持久化存储（按投递时间分桶，每个时间桶一个文件，远期消息只在磁盘上；
+ * 单写线程攒批写入，一批内每个涉及的桶文件只刷一次盘，调用方不阻塞等待刷盘）
+ */
+@Slf4j
+public final class ScheduledMessageStore {
+    // 桶文件命名：桶起始时间戳.sched
+    private static final String BUCKET_SUFFIX = ".sched";
+    // 单批最多合并的消息数
+    private static final int MAX_BATCH = 512;
+    private final Path baseDir;
+    // 时间桶跨度（毫秒）
+    private final long bucketMs;
+    // 已打开的桶文件（追加写，只由写线程写入）
+    private final Map<Long, FileChannel> bucketChannels = new ConcurrentHashMap<>();
+    private final BlockingQueue<PendingAppend> pendingAppends = new LinkedBlockingQueue<>();
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    public ScheduledMessageStore(String baseDir, long bucketMs) {
+        this.baseDir = Paths.get(baseDir);
+        this.bucketMs = bucketMs;
+        try {
+            Files.createDirectories(this.baseDir);
+        } catch (IOException e) {
+            throw new RuntimeException("定时消息存储目录初始化失败", e);
+        }
+        this.writerThread = new Thread(this::writeLoop, "schedule-store-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    // 计算投递时间所属的时间桶
+    public long bucketOf(long deliverAt) {
+        return deliverAt - Math.floorMod(deliverAt, bucketMs);
+    }
+
+    /**
+     * 追加定时消息到所属时间桶（格式：长度(4) + MessageItem字节），批量落盘后完成
+     */
+    public CompletableFuture<Void> append(MqMessage.MessageItem messageItem) {
+        return submit(new PendingAppend(messageItem, new CompletableFuture<>()));
+    }
+
+    /**
+     * 此前提交的追加全部落盘（或失败）后完成，加载桶文件前调用，避免漏读已提交未写入的消息
+     */
+    public CompletableFuture<Void> sync() {
+        return submit(new PendingAppend(null, new CompletableFuture<>()));
+    }
+
+    private CompletableFuture<Void> submit(PendingAppend pending) {
+        if (!running) {
+            pending.future.completeExceptionally(new IllegalStateException("定时消息存储已关闭"));
+            return pending.future;
+        }
+        pendingAppends.add(pending);
+        return pending.future;
+    }
+
+    /**
+     * 读取时间桶内全部消息（加载进内存时间轮）
+     */
+    public List<MqMessage.MessageItem> loadBucket(long bucket) {
+        List<MqMessage.MessageItem> messageItems = new ArrayList<>();
+        Path file = bucketFile(bucket);
+        if (!Files.exists(file)) return messageItems;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+            while (channel.read(lengthBuffer) == 4) {
+                lengthBuffer.flip();
+                int length = lengthBuffer.getInt();
+                lengthBuffer.clear();
+                ByteBuffer body = ByteBuffer.allocate(length);
+                if (channel.read(body) != length) {
+                    log.warn("定时消息桶文件尾部不完整，忽略：{}", file);
+                    break;
+                }
+                messageItems.add(MqMessage.MessageItem.parseFrom(body.array()));
+            }
+        } catch (IOException e) {
+            log.error("加载定时消息桶失败：{}", file, e);
+        }
+        return messageItems;
+    }
+
+    /**
+     * 时间桶内消息全部投递后删除桶文件
+     */
+    public void deleteBucket(long bucket) {
+        FileChannel channel = bucketChannels.remove(bucket);
+        try {
+            if (channel != null) channel.close();
+            Files.deleteIfExists(bucketFile(bucket));
+        } catch (IOException e) {
+            log.error("删除定时消息桶失败：bucket={}", bucket, e);
+        }
+    }
+
+    /**
+     * 磁盘上所有时间桶（启动恢复时使用，按时间升序）
+     */
+    public TreeSet<Long> listBuckets() {
+        TreeSet<Long> buckets = new TreeSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(baseDir, "*" + BUCKET_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                buckets.add(Long.parseLong(name.substring(0, name.length() - BUCKET_SUFFIX.length())));
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.error("扫描定时消息桶失败：{}", baseDir, e);
+        }
+        return buckets;
+    }
+
+    public void close() {
+        running = false;
+        writerThread.interrupt();
+        try {
+            writerThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        bucketChannels.values().forEach(channel -> {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.error("关闭定时消息桶失败", e);
+            }
+        });
+        bucketChannels.clear();
+    }
+
+    // 写线程：取出一批消息，按桶聚集写，每个桶一次刷盘
+    private void writeLoop() {
+        List<PendingAppend> batch = new ArrayList<>(MAX_BATCH);
+        while (running || !pendingAppends.isEmpty()) {
+            try {
+                batch.add(pendingAppends.take());
+                pendingAppends.drainTo(batch, MAX_BATCH - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    pendingAppends.drainTo(batch);
+                    if (!batch.isEmpty()) writeBatch(batch);
+                    break;
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<PendingAppend> batch) {
+        Map<Long, List<PendingAppend>> perBucket = new LinkedHashMap<>();
+        List<PendingAppend> barriers = new ArrayList<>();
+        for (PendingAppend pending : batch) {
+            if (pending.messageItem == null) {
+                barriers.add(pending);
+            } else {
+                perBucket.computeIfAbsent(bucketOf(pending.messageItem.getDeliverAt()), k -> new ArrayList<>()).add(pending);
+            }
+        }
+        perBucket.forEach(this::writeBucket);
+        barriers.forEach(pending -> pending.future.complete(null));
+    }
+
+    private void writeBucket(long bucket, List<PendingAppend> appends) {
+        try {
+            FileChannel channel = bucketChannels.computeIfAbsent(bucket, this::openBucket);
+            ByteBuffer[] buffers = new ByteBuffer[appends.size()];
+            long remaining = 0;
+            for (int i = 0; i < appends.size(); i++) {
+                byte[] bytes = appends.get(i).messageItem.toByteArray();
+                buffers[i] = ByteBuffer.allocate(4 + bytes.length).putInt(bytes.length).put(bytes).flip();
+                remaining += buffers[i].remaining();
+            }
+            while (remaining > 0) {
+                remaining -= channel.write(buffers);
+            }
+            channel.force(false);
+            appends.forEach(pending -> pending.future.complete(null));
+        } catch (IOException | RuntimeException e) {
+            log.error("写入定时消息桶失败：bucket={}, 批量{}条", bucket, appends.size(), e);
+            appends.forEach(pending -> pending.future.completeExceptionally(e));
+        }
+    }
+
+    private FileChannel openBucket(long bucket) {
+        try {
+            return FileChannel.open(bucketFile(bucket), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new RuntimeException("打开定时消息桶失败：" + bucket, e);
+        }
+    }
+
+    private Path bucketFile(long bucket) {
+        return baseDir.resolve(bucket + BUCKET_SUFFIX);
+    }
+
+    // messageItem为空表示同步屏障
+    private record PendingAppend(MqMessage.MessageItem messageItem, CompletableFuture<Void> future) {
+    }
+}
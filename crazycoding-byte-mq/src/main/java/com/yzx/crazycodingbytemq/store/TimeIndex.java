@@ -0,0 +1,180 @@
+package com.yzx.crazycodingbytemq.store;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * @className: TimeIndex
+ * @author: yzx
+ * @date: 2025/11/17 10:12
+ * @Version: 1.0
+ * @description: 单个日志段的时间索引（时间戳->偏移量，追加时按时间间隔采样；已封存段的索引启动时只读加载）
+ */
+@Slf4j
+public class TimeIndex {
+    // 索引项格式：时间戳(8) + 偏移量(8)
+    public static final int ENTRY_SIZE = 8 + 8;
+    private static final int INITIAL_CAPACITY = 256;
+
+    @Getter
+    private final Path indexFile;
+    // 当前段可写；已封存段为null
+    private final FileChannel indexChannel;
+    // 采样间隔（毫秒），两个索引项之间至少间隔该时长
+    private final long intervalMs;
+    // 内存中的索引项（按时间戳递增），用于二分查找
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private long[] offsets = new long[INITIAL_CAPACITY];
+    private int size;
+    // 最近一次追加的时间戳（保证索引单调递增）
+    private long lastTimestamp = Long.MIN_VALUE;
+    private final ByteBuffer entryBuffer = ByteBuffer.allocate(ENTRY_SIZE);
+
+    /**
+     * 打开当前段的索引（可追加），文件已存在时先加载已有索引项
+     */
+    public TimeIndex(Path indexFile, long intervalMs) throws IOException {
+        this.indexFile = indexFile;
+        this.intervalMs = intervalMs;
+        this.indexChannel = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        load(indexChannel);
+    }
+
+    private TimeIndex(Path indexFile) throws IOException {
+        this.indexFile = indexFile;
+        this.intervalMs = 0;
+        this.indexChannel = null;
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            load(channel);
+        }
+    }
+
+    /**
+     * 启动恢复时加载已封存段的索引（只读，不保留文件句柄）
+     */
+    public static TimeIndex loadSealed(Path indexFile) throws IOException {
+        return new TimeIndex(indexFile);
+    }
+
+    // 读取全部完整索引项，崩溃留下的不完整尾部截掉
+    private void load(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        long validSize = fileSize - fileSize % ENTRY_SIZE;
+        if (validSize < fileSize) {
+            channel.truncate(validSize);
+            log.warn("时间索引末尾索引项不完整，已截断：{}，{} -> {}字节", indexFile, fileSize, validSize);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(validSize, ENTRY_SIZE * 4096L));
+        long position = 0;
+        while (position < validSize) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), validSize - position));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) break;
+            }
+            buffer.flip();
+            while (buffer.remaining() >= ENTRY_SIZE) {
+                ensureCapacity();
+                timestamps[size] = buffer.getLong();
+                offsets[size] = buffer.getLong();
+                lastTimestamp = Math.max(lastTimestamp, timestamps[size]);
+                size++;
+            }
+            position += buffer.position();
+            if (buffer.position() == 0) break;
+        }
+        channel.position(validSize);
+    }
+
+    /**
+     * 追加消息时调用：距离上一个索引项超过采样间隔才真正写入索引
+     * @return 是否写入了新的索引项
+     */
+    public synchronized boolean maybeAppend(long timestamp, long offset) throws IOException {
+        if (indexChannel == null) {
+            throw new IllegalStateException("已封存的时间索引不可追加：" + indexFile);
+        }
+        // 时间回拨时沿用上一次的时间戳，保证二分查找的前提（单调递增）
+        long ts = Math.max(timestamp, lastTimestamp);
+        if (size > 0 && ts - timestamps[size - 1] < intervalMs) {
+            lastTimestamp = ts;
+            return false;
+        }
+        ensureCapacity();
+        timestamps[size] = ts;
+        offsets[size] = offset;
+        size++;
+        lastTimestamp = ts;
+        entryBuffer.clear();
+        entryBuffer.putLong(ts).putLong(offset).flip();
+        indexChannel.write(entryBuffer);
+        return true;
+    }
+
+    /**
+     * 二分查找：返回时间戳<=timestamp的最后一个索引项下标，不存在返回-1
+     */
+    public synchronized int floorEntry(long timestamp) {
+        int low = 0;
+        int high = size - 1;
+        int result = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] <= timestamp) {
+                result = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return result;
+    }
+
+    public synchronized long offsetAt(int entry) {
+        return offsets[entry];
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    public synchronized long firstTimestamp() {
+        return size == 0 ? Long.MAX_VALUE : timestamps[0];
+    }
+
+    public synchronized long firstOffset() {
+        return size == 0 ? -1 : offsets[0];
+    }
+
+    /**
+     * 段轮转或关闭时刷盘
+     */
+    public synchronized void flush() throws IOException {
+        if (indexChannel == null || !indexChannel.isOpen()) return;
+        indexChannel.force(true);
+    }
+
+    public synchronized void close() {
+        if (indexChannel == null || !indexChannel.isOpen()) return;
+        try {
+            indexChannel.force(true);
+            indexChannel.close();
+        } catch (IOException e) {
+            log.error("关闭时间索引失败：{}", indexFile, e);
+        }
+    }
+
+    private void ensureCapacity() {
+        if (size < timestamps.length) return;
+        int newCapacity = timestamps.length << 1;
+        timestamps = Arrays.copyOf(timestamps, newCapacity);
+        offsets = Arrays.copyOf(offsets, newCapacity);
+    }
+}
@@ -0,0 +1,265 @@
+package com.yzx.crazycodingbytemq.store;
+
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @className: TransactionLog
+ * @author: yzx
+ * @date: 2025/11/22 15:00
+ * @Version: 1.0
+ * @description: 事务消息日志（半消息和提交/回滚标记只追加不改写；单写线程攒批写入，一批只刷一次盘；
+ * 从最早的段开始，段内半消息全部结束的连续前缀整段删除，结束标记不会早于对应的半消息被删除）
+ */
+@Slf4j
+public class TransactionLog {
+    // 段文件命名：txlog-序号.log
+    private static final String SEGMENT_PREFIX = "txlog-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    // 单批最多合并的记录数
+    private static final int MAX_BATCH = 512;
+    private final Path baseDir;
+    private final long segmentBytes;
+    private final BlockingQueue<PendingRecord> pendingRecords = new LinkedBlockingQueue<>();
+    // 未结束的半消息所在段：事务ID->段序号
+    private final Map<String, Long> preparedSegments = new ConcurrentHashMap<>();
+    // 段序号->段内未结束的半消息数（按段序号排序，删除只从最早的段开始）
+    private final ConcurrentNavigableMap<Long, AtomicInteger> outstandingPerSegment = new ConcurrentSkipListMap<>();
+    private final Thread writerThread;
+    private volatile boolean running = true;
+    // 以下字段仅写线程访问（recover在写线程启动前执行）
+    private FileChannel segmentChannel;
+    private long segmentSeq;
+
+    public TransactionLog(String baseDir, long segmentBytes) {
+        this.baseDir = Paths.get(baseDir);
+        this.segmentBytes = segmentBytes;
+        try {
+            Files.createDirectories(this.baseDir);
+        } catch (IOException e) {
+            throw new RuntimeException("事务日志目录初始化失败", e);
+        }
+        this.writerThread = new Thread(this::writeLoop, "tx-log-writer");
+        this.writerThread.setDaemon(true);
+    }
+
+    /**
+     * 启动恢复：重放全部段，返回未结束的半消息（按写入顺序），之后启动写线程
+     */
+    public List<MqMessage.TransactionRecord> recover() {
+        Map<String, MqMessage.TransactionRecord> prepared = new LinkedHashMap<>();
+        TreeSet<Long> segments = listSegments();
+        for (Long seq : segments) {
+            outstandingPerSegment.put(seq, new AtomicInteger(0));
+            for (MqMessage.TransactionRecord record : readSegment(seq)) {
+                if (record.getType() == MqMessage.TransactionRecordType.TX_PREPARE) {
+                    prepared.put(record.getTransactionId(), record);
+                    preparedSegments.put(record.getTransactionId(), seq);
+                    outstandingPerSegment.get(seq).incrementAndGet();
+                } else if (prepared.remove(record.getTransactionId()) != null) {
+                    release(record.getTransactionId());
+                }
+            }
+        }
+        segmentSeq = segments.isEmpty() ? 0 : segments.last();
+        try {
+            openSegment(segmentSeq);
+        } catch (IOException e) {
+            throw new RuntimeException("打开事务日志段失败", e);
+        }
+        // 已无未结束半消息的旧段前缀直接删除
+        deleteResolvedPrefix();
+        writerThread.start();
+        log.info("事务日志恢复完成：未结束半消息{}条，当前段{}", prepared.size(), segmentSeq);
+        return new ArrayList<>(prepared.values());
+    }
+
+    /**
+     * 追加记录（批量落盘后完成）
+     */
+    public CompletableFuture<Void> append(MqMessage.TransactionRecord record) {
+        PendingRecord pending = new PendingRecord(record, new CompletableFuture<>());
+        if (!running) {
+            pending.future.completeExceptionally(new IllegalStateException("事务日志已关闭"));
+            return pending.future;
+        }
+        pendingRecords.add(pending);
+        return pending.future;
+    }
+
+    public void close() {
+        running = false;
+        writerThread.interrupt();
+        try {
+            writerThread.join(5000);
+            if (segmentChannel != null) {
+                segmentChannel.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error("关闭事务日志失败", e);
+        }
+    }
+
+    // 写线程：取出一批记录，一次聚集写+一次刷盘
+    private void writeLoop() {
+        List<PendingRecord> batch = new ArrayList<>(MAX_BATCH);
+        while (running || !pendingRecords.isEmpty()) {
+            try {
+                batch.add(pendingRecords.take());
+                pendingRecords.drainTo(batch, MAX_BATCH - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    pendingRecords.drainTo(batch);
+                    if (!batch.isEmpty()) writeBatch(batch);
+                    break;
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<PendingRecord> batch) {
+        try {
+            if (segmentChannel.size() >= segmentBytes) {
+                rollSegment();
+            }
+            ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+            for (int i = 0; i < batch.size(); i++) {
+                byte[] bytes = batch.get(i).record.toByteArray();
+                buffers[i] = ByteBuffer.allocate(4 + bytes.length).putInt(bytes.length).put(bytes).flip();
+            }
+            long remaining = 0;
+            for (ByteBuffer buffer : buffers) remaining += buffer.remaining();
+            while (remaining > 0) {
+                remaining -= segmentChannel.write(buffers);
+            }
+            segmentChannel.force(false);
+            for (PendingRecord pending : batch) {
+                track(pending.record);
+                pending.future.complete(null);
+            }
+        } catch (IOException e) {
+            log.error("写入事务日志失败：批量{}条", batch.size(), e);
+            batch.forEach(pending -> pending.future.completeExceptionally(e));
+        }
+    }
+
+    // 记录半消息所在段；结束标记落盘后释放，最早的段全部结束则删除
+    private void track(MqMessage.TransactionRecord record) {
+        if (record.getType() == MqMessage.TransactionRecordType.TX_PREPARE) {
+            preparedSegments.put(record.getTransactionId(), segmentSeq);
+            outstandingPerSegment.computeIfAbsent(segmentSeq, k -> new AtomicInteger(0)).incrementAndGet();
+        } else if (release(record.getTransactionId()) != null) {
+            deleteResolvedPrefix();
+        }
+    }
+
+    private Long release(String transactionId) {
+        Long seq = preparedSegments.remove(transactionId);
+        if (seq != null) {
+            outstandingPerSegment.get(seq).decrementAndGet();
+        }
+        return seq;
+    }
+
+    /**
+     * 从最早的段开始删除，遇到仍有未结束半消息的段或当前写入段即停止：
+     * 后面的段可能含有前面段里半消息的结束标记，只删后面的段会让重启恢复把已结束的事务当作未结束
+     */
+    private void deleteResolvedPrefix() {
+        Map.Entry<Long, AtomicInteger> first;
+        while ((first = outstandingPerSegment.firstEntry()) != null) {
+            long seq = first.getKey();
+            if (seq == segmentSeq || first.getValue().get() > 0) return;
+            try {
+                Files.deleteIfExists(segmentFile(seq));
+                log.debug("删除已结束的事务日志段：{}", seq);
+            } catch (IOException e) {
+                log.warn("删除事务日志段失败：{}", seq, e);
+                return;
+            }
+            outstandingPerSegment.remove(seq);
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        segmentChannel.close();
+        openSegment(segmentSeq + 1);
+        deleteResolvedPrefix();
+    }
+
+    private void openSegment(long seq) throws IOException {
+        segmentSeq = seq;
+        segmentChannel = FileChannel.open(segmentFile(seq),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        outstandingPerSegment.computeIfAbsent(seq, k -> new AtomicInteger(0));
+    }
+
+    private List<MqMessage.TransactionRecord> readSegment(long seq) {
+        List<MqMessage.TransactionRecord> records = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(segmentFile(seq), StandardOpenOption.READ)) {
+            ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+            while (channel.read(lengthBuffer) == 4) {
+                lengthBuffer.flip();
+                int length = lengthBuffer.getInt();
+                lengthBuffer.clear();
+                ByteBuffer body = ByteBuffer.allocate(length);
+                while (body.hasRemaining() && channel.read(body) > 0) ;
+                if (body.hasRemaining()) {
+                    // 末尾不完整记录（写入时宕机），之后的内容丢弃
+                    log.warn("事务日志段{}末尾记录不完整，已忽略", seq);
+                    break;
+                }
+                records.add(MqMessage.TransactionRecord.parseFrom(body.array()));
+            }
+        } catch (IOException e) {
+            log.error("读取事务日志段失败：{}", seq, e);
+        }
+        return records;
+    }
+
+    private TreeSet<Long> listSegments() {
+        TreeSet<Long> segments = new TreeSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(baseDir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.error("列出事务日志段失败", e);
+        }
+        return segments;
+    }
+
+    private Path segmentFile(long seq) {
+        return baseDir.resolve(SEGMENT_PREFIX + String.format("%020d", seq) + SEGMENT_SUFFIX);
+    }
+
+    private record PendingRecord(MqMessage.TransactionRecord record, CompletableFuture<Void> future) {
+    }
+}
@@ -0,0 +1,105 @@
+package com.yzx.crazycodingbytemq.timer;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * @className: HierarchicalTimer
+ * @author: yzx
+ * @date: 2025/11/18 10:35
+ * @Version: 1.0
+ * @description: 基于分层时间轮的定时器（插入/取消O(1)，DelayQueue只按槽位排序，不随任务数增长）
+ */
+@Slf4j
+public final class HierarchicalTimer {
+    private final String name;
+    private final ExecutorService taskExecutor;
+    private final DelayQueue<TimerTaskList> delayQueue = new DelayQueue<>();
+    private final AtomicInteger taskCounter = new AtomicInteger(0);
+    private final TimingWheel timingWheel;
+    // 推进时钟时持写锁，插入任务持读锁（插入可并发）
+    private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+    private final Thread reaper;
+    private volatile boolean running = true;
+
+    public HierarchicalTimer(String name, long tickMs, int wheelSize) {
+        this.name = name;
+        this.taskExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, name + "-executor"));
+        this.timingWheel = new TimingWheel(tickMs, wheelSize, System.currentTimeMillis(), taskCounter, delayQueue);
+        this.reaper = new Thread(this::reap, name + "-reaper");
+        this.reaper.setDaemon(true);
+        this.reaper.start();
+    }
+
+    /**
+     * 添加定时任务（到期时间已过的任务立即执行）
+     */
+    public void add(TimerTask timerTask) {
+        readWriteLock.readLock().lock();
+        try {
+            addTimerTaskEntry(new TimerTaskEntry(timerTask, timerTask.getExpirationMs()));
+        } finally {
+            readWriteLock.readLock().unlock();
+        }
+    }
+
+    private void addTimerTaskEntry(TimerTaskEntry entry) {
+        if (!timingWheel.add(entry)) {
+            // 已到期且未取消，立即执行
+            if (!entry.cancelled()) {
+                taskExecutor.submit(entry.timerTask);
+            }
+        }
+    }
+
+    /**
+     * 推进时钟，最多等待timeoutMs
+     * @return 是否有槽位到期
+     */
+    public boolean advanceClock(long timeoutMs) throws InterruptedException {
+        TimerTaskList bucket = delayQueue.poll(timeoutMs, TimeUnit.MILLISECONDS);
+        if (bucket == null) return false;
+        readWriteLock.writeLock().lock();
+        try {
+            while (bucket != null) {
+                timingWheel.advanceClock(bucket.getExpiration());
+                // 到期槽位的任务重新插入：低层能容纳则降级，否则执行
+                bucket.flush(this::addTimerTaskEntry);
+                bucket = delayQueue.poll();
+            }
+        } finally {
+            readWriteLock.writeLock().unlock();
+        }
+        return true;
+    }
+
+    public int size() {
+        return taskCounter.get();
+    }
+
+    public void shutdown() {
+        running = false;
+        reaper.interrupt();
+        taskExecutor.shutdown();
+        log.info("定时器已关闭：{}", name);
+    }
+
+    private void reap() {
+        while (running) {
+            try {
+                advanceClock(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("定时器推进异常：{}", name, e);
+            }
+        }
+    }
+}
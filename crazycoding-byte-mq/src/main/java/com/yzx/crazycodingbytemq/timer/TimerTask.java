@@ -0,0 +1,45 @@
+package com.yzx.crazycodingbytemq.timer;
+
+/**
+ * @className: TimerTask
+ * @author: yzx
+ * @date: 2025/11/18 10:05
+ * @Version: 1.0
+ * @description: 时间轮定时任务（到期时间为绝对时间戳，支持O(1)取消）
+ */
+public abstract class TimerTask implements Runnable {
+    // 到期时间（毫秒时间戳）
+    private final long expirationMs;
+    // 当前所在的时间轮槽位条目（取消时从槽位链表中摘除）
+    private TimerTaskEntry timerTaskEntry;
+
+    protected TimerTask(long expirationMs) {
+        this.expirationMs = expirationMs;
+    }
+
+    public long getExpirationMs() {
+        return expirationMs;
+    }
+
+    /**
+     * 取消任务：直接从所在槽位的双向链表摘除
+     */
+    public synchronized void cancel() {
+        if (timerTaskEntry != null) {
+            timerTaskEntry.remove();
+        }
+        timerTaskEntry = null;
+    }
+
+    synchronized void setTimerTaskEntry(TimerTaskEntry entry) {
+        // 任务被重新插入（降级到低层时间轮）时，先从旧条目摘除
+        if (timerTaskEntry != null && timerTaskEntry != entry) {
+            timerTaskEntry.remove();
+        }
+        timerTaskEntry = entry;
+    }
+
+    synchronized TimerTaskEntry getTimerTaskEntry() {
+        return timerTaskEntry;
+    }
+}
@@ -0,0 +1,37 @@
+package com.yzx.crazycodingbytemq.timer;
+
+/**
+ * @className: TimerTaskEntry
+ * @author: yzx
+ * @date: 2025/11/18 10:08
+ * @Version: 1.0
+ * @description: 时间轮槽位链表节点
+ */
+class TimerTaskEntry {
+    final TimerTask timerTask;
+    final long expirationMs;
+    volatile TimerTaskList list;
+    TimerTaskEntry next;
+    TimerTaskEntry prev;
+
+    TimerTaskEntry(TimerTask timerTask, long expirationMs) {
+        this.timerTask = timerTask;
+        this.expirationMs = expirationMs;
+        if (timerTask != null) {
+            timerTask.setTimerTaskEntry(this);
+        }
+    }
+
+    boolean cancelled() {
+        return timerTask.getTimerTaskEntry() != this;
+    }
+
+    void remove() {
+        TimerTaskList currentList = list;
+        // 并发情况下list可能被其他线程修改，循环直到摘除成功
+        while (currentList != null) {
+            currentList.remove(this);
+            currentList = list;
+        }
+    }
+}
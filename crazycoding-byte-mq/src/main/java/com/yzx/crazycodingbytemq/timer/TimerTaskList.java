@@ -0,0 +1,97 @@
+package com.yzx.crazycodingbytemq.timer;
+
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * @className: TimerTaskList
+ * @author: yzx
+ * @date: 2025/11/18 10:12
+ * @Version: 1.0
+ * @description: 时间轮槽位（带哨兵的双向循环链表，插入/删除均为O(1)）
+ */
+class TimerTaskList implements Delayed {
+    private final AtomicInteger taskCounter;
+    // 哨兵节点
+    private final TimerTaskEntry root = new TimerTaskEntry(null, -1);
+    // 槽位到期时间（槽位被复用时会被重置）
+    private final AtomicLong expiration = new AtomicLong(-1L);
+
+    TimerTaskList(AtomicInteger taskCounter) {
+        this.taskCounter = taskCounter;
+        root.next = root;
+        root.prev = root;
+    }
+
+    /**
+     * 设置槽位到期时间，返回是否发生变化（变化说明槽位被复用，需要重新放入DelayQueue）
+     */
+    boolean setExpiration(long expirationMs) {
+        return expiration.getAndSet(expirationMs) != expirationMs;
+    }
+
+    long getExpiration() {
+        return expiration.get();
+    }
+
+    void add(TimerTaskEntry entry) {
+        boolean done = false;
+        while (!done) {
+            // 先从旧链表摘除（任务可能正在被重新插入）
+            entry.remove();
+            synchronized (this) {
+                synchronized (entry) {
+                    if (entry.list == null) {
+                        TimerTaskEntry tail = root.prev;
+                        entry.next = root;
+                        entry.prev = tail;
+                        entry.list = this;
+                        tail.next = entry;
+                        root.prev = entry;
+                        taskCounter.incrementAndGet();
+                        done = true;
+                    }
+                }
+            }
+        }
+    }
+
+    synchronized void remove(TimerTaskEntry entry) {
+        synchronized (entry) {
+            if (entry.list == this) {
+                entry.next.prev = entry.prev;
+                entry.prev.next = entry.next;
+                entry.next = null;
+                entry.prev = null;
+                entry.list = null;
+                taskCounter.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 取出所有条目并重置槽位（到期任务执行或降级到低层时间轮）
+     */
+    synchronized void flush(Consumer<TimerTaskEntry> consumer) {
+        TimerTaskEntry head = root.next;
+        while (head != root) {
+            remove(head);
+            consumer.accept(head);
+            head = root.next;
+        }
+        expiration.set(-1L);
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(Math.max(getExpiration() - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+        return Long.compare(getExpiration(), ((TimerTaskList) other).getExpiration());
+    }
+}
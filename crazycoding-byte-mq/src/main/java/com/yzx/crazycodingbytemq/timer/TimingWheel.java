@@ -0,0 +1,82 @@
+package com.yzx.crazycodingbytemq.timer;
+
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @className: TimingWheel
+ * @author: yzx
+ * @date: 2025/11/18 10:20
+ * @Version: 1.0
+ * @description: 分层时间轮（超出当前层范围的任务放入上层溢出轮，到期前逐层降级）
+ */
+class TimingWheel {
+    private final long tickMs;
+    private final int wheelSize;
+    private final long interval;
+    private final AtomicInteger taskCounter;
+    private final DelayQueue<TimerTaskList> queue;
+    private final TimerTaskList[] buckets;
+    // 当前时间（向下取整到tickMs）
+    private long currentTime;
+    // 上层溢出时间轮（懒创建）
+    private volatile TimingWheel overflowWheel;
+
+    TimingWheel(long tickMs, int wheelSize, long startMs, AtomicInteger taskCounter, DelayQueue<TimerTaskList> queue) {
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.interval = tickMs * wheelSize;
+        this.taskCounter = taskCounter;
+        this.queue = queue;
+        this.buckets = new TimerTaskList[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new TimerTaskList(taskCounter);
+        }
+        this.currentTime = startMs - (startMs % tickMs);
+    }
+
+    private void addOverflowWheel() {
+        synchronized (this) {
+            if (overflowWheel == null) {
+                overflowWheel = new TimingWheel(interval, wheelSize, currentTime, taskCounter, queue);
+            }
+        }
+    }
+
+    /**
+     * 插入任务，已到期（或已取消）返回false，由调用方立即执行（或丢弃）
+     */
+    boolean add(TimerTaskEntry entry) {
+        long expiration = entry.expirationMs;
+        if (entry.cancelled()) {
+            return false;
+        } else if (expiration < currentTime + tickMs) {
+            // 已到期
+            return false;
+        } else if (expiration < currentTime + interval) {
+            // 落在当前层范围内，放入对应槽位
+            long virtualId = expiration / tickMs;
+            TimerTaskList bucket = buckets[(int) (virtualId % wheelSize)];
+            bucket.add(entry);
+            // 槽位到期时间变化说明是新一轮使用，需要重新入DelayQueue
+            if (bucket.setExpiration(virtualId * tickMs)) {
+                queue.offer(bucket);
+            }
+            return true;
+        } else {
+            // 超出当前层范围，交给溢出轮
+            if (overflowWheel == null) addOverflowWheel();
+            return overflowWheel.add(entry);
+        }
+    }
+
+    /**
+     * 推进时钟（逐层推进）
+     */
+    void advanceClock(long timeMs) {
+        if (timeMs >= currentTime + tickMs) {
+            currentTime = timeMs - (timeMs % tickMs);
+            if (overflowWheel != null) overflowWheel.advanceClock(currentTime);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.yzx.crazycodingbytemq.transport;
+
+import com.yzx.crazycodingbytemq.enums.TransportType;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * @className: NettyTransport
+ * @author: yzx
+ * @date: 2025/11/26 10:10
+ * @Version: 1.0
+ * @description: 按配置选择Netty传输实现，统一创建EventLoopGroup和通道类型；请求的传输不可用时记录原因并回退NIO。
+ * epoll专有选项（SO_REUSEPORT多acceptor、TCP_QUICKACK、边沿/水平触发）只在epoll下生效，其他传输忽略
+ */
+@Slf4j
+public final class NettyTransport {
+    private final TransportType type;
+
+    private NettyTransport(TransportType type) {
+        this.type = type;
+    }
+
+    /**
+     * 选择传输实现（返回实际生效的传输，可能是回退后的NIO）
+     */
+    public static NettyTransport select(TransportType requested) {
+        TransportType resolved = switch (requested) {
+            case NIO -> TransportType.NIO;
+            case AUTO -> Epoll.isAvailable() ? TransportType.EPOLL : TransportType.NIO;
+            case EPOLL -> {
+                if (Epoll.isAvailable()) yield TransportType.EPOLL;
+                log.warn("epoll不可用，回退NIO：{}", String.valueOf(Epoll.unavailabilityCause()));
+                yield TransportType.NIO;
+            }
+            case IO_URING -> {
+                if (IoUring.isAvailable()) yield TransportType.IO_URING;
+                log.warn("io_uring不可用，回退NIO：{}", IoUring.unavailabilityCause());
+                yield TransportType.NIO;
+            }
+        };
+        return new NettyTransport(resolved);
+    }
+
+    public TransportType type() {
+        return type;
+    }
+
+    /**
+     * 是否支持SO_REUSEPORT（同一端口绑定多个监听通道，由内核在各acceptor间分配新连接）
+     */
+    public boolean supportsReusePort() {
+        return type == TransportType.EPOLL;
+    }
+
+    public EventLoopGroup newEventLoopGroup(int threads, String threadName) {
+        ThreadFactory threadFactory = new DefaultThreadFactory(threadName);
+        return switch (type) {
+            case EPOLL -> new EpollEventLoopGroup(threads, threadFactory);
+            case IO_URING -> IoUring.newEventLoopGroup(threads, threadFactory);
+            default -> new NioEventLoopGroup(threads, threadFactory);
+        };
+    }
+
+    public Class<? extends ServerChannel> serverChannelClass() {
+        return switch (type) {
+            case EPOLL -> EpollServerSocketChannel.class;
+            case IO_URING -> IoUring.serverChannelClass();
+            default -> NioServerSocketChannel.class;
+        };
+    }
+
+    public Class<? extends Channel> channelClass() {
+        return switch (type) {
+            case EPOLL -> EpollSocketChannel.class;
+            case IO_URING -> IoUring.channelClass();
+            default -> NioSocketChannel.class;
+        };
+    }
+
+    /**
+     * 服务端epoll选项：reusePort让多个监听通道绑定同一端口；quickAck关闭延迟确认，降低请求-响应的尾延迟
+     */
+    public ServerBootstrap configure(ServerBootstrap bootstrap, boolean reusePort, boolean quickAck, boolean edgeTriggered) {
+        if (type != TransportType.EPOLL) return bootstrap;
+        EpollMode mode = edgeTriggered ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED;
+        return bootstrap
+                .option(EpollChannelOption.SO_REUSEPORT, reusePort)
+                .option(EpollChannelOption.EPOLL_MODE, mode)
+                .childOption(EpollChannelOption.EPOLL_MODE, mode)
+                .childOption(EpollChannelOption.TCP_QUICKACK, quickAck);
+    }
+
+    public Bootstrap configure(Bootstrap bootstrap, boolean quickAck, boolean edgeTriggered) {
+        if (type != TransportType.EPOLL) return bootstrap;
+        return bootstrap
+                .option(EpollChannelOption.EPOLL_MODE, edgeTriggered ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED)
+                .option(EpollChannelOption.TCP_QUICKACK, quickAck);
+    }
+
+    /**
+     * 通道能否直接写出FileRegion（零拷贝sendfile）；io_uring通道只接受ByteBuf
+     */
+    public static boolean supportsFileRegion(Channel channel) {
+        return !IoUring.isChannel(channel);
+    }
+
+    @Override
+    public String toString() {
+        return type.name();
+    }
+
+    /**
+     * io_uring传输（netty-incubator-transport-io_uring为可选依赖，按类名反射加载，不在类路径时视为不可用）
+     */
+    private static final class IoUring {
+        private static final String PACKAGE = "io.netty.incubator.channel.uring.";
+        private static final Class<?> EVENT_LOOP_GROUP;
+        private static final Class<? extends ServerChannel> SERVER_CHANNEL;
+        private static final Class<? extends Channel> CHANNEL;
+        private static final Throwable UNAVAILABILITY_CAUSE;
+
+        static {
+            Class<?> eventLoopGroup = null;
+            Class<? extends ServerChannel> serverChannel = null;
+            Class<? extends Channel> channel = null;
+            Throwable cause = null;
+            try {
+                Class<?> ioUring = Class.forName(PACKAGE + "IOUring");
+                if ((Boolean) ioUring.getMethod("isAvailable").invoke(null)) {
+                    eventLoopGroup = Class.forName(PACKAGE + "IOUringEventLoopGroup");
+                    serverChannel = Class.forName(PACKAGE + "IOUringServerSocketChannel").asSubclass(ServerChannel.class);
+                    channel = Class.forName(PACKAGE + "IOUringSocketChannel").asSubclass(Channel.class);
+                } else {
+                    cause = (Throwable) ioUring.getMethod("unavailabilityCause").invoke(null);
+                }
+            } catch (ReflectiveOperationException | LinkageError e) {
+                cause = e;
+            }
+            EVENT_LOOP_GROUP = eventLoopGroup;
+            SERVER_CHANNEL = serverChannel;
+            CHANNEL = channel;
+            UNAVAILABILITY_CAUSE = cause;
+        }
+
+        static boolean isAvailable() {
+            return EVENT_LOOP_GROUP != null;
+        }
+
+        static String unavailabilityCause() {
+            return String.valueOf(UNAVAILABILITY_CAUSE);
+        }
+
+        static EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory) {
+            try {
+                return (EventLoopGroup) EVENT_LOOP_GROUP.getConstructor(int.class, ThreadFactory.class)
+                        .newInstance(threads, threadFactory);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("创建io_uring EventLoopGroup失败", e);
+            }
+        }
+
+        static Class<? extends ServerChannel> serverChannelClass() {
+            return SERVER_CHANNEL;
+        }
+
+        static Class<? extends Channel> channelClass() {
+            return CHANNEL;
+        }
+
+        static boolean isChannel(Channel channel) {
+            return CHANNEL != null && CHANNEL.isInstance(channel);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.yzx.crazycodingbytemq.transport;
+
+import com.yzx.crazycodingbytemq.codec.ProtocolConstant;
+import com.yzx.crazycodingbytemq.codec.ProtocolDecoder;
+import com.yzx.crazycodingbytemq.codec.ProtocolEncoder;
+import com.yzx.crazycodingbytemq.codec.ProtocolFrame;
+import com.yzx.crazycodingbytemq.enums.MessageTypeEnum;
+import com.yzx.crazycodingbytemq.enums.TransportType;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @className: TransportBenchmark
+ * @author: yzx
+ * @date: 2025/11/26 11:00
+ * @Version: 1.0
+ * @description: 传输实现对比压测：本机回环上用协议编解码器做请求-响应回显，每条连接保持固定在途请求数，
+ * 依次测量各传输的吞吐量和往返延迟分位数（p50/p99/p999），并输出相对第一个传输的差异。
+ * 只测网络层，不经过队列存储；用法：java -Dbench.seconds=10 ... TransportBenchmark NIO EPOLL IO_URING
+ */
+@Slf4j
+public class TransportBenchmark {
+    // 延迟直方图：1微秒一格，最后一格收容超过上限的样本
+    private static final int HISTOGRAM_MICROS = 100_000;
+
+    private final int connections = Integer.getInteger("bench.connections", 16);
+    private final int inFlight = Integer.getInteger("bench.inflight", 32);
+    private final int payloadBytes = Math.max(8, Integer.getInteger("bench.payload", 256));
+    private final int workerThreads = Integer.getInteger("bench.threads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private final long warmupSeconds = Long.getLong("bench.warmup", 3);
+    private final long measureSeconds = Long.getLong("bench.seconds", 10);
+    private final boolean quickAck = Boolean.getBoolean("bench.quickAck");
+    private final boolean edgeTriggered = Boolean.parseBoolean(System.getProperty("bench.edgeTriggered", "true"));
+
+    public static void main(String[] args) throws Exception {
+        List<TransportType> types = new ArrayList<>();
+        for (String arg : args) {
+            types.add(TransportType.valueOf(arg.trim().toUpperCase(Locale.ROOT)));
+        }
+        if (types.isEmpty()) {
+            types = List.of(TransportType.NIO, TransportType.EPOLL, TransportType.IO_URING);
+        }
+        new TransportBenchmark().run(types);
+    }
+
+    public void run(List<TransportType> types) throws Exception {
+        log.info("压测参数：连接数={}, 每连接在途={}, 消息体={}字节, IO线程={}, 预热={}s, 测量={}s, quickAck={}, 边沿触发={}",
+                connections, inFlight, payloadBytes, workerThreads, warmupSeconds, measureSeconds, quickAck, edgeTriggered);
+        List<Result> results = new ArrayList<>();
+        for (TransportType type : types) {
+            NettyTransport transport = NettyTransport.select(type);
+            if (transport.type() != type) {
+                log.warn("传输{}不可用，跳过", type);
+                continue;
+            }
+            results.add(measure(transport));
+        }
+        if (results.isEmpty()) return;
+        Result baseline = results.get(0);
+        StringBuilder report = new StringBuilder(String.format(Locale.ROOT, "%n%-10s %14s %10s %10s %10s %12s %12s%n",
+                "transport", "msg/s", "p50(us)", "p99(us)", "p999(us)", "吞吐差异", "p99差异"));
+        for (Result result : results) {
+            report.append(String.format(Locale.ROOT, "%-10s %14.0f %10d %10d %10d %11.1f%% %11.1f%%%n",
+                    result.transport, result.throughput, result.p50, result.p99, result.p999,
+                    percent(result.throughput, baseline.throughput), percent(result.p99, baseline.p99)));
+        }
+        log.info("传输压测结果（差异相对{}）：{}", baseline.transport, report);
+    }
+
+    private Result measure(NettyTransport transport) throws Exception {
+        EventLoopGroup bossGroup = transport.newEventLoopGroup(1, "bench-boss");
+        EventLoopGroup serverGroup = transport.newEventLoopGroup(workerThreads, "bench-server");
+        EventLoopGroup clientGroup = transport.newEventLoopGroup(workerThreads, "bench-client");
+        Recorder recorder = new Recorder();
+        try {
+            ServerBootstrap serverBootstrap = new ServerBootstrap()
+                    .group(bossGroup, serverGroup)
+                    .channel(transport.serverChannelClass())
+                    .childOption(ChannelOption.TCP_NODELAY, true)
+                    .childHandler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            ch.pipeline().addLast(new ProtocolDecoder(ProtocolConstant.FRAME_HEADER_LENGTH + payloadBytes))
+                                    .addLast(new ProtocolEncoder())
+                                    .addLast(new EchoHandler());
+                        }
+                    });
+            transport.configure(serverBootstrap, false, quickAck, edgeTriggered);
+            Channel serverChannel = serverBootstrap.bind("127.0.0.1", 0).sync().channel();
+            int port = ((InetSocketAddress) serverChannel.localAddress()).getPort();
+
+            Bootstrap bootstrap = new Bootstrap()
+                    .group(clientGroup)
+                    .channel(transport.channelClass())
+                    .option(ChannelOption.TCP_NODELAY, true)
+                    .handler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            ch.pipeline().addLast(new ProtocolDecoder(ProtocolConstant.FRAME_HEADER_LENGTH + payloadBytes))
+                                    .addLast(new ProtocolEncoder())
+                                    .addLast(new LoadHandler(recorder));
+                        }
+                    });
+            transport.configure(bootstrap, quickAck, edgeTriggered);
+            List<Channel> channels = new ArrayList<>();
+            for (int i = 0; i < connections; i++) {
+                channels.add(bootstrap.connect("127.0.0.1", port).sync().channel());
+            }
+
+            TimeUnit.SECONDS.sleep(warmupSeconds);
+            recorder.start();
+            TimeUnit.SECONDS.sleep(measureSeconds);
+            Result result = recorder.stop(transport.type());
+            log.info("{}：{} msg/s, p50={}us, p99={}us, p999={}us",
+                    result.transport, String.format(Locale.ROOT, "%.0f", result.throughput), result.p50, result.p99, result.p999);
+
+            recorder.running = false;
+            for (Channel channel : channels) {
+                channel.close().syncUninterruptibly();
+            }
+            serverChannel.close().syncUninterruptibly();
+            return result;
+        } finally {
+            recorder.running = false;
+            clientGroup.shutdownGracefully(0, 2, TimeUnit.SECONDS).syncUninterruptibly();
+            serverGroup.shutdownGracefully(0, 2, TimeUnit.SECONDS).syncUninterruptibly();
+            bossGroup.shutdownGracefully(0, 2, TimeUnit.SECONDS).syncUninterruptibly();
+        }
+    }
+
+    private static double percent(double value, double baseline) {
+        return baseline == 0 ? 0 : (value - baseline) * 100 / baseline;
+    }
+
+    private ProtocolFrame request() {
+        byte[] body = new byte[payloadBytes];
+        ByteBuffer.wrap(body).putLong(System.nanoTime());
+        return new ProtocolFrame(
+                ProtocolConstant.MAGIC,
+                ProtocolConstant.Version,
+                body.length,
+                MessageTypeEnum.SEND_MESSAGE.getCode(),
+                body
+        );
+    }
+
+    /**
+     * 服务端：原样回显（与broker处理器一样逐条writeAndFlush）
+     */
+    private static class EchoHandler extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            ctx.writeAndFlush(msg);
+        }
+    }
+
+    /**
+     * 客户端：连接建立后发出inFlight条请求，每收到一条响应记录往返延迟并补发一条
+     */
+    private class LoadHandler extends ChannelInboundHandlerAdapter {
+        private final Recorder recorder;
+
+        LoadHandler(Recorder recorder) {
+            this.recorder = recorder;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            for (int i = 0; i < inFlight; i++) {
+                ctx.write(request());
+            }
+            ctx.flush();
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            if (!(msg instanceof ProtocolFrame frame)) return;
+            recorder.record(System.nanoTime() - ByteBuffer.wrap(frame.getBody()).getLong());
+            if (recorder.running) {
+                ctx.writeAndFlush(request());
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            log.warn("压测连接异常：{}", cause.getMessage());
+            ctx.close();
+        }
+    }
+
+    /**
+     * 测量窗口内的请求数和延迟直方图
+     */
+    private static class Recorder {
+        private final AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_MICROS + 1);
+        private volatile boolean measuring;
+        private volatile boolean running = true;
+        private long startNanos;
+
+        void start() {
+            startNanos = System.nanoTime();
+            measuring = true;
+        }
+
+        void record(long latencyNanos) {
+            if (!measuring) return;
+            histogram.incrementAndGet((int) Math.min(HISTOGRAM_MICROS, TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+        }
+
+        Result stop(TransportType transport) {
+            measuring = false;
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+            long total = 0;
+            for (int i = 0; i < histogram.length(); i++) {
+                total += histogram.get(i);
+            }
+            return new Result(transport, total / seconds,
+                    percentile(total, 0.50), percentile(total, 0.99), percentile(total, 0.999));
+        }
+
+        private long percentile(long total, double quantile) {
+            long target = (long) Math.ceil(total * quantile);
+            long seen = 0;
+            for (int i = 0; i < histogram.length(); i++) {
+                seen += histogram.get(i);
+                if (seen >= target && seen > 0) return i;
+            }
+            return HISTOGRAM_MICROS;
+        }
+    }
+
+    private record Result(TransportType transport, double throughput, long p50, long p99, long p999) {
+    }
+}
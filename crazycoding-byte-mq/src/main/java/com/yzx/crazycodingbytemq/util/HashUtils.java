@@ -0,0 +1,37 @@
+package com.yzx.crazycodingbytemq.util;
+
+/**
+ * @className: HashUtils
+ * @author: yzx
+ * @date: 2025/11/22 10:00
+ * @Version: 1.0
+ * @description: 哈希工具
+ */
+public class HashUtils {
+    private static final long FNV64_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV64_PRIME = 0x100000001b3L;
+
+    /**
+     * 64位FNV-1a哈希（按char计算，不分配内存）
+     */
+    public static long fnv1a64(String str) {
+        long hash = FNV64_OFFSET_BASIS;
+        for (int i = 0; i < str.length(); i++) {
+            hash ^= str.charAt(i);
+            hash *= FNV64_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * 64位混淆（murmur3 fmix64），让FNV结果的高低位分布更均匀
+     */
+    public static long mix64(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,40 @@
+package com.yzx.crazycodingbytemq.util;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @className: RetryPolicy
+ * @author: yzx
+ * @date: 2025/11/24 10:10
+ * @Version: 1.0
+ * @description: 重试策略（指数退避+全抖动：第n次重试等待[0, min(上限, 基础间隔*2^n)]内的随机时长，
+ * 避免大量请求同时失败后在同一时刻集中重试）
+ */
+public class RetryPolicy {
+    private final int maxRetries;
+    private final long baseMs;
+    private final long maxMs;
+
+    public RetryPolicy(int maxRetries, Duration baseInterval, Duration maxInterval) {
+        this.maxRetries = maxRetries;
+        this.baseMs = Math.max(1, baseInterval.toMillis());
+        this.maxMs = Math.max(baseMs, maxInterval.toMillis());
+    }
+
+    /**
+     * 已重试retries次后是否还能重试
+     */
+    public boolean canRetry(int retries) {
+        return retries < maxRetries;
+    }
+
+    /**
+     * 第retries+1次重试前的等待时长（毫秒）
+     */
+    public long backoffMillis(int retries) {
+        // 限制位移次数，避免溢出
+        long ceiling = Math.min(maxMs, baseMs << Math.min(retries, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+}
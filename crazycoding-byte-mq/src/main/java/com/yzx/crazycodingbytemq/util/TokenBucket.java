@@ -0,0 +1,42 @@
+package com.yzx.crazycodingbytemq.util;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @className: TokenBucket
+ * @author: yzx
+ * @date: 2025/11/23 17:00
+ * @Version: 1.0
+ * @description: 无锁令牌桶（GCRA虚拟调度：只维护一个"理论到达时间"，一次CAS完成取令牌；
+ * 令牌不足时不拒绝，而是透支并返回需要等待的时长，由调用方决定如何限速）
+ */
+public class TokenBucket {
+    // 生成一个令牌所需的纳秒数
+    private final double nanosPerToken;
+    // 允许的突发量（纳秒）
+    private final long burstNanos;
+    // 理论到达时间：按配额速率，已消耗的令牌恰好用完的时刻
+    private final AtomicLong theoreticalArrival = new AtomicLong(System.nanoTime());
+
+    public TokenBucket(long tokensPerSecond, Duration burst) {
+        this.nanosPerToken = 1_000_000_000d / tokensPerSecond;
+        this.burstNanos = burst.toNanos();
+    }
+
+    /**
+     * 消耗令牌
+     * @return 超出配额时需要等待的纳秒数，未超出返回0
+     */
+    public long acquire(long tokens) {
+        long cost = (long) (tokens * nanosPerToken);
+        long now = System.nanoTime();
+        for (; ; ) {
+            long tat = theoreticalArrival.get();
+            long next = Math.max(tat, now) + cost;
+            if (theoreticalArrival.compareAndSet(tat, next)) {
+                return Math.max(0, next - now - burstNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.yzx.crazycodingbytemq;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * @className: TestEnvironment
+ * @author: yzx
+ * @date: 2025/11/26 11:20
+ * @Version: 1.0
+ * @description: 测试用配置：存储目录指向临时目录，关闭SSL，缩短重连间隔。
+ * ConfigLoader在类初始化时读取系统属性，必须在任何单例初始化前调用init
+ */
+public final class TestEnvironment {
+    public static final String ORDERED_QUEUE = "orders";
+    public static final long ORDERED_KEY_IDLE_TIMEOUT_MS = 1000;
+    public static final String PARTITIONED_QUEUE = "polls";
+    public static final int PARTITIONED_QUEUE_PARTITIONS = 2;
+    private static Path storeDir;
+
+    private TestEnvironment() {
+    }
+
+    public static synchronized Path init() {
+        if (storeDir != null) return storeDir;
+        try {
+            storeDir = Files.createTempDirectory("mq-test-store");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        storeDir.toFile().deleteOnExit();
+        System.setProperty("mq.server.queue-store-dir", storeDir.resolve("__queue").toString());
+        System.setProperty("mq.server.schedule-store-dir", storeDir.resolve("__schedule").toString());
+        System.setProperty("mq.server.transaction-store-dir", storeDir.resolve("__transaction").toString());
+        System.setProperty("mq.server.ordered-queues.0", ORDERED_QUEUE);
+        System.setProperty("mq.server.queue-partitions.0", PARTITIONED_QUEUE + ":" + PARTITIONED_QUEUE_PARTITIONS);
+        System.setProperty("mq.server.ordered-key-idle-timeout", ORDERED_KEY_IDLE_TIMEOUT_MS + "ms");
+        System.setProperty("mq.client.ssl-enable", "false");
+        System.setProperty("mq.client.pool-size", "1");
+        System.setProperty("mq.client.retry-interval", "50ms");
+        System.setProperty("mq.client.retry-max-interval", "200ms");
+        return storeDir;
+    }
+}
@@ -0,0 +1,90 @@
+package com.yzx.crazycodingbytemq.handler;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.yzx.crazycodingbytemq.TestEnvironment;
+import com.yzx.crazycodingbytemq.codec.ProtocolConstant;
+import com.yzx.crazycodingbytemq.codec.ProtocolFrame;
+import com.yzx.crazycodingbytemq.enums.MessageTypeEnum;
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import io.netty.channel.DefaultChannelId;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @className: ConnectHandlerTest
+ * @author: yzx
+ * @date: 2025/11/26 11:50
+ * @Version: 1.0
+ * @description: 连接请求被拒绝时只回失败响应，不关闭通道（同一通道上可承载多个客户端会话，也可重试）
+ */
+class ConnectHandlerTest {
+
+    @BeforeAll
+    static void initConfig() {
+        TestEnvironment.init();
+    }
+
+    @Test
+    void rejectedConnectKeepsChannelOpenForRetry() throws InvalidProtocolBufferException {
+        EmbeddedChannel channel = newChannel();
+        channel.writeInbound(connectFrame("reject-client", "not-a-version"));
+        MqMessage.ConnectResponse rejected = readResponse(channel);
+        assertFalse(rejected.getSuccess());
+        assertTrue(channel.isActive());
+
+        channel.writeInbound(connectFrame("reject-client", "1.0.0"));
+        assertTrue(readResponse(channel).getSuccess());
+        // 同一通道上的第二个会话
+        channel.writeInbound(connectFrame("reject-client-2", "1.0.0"));
+        assertTrue(readResponse(channel).getSuccess());
+        // 重放连接请求按重新注册处理
+        channel.writeInbound(connectFrame("reject-client", "1.0.0"));
+        assertTrue(readResponse(channel).getSuccess());
+        assertTrue(channel.isActive());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void sameClientIdOnAnotherChannelIsRejected() throws InvalidProtocolBufferException {
+        EmbeddedChannel owner = newChannel();
+        EmbeddedChannel other = newChannel();
+        owner.writeInbound(connectFrame("dup-client", "1.0.0"));
+        assertTrue(readResponse(owner).getSuccess());
+
+        other.writeInbound(connectFrame("dup-client", "1.0.0"));
+        assertFalse(readResponse(other).getSuccess());
+        assertTrue(other.isActive());
+
+        // 原连接断开后注销，新连接可以注册
+        owner.close();
+        other.writeInbound(connectFrame("dup-client", "1.0.0"));
+        assertTrue(readResponse(other).getSuccess());
+        other.finishAndReleaseAll();
+    }
+
+    // EmbeddedChannel默认共用同一个通道ID，连接管理按通道ID区分会话，每个通道单独分配
+    private static EmbeddedChannel newChannel() {
+        return new EmbeddedChannel(DefaultChannelId.newInstance(), new ConnectHandler());
+    }
+
+    private static ProtocolFrame connectFrame(String clientId, String version) {
+        byte[] body = MqMessage.ConnectRequest.newBuilder()
+                .setClientId(clientId)
+                .setClientType("CONSUMER")
+                .setClientVersion(version)
+                .build().toByteArray();
+        return new ProtocolFrame(ProtocolConstant.MAGIC, ProtocolConstant.Version, body.length,
+                MessageTypeEnum.CONNECT_REQUEST.getCode(), body);
+    }
+
+    private static MqMessage.ConnectResponse readResponse(EmbeddedChannel channel) throws InvalidProtocolBufferException {
+        ProtocolFrame frame = channel.readOutbound();
+        assertEquals(MessageTypeEnum.CONNECT_RESPONSE.getCode(), frame.getMessageType());
+        return MqMessage.ConnectResponse.parseFrom(frame.getBody());
+    }
+}
@@ -0,0 +1,204 @@
+package com.yzx.crazycodingbytemq.pool;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.yzx.crazycodingbytemq.TestEnvironment;
+import com.yzx.crazycodingbytemq.codec.ProtocolConstant;
+import com.yzx.crazycodingbytemq.codec.ProtocolDecoder;
+import com.yzx.crazycodingbytemq.codec.ProtocolEncoder;
+import com.yzx.crazycodingbytemq.codec.ProtocolFrame;
+import com.yzx.crazycodingbytemq.enums.MessageTypeEnum;
+import com.yzx.crazycodingbytemq.handler.ClientResponseHandler;
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @className: ClientConnectionPoolTest
+ * @author: yzx
+ * @date: 2025/11/26 11:40
+ * @Version: 1.0
+ * @description: 断线重连：服务端关闭连接后连接池重连，会话先在新连接上重放连接请求，之后新连接才对获取方可用；
+ * 握手进行中重新打开会话时等旧握手结束，旧会话作废后不再重试
+ */
+class ClientConnectionPoolTest {
+    private EventLoopGroup serverGroup;
+    private Channel serverChannel;
+    // 服务端收到的连接请求（按到达顺序）
+    private final BlockingQueue<ReceivedConnect> connects = new LinkedBlockingQueue<>();
+    private ClientConnectionPool pool;
+
+    @BeforeAll
+    static void initConfig() {
+        TestEnvironment.init();
+    }
+
+    @BeforeEach
+    void startServer() throws InterruptedException {
+        serverGroup = new NioEventLoopGroup(1);
+        serverChannel = new ServerBootstrap()
+                .group(serverGroup)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline().addLast(new ProtocolDecoder(1024 * 1024))
+                                .addLast(new ProtocolEncoder())
+                                .addLast(new ConnectResponder());
+                    }
+                })
+                .bind("127.0.0.1", 0).sync().channel();
+        int port = ((InetSocketAddress) serverChannel.localAddress()).getPort();
+        pool = ClientConnectionPool.getInstance("127.0.0.1", port);
+    }
+
+    @AfterEach
+    void stopServer() throws InterruptedException {
+        pool.close();
+        serverChannel.close().sync();
+        serverGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+    }
+
+    @Test
+    void sessionIsReplayedOnReconnectedChannelBeforeItIsHandedOut() throws Exception {
+        assertTrue(pool.openSession("client-1", channel -> handshake(channel, "client-1")).get(5, TimeUnit.SECONDS));
+        ReceivedConnect first = connects.poll(5, TimeUnit.SECONDS);
+        assertNotNull(first);
+        assertEquals("client-1", first.clientId());
+        Channel original = pool.acquire().get(5, TimeUnit.SECONDS);
+        pool.release(original);
+
+        // 服务端断开连接（如broker重启）
+        first.serverSide().close().sync();
+        assertTrue(original.closeFuture().await(5, TimeUnit.SECONDS));
+
+        Channel reconnected = pool.acquire().get(5, TimeUnit.SECONDS);
+        assertNotEquals(original.id(), reconnected.id());
+        assertTrue(reconnected.isActive());
+        // 获取方拿到新连接时，会话已在这条连接上重新注册
+        ReceivedConnect replayed = connects.poll(0, TimeUnit.SECONDS);
+        assertNotNull(replayed);
+        assertEquals("client-1", replayed.clientId());
+        assertEquals(reconnected.localAddress(), replayed.serverSide().remoteAddress());
+        pool.release(reconnected);
+        assertNull(connects.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void closedSessionIsNotReplayed() throws Exception {
+        assertTrue(pool.openSession("client-2", channel -> handshake(channel, "client-2")).get(5, TimeUnit.SECONDS));
+        ReceivedConnect first = connects.poll(5, TimeUnit.SECONDS);
+        assertNotNull(first);
+        pool.closeSession("client-2");
+
+        first.serverSide().close().sync();
+        Channel reconnected = pool.acquire().get(5, TimeUnit.SECONDS);
+        assertTrue(reconnected.isActive());
+        pool.release(reconnected);
+        assertNull(connects.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void reopeningWhileBindingWaitsAndReusesTheBoundChannel() throws Exception {
+        Channel connected = pool.acquire().get(5, TimeUnit.SECONDS);
+        pool.release(connected);
+        // 旧会话握手挂起未完成
+        CompletableFuture<Boolean> firstHandshake = new CompletableFuture<>();
+        CompletableFuture<Channel> firstChannel = new CompletableFuture<>();
+        pool.openSession("client-3", channel -> {
+            firstChannel.complete(channel);
+            return firstHandshake;
+        });
+        CompletableFuture<Channel> secondChannel = new CompletableFuture<>();
+        CompletableFuture<Boolean> reopened = pool.openSession("client-3", channel -> {
+            secondChannel.complete(channel);
+            return handshake(channel, "client-3");
+        });
+        // 旧握手结束前不在其连接上重放
+        assertFalse(secondChannel.isDone());
+        firstHandshake.complete(true);
+        assertTrue(reopened.get(5, TimeUnit.SECONDS));
+        assertEquals(firstChannel.get(), secondChannel.get());
+        assertEquals("client-3", connects.poll(5, TimeUnit.SECONDS).clientId());
+        assertNull(connects.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void replacedSessionDoesNotRetryFailedHandshake() throws Exception {
+        Channel connected = pool.acquire().get(5, TimeUnit.SECONDS);
+        pool.release(connected);
+        CompletableFuture<Boolean> firstHandshake = new CompletableFuture<>();
+        AtomicInteger firstAttempts = new AtomicInteger();
+        pool.openSession("client-4", channel -> {
+            firstAttempts.incrementAndGet();
+            return firstHandshake;
+        });
+        CompletableFuture<Boolean> reopened = pool.openSession("client-4", channel -> handshake(channel, "client-4"));
+        // 旧握手失败：旧会话已作废不再重试，新会话另取连接握手
+        firstHandshake.complete(false);
+        assertTrue(reopened.get(5, TimeUnit.SECONDS));
+        assertEquals("client-4", connects.poll(5, TimeUnit.SECONDS).clientId());
+        // 重试间隔最长200ms
+        Thread.sleep(400);
+        assertEquals(1, firstAttempts.get());
+    }
+
+    // 会话握手：发送连接请求，按服务端的连接响应完成
+    private static CompletableFuture<Boolean> handshake(Channel channel, String clientId) {
+        channel.attr(ClientResponseHandler.CONNECT_FUTURES).setIfAbsent(new ConcurrentLinkedQueue<>());
+        CompletableFuture<MqMessage.ConnectResponse> response = new CompletableFuture<>();
+        channel.attr(ClientResponseHandler.CONNECT_FUTURES).get().add(response);
+        byte[] body = MqMessage.ConnectRequest.newBuilder()
+                .setClientId(clientId)
+                .setClientType("PRODUCER")
+                .setClientVersion("1.0.0")
+                .build().toByteArray();
+        channel.writeAndFlush(new ProtocolFrame(ProtocolConstant.MAGIC, ProtocolConstant.Version, body.length,
+                MessageTypeEnum.CONNECT_REQUEST.getCode(), body));
+        return response.thenApply(MqMessage.ConnectResponse::getSuccess);
+    }
+
+    private record ReceivedConnect(String clientId, Channel serverSide) {
+    }
+
+    // 只应答连接请求的最小服务端
+    private class ConnectResponder extends SimpleChannelInboundHandler<ProtocolFrame> {
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ProtocolFrame frame) throws InvalidProtocolBufferException {
+            if (frame.getMessageType() != MessageTypeEnum.CONNECT_REQUEST.getCode()) return;
+            MqMessage.ConnectRequest request = MqMessage.ConnectRequest.parseFrom(frame.getBody());
+            connects.add(new ReceivedConnect(request.getClientId(), ctx.channel()));
+            byte[] body = MqMessage.ConnectResponse.newBuilder()
+                    .setSuccess(true)
+                    .setMessage("连接成功")
+                    .build().toByteArray();
+            ctx.writeAndFlush(new ProtocolFrame(ProtocolConstant.MAGIC, ProtocolConstant.Version, body.length,
+                    MessageTypeEnum.CONNECT_RESPONSE.getCode(), body));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.yzx.crazycodingbytemq.server;
+
+import com.yzx.crazycodingbytemq.TestEnvironment;
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @className: InflightTableTest
+ * @author: yzx
+ * @date: 2025/11/27 11:00
+ * @Version: 1.0
+ * @description: 已投递未确认消息表：超时前确认不再重投、可见性超时后重投、旧投递标签不能确认重投后的消息
+ */
+class InflightTableTest {
+    private static final long VISIBILITY_TIMEOUT_MS = 200;
+    // 超时后按第一级重试延迟(默认1秒)重新投递
+    private static final long REDELIVERY_WAIT_MS = 5000;
+    private static QueueManager queueManager;
+
+    @BeforeAll
+    static void setUp() {
+        TestEnvironment.init();
+        queueManager = QueueManager.getInstance();
+    }
+
+    @Test
+    void ackBeforeTimeoutStopsRedelivery() throws InterruptedException {
+        String queueName = uniqueQueue();
+        assertTrue(queueManager.enqueue(message(queueName)));
+        MqMessage.MessageItem delivered = pullOne(queueName);
+        assertNotNull(delivered);
+        assertEquals(1, delivered.getDeliveryCount());
+        assertTrue(ack(delivered, delivered.getDeliveryTag()));
+
+        // 超过可见性超时和第一级重试延迟后仍不会重投
+        Thread.sleep(VISIBILITY_TIMEOUT_MS + 1500);
+        assertNull(pullOne(queueName));
+        // 重复确认失败
+        assertFalse(ack(delivered, delivered.getDeliveryTag()));
+    }
+
+    @Test
+    void unackedMessageIsRedeliveredAndStaleTagCannotAck() throws InterruptedException {
+        String queueName = uniqueQueue();
+        assertTrue(queueManager.enqueue(message(queueName)));
+        MqMessage.MessageItem first = pullOne(queueName);
+        assertNotNull(first);
+
+        MqMessage.MessageItem redelivered = awaitRedelivery(queueName);
+        assertNotNull(redelivered, "可见性超时后应重新投递");
+        assertEquals(first.getMessageId(), redelivered.getMessageId());
+        assertEquals(2, redelivered.getDeliveryCount());
+        assertNotEquals(first.getDeliveryTag(), redelivered.getDeliveryTag());
+        // 第一次投递的标签已随超时失效，不能确认重投后的消息
+        assertFalse(ack(first, first.getDeliveryTag()));
+        assertTrue(ack(redelivered, redelivered.getDeliveryTag()));
+        assertFalse(ack(redelivered, redelivered.getDeliveryTag()));
+    }
+
+    private static MqMessage.MessageItem awaitRedelivery(String queueName) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + REDELIVERY_WAIT_MS;
+        while (System.currentTimeMillis() < deadline) {
+            MqMessage.MessageItem messageItem = pullOne(queueName);
+            if (messageItem != null) return messageItem;
+            Thread.sleep(50);
+        }
+        return null;
+    }
+
+    private static MqMessage.MessageItem pullOne(String queueName) {
+        MqMessage.PullMessageResponse response = queueManager.pullMessage(MqMessage.PullMessageRequest.newBuilder()
+                .setQueueName(queueName)
+                .setConsumerClientId("inflight-consumer")
+                .setBatchSize(1)
+                .setVisibilityTimeoutMs(VISIBILITY_TIMEOUT_MS)
+                .build());
+        assertTrue(response.getSuccess());
+        return response.getMessageListCount() == 0 ? null : response.getMessageList(0);
+    }
+
+    private static boolean ack(MqMessage.MessageItem messageItem, long deliveryTag) {
+        return queueManager.ackMessage(MqMessage.MessageAckRequest.newBuilder()
+                .setQueueName(messageItem.getQueueName())
+                .setConsumerClientId("inflight-consumer")
+                .setMessageId(messageItem.getMessageId())
+                .setDeliveryTag(deliveryTag)
+                .build()).getSuccess();
+    }
+
+    private static MqMessage.MessageItem message(String queueName) {
+        return MqMessage.MessageItem.newBuilder()
+                .setMessageId(UUID.randomUUID().toString())
+                .setQueueName(queueName)
+                .setMessageBody("body")
+                .setCreateTime(System.currentTimeMillis())
+                .build();
+    }
+
+    private static String uniqueQueue() {
+        return "inflight-" + UUID.randomUUID();
+    }
+}
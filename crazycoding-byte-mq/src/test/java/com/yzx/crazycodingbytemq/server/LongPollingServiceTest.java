@@ -0,0 +1,121 @@
+package com.yzx.crazycodingbytemq.server;
+
+import com.yzx.crazycodingbytemq.TestEnvironment;
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.DefaultChannelId;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @className: LongPollingServiceTest
+ * @author: yzx
+ * @date: 2025/11/27 10:00
+ * @Version: 1.0
+ * @description: 消费组长轮询：消息入队后唤醒该分区的归属成员，而不是先挂起的任意成员
+ */
+class LongPollingServiceTest {
+    private static final String GROUP = "lp-group";
+    private static final long MAX_WAIT_MS = 5000;
+    private EmbeddedChannel first;
+    private EmbeddedChannel second;
+
+    @BeforeAll
+    static void initConfig() {
+        TestEnvironment.init();
+        ConnectionManager.getInstance().addListener(ConsumerGroupManager.getInstance());
+    }
+
+    @AfterEach
+    void closeChannels() {
+        first.close();
+        second.close();
+    }
+
+    @Test
+    void arrivalWakesTheMemberThatOwnsThePartition() {
+        first = member("lp-member-1");
+        second = member("lp-member-2");
+        int[] secondPartitions = ConsumerGroupManager.getInstance()
+                .assignedPartitions(GROUP, TestEnvironment.PARTITIONED_QUEUE, "lp-member-2");
+        assertNotNull(secondPartitions);
+        assertEquals(1, secondPartitions.length);
+
+        // 先挂起的是不拥有该分区的成员
+        CompletableFuture<MqMessage.PullMessageResponse> firstResponse = park(first, "lp-member-1");
+        CompletableFuture<MqMessage.PullMessageResponse> secondResponse = park(second, "lp-member-2");
+        pump();
+        assertFalse(firstResponse.isDone());
+        assertFalse(secondResponse.isDone());
+
+        QueueManager queueManager = QueueManager.getInstance();
+        String key = keyFor(queueManager, secondPartitions[0]);
+        long start = System.currentTimeMillis();
+        assertTrue(queueManager.enqueue(MqMessage.MessageItem.newBuilder()
+                .setMessageId("lp-1")
+                .setQueueName(TestEnvironment.PARTITIONED_QUEUE)
+                .setMessageKey(key)
+                .setMessageBody("body")
+                .build()));
+        while (!secondResponse.isDone() && System.currentTimeMillis() - start < MAX_WAIT_MS) {
+            pump();
+        }
+        // 归属成员在等待超时前就拿到消息，另一个成员继续挂起
+        assertTrue(secondResponse.isDone());
+        assertTrue(System.currentTimeMillis() - start < MAX_WAIT_MS / 2);
+        List<MqMessage.MessageItem> messages = secondResponse.join().getMessageListList();
+        assertEquals(1, messages.size());
+        assertEquals("lp-1", messages.get(0).getMessageId());
+        assertFalse(firstResponse.isDone());
+    }
+
+    private EmbeddedChannel member(String clientId) {
+        EmbeddedChannel channel = new EmbeddedChannel(DefaultChannelId.newInstance(), new ChannelInboundHandlerAdapter());
+        assertTrue(ConnectionManager.getInstance().register(channel, MqMessage.ConnectRequest.newBuilder()
+                .setClientId(clientId)
+                .setClientType("CONSUMER")
+                .setClientVersion("1.0.0")
+                .setConsumerGroup(GROUP)
+                .addSubscriptions(TestEnvironment.PARTITIONED_QUEUE)
+                .build()));
+        return channel;
+    }
+
+    private static CompletableFuture<MqMessage.PullMessageResponse> park(EmbeddedChannel channel, String clientId) {
+        CompletableFuture<MqMessage.PullMessageResponse> response = new CompletableFuture<>();
+        ChannelHandlerContext ctx = channel.pipeline().firstContext();
+        LongPollingService.getInstance().park(ctx, MqMessage.PullMessageRequest.newBuilder()
+                        .setQueueName(TestEnvironment.PARTITIONED_QUEUE)
+                        .setConsumerClientId(clientId)
+                        .setConsumerGroup(GROUP)
+                        .setBatchSize(10)
+                        .setMaxWaitMs(MAX_WAIT_MS)
+                        .build(),
+                (c, r) -> response.complete(r));
+        return response;
+    }
+
+    // 未绑定队列归属线程时重新拉取在通道的EventLoop上执行
+    private void pump() {
+        first.runPendingTasks();
+        second.runPendingTasks();
+    }
+
+    private static String keyFor(QueueManager queueManager, int partition) {
+        for (int i = 0; ; i++) {
+            String key = "key-" + i;
+            if (queueManager.selectPartition(TestEnvironment.PARTITIONED_QUEUE, key) == partition) return key;
+        }
+    }
+}
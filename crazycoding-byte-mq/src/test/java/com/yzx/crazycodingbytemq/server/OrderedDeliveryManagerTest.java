@@ -0,0 +1,123 @@
+package com.yzx.crazycodingbytemq.server;
+
+import com.yzx.crazycodingbytemq.TestEnvironment;
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @className: OrderedDeliveryManagerTest
+ * @author: yzx
+ * @date: 2025/11/26 11:30
+ * @Version: 1.0
+ * @description: 按键顺序投递：同键串行、不同键并行、释放后下一条就绪、消费组各自占用消息键、租约到期交接
+ */
+class OrderedDeliveryManagerTest {
+    private static OrderedDeliveryManager manager;
+
+    @BeforeAll
+    static void setUp() {
+        TestEnvironment.init();
+        manager = OrderedDeliveryManager.getInstance();
+    }
+
+    @Test
+    void sameKeyIsSerializedAndReleaseHandsOverInOrder() {
+        String key = uniqueKey();
+        MqMessage.MessageItem first = message("m1", key, "");
+        MqMessage.MessageItem second = message("m2", key, "");
+        MqMessage.MessageItem third = message("m3", key, "");
+        assertTrue(manager.isOrdered(TestEnvironment.ORDERED_QUEUE));
+        assertTrue(manager.tryAcquire(first));
+        assertFalse(manager.tryAcquire(second));
+        assertFalse(manager.tryAcquire(third));
+        // 持有者重试不用重新排队
+        assertTrue(manager.tryAcquire(first));
+        assertNull(manager.pollReady(TestEnvironment.ORDERED_QUEUE));
+
+        assertTrue(manager.release(first));
+        assertEquals("m2", manager.pollReady(TestEnvironment.ORDERED_QUEUE).getMessageId());
+        // 非持有者释放无效
+        assertFalse(manager.release(third));
+        assertTrue(manager.release(second));
+        assertEquals("m3", manager.pollReady(TestEnvironment.ORDERED_QUEUE).getMessageId());
+        assertFalse(manager.release(third));
+        // 键已回收，新消息可直接占用
+        assertTrue(manager.tryAcquire(message("m4", key, "")));
+        manager.release(message("m4", key, ""));
+    }
+
+    @Test
+    void differentKeysAndMessagesWithoutKeyAreNotBlocked() {
+        MqMessage.MessageItem first = message("a1", uniqueKey(), "");
+        MqMessage.MessageItem second = message("b1", uniqueKey(), "");
+        assertTrue(manager.tryAcquire(first));
+        assertTrue(manager.tryAcquire(second));
+        assertTrue(manager.tryAcquire(message("n1", "", "")));
+        assertTrue(manager.tryAcquire(message("n2", "", "")));
+        manager.release(first);
+        manager.release(second);
+    }
+
+    @Test
+    void consumerGroupsHoldMessageKeysIndependently() {
+        String key = uniqueKey();
+        String readyQueue = QueueManager.groupScopedName(TestEnvironment.ORDERED_QUEUE, "g1");
+        MqMessage.MessageItem g1First = message("m1", key, "g1");
+        MqMessage.MessageItem g1Second = message("m2", key, "g1");
+        assertTrue(manager.tryAcquire(g1First));
+        assertFalse(manager.tryAcquire(g1Second));
+        // 另一个组读同一条消息不受g1持有的键影响
+        MqMessage.MessageItem g2First = message("m1", key, "g2");
+        assertTrue(manager.tryAcquire(g2First));
+        assertFalse(manager.tryAcquire(message("m2", key, "g2")));
+
+        assertTrue(manager.release(g1First));
+        assertFalse(manager.hasReady(TestEnvironment.ORDERED_QUEUE));
+        assertEquals("m2", manager.pollReady(readyQueue).getMessageId());
+        manager.release(g1Second);
+        manager.release(g2First);
+        manager.pollReady(QueueManager.groupScopedName(TestEnvironment.ORDERED_QUEUE, "g2"));
+    }
+
+    @Test
+    void expiredLeaseIsHandedToNextPendingMessage() throws InterruptedException {
+        String key = uniqueKey();
+        String readyQueue = QueueManager.groupScopedName(TestEnvironment.ORDERED_QUEUE, "lease");
+        MqMessage.MessageItem lost = message("lost", key, "lease");
+        assertTrue(manager.tryAcquire(lost));
+        assertFalse(manager.tryAcquire(message("next", key, "lease")));
+
+        // 持有者既不确认也不重投：租约到期后同键下一条消息转为就绪
+        long deadline = System.currentTimeMillis() + TestEnvironment.ORDERED_KEY_IDLE_TIMEOUT_MS * 5;
+        MqMessage.MessageItem ready = null;
+        while (ready == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            ready = manager.pollReady(readyQueue);
+        }
+        assertEquals("next", ready == null ? null : ready.getMessageId());
+        // 原持有者之后确认不再释放该键
+        assertFalse(manager.release(lost));
+        manager.release(ready);
+    }
+
+    private static String uniqueKey() {
+        return UUID.randomUUID().toString();
+    }
+
+    private static MqMessage.MessageItem message(String messageId, String key, String group) {
+        return MqMessage.MessageItem.newBuilder()
+                .setMessageId(messageId)
+                .setQueueName(TestEnvironment.ORDERED_QUEUE)
+                .setMessageKey(key)
+                .setConsumerGroup(group)
+                .build();
+    }
+}
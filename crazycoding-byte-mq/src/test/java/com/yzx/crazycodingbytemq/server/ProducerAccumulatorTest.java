@@ -0,0 +1,70 @@
+package com.yzx.crazycodingbytemq.server;
+
+import com.yzx.crazycodingbytemq.config.ClientConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @className: ProducerAccumulatorTest
+ * @author: yzx
+ * @date: 2025/11/27 14:30
+ * @Version: 1.0
+ * @description: 生产者缓冲区限界：满时阻塞到有空间释放，超过最长阻塞时间失败，关闭时唤醒等待者
+ */
+class ProducerAccumulatorTest {
+    private static final long MAX_BLOCK_MS = 300;
+    private ProducerAccumulator accumulator;
+
+    @BeforeEach
+    void setUp() {
+        ClientConfig config = new ClientConfig();
+        config.setBufferMemory(100);
+        config.setMaxBlock(Duration.ofMillis(MAX_BLOCK_MS));
+        accumulator = new ProducerAccumulator(null, config);
+    }
+
+    @AfterEach
+    void tearDown() {
+        accumulator.close();
+    }
+
+    @Test
+    void reserveFailsAfterMaxBlockWhenBufferStaysFull() {
+        assertTrue(accumulator.reserve(60));
+        long start = System.currentTimeMillis();
+        assertFalse(accumulator.reserve(60));
+        assertTrue(System.currentTimeMillis() - start >= MAX_BLOCK_MS - 20);
+        // 超过缓冲区上限的单条消息立即失败
+        start = System.currentTimeMillis();
+        assertFalse(accumulator.reserve(101));
+        assertTrue(System.currentTimeMillis() - start < MAX_BLOCK_MS);
+    }
+
+    @Test
+    void releaseUnblocksWaitingSender() throws Exception {
+        assertTrue(accumulator.reserve(60));
+        CompletableFuture<Boolean> blocked = CompletableFuture.supplyAsync(() -> accumulator.reserve(60));
+        Thread.sleep(50);
+        assertFalse(blocked.isDone());
+        accumulator.release(60);
+        assertTrue(blocked.get(MAX_BLOCK_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void closeWakesWaitingSender() throws Exception {
+        assertTrue(accumulator.reserve(100));
+        CompletableFuture<Boolean> blocked = CompletableFuture.supplyAsync(() -> accumulator.reserve(1));
+        Thread.sleep(50);
+        accumulator.close();
+        // 关闭立即唤醒，不等到最长阻塞时间
+        assertFalse(blocked.get(MAX_BLOCK_MS / 3, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,185 @@
+package com.yzx.crazycodingbytemq.server;
+
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import com.yzx.crazycodingbytemq.store.QueueLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @className: TieredMessageQueueTest
+ * @author: yzx
+ * @date: 2025/11/26 11:00
+ * @Version: 1.0
+ * @description: 分层分区队列重启恢复：积压按顺序换入、未结算消息重启后重新投递、消费组从已提交偏移量继续，
+ * 追平的消费组从内存窗口读取、消费组按时间重置读游标
+ */
+class TieredMessageQueueTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void backlogBeyondCacheIsPagedInInOrder() throws IOException {
+        TieredMessageQueue queue = open(4);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, queue.append(message(i)).getOffset());
+        }
+        List<Long> offsets = drain(queue);
+        assertEquals(20, offsets.size());
+        for (int i = 0; i < offsets.size(); i++) {
+            assertEquals(i, offsets.get(i));
+        }
+        queue.close();
+    }
+
+    @Test
+    void unsettledMessagesAreRedeliveredAfterRestart() throws IOException {
+        TieredMessageQueue queue = open(8);
+        for (int i = 0; i < 10; i++) {
+            queue.append(message(i));
+        }
+        // 取出前6条，只确认0、1、2、4：位点停在最小的未结算偏移量3
+        for (int i = 0; i < 6; i++) {
+            MqMessage.MessageItem messageItem = queue.poll();
+            if (i != 3 && i != 5) {
+                queue.settle(messageItem.getOffset());
+            }
+        }
+        assertEquals(3, queue.checkpointOffset());
+        queue.close();
+
+        TieredMessageQueue reopened = open(8);
+        assertEquals(List.of(3L, 4L, 5L, 6L, 7L, 8L, 9L), drain(reopened));
+        reopened.close();
+    }
+
+    @Test
+    void consumerGroupsReadIndependentlyAndResumeFromCommittedOffsets() throws IOException {
+        TieredMessageQueue queue = open(4);
+        for (int i = 0; i < 10; i++) {
+            queue.append(message(i));
+        }
+        // 两个组各自读到全部消息，互不抢占
+        for (int i = 0; i < 10; i++) {
+            MqMessage.MessageItem messageItem = queue.pollGroup("a");
+            assertEquals(i, messageItem.getOffset());
+            if (i < 7) {
+                queue.settleGroup("a", messageItem.getOffset());
+            }
+        }
+        assertNull(queue.pollGroup("a"));
+        assertFalse(queue.hasGroupBacklog("a"));
+        for (int i = 0; i < 4; i++) {
+            queue.settleGroup("b", queue.pollGroup("b").getOffset());
+        }
+        assertTrue(queue.hasGroupBacklog("b"));
+        assertEquals(Map.of("a", 7L, "b", 4L), queue.groupOffsets());
+        // 日志按最慢的消费方保留
+        assertEquals(4, queue.retainOffset());
+        queue.close();
+
+        TieredMessageQueue reopened = open(4);
+        assertEquals(Map.of("a", 7L, "b", 4L), reopened.groupOffsets());
+        assertEquals(7, reopened.pollGroup("a").getOffset());
+        assertEquals(4, reopened.pollGroup("b").getOffset());
+        // 新消费组从日志起点开始
+        assertEquals(0, reopened.pollGroup("c").getOffset());
+        reopened.close();
+    }
+
+    @Test
+    void caughtUpGroupReadsFromMemoryAndLaggingGroupFromDisk() throws IOException {
+        AtomicInteger diskReads = new AtomicInteger();
+        QueueLog queueLog = new QueueLog(dir.toString(), 512) {
+            @Override
+            public List<StoredMessage> read(Cursor cursor, int max) throws IOException {
+                diskReads.incrementAndGet();
+                return super.read(cursor, max);
+            }
+        };
+        TieredMessageQueue queue = new TieredMessageQueue("q", queueLog, 4, 1 << 20, 3, Runnable::run, () -> {
+        });
+        // 消费组追平日志末端后，新追加的消息在窗口内，不读盘
+        assertNull(queue.pollGroup("a"));
+        for (int i = 0; i < 3; i++) {
+            queue.append(message(i));
+        }
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, queue.pollGroup("a").getOffset());
+        }
+        assertEquals(0, diskReads.get());
+        // 窗口只保留最近4条，落后的消费组从磁盘读取
+        for (int i = 3; i < 10; i++) {
+            queue.append(message(i));
+        }
+        assertEquals(0, queue.pollGroup("b").getOffset());
+        assertTrue(diskReads.get() > 0);
+        int readsBefore = diskReads.get();
+        for (int i = 3; i < 10; i++) {
+            assertEquals(i, queue.pollGroup("a").getOffset());
+        }
+        assertNull(queue.pollGroup("a"));
+        // 组a从偏移量3继续，3~5已被淘汰出窗口需要读盘，6~9在窗口内
+        assertTrue(diskReads.get() - readsBefore <= 2);
+        queue.close();
+    }
+
+    @Test
+    void seekGroupRewindsCursorToTimestamp() throws IOException {
+        TieredMessageQueue queue = open(4);
+        for (int i = 0; i < 10; i++) {
+            queue.append(message(i).setCreateTime(1_000 + i * 10L));
+        }
+        for (int i = 0; i < 10; i++) {
+            queue.pollGroup("a");
+        }
+        assertNull(queue.pollGroup("a"));
+        // 回溯到第5条：之前取出未确认的消息不再阻止提交偏移量
+        assertEquals(5, queue.seekGroup("a", 1_045));
+        assertEquals(Map.of("a", 5L), queue.groupOffsets());
+        for (int i = 5; i < 10; i++) {
+            assertEquals(i, queue.pollGroup("a").getOffset());
+        }
+        // 晚于全部消息则跳到日志末端
+        assertEquals(10, queue.seekGroup("a", 5_000));
+        assertFalse(queue.hasGroupBacklog("a"));
+        queue.close();
+    }
+
+    private TieredMessageQueue open(int cacheCapacity) throws IOException {
+        return new TieredMessageQueue("q", new QueueLog(dir.toString(), 512), cacheCapacity, 1 << 20, 3,
+                Runnable::run, () -> {
+        });
+    }
+
+    // 换入在调用线程上同步执行，缓存空时再取一次即可拿到换入的消息
+    private static List<Long> drain(TieredMessageQueue queue) {
+        List<Long> offsets = new ArrayList<>();
+        MqMessage.MessageItem messageItem;
+        while ((messageItem = queue.poll()) != null || !queue.isEmpty()) {
+            if (messageItem != null) {
+                offsets.add(messageItem.getOffset());
+                queue.settle(messageItem.getOffset());
+            }
+        }
+        return offsets;
+    }
+
+    private static MqMessage.MessageItem.Builder message(int index) {
+        return MqMessage.MessageItem.newBuilder()
+                .setMessageId("m" + index)
+                .setQueueName("q")
+                .setMessageBody("body-" + index);
+    }
+}
@@ -0,0 +1,207 @@
+package com.yzx.crazycodingbytemq.store;
+
+import com.yzx.crazycodingbytemq.config.MessageStoreConfig;
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @className: QueueLogTest
+ * @author: yzx
+ * @date: 2025/11/26 10:00
+ * @Version: 1.0
+ * @description: 队列日志重启恢复：末端定位、不完整尾部截断、消费位点和消费组偏移量保存、按时间定位偏移量、多磁盘段分布
+ */
+class QueueLogTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void recoverRestoresEndAndCheckpoint() throws IOException {
+        QueueLog queueLog = new QueueLog(dir.toString(), 1024);
+        queueLog.recover();
+        for (int i = 0; i < 50; i++) {
+            queueLog.append(message(i));
+        }
+        queueLog.flush(20, Map.of("g1", 35L), 0);
+        queueLog.close();
+
+        QueueLog reopened = new QueueLog(dir.toString(), 1024);
+        QueueLog.Cursor cursor = reopened.recover();
+        assertEquals(50, reopened.nextOffset());
+        assertEquals(20, cursor.offset());
+        assertEquals(Map.of("g1", 35L), reopened.readGroupOffsets());
+        // 从消费位点读出的第一条就是位点处的消息
+        List<QueueLog.StoredMessage> messages = reopened.read(cursor, 5);
+        assertEquals(20, messages.get(0).messageItem().getOffset());
+        assertEquals("m20", messages.get(0).messageItem().getMessageId());
+        reopened.close();
+    }
+
+    @Test
+    void recoverTruncatesTornTailRecord() throws IOException {
+        QueueLog queueLog = new QueueLog(dir.toString(), 1 << 20);
+        queueLog.recover();
+        for (int i = 0; i < 10; i++) {
+            queueLog.append(message(i));
+        }
+        queueLog.close();
+        // 模拟宕机：末尾只写了长度前缀和一半消息体
+        Path segment = onlySegment();
+        long validSize = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.allocate(4 + 8).putInt(100).putLong(42L).flip());
+        }
+
+        QueueLog reopened = new QueueLog(dir.toString(), 1 << 20);
+        reopened.recover();
+        assertEquals(10, reopened.nextOffset());
+        assertEquals(validSize, Files.size(segment));
+        // 截断后继续追加，偏移量连续
+        reopened.append(message(10));
+        List<QueueLog.StoredMessage> messages = reopened.read(reopened.cursorAt(9), 10);
+        assertEquals(2, messages.size());
+        assertEquals(10, messages.get(1).messageItem().getOffset());
+        reopened.close();
+    }
+
+    @Test
+    void flushDeletesOnlySegmentsBeforeRetainOffset() throws IOException {
+        QueueLog queueLog = new QueueLog(dir.toString(), 256);
+        queueLog.recover();
+        for (int i = 0; i < 40; i++) {
+            queueLog.append(message(i));
+        }
+        queueLog.flush(40, 15);
+        assertTrue(queueLog.logStartOffset() <= 15);
+        assertTrue(queueLog.logStartOffset() > 0);
+        // 日志起点之前的偏移量定位到日志起点
+        assertEquals(queueLog.logStartOffset(), queueLog.cursorAt(0).offset());
+        queueLog.close();
+
+        QueueLog reopened = new QueueLog(dir.toString(), 256);
+        assertEquals(40, reopened.recover().offset());
+        assertEquals(queueLog.logStartOffset(), reopened.logStartOffset());
+        reopened.close();
+    }
+
+    @Test
+    void offsetForTimestampUsesSegmentTimeIndexes() throws IOException {
+        QueueLog queueLog = new QueueLog(dir.toString(), 256, 250);
+        queueLog.recover();
+        for (int i = 0; i < 40; i++) {
+            queueLog.append(message(i).toBuilder().setCreateTime(10_000 + i * 100L).build());
+        }
+        assertOffsetsForTimestamps(queueLog);
+        queueLog.close();
+
+        // 删除一个已封存段的索引，重启时扫描段内消息重建
+        try (Stream<Path> files = Files.list(dir)) {
+            Path index = files.filter(file -> file.toString().endsWith(".timeindex")).sorted().findFirst().orElseThrow();
+            Files.delete(index);
+        }
+        QueueLog reopened = new QueueLog(dir.toString(), 256, 250);
+        reopened.recover();
+        assertOffsetsForTimestamps(reopened);
+        // 删除的段连同索引一起删除
+        reopened.flush(40, 20);
+        assertEquals(reopened.logStartOffset(), reopened.offsetForTimestamp(0));
+        assertEquals(countFiles(".log"), countFiles(".timeindex"));
+        reopened.close();
+    }
+
+    private long countFiles(String suffix) throws IOException {
+        return countFiles(dir, suffix);
+    }
+
+    private static long countFiles(Path dir, String suffix) throws IOException {
+        if (!Files.isDirectory(dir)) return 0;
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.toString().endsWith(suffix)).count();
+        }
+    }
+
+    @Test
+    void segmentsFollowDiskPlacementAndRecoverAcrossDisks() throws IOException {
+        Path disk0 = dir.resolve("disk0");
+        Path disk1 = dir.resolve("disk1");
+        MessageStoreConfig config = new MessageStoreConfig();
+        config.setBaseDirs(List.of(disk0.toString(), disk1.toString()));
+        config.setDiskMinFreeBytes(0);
+        config.setMaxFileSize(256);
+        // 按名称哈希落在第二块盘上的分区
+        String queueName = Stream.iterate(0, i -> i + 1).map(i -> "q#" + i)
+                .filter(name -> Math.floorMod(name.hashCode(), 2) == 1).findFirst().orElseThrow();
+        DiskStripeManager stripes = new DiskStripeManager(config);
+        QueueLog queueLog = new QueueLog(queueName, stripes, 256, 1000);
+        queueLog.recover();
+        for (int i = 0; i < 40; i++) {
+            queueLog.append(message(i));
+        }
+        queueLog.flush(10, Map.of("g1", 12L), 0);
+        queueLog.close();
+        stripes.shutdown();
+        // 段文件在分区所在磁盘，消费位点在首块盘
+        assertTrue(countFiles(disk1.resolve(queueName), ".log") > 1);
+        assertEquals(0, countFiles(disk0.resolve(queueName), ".log"));
+        assertTrue(Files.exists(disk0.resolve(queueName).resolve("checkpoint")));
+
+        // 模拟磁盘写满迁移：最早的段留在另一块盘上
+        Path oldest;
+        try (Stream<Path> files = Files.list(disk1.resolve(queueName))) {
+            oldest = files.filter(file -> file.toString().endsWith(".log")).sorted().findFirst().orElseThrow();
+        }
+        Files.move(oldest, disk0.resolve(queueName).resolve(oldest.getFileName()));
+        DiskStripeManager reopenedStripes = new DiskStripeManager(config);
+        QueueLog reopened = new QueueLog(queueName, reopenedStripes, 256, 1000);
+        assertEquals(10, reopened.recover().offset());
+        assertEquals(Map.of("g1", 12L), reopened.readGroupOffsets());
+        List<QueueLog.StoredMessage> messages = reopened.read(reopened.cursorAt(0), 100);
+        assertEquals(40, messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            assertEquals(i, messages.get(i).messageItem().getOffset());
+        }
+        reopened.close();
+        reopenedStripes.shutdown();
+    }
+
+    // 时间戳落在两条消息之间时返回后一条，早于全部消息返回日志起点，晚于全部消息返回日志末端
+    private static void assertOffsetsForTimestamps(QueueLog queueLog) throws IOException {
+        assertEquals(0, queueLog.offsetForTimestamp(0));
+        assertEquals(0, queueLog.offsetForTimestamp(10_000));
+        assertEquals(17, queueLog.offsetForTimestamp(10_000 + 16 * 100 + 50));
+        assertEquals(25, queueLog.offsetForTimestamp(10_000 + 25 * 100));
+        assertEquals(39, queueLog.offsetForTimestamp(10_000 + 39 * 100));
+        assertEquals(40, queueLog.offsetForTimestamp(20_000));
+    }
+
+    private Path onlySegment() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> segments = files.filter(file -> file.toString().endsWith(".log")).toList();
+            assertEquals(1, segments.size());
+            return segments.get(0);
+        }
+    }
+
+    private static MqMessage.MessageItem message(long offset) {
+        return MqMessage.MessageItem.newBuilder()
+                .setMessageId("m" + offset)
+                .setQueueName("q")
+                .setOffset(offset)
+                .setMessageBody("body-" + offset)
+                .build();
+    }
+}
@@ -0,0 +1,69 @@
+package com.yzx.crazycodingbytemq.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @className: TimeIndexTest
+ * @author: yzx
+ * @date: 2025/11/26 10:40
+ * @Version: 1.0
+ * @description: 时间索引：按间隔采样、重启后重新加载、截断不完整的索引项、已封存索引只读
+ */
+class TimeIndexTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void samplesByIntervalAndReloadsAfterRestart() throws IOException {
+        Path file = dir.resolve("00000000000000000000.timeindex");
+        TimeIndex index = new TimeIndex(file, 100);
+        assertTrue(index.maybeAppend(1000, 0));
+        assertFalse(index.maybeAppend(1050, 1));
+        assertTrue(index.maybeAppend(1100, 2));
+        // 时间回拨沿用上一次的时间戳，索引保持单调
+        assertFalse(index.maybeAppend(900, 3));
+        assertTrue(index.maybeAppend(1300, 4));
+        index.close();
+
+        TimeIndex reopened = new TimeIndex(file, 100);
+        assertEquals(1000, reopened.firstTimestamp());
+        assertEquals(0, reopened.firstOffset());
+        assertEquals(-1, reopened.floorEntry(999));
+        assertEquals(2, reopened.offsetAt(reopened.floorEntry(1299)));
+        assertEquals(4, reopened.offsetAt(reopened.floorEntry(5000)));
+        // 重启后继续追加，仍按最后一个索引项计算间隔
+        assertFalse(reopened.maybeAppend(1350, 5));
+        assertTrue(reopened.maybeAppend(1400, 6));
+        reopened.close();
+    }
+
+    @Test
+    void truncatesPartialEntryLeftByCrash() throws IOException {
+        Path file = dir.resolve("00000000000000000100.timeindex");
+        TimeIndex index = new TimeIndex(file, 10);
+        index.maybeAppend(1000, 100);
+        index.maybeAppend(2000, 150);
+        index.close();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.allocate(5).put(new byte[]{1, 2, 3, 4, 5}).flip());
+        }
+
+        TimeIndex sealed = TimeIndex.loadSealed(file);
+        assertEquals(2 * TimeIndex.ENTRY_SIZE, Files.size(file));
+        assertEquals(150, sealed.offsetAt(sealed.floorEntry(2500)));
+        assertThrows(IllegalStateException.class, () -> sealed.maybeAppend(3000, 200));
+    }
+}
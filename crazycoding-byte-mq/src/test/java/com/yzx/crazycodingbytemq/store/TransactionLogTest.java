@@ -0,0 +1,93 @@
+package com.yzx.crazycodingbytemq.store;
+
+import com.yzx.crazycodingbytemq.model.MqMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @className: TransactionLogTest
+ * @author: yzx
+ * @date: 2025/11/26 10:20
+ * @Version: 1.0
+ * @description: 事务日志重启恢复：未结束的半消息按写入顺序恢复，已结束的段前缀删除后重启结果不变
+ */
+class TransactionLogTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void recoverReturnsUnresolvedPreparesInOrder() {
+        TransactionLog transactionLog = new TransactionLog(dir.toString(), 1 << 20);
+        assertTrue(transactionLog.recover().isEmpty());
+        transactionLog.append(prepare("tx1")).join();
+        transactionLog.append(prepare("tx2")).join();
+        transactionLog.append(prepare("tx3")).join();
+        transactionLog.append(end("tx2", MqMessage.TransactionRecordType.TX_COMMIT)).join();
+        transactionLog.append(end("tx3", MqMessage.TransactionRecordType.TX_ROLLBACK)).join();
+        transactionLog.append(prepare("tx4")).join();
+        transactionLog.close();
+
+        TransactionLog reopened = new TransactionLog(dir.toString(), 1 << 20);
+        List<MqMessage.TransactionRecord> prepared = reopened.recover();
+        assertEquals(List.of("tx1", "tx4"), prepared.stream().map(MqMessage.TransactionRecord::getTransactionId).toList());
+        assertEquals("body-tx1", prepared.get(0).getMessage().getMessageBody());
+        reopened.close();
+    }
+
+    @Test
+    void resolvedPrefixIsDeletedWithoutLosingOutcomes() throws IOException {
+        // 每批记录写入新段
+        TransactionLog transactionLog = new TransactionLog(dir.toString(), 1);
+        transactionLog.recover();
+        transactionLog.append(prepare("tx1")).join();
+        transactionLog.append(prepare("tx2")).join();
+        transactionLog.append(end("tx2", MqMessage.TransactionRecordType.TX_COMMIT)).join();
+        transactionLog.close();
+        // tx1仍未结束：它所在的最早段保留，后面段里tx2的提交标记也不能删
+        TransactionLog reopened = new TransactionLog(dir.toString(), 1);
+        assertEquals(List.of("tx1"), reopened.recover().stream().map(MqMessage.TransactionRecord::getTransactionId).toList());
+        int segmentsBefore = segmentCount();
+        reopened.append(end("tx1", MqMessage.TransactionRecordType.TX_ROLLBACK)).join();
+        reopened.close();
+        assertTrue(segmentCount() < segmentsBefore);
+
+        TransactionLog restarted = new TransactionLog(dir.toString(), 1);
+        assertTrue(restarted.recover().isEmpty());
+        restarted.close();
+    }
+
+    private int segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return (int) files.filter(file -> file.getFileName().toString().startsWith("txlog-")).count();
+        }
+    }
+
+    private static MqMessage.TransactionRecord prepare(String transactionId) {
+        return MqMessage.TransactionRecord.newBuilder()
+                .setType(MqMessage.TransactionRecordType.TX_PREPARE)
+                .setTransactionId(transactionId)
+                .setProducerClientId("producer-1")
+                .setPrepareTime(System.currentTimeMillis())
+                .setMessage(MqMessage.SendMessageRequest.newBuilder()
+                        .setQueueName("q")
+                        .setMessageId("m-" + transactionId)
+                        .setMessageBody("body-" + transactionId))
+                .build();
+    }
+
+    private static MqMessage.TransactionRecord end(String transactionId, MqMessage.TransactionRecordType type) {
+        return MqMessage.TransactionRecord.newBuilder()
+                .setType(type)
+                .setTransactionId(transactionId)
+                .build();
+    }
+}